@@ -15,12 +15,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -84,9 +82,10 @@ import io.onedev.commons.launcher.bootstrap.Bootstrap;
 import io.onedev.commons.launcher.loader.AbstractPlugin;
 import io.onedev.commons.launcher.loader.AbstractPluginModule;
 import io.onedev.commons.launcher.loader.ImplementationProvider;
-import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.buildspec.BuildSpecCache;
+import io.onedev.server.buildspec.DefaultBuildSpecCache;
 import io.onedev.server.buildspec.job.DefaultJobManager;
 import io.onedev.server.buildspec.job.JobManager;
 import io.onedev.server.buildspec.job.log.DefaultLogManager;
@@ -164,12 +163,25 @@ import io.onedev.server.entitymanager.impl.DefaultSettingManager;
 import io.onedev.server.entitymanager.impl.DefaultSshKeyManager;
 import io.onedev.server.entitymanager.impl.DefaultUserAuthorizationManager;
 import io.onedev.server.entitymanager.impl.DefaultUserManager;
+import io.onedev.server.git.DefaultDiffCache;
+import io.onedev.server.git.DefaultGitTransferManager;
+import io.onedev.server.git.DefaultUploadPackCache;
+import io.onedev.server.git.DiffCache;
 import io.onedev.server.git.GitFilter;
 import io.onedev.server.git.GitSshCommandCreator;
+import io.onedev.server.git.GitTransferManager;
+import io.onedev.server.git.UploadPackCache;
 import io.onedev.server.git.config.GitConfig;
 import io.onedev.server.git.hookcallback.GitPostReceiveCallback;
 import io.onedev.server.git.hookcallback.GitPreReceiveCallback;
+import io.onedev.server.git.hookcallback.GitReceivePackFactory;
+import io.onedev.server.infomanager.BlameInfoManager;
+import io.onedev.server.infomanager.LineMappingInfoManager;
+import io.onedev.server.infomanager.RefInfoManager;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.DefaultBlameInfoManager;
+import io.onedev.server.infomanager.DefaultLineMappingInfoManager;
+import io.onedev.server.infomanager.DefaultRefInfoManager;
 import io.onedev.server.infomanager.DefaultCommitInfoManager;
 import io.onedev.server.infomanager.DefaultPullRequestInfoManager;
 import io.onedev.server.infomanager.DefaultUserInfoManager;
@@ -181,6 +193,8 @@ import io.onedev.server.maintenance.CheckDataVersion;
 import io.onedev.server.maintenance.CleanDatabase;
 import io.onedev.server.maintenance.DataManager;
 import io.onedev.server.maintenance.DefaultDataManager;
+import io.onedev.server.maintenance.DefaultRepositoryMaintenanceManager;
+import io.onedev.server.maintenance.RepositoryMaintenanceManager;
 import io.onedev.server.maintenance.ResetAdminPassword;
 import io.onedev.server.maintenance.RestoreDatabase;
 import io.onedev.server.maintenance.Upgrade;
@@ -224,14 +238,18 @@ import io.onedev.server.search.code.DefaultIndexManager;
 import io.onedev.server.search.code.DefaultSearchManager;
 import io.onedev.server.search.code.IndexManager;
 import io.onedev.server.search.code.SearchManager;
+import io.onedev.server.search.entitytext.DefaultEntityTextManager;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.security.BasicAuthenticationFilter;
 import io.onedev.server.security.BearerAuthenticationFilter;
 import io.onedev.server.security.CodePullAuthorizationSource;
 import io.onedev.server.security.DefaultFilterChainResolver;
 import io.onedev.server.security.DefaultPasswordService;
+import io.onedev.server.security.DefaultPermissionManager;
 import io.onedev.server.security.DefaultRememberMeManager;
 import io.onedev.server.security.DefaultWebSecurityManager;
 import io.onedev.server.security.FilterChainConfigurator;
+import io.onedev.server.security.PermissionManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.realm.AbstractAuthorizingRealm;
 import io.onedev.server.ssh.DefaultKeyPairProvider;
@@ -241,8 +259,13 @@ import io.onedev.server.ssh.SshCommandCreator;
 import io.onedev.server.ssh.SshServerLauncher;
 import io.onedev.server.storage.AttachmentStorageManager;
 import io.onedev.server.storage.DefaultAttachmentStorageManager;
+import io.onedev.server.storage.DefaultForkPoolManager;
 import io.onedev.server.storage.DefaultStorageManager;
+import io.onedev.server.storage.ForkPoolManager;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.concurrent.DefaultExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 import io.onedev.server.util.jackson.ObjectMapperConfigurator;
 import io.onedev.server.util.jackson.ObjectMapperProvider;
 import io.onedev.server.util.jackson.git.GitObjectMapperConfigurator;
@@ -344,8 +367,10 @@ public class CoreModule extends AbstractPluginModule {
 		 */
 		bind(MarkdownManager.class).to(DefaultMarkdownManager.class);		
 		bind(StorageManager.class).to(DefaultStorageManager.class);
+		bind(ForkPoolManager.class).to(DefaultForkPoolManager.class);
 		bind(SettingManager.class).to(DefaultSettingManager.class);
 		bind(DataManager.class).to(DefaultDataManager.class);
+		bind(RepositoryMaintenanceManager.class).to(DefaultRepositoryMaintenanceManager.class);
 		bind(TaskScheduler.class).to(DefaultTaskScheduler.class);
 		bind(PullRequestCommentManager.class).to(DefaultPullRequestCommentManager.class);
 		bind(CodeCommentManager.class).to(DefaultCodeCommentManager.class);
@@ -357,6 +382,9 @@ public class CoreModule extends AbstractPluginModule {
 		bind(BuildManager.class).to(DefaultBuildManager.class);
 		bind(BuildDependenceManager.class).to(DefaultBuildDependenceManager.class);
 		bind(JobManager.class).to(DefaultJobManager.class);
+		bind(BuildSpecCache.class).to(DefaultBuildSpecCache.class);
+		bind(DiffCache.class).to(DefaultDiffCache.class);
+		bind(EntityTextManager.class).to(DefaultEntityTextManager.class);
 		bind(LogManager.class).to(DefaultLogManager.class);
 		bind(MailManager.class).to(DefaultMailManager.class);
 		bind(IssueManager.class).to(DefaultIssueManager.class);
@@ -375,6 +403,10 @@ public class CoreModule extends AbstractPluginModule {
 		bind(CodeCommentReplyManager.class).to(DefaultCodeCommentReplyManager.class);
 		bind(AttachmentStorageManager.class).to(DefaultAttachmentStorageManager.class);
 		bind(PullRequestInfoManager.class).to(DefaultPullRequestInfoManager.class);
+		bind(BlameInfoManager.class).to(DefaultBlameInfoManager.class);
+		bind(LineMappingInfoManager.class).to(DefaultLineMappingInfoManager.class);
+		bind(RefInfoManager.class).to(DefaultRefInfoManager.class);
+		bind(PermissionManager.class).to(DefaultPermissionManager.class);
 		bind(WorkExecutor.class).to(DefaultWorkExecutor.class);
 		bind(PullRequestNotificationManager.class);
 		bind(CommitNotificationManager.class);
@@ -424,24 +456,15 @@ public class CoreModule extends AbstractPluginModule {
 		
 		bind(EntityValidator.class).to(DefaultEntityValidator.class);
 		
+	    bind(ExecutorManager.class).to(DefaultExecutorManager.class);
 	    bind(ExecutorService.class).toProvider(new Provider<ExecutorService>() {
 
+	    	@Inject
+	    	private ExecutorManager executorManager;
+	    	
 			@Override
 			public ExecutorService get() {
-		        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, 
-		        		new SynchronousQueue<Runnable>()) {
-
-					@Override
-					public void execute(Runnable command) {
-						try {
-							super.execute(SecurityUtils.inheritSubject(command));
-						} catch (RejectedExecutionException e) {
-							if (!isShutdown())
-								throw ExceptionUtils.unchecked(e);
-						}
-					}
-
-		        };
+		        return executorManager.getExecutor(ExecutorPool.GENERAL);
 			}
 	    	
 	    }).in(Singleton.class);
@@ -546,8 +569,11 @@ public class CoreModule extends AbstractPluginModule {
 		contribute(ObjectMapperConfigurator.class, GitObjectMapperConfigurator.class);
 		bind(GitConfig.class).toProvider(GitConfigProvider.class);
 		bind(GitFilter.class);
+		bind(UploadPackCache.class).to(DefaultUploadPackCache.class);
+		bind(GitTransferManager.class).to(DefaultGitTransferManager.class);
 		bind(GitPreReceiveCallback.class);
 		bind(GitPostReceiveCallback.class);
+		bind(GitReceivePackFactory.class);
 		contribute(SshCommandCreator.class, GitSshCommandCreator.class);
 	}
 	
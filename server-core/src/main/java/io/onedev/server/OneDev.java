@@ -10,7 +10,6 @@ import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -46,6 +45,7 @@ import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.Version;
+import io.onedev.server.util.concurrent.ExecutorManager;
 import io.onedev.server.util.init.InitStage;
 import io.onedev.server.util.init.ManualConfig;
 import io.onedev.server.util.jetty.JettyLauncher;
@@ -73,7 +73,7 @@ public class OneDev extends AbstractPlugin implements Serializable {
 	
 	private final TaskScheduler taskScheduler;
 	
-	private final ExecutorService executorService;
+	private final ExecutorManager executorManager;
 	
 	private volatile InitStage initStage;
 
@@ -82,7 +82,7 @@ public class OneDev extends AbstractPlugin implements Serializable {
 	public OneDev(Provider<JettyLauncher> jettyLauncherProvider, PersistManager persistManager, 
 			TaskScheduler taskScheduler, SessionManager sessionManager, 
 			Provider<ServerConfig> serverConfigProvider, DataManager dataManager, 
-			SettingManager settingManager, ExecutorService executorService, 
+			SettingManager settingManager, ExecutorManager executorManager, 
 			ListenerRegistry listenerRegistry) {
 		this.jettyLauncherProvider = jettyLauncherProvider;
 		this.persistManager = persistManager;
@@ -91,7 +91,7 @@ public class OneDev extends AbstractPlugin implements Serializable {
 		this.settingManager = settingManager;
 		this.dataManager = dataManager;
 		this.serverConfigProvider = serverConfigProvider;
-		this.executorService = executorService;
+		this.executorManager = executorManager;
 		this.listenerRegistry = listenerRegistry;
 		
 		initStage = new InitStage("Server is Starting...");
@@ -329,7 +329,7 @@ public class OneDev extends AbstractPlugin implements Serializable {
 			taskScheduler.stop();
 			jettyLauncherProvider.get().stop();
 		}
-		executorService.shutdown();
+		executorManager.shutdown();
 	}
 		
 	public Object writeReplace() throws ObjectStreamException {
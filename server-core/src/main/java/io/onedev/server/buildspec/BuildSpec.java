@@ -3,6 +3,7 @@ package io.onedev.server.buildspec;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -93,6 +94,12 @@ public class BuildSpec implements Serializable, Validatable {
 	
 	private transient Map<String, String> propertyMap;
 	
+	private transient Map<String, List<Job>> dependentJobsMap;
+	
+	private transient List<Job> triggeredJobs;
+	
+	private transient Map<Class<?>, List<Job>> triggeredJobsMap;
+	
 	@Editable
 	@Valid
 	public List<Job> getJobs() {
@@ -159,6 +166,86 @@ public class BuildSpec implements Serializable, Validatable {
 		return stepTemplateMap;
 	}
 	
+	/**
+	 * Get jobs directly depending on specified job
+	 */
+	public List<Job> getDependentJobs(String jobName) {
+		if (dependentJobsMap == null) {
+			Map<String, List<Job>> dependentJobsMap = new HashMap<>();
+			for (Job job: jobs) {
+				for (JobDependency dependency: job.getJobDependencies()) {
+					List<Job> dependentJobs = dependentJobsMap.get(dependency.getJobName());
+					if (dependentJobs == null) {
+						dependentJobs = new ArrayList<>();
+						dependentJobsMap.put(dependency.getJobName(), dependentJobs);
+					}
+					if (!dependentJobs.contains(job))
+						dependentJobs.add(job);
+				}
+			}
+			this.dependentJobsMap = dependentJobsMap;
+		}
+		List<Job> dependentJobs = dependentJobsMap.get(jobName);
+		if (dependentJobs != null)
+			return dependentJobs;
+		else
+			return new ArrayList<>();
+	}
+	
+	/**
+	 * Get jobs with at least one trigger defined
+	 */
+	public List<Job> getTriggeredJobs() {
+		if (triggeredJobs == null) {
+			List<Job> triggeredJobs = new ArrayList<>();
+			for (Job job: jobs) {
+				if (!job.getTriggers().isEmpty())
+					triggeredJobs.add(job);
+			}
+			this.triggeredJobs = triggeredJobs;
+		}
+		return triggeredJobs;
+	}
+	
+	/**
+	 * Get jobs with triggers of specified class
+	 */
+	public List<Job> getTriggeredJobs(Class<? extends JobTrigger> triggerClass) {
+		if (triggeredJobsMap == null) {
+			Map<Class<?>, List<Job>> triggeredJobsMap = new HashMap<>();
+			for (Job job: jobs) {
+				for (JobTrigger trigger: job.getTriggers()) {
+					List<Job> triggeredJobs = triggeredJobsMap.get(trigger.getClass());
+					if (triggeredJobs == null) {
+						triggeredJobs = new ArrayList<>();
+						triggeredJobsMap.put(trigger.getClass(), triggeredJobs);
+					}
+					if (!triggeredJobs.contains(job))
+						triggeredJobs.add(job);
+				}
+			}
+			this.triggeredJobsMap = triggeredJobsMap;
+		}
+		List<Job> triggeredJobs = triggeredJobsMap.get(triggerClass);
+		if (triggeredJobs != null)
+			return triggeredJobs;
+		else
+			return new ArrayList<>();
+	}
+	
+	/**
+	 * Calculate all derived lookup structures up front. Build spec will not be modified 
+	 * afterwards when read, and can be shared between threads safely 
+	 */
+	public void index() {
+		getJobMap();
+		getPropertyMap();
+		getStepTemplateMap();
+		getDependentJobs("");
+		getTriggeredJobs();
+		getTriggeredJobs(JobTrigger.class);
+	}
+	
 	@Override
 	public boolean isValid(ConstraintValidatorContext context) {
 		boolean valid = true;
@@ -0,0 +1,27 @@
+package io.onedev.server.buildspec;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.server.model.Project;
+
+/**
+ * Server wide cache of parsed build specs keyed by blob id of the build spec file. Cached 
+ * build specs are indexed and shared between all callers, so they must not be modified. Use 
+ * {@link BuildSpec#parse(byte[])} to get a copy for editing.
+ */
+public interface BuildSpecCache {
+
+	/**
+	 * Get build spec of specified commit
+	 * 
+	 * @return
+	 * 			build spec of specified commit, or <tt>null</tt> if not defined
+	 * @throws
+	 * 			InvalidBuildSpecException if build spec is defined but not valid
+	 */
+	@Nullable
+	BuildSpec getBuildSpec(Project project, ObjectId commitId);
+	
+}
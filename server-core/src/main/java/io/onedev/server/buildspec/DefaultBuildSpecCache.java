@@ -0,0 +1,106 @@
+package io.onedev.server.buildspec;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.model.Project;
+
+@Singleton
+public class DefaultBuildSpecCache implements BuildSpecCache {
+
+	private static final String LEGACY_BLOB_PATH = ".onedev-buildspec";
+	
+	/*
+	 * Total size of cached build spec files. Parsed build spec takes roughly an order of 
+	 * magnitude more memory than its file
+	 */
+	private static final long MAX_WEIGHT = 8*1024*1024;
+	
+	private final Cache<ObjectId, CachedBuildSpec> cache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_WEIGHT)
+			.weigher(new Weigher<ObjectId, CachedBuildSpec>() {
+
+				@Override
+				public int weigh(ObjectId key, CachedBuildSpec value) {
+					return value.size;
+				}
+				
+			})
+			.build();
+	
+	@Nullable
+	@Override
+	public BuildSpec getBuildSpec(Project project, ObjectId commitId) {
+		Repository repository = project.getRepository();
+		ObjectId blobId = getBlobId(repository, commitId, BuildSpec.BLOB_PATH);
+		if (blobId == null)
+			blobId = getBlobId(repository, commitId, LEGACY_BLOB_PATH);
+		if (blobId == null)
+			return null;
+		
+		ObjectId cacheKey = blobId;
+		try {
+			return cache.get(cacheKey, new Callable<CachedBuildSpec>() {
+
+				@Override
+				public CachedBuildSpec call() throws Exception {
+					byte[] bytes = repository.open(cacheKey).getCachedBytes();
+					BuildSpec buildSpec = BuildSpec.parse(bytes);
+					if (buildSpec != null)
+						buildSpec.index();
+					return new CachedBuildSpec(buildSpec, bytes.length);
+				}
+				
+			}).buildSpec;
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
+	@Nullable
+	private ObjectId getBlobId(Repository repository, ObjectId commitId, String path) {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			RevCommit commit = GitUtils.parseCommit(revWalk, commitId);
+			if (commit != null) {
+				TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree());
+				if (treeWalk != null && (treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE) 
+					return treeWalk.getObjectId(0);
+			}
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static class CachedBuildSpec {
+		
+		final BuildSpec buildSpec;
+		
+		final int size;
+		
+		CachedBuildSpec(@Nullable BuildSpec buildSpec, int size) {
+			this.buildSpec = buildSpec;
+			this.size = size;
+		}
+		
+	}
+	
+}
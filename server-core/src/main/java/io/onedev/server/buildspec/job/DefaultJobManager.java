@@ -105,6 +105,8 @@ import io.onedev.server.security.permission.ProjectPermission;
 import io.onedev.server.util.CommitAware;
 import io.onedev.server.util.MatrixRunner;
 import io.onedev.server.util.SimpleLogger;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 import io.onedev.server.util.patternset.PatternSet;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
@@ -116,6 +118,8 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 
 	private static final int CHECK_INTERVAL = 1000; // check internal in milli-seconds
 	
+	private static final int SWEEP_INTERVAL = 60000; // sweep interval of all unfinished builds in milli-seconds
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultJobManager.class);
 	
 	private final Map<String, JobContext> jobContexts = new ConcurrentHashMap<>();
@@ -152,10 +156,19 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 	
 	private volatile Thread thread;
 	
+	private final Object dispatchLock = new Object();
+	
+	private final Set<Long> buildsToCheck = new HashSet<>();
+	
+	// Map of build id to ids of waiting builds depending on it 
+	private final Map<Long, Set<Long>> waitingDependents = new ConcurrentHashMap<>();
+	
+	private volatile long lastSweepTime;
+	
 	@Inject
 	public DefaultJobManager(BuildManager buildManager, UserManager userManager, ListenerRegistry listenerRegistry, 
 			SettingManager settingManager, TransactionManager transactionManager, LogManager logManager, 
-			ExecutorService executorService, SessionManager sessionManager, BuildParamManager buildParamManager, 
+			ExecutorManager executorManager, SessionManager sessionManager, BuildParamManager buildParamManager, 
 			ProjectManager projectManager, Validator validator, TaskScheduler taskScheduler) {
 		this.settingManager = settingManager;
 		this.buildManager = buildManager;
@@ -163,7 +176,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		this.listenerRegistry = listenerRegistry;
 		this.transactionManager = transactionManager;
 		this.logManager = logManager;
-		this.executorService = executorService;
+		this.executorService = executorManager.getExecutor(ExecutorPool.JOB);
 		this.sessionManager = sessionManager;
 		this.buildParamManager = buildParamManager;
 		this.projectManager = projectManager;
@@ -627,7 +640,12 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 				try {
 					BuildSpec buildSpec = event.getProject().getBuildSpec(commitId);
 					if (buildSpec != null) {
-						for (Job job: buildSpec.getJobs()) {
+						Collection<Job> jobs;
+						if (event instanceof BuildFinished) 
+							jobs = buildSpec.getDependentJobs(((BuildFinished) event).getBuild().getJobName());
+						else 
+							jobs = buildSpec.getTriggeredJobs();
+						for (Job job: jobs) {
 							JobTriggerMatch match = job.getTriggerMatch(event);
 							if (match != null) {
 								Map<String, List<List<String>>> paramMatrix = 
@@ -852,7 +870,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 					BuildSpec buildSpec = project.getBuildSpec(commitId);
 					if (buildSpec != null) {
 						ScheduledTimeReaches event = new ScheduledTimeReaches(project);
-						for (Job job: buildSpec.getJobs()) {
+						for (Job job: buildSpec.getTriggeredJobs(ScheduleTrigger.class)) {
 							for (JobTrigger trigger: job.getTriggers()) {
 								if (trigger instanceof ScheduleTrigger) {
 									ScheduleTrigger scheduledTrigger = (ScheduleTrigger) trigger;
@@ -927,88 +945,167 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		scheduledTasks.clear();
 	}
 
+	private void requestCheck(Collection<Long> buildIds) {
+		synchronized (dispatchLock) {
+			buildsToCheck.addAll(buildIds);
+			dispatchLock.notifyAll();
+		}
+	}
+	
+	private void addWaitingDependent(Long dependencyId, Long dependentId) {
+		waitingDependents.compute(dependencyId, (key, value) -> {
+			if (value == null)
+				value = ConcurrentHashMap.newKeySet();
+			value.add(dependentId);
+			return value;
+		});
+	}
+	
+	private void check(Build build, Set<Long> buildsToRecheck) {
+		if (build.getStatus() == Build.Status.RUNNING || build.getStatus() == Build.Status.PENDING) {
+			JobExecution execution = jobExecutions.get(build.getId());
+			if (execution == null && thread != null) {
+				try {
+					jobExecutions.put(build.getId(), execute(build));
+				} catch (Throwable t) {
+					if (t instanceof ExplicitException)
+						markBuildError(build, t.getMessage());
+					else
+						markBuildError(build, Throwables.getStackTraceAsString(t));
+				}
+			}
+		} else if (build.getStatus() == Build.Status.WAITING) {
+			if (build.getRetryDate() != null) {
+				JobExecution execution = jobExecutions.get(build.getId());
+				if (execution == null && thread != null) {
+					build.setStatus(Build.Status.PENDING);
+					build.setPendingDate(new Date());
+					listenerRegistry.post(new BuildPending(build));
+					buildsToRecheck.add(build.getId());
+				}
+			} else if (build.getDependencies().stream().anyMatch(it -> it.isRequireSuccessful() 
+					&& it.getDependency().isFinished() 
+					&& it.getDependency().getStatus() != Build.Status.SUCCESSFUL)) {
+				markBuildError(build, "Some dependencies are required to be successful but failed");
+			} else if (build.getDependencies().stream().allMatch(it->it.getDependency().isFinished())) {
+				build.setStatus(Build.Status.PENDING);
+				build.setPendingDate(new Date());
+				listenerRegistry.post(new BuildPending(build));
+				buildsToRecheck.add(build.getId());
+			} else {
+				for (BuildDependence dependence: build.getDependencies()) {
+					if (!dependence.getDependency().isFinished())
+						addWaitingDependent(dependence.getDependency().getId(), build.getId());
+				}
+			}
+		} 
+	}
+	
+	private void check(Long buildId, JobExecution execution) {
+		Build build = buildManager.get(buildId);
+		if (build == null || build.isFinished()) {
+			jobExecutions.remove(buildId);
+			execution.cancel(null);
+		} else if (execution.isDone()) {
+			jobExecutions.remove(buildId);
+			try {
+				execution.check();
+				build.setStatus(Build.Status.SUCCESSFUL);
+			} catch (TimeoutException e) {
+				build.setStatus(Build.Status.TIMED_OUT);
+			} catch (CancellationException e) {
+				if (e instanceof CancellerAwareCancellationException) {
+					Long cancellerId = ((CancellerAwareCancellationException) e).getCancellerId();
+					if (cancellerId != null)
+						build.setCanceller(userManager.load(cancellerId));
+				}
+				build.setStatus(Build.Status.CANCELLED);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ExplicitException)
+					build.setStatus(Build.Status.FAILED, e.getCause().getMessage());
+				else
+					build.setStatus(Build.Status.FAILED, e.getMessage());
+			} catch (InterruptedException e) {
+			} finally {
+				build.setFinishDate(new Date());
+				listenerRegistry.post(new BuildFinished(build));
+			}
+		}
+	}
+	
+	/*
+	 * Builds are dispatched in response to build submitted/finished events, and completion 
+	 * of job executions. A finished build only wakes up its direct waiting dependents. All 
+	 * unfinished builds are still swept periodically as a safety net in case some events 
+	 * are missed  
+	 */
 	@Override
 	public void run() {
 		while (!jobExecutions.isEmpty() || thread != null) {
 			try {
-				synchronized (this) {
-					transactionManager.run(new Runnable() {
-		
-						@Override
-						public void run() {
-							for (Build build: buildManager.queryUnfinished()) {
-								if (build.getStatus() == Build.Status.RUNNING || build.getStatus() == Build.Status.PENDING) {
-									JobExecution execution = jobExecutions.get(build.getId());
-									if (execution != null) {
-										if (execution.isTimedout())
-											execution.cancel(null);
-									} else if (thread != null) {
-										try {
-											jobExecutions.put(build.getId(), execute(build));
-										} catch (Throwable t) {
-											if (t instanceof ExplicitException)
-												markBuildError(build, t.getMessage());
-											else
-												markBuildError(build, Throwables.getStackTraceAsString(t));
-										}
+				Set<Long> buildIds;
+				synchronized (dispatchLock) {
+					if (buildsToCheck.isEmpty())
+						dispatchLock.wait(CHECK_INTERVAL);
+					buildIds = new HashSet<>(buildsToCheck);
+					buildsToCheck.clear();
+				}
+				
+				// Check job executions in memory to avoid touching database unless necessary
+				for (Map.Entry<Long, JobExecution> entry: jobExecutions.entrySet()) {
+					JobExecution execution = entry.getValue();
+					if (!execution.isDone() && execution.isTimedout())
+						execution.cancel(null);
+					if (execution.isDone())
+						buildIds.add(entry.getKey());
+				}
+				
+				long currentTime = System.currentTimeMillis();
+				boolean sweep = currentTime - lastSweepTime >= SWEEP_INTERVAL;
+				if (sweep || !buildIds.isEmpty()) {
+					Set<Long> buildsToRecheck = new HashSet<>();
+					synchronized (this) {
+						transactionManager.run(new Runnable() {
+			
+							@Override
+							public void run() {
+								if (sweep) {
+									Collection<Build> unfinishedBuilds = buildManager.queryUnfinished();
+									Set<Long> unfinishedBuildIds = new HashSet<>();
+									for (Build build: unfinishedBuilds) {
+										unfinishedBuildIds.add(build.getId());
+										check(build, buildsToRecheck);
 									}
-								} else if (build.getStatus() == Build.Status.WAITING) {
-									if (build.getRetryDate() != null) {
-										JobExecution execution = jobExecutions.get(build.getId());
-										if (execution == null && thread != null) {
-											build.setStatus(Build.Status.PENDING);
-											build.setPendingDate(new Date());
-											listenerRegistry.post(new BuildPending(build));
+									for (Iterator<Map.Entry<Long, Set<Long>>> it = waitingDependents.entrySet().iterator(); it.hasNext();) {
+										Map.Entry<Long, Set<Long>> entry = it.next();
+										if (!unfinishedBuildIds.contains(entry.getKey())) {
+											it.remove();
+											buildsToRecheck.addAll(entry.getValue());
 										}
-									} else if (build.getDependencies().stream().anyMatch(it -> it.isRequireSuccessful() 
-											&& it.getDependency().isFinished() 
-											&& it.getDependency().getStatus() != Build.Status.SUCCESSFUL)) {
-										markBuildError(build, "Some dependencies are required to be successful but failed");
-									} else if (build.getDependencies().stream().allMatch(it->it.getDependency().isFinished())) {
-										build.setStatus(Build.Status.PENDING);
-										build.setPendingDate(new Date());
-										listenerRegistry.post(new BuildPending(build));
 									}
-								} 
-							}
-							for (Iterator<Map.Entry<Long, JobExecution>> it = jobExecutions.entrySet().iterator(); it.hasNext();) {
-								Map.Entry<Long, JobExecution> entry = it.next();
-								Build build = buildManager.get(entry.getKey());
-								JobExecution execution = entry.getValue();
-								if (build == null || build.isFinished()) {
-									it.remove();
-									execution.cancel(null);
-								} else if (execution.isDone()) {
-									it.remove();
-									try {
-										execution.check();
-										build.setStatus(Build.Status.SUCCESSFUL);
-									} catch (TimeoutException e) {
-										build.setStatus(Build.Status.TIMED_OUT);
-									} catch (CancellationException e) {
-										if (e instanceof CancellerAwareCancellationException) {
-											Long cancellerId = ((CancellerAwareCancellationException) e).getCancellerId();
-											if (cancellerId != null)
-												build.setCanceller(userManager.load(cancellerId));
+									for (Map.Entry<Long, JobExecution> entry: jobExecutions.entrySet())
+										check(entry.getKey(), entry.getValue());
+								} else {
+									for (Long buildId: buildIds) {
+										JobExecution execution = jobExecutions.get(buildId);
+										if (execution != null) {
+											check(buildId, execution);
+										} else {
+											Build build = buildManager.get(buildId);
+											if (build != null && !build.isFinished())
+												check(build, buildsToRecheck);
 										}
-										build.setStatus(Build.Status.CANCELLED);
-									} catch (ExecutionException e) {
-										if (e.getCause() instanceof ExplicitException)
-											build.setStatus(Build.Status.FAILED, e.getCause().getMessage());
-										else
-											build.setStatus(Build.Status.FAILED, e.getMessage());
-									} catch (InterruptedException e) {
-									} finally {
-										build.setFinishDate(new Date());
-										listenerRegistry.post(new BuildFinished(build));
 									}
 								}
 							}
-						}
-						
-					});
+							
+						});
+					}
+					if (sweep)
+						lastSweepTime = currentTime;
+					if (!buildsToRecheck.isEmpty())
+						requestCheck(buildsToRecheck);
 				}
-				Thread.sleep(CHECK_INTERVAL);
 			} catch (Throwable e) {
 				logger.error("Error checking unfinished builds", e);
 			} 
@@ -1019,6 +1116,20 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 	public void on(BuildSubmitted event) {
 		Build build = event.getBuild();
 		FileUtils.deleteDir(build.getPublishDir());
+		
+		Long buildId = build.getId();
+		for (BuildDependence dependence: build.getDependencies()) {
+			if (!dependence.getDependency().isFinished())
+				addWaitingDependent(dependence.getDependency().getId(), buildId);
+		}
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				requestCheck(Sets.newHashSet(buildId));
+			}
+			
+		});
 	}
 
 	@Transactional
@@ -1036,6 +1147,13 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 
 			@Override
 			public void run() {
+				// Wake up the build itself to clean up its execution, as well as its waiting dependents
+				Set<Long> buildIds = Sets.newHashSet(buildId);
+				Set<Long> dependentIds = waitingDependents.remove(buildId);
+				if (dependentIds != null)
+					buildIds.addAll(dependentIds);
+				requestCheck(buildIds);
+				
 				OneDev.getInstance(SessionManager.class).runAsync(new Runnable() {
 
 					@Override
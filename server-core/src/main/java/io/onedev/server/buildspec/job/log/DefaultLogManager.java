@@ -1,15 +1,7 @@
 package io.onedev.server.buildspec.job.log;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -25,7 +17,6 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -60,8 +51,6 @@ public class DefaultLogManager implements LogManager {
 
 	private static final int MAX_CACHE_ENTRIES = 10000;
 	
-	private static final String LOG_FILE = "build.log";
-	
 	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern("HH:mm:ss");	
 	
 	private static final Pattern EOL_PATTERN = Pattern.compile("\r?\n");
@@ -82,9 +71,29 @@ public class DefaultLogManager implements LogManager {
 		this.buildManager = buildManager;
 	}
 	
-	private File getLogFile(Long projectId, Long buildNumber) {
-		File buildDir = storageManager.getBuildDir(projectId, buildNumber);
-		return new File(buildDir, LOG_FILE);
+	private JobLogFile getLogFile(Long projectId, Long buildNumber) {
+		return new JobLogFile(storageManager.getBuildDir(projectId, buildNumber));
+	}
+	
+	/**
+	 * Convert log of specified build to current format if it is still stored with 
+	 * legacy Java-serialized format. This only happens once for each legacy log
+	 */
+	private JobLogFile getConvertedLogFile(Build build) {
+		JobLogFile logFile = getLogFile(build.getProject().getId(), build.getNumber());
+		if (logFile.isLegacy()) {
+			Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).writeLock();
+			lock.lock();
+			try {
+				if (logFile.isLegacy()) {
+					logger.info("Converting log of build '{}' to new format...", build.getFQN());
+					logFile.convertLegacy();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return logFile;
 	}
 	
 	@Override
@@ -105,7 +114,7 @@ public class DefaultLogManager implements LogManager {
 				try {
 					LogSnippet snippet = recentSnippets.get(buildId);
 					if (snippet == null) {
-						File logFile = getLogFile(projectId, buildNumber);
+						JobLogFile logFile = getLogFile(projectId, buildNumber);
 						if (!logFile.exists())	{
 							snippet = new LogSnippet();
 							recentSnippets.put(buildId, snippet);
@@ -114,16 +123,11 @@ public class DefaultLogManager implements LogManager {
 					if (snippet != null) {
 						snippet.entries.add(new JobLogEntry(new Date(), message));
 						if (snippet.entries.size() > MAX_CACHE_ENTRIES) {
-							File logFile = getLogFile(projectId, buildNumber);
-							try (ObjectOutputStream oos = newOutputStream(logFile)) {
-								while (snippet.entries.size() > MIN_CACHE_ENTRIES) {
-									JobLogEntry entry = snippet.entries.remove(0);
-									oos.writeObject(entry);
-									snippet.offset++;
-								}
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
+							List<JobLogEntry> entriesToFlush = new ArrayList<>();
+							while (snippet.entries.size() > MIN_CACHE_ENTRIES) 
+								entriesToFlush.add(snippet.entries.remove(0));
+							getLogFile(projectId, buildNumber).append(entriesToFlush);
+							snippet.offset += entriesToFlush.size();
 						}
 						
 						webSocketManager.notifyObservableChange(Build.getLogWebSocketObservable(buildId));
@@ -190,6 +194,7 @@ public class DefaultLogManager implements LogManager {
 
 	@Override
 	public boolean matches(Build build, Pattern pattern) {
+		JobLogFile logFile = getConvertedLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
@@ -203,20 +208,13 @@ public class DefaultLogManager implements LogManager {
 				}
 			}
 			
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-			
-			if (logFile.exists()) {
-				try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-					while (true) {
-						JobLogEntry entry  = (JobLogEntry) ois.readObject();
-						if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
-								&& pattern.matcher(entry.getMessage()).find()) {
-							return true;
-						}
+			try (JobLogFile.Reader reader = logFile.openReader(0)) {
+				JobLogEntry entry;
+				while ((entry = reader.next()) != null) {
+					if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
+							&& pattern.matcher(entry.getMessage()).find()) {
+						return true;
 					}
-				} catch (EOFException e) {
-				} catch (IOException|ClassNotFoundException e) {
-					throw new RuntimeException(e);
 				}
 			}
 			return false;
@@ -225,46 +223,6 @@ public class DefaultLogManager implements LogManager {
 		}
 	}
 	
-	private List<JobLogEntry> readLogEntries(File logFile, int from, int count) {
-		List<JobLogEntry> entries = new ArrayList<>();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				int numOfReadEntries = 0;
-				while (numOfReadEntries < from) {
-					ois.readObject();
-					numOfReadEntries++;
-				}
-				while (count == 0 || numOfReadEntries - from < count) {
-					entries.add((JobLogEntry) ois.readObject());
-					numOfReadEntries++;
-				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			}
-		}
-		return entries;
-	}
-	
-	private LogSnippet readLogSnippetReversely(File logFile, int count) {
-		LogSnippet snippet = new LogSnippet();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				while (true) {
-					snippet.entries.add((JobLogEntry) ois.readObject());
-					if (snippet.entries.size() > count) {
-						snippet.entries.remove(0);
-						snippet.offset ++;
-					}
-				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			}
-		}
-		return snippet;
-	}
-	
 	private List<JobLogEntry> readLogEntries(List<JobLogEntry> cachedEntries, int from, int count) {
 		if (from < cachedEntries.size()) {
 			int to = from + count;
@@ -279,17 +237,17 @@ public class DefaultLogManager implements LogManager {
 	@Sessional
 	@Override
 	public List<JobLogEntry> readLogEntries(Build build, int from, int count) {
+		JobLogFile logFile = getConvertedLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
 			LogSnippet snippet = recentSnippets.get(build.getId());
 			if (snippet != null) {
 				if (from >= snippet.offset) {
 					return readLogEntries(snippet.entries, from - snippet.offset, count);
 				} else {
 					List<JobLogEntry> entries = new ArrayList<>();
-					entries.addAll(readLogEntries(logFile, from, count));
+					entries.addAll(logFile.read(from, count));
 					if (count == 0)
 						entries.addAll(snippet.entries);
 					else if (entries.size() < count) 
@@ -297,7 +255,7 @@ public class DefaultLogManager implements LogManager {
 					return entries;
 				}
 			} else {
-				return readLogEntries(logFile, from, count);
+				return logFile.read(from, count);
 			}
 		} finally {
 			lock.unlock();
@@ -307,10 +265,10 @@ public class DefaultLogManager implements LogManager {
 	@Sessional
 	@Override
 	public LogSnippet readLogSnippetReversely(Build build, int count) {
+		JobLogFile logFile = getConvertedLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
 			LogSnippet recentSnippet = recentSnippets.get(build.getId());
 			if (recentSnippet != null) {
 				LogSnippet snippet = new LogSnippet();
@@ -318,38 +276,19 @@ public class DefaultLogManager implements LogManager {
 					snippet.entries.addAll(recentSnippet.entries.subList(
 							recentSnippet.entries.size()-count, recentSnippet.entries.size()));
 				} else {
-					snippet.entries.addAll(readLogSnippetReversely(logFile, count - recentSnippet.entries.size()).entries);
+					snippet.entries.addAll(logFile.readReversely(count - recentSnippet.entries.size()).entries);
 					snippet.entries.addAll(recentSnippet.entries);
 				}
 				snippet.offset = recentSnippet.entries.size() + recentSnippet.offset - snippet.entries.size();
 				return snippet;
 			} else {
-				return readLogSnippetReversely(logFile, count);
+				return logFile.readReversely(count);
 			}
 		} finally {
 			lock.unlock();
 		}
 	}
 	
-	private ObjectOutputStream newOutputStream(File logFile) {
-		try {
-			if (logFile.exists()) {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true))) {
-
-					@Override
-					protected void writeStreamHeader() throws IOException {
-						reset();
-					}
-					
-				};
-			} else {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-	
 	@Sessional
 	@Listen
 	public void on(BuildFinished event) {
@@ -358,15 +297,8 @@ public class DefaultLogManager implements LogManager {
 		lock.lock();
 		try {
 			LogSnippet snippet = recentSnippets.remove(build.getId());
-			if (snippet != null) {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				try (ObjectOutputStream oos = newOutputStream(logFile)) {
-					for (JobLogEntry entry: snippet.entries)
-						oos.writeObject(entry);
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				} 
-			}
+			if (snippet != null) 
+				getLogFile(build.getProject().getId(), build.getNumber()).append(snippet.entries);
 		} finally {
 			lock.unlock();
 		}
@@ -379,7 +311,7 @@ public class DefaultLogManager implements LogManager {
 
 	class LogStream extends InputStream {
 
-		private ObjectInputStream ois;
+		private JobLogFile.Reader reader;
 		
 		private final Lock lock;
 
@@ -390,13 +322,11 @@ public class DefaultLogManager implements LogManager {
 		private int pos = 0;
 		
 		public LogStream(Build build) {
+			JobLogFile logFile = getConvertedLogFile(build);
 			lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 			lock.lock();
 			try {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				
-				if (logFile.exists())
-					ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+				reader = logFile.openReader(0);
 				
 				LogSnippet snippet = recentSnippets.get(build.getId());
 				if (snippet != null) {
@@ -430,20 +360,19 @@ public class DefaultLogManager implements LogManager {
 		@Override
 		public int read() throws IOException {
 			if (pos == buffer.length) {
-				if (ois != null) {
-					try {
-						buffer = (renderAsText((JobLogEntry) ois.readObject()) + "\n").getBytes(StandardCharsets.UTF_8);
-					} catch (EOFException e) {
-						IOUtils.closeQuietly(ois);
-						ois = null;
+				if (reader != null) {
+					JobLogEntry entry = reader.next();
+					if (entry != null) {
+						buffer = (renderAsText(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+					} else {
+						reader.close();
+						reader = null;
 						if (recentBuffer != null) {
 							buffer = recentBuffer;
 							recentBuffer = null;
 						} else {
 							return -1;
 						}
-					} catch (ClassNotFoundException e) {
-						throw new RuntimeException(e);
 					}
 				} else if (recentBuffer != null) {
 					buffer = recentBuffer;
@@ -460,7 +389,8 @@ public class DefaultLogManager implements LogManager {
 		
 		@Override
 		public void close() throws IOException {
-			IOUtils.closeQuietly(ois);
+			if (reader != null)
+				reader.close();
 			lock.unlock();
 		}
 				
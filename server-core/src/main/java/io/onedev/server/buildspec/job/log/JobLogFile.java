@@ -0,0 +1,255 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Seekable on-disk storage of job log entries. Entries are stored in data file as length-prefixed
+ * records of <tt>[timestamp(long)][length(int)][UTF-8 message]</tt>. Index file stores data file
+ * offset of every {@link #INDEX_INTERVAL}th entry, so that an entry can be located by reading at
+ * most {@link #INDEX_INTERVAL} records, without deserializing from start of the log.
+ */
+class JobLogFile {
+
+	static final int INDEX_INTERVAL = 128;
+
+	private static final String DATA_FILE = "build-log.dat";
+
+	private static final String INDEX_FILE = "build-log.idx";
+
+	private static final String LEGACY_FILE = "build.log";
+
+	private final File dataFile;
+
+	private final File indexFile;
+
+	private final File legacyFile;
+
+	public JobLogFile(File buildDir) {
+		dataFile = new File(buildDir, DATA_FILE);
+		indexFile = new File(buildDir, INDEX_FILE);
+		legacyFile = new File(buildDir, LEGACY_FILE);
+	}
+
+	public boolean exists() {
+		return dataFile.exists() || legacyFile.exists();
+	}
+
+	/**
+	 * Whether or not this log is still stored in legacy Java-serialized format and needs to be
+	 * converted via {@link #convertLegacy()} before being accessed
+	 */
+	public boolean isLegacy() {
+		return legacyFile.exists();
+	}
+
+	/**
+	 * Convert log stored with legacy Java-serialized format into current format. Caller should
+	 * hold write lock of the log
+	 */
+	public void convertLegacy() {
+		if (legacyFile.exists()) {
+			FileUtils.deleteFile(dataFile);
+			FileUtils.deleteFile(indexFile);
+			List<JobLogEntry> entries = new ArrayList<>();
+			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyFile)))) {
+				while (true) {
+					entries.add((JobLogEntry) ois.readObject());
+					if (entries.size() == INDEX_INTERVAL) {
+						append(entries);
+						entries.clear();
+					}
+				}
+			} catch (EOFException e) {
+			} catch (IOException | ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+			append(entries);
+			FileUtils.deleteFile(legacyFile);
+		}
+	}
+
+	public void append(List<JobLogEntry> entries) {
+		if (entries.isEmpty())
+			return;
+
+		int count = count();
+		long offset = dataFile.length();
+		try (	DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile, true)));
+				DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+			for (JobLogEntry entry: entries) {
+				if (count % INDEX_INTERVAL == 0)
+					indexOut.writeLong(offset);
+				byte[] messageBytes = entry.getMessage().getBytes(StandardCharsets.UTF_8);
+				dataOut.writeLong(entry.getDate().getTime());
+				dataOut.writeInt(messageBytes.length);
+				dataOut.write(messageBytes);
+				offset += Long.BYTES + Integer.BYTES + messageBytes.length;
+				count++;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return
+	 * 			number of entries in this log
+	 */
+	public int count() {
+		long numOfIndexes = indexFile.exists()? indexFile.length() / Long.BYTES: 0;
+		if (numOfIndexes == 0)
+			return 0;
+		int lastIndexed = (int) ((numOfIndexes-1) * INDEX_INTERVAL);
+		int count = lastIndexed;
+		try (Reader reader = openReader(lastIndexed)) {
+			while (reader.skip())
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Read specified number of entries from specified index
+	 *
+	 * @param count
+	 * 			number of entries to read. Use <tt>0</tt> to read all entries since <tt>from</tt>
+	 */
+	public List<JobLogEntry> read(int from, int count) {
+		List<JobLogEntry> entries = new ArrayList<>();
+		try (Reader reader = openReader(from)) {
+			JobLogEntry entry;
+			while ((count == 0 || entries.size() < count) && (entry = reader.next()) != null)
+				entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Read specified number of entries from end of the log
+	 */
+	public LogSnippet readReversely(int count) {
+		LogSnippet snippet = new LogSnippet();
+		snippet.offset = Math.max(0, count() - count);
+		snippet.entries = new LinkedList<>(read(snippet.offset, count));
+		return snippet;
+	}
+
+	/**
+	 * Open a reader positioned at specified entry index
+	 */
+	public Reader openReader(int from) {
+		return new Reader(from);
+	}
+
+	private long readIndex(RandomAccessFile indexAccess, int indexOrdinal) throws IOException {
+		indexAccess.seek((long)indexOrdinal * Long.BYTES);
+		return indexAccess.readLong();
+	}
+
+	class Reader implements Closeable {
+
+		private final DataInputStream input;
+
+		Reader(int from) {
+			if (!dataFile.exists() || !indexFile.exists()) {
+				input = null;
+				return;
+			}
+			try {
+				int numOfIndexes = (int) (indexFile.length() / Long.BYTES);
+				int indexOrdinal = Math.min(from / INDEX_INTERVAL, numOfIndexes-1);
+				long offset = 0;
+				if (indexOrdinal > 0) {
+					try (RandomAccessFile indexAccess = new RandomAccessFile(indexFile, "r")) {
+						offset = readIndex(indexAccess, indexOrdinal);
+					}
+				}
+
+				@SuppressWarnings("resource")
+				FileChannel channel = new RandomAccessFile(dataFile, "r").getChannel();
+				channel.position(offset);
+				input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+				for (int i=Math.max(indexOrdinal, 0)*INDEX_INTERVAL; i<from; i++) {
+					if (!skip())
+						break;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		boolean skip() {
+			if (input == null)
+				return false;
+			try {
+				input.readLong();
+				int length = input.readInt();
+				while (length > 0) {
+					int skipped = input.skipBytes(length);
+					if (skipped == 0) {
+						input.readByte();
+						skipped = 1;
+					}
+					length -= skipped;
+				}
+				return true;
+			} catch (EOFException e) {
+				return false;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Nullable
+		public JobLogEntry next() {
+			if (input == null)
+				return null;
+			try {
+				long time = input.readLong();
+				byte[] messageBytes = new byte[input.readInt()];
+				input.readFully(messageBytes);
+				return new JobLogEntry(new Date(time), new String(messageBytes, StandardCharsets.UTF_8));
+			} catch (EOFException e) {
+				return null;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+
+	}
+
+}
@@ -1,7 +1,9 @@
 package io.onedev.server.entitymanager.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,9 +11,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -42,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import io.onedev.commons.launcher.loader.Listen;
@@ -84,6 +92,8 @@ import io.onedev.server.security.permission.JobPermission;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ProjectScopedNumber;
 import io.onedev.server.util.StatusInfo;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 import io.onedev.server.util.facade.BuildFacade;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
@@ -95,6 +105,11 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private static final int CLEANUP_BATCH = 5000;
 	
+	// Kept small to avoid hitting length limit of "in" clause of some databases
+	private static final int DELETE_BATCH = 500;
+	
+	private static final int PRESERVATION_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors()/2);
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultBuildManager.class);
 	
 	private final BuildParamManager buildParamManager;
@@ -113,6 +128,8 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private final TransactionManager transactionManager;
 	
+	private final ExecutorService executorService;
+	
 	private final Map<Long, BuildFacade> builds = new HashMap<>();
 	
 	private final ReadWriteLock buildsLock = new ReentrantReadWriteLock();
@@ -128,7 +145,7 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 			TaskScheduler taskScheduler, BuildDependenceManager buildDependenceManager,
 			GroupManager groupManager, StorageManager storageManager, 
 			ProjectManager projectManager, SessionManager sessionManager, 
-			TransactionManager transactionManager) {
+			TransactionManager transactionManager, ExecutorManager executorManager) {
 		super(dao);
 		this.buildParamManager = buildParamManager;
 		this.buildDependenceManager = buildDependenceManager;
@@ -138,6 +155,7 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		this.taskScheduler = taskScheduler;
 		this.sessionManager = sessionManager;
 		this.transactionManager = transactionManager;
+		this.executorService = executorManager.getExecutor(ExecutorPool.GENERAL);
 	}
 
 	@Transactional
@@ -603,66 +621,198 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		return maxId!=null?maxId:0;
 	}
 
+	/*
+	 * Build retention runs in three phases: ids of preserved builds are collected into a bit 
+	 * set by evaluating preservation queries of projects in parallel, finished builds are then 
+	 * walked in id order with keyset pagination, and non-preserved ones are deleted batch by 
+	 * batch, with build directories removed after each batch is committed 
+	 */
 	@Override
 	public void execute() {
+		long time = System.currentTimeMillis();
 		long maxId = getMaxId();
-		Collection<Long> idsToPreserve = new HashSet<>();
 		
+		BitSet idsToPreserve = getIdsToPreserve();
+		logger.info("Checking build preservation ({} builds to preserve, took {} ms)...", 
+				idsToPreserve.cardinality(), System.currentTimeMillis()-time);
+		
+		AtomicLong lastId = new AtomicLong(0);
+		long checked = 0;
+		long deleted = 0;
+		while (true) {
+			List<Long> ids = sessionManager.call(new Callable<List<Long>>() {
+
+				@Override
+				public List<Long> call() {
+					return queryFinishedIds(lastId.get(), maxId, CLEANUP_BATCH);
+				}
+				
+			});
+			if (ids.isEmpty())
+				break;
+			lastId.set(ids.get(ids.size()-1));
+			checked += ids.size();
+			
+			List<Long> idsToDelete = new ArrayList<>();
+			for (Long id: ids) {
+				if (!idsToPreserve.get(Math.toIntExact(id))) 
+					idsToDelete.add(id);
+			}
+			for (List<Long> partition: Lists.partition(idsToDelete, DELETE_BATCH)) {
+				transactionManager.run(new Runnable() {
+
+					@Override
+					public void run() {
+						deleteBuilds(partition);
+					}
+					
+				});
+			}
+			deleted += idsToDelete.size();
+			
+			long elapsed = Math.max(System.currentTimeMillis()-time, 1);
+			logger.debug("Checked {} builds, deleted {} builds ({} builds/s)", 
+					checked, deleted, checked*1000/elapsed);
+			
+			if (ids.size() < CLEANUP_BATCH)
+				break;
+		}
+		
+		long elapsed = Math.max(System.currentTimeMillis()-time, 1);
+		logger.info("Checked build preservation (checked: {}, deleted: {}, took {} ms, {} builds/s)", 
+				checked, deleted, elapsed, checked*1000/elapsed);
+	}
+	
+	/*
+	 * Build ids are assigned sequentially and stay far below Integer.MAX_VALUE, so a bit set 
+	 * indexed by id takes only one bit per build, compared to dozens of bytes for each boxed 
+	 * id in a hash set
+	 */
+	private BitSet getIdsToPreserve() {
+		Queue<Long> projectIds = new ConcurrentLinkedQueue<>();
 		sessionManager.run(new Runnable() {
 
 			@Override
 			public void run() {
-				for (Project project: projectManager.query()) {
-					logger.debug("Populating preserved build ids of project '" + project.getName() + "'...");
-					List<BuildPreservation> preservations = project.getBuildSetting().getBuildPreservations();
-					if (preservations.isEmpty()) {
-						idsToPreserve.addAll(queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
-					} else {
-						for (BuildPreservation preservation: preservations) {
-							try {
-								BuildQuery query = BuildQuery.parse(project, preservation.getCondition(), false, false);
-								int count;
-								if (preservation.getCount() != null)
-									count = preservation.getCount();
+				for (Project project: projectManager.query())
+					projectIds.add(project.getId());
+			}
+			
+		});
+		BitSet idsToPreserve = new BitSet();
+		
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i=0; i<PRESERVATION_CONCURRENCY; i++) {
+			futures.add(executorService.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					Long projectId;
+					while ((projectId = projectIds.poll()) != null) {
+						Long projectIdCopy = projectId;
+						BitSet idsToPreserveOfProject = sessionManager.call(new Callable<BitSet>() {
+
+							@Override
+							public BitSet call() {
+								Project project = projectManager.get(projectIdCopy);
+								if (project != null)
+									return getIdsToPreserve(project);
 								else
-									count = Integer.MAX_VALUE;
-								idsToPreserve.addAll(queryIds(project, query, 0, count));
-							} catch (Exception e) {
-								String message = String.format("Error parsing build preserve condition(project: %s, condition: %s)", 
-										project.getName(), preservation.getCondition());
-								logger.error(message, e);
-								idsToPreserve.addAll(queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
+									return new BitSet();
 							}
+							
+						});
+						synchronized (idsToPreserve) {
+							idsToPreserve.or(idsToPreserveOfProject);
 						}
 					}
 				}
+				
+			}));
+		}
+		for (Future<?> future: futures) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
 			}
-			
-		});
-
-		EntityCriteria<Build> criteria = newCriteria();
-		AtomicInteger firstResult = new AtomicInteger(0);
+		}
+		return idsToPreserve;
+	}
+	
+	private BitSet getIdsToPreserve(Project project) {
+		logger.debug("Populating preserved build ids of project '" + project.getName() + "'...");
+		BitSet idsToPreserve = new BitSet();
+		List<BuildPreservation> preservations = project.getBuildSetting().getBuildPreservations();
+		if (preservations.isEmpty()) {
+			addIds(idsToPreserve, queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
+		} else {
+			for (BuildPreservation preservation: preservations) {
+				try {
+					BuildQuery query = BuildQuery.parse(project, preservation.getCondition(), false, false);
+					int count;
+					if (preservation.getCount() != null)
+						count = preservation.getCount();
+					else
+						count = Integer.MAX_VALUE;
+					addIds(idsToPreserve, queryIds(project, query, 0, count));
+				} catch (Exception e) {
+					String message = String.format("Error parsing build preserve condition(project: %s, condition: %s)", 
+							project.getName(), preservation.getCondition());
+					logger.error(message, e);
+					addIds(idsToPreserve, queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
+				}
+			}
+		}
+		return idsToPreserve;
+	}
+	
+	private void addIds(BitSet bitSet, Collection<Long> ids) {
+		for (Long id: ids)
+			bitSet.set(Math.toIntExact(id));
+	}
+	
+	private List<Long> queryFinishedIds(long afterId, long maxId, int count) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+		Root<Build> root = criteriaQuery.from(Build.class);
+		criteriaQuery.select(root.get(Build.PROP_ID));
+		criteriaQuery.where(
+				builder.greaterThan(root.get(Build.PROP_ID), afterId), 
+				builder.lessThanOrEqualTo(root.get(Build.PROP_ID), maxId), 
+				root.get(Build.PROP_STATUS).in(Status.SUCCESSFUL, Status.FAILED, Status.CANCELLED, Status.TIMED_OUT));
+		criteriaQuery.orderBy(builder.asc(root.get(Build.PROP_ID)));
 		
-		while (transactionManager.call(new Callable<Boolean>() {
+		Query<Long> query = getSession().createQuery(criteriaQuery);
+		query.setMaxResults(count);
+		return query.list();
+	}
+	
+	private void deleteBuilds(Collection<Long> ids) {
+		EntityCriteria<Build> criteria = newCriteria();
+		criteria.add(Restrictions.in(Build.PROP_ID, ids));
+		Collection<File> buildDirs = new ArrayList<>();
+		for (Build build: query(criteria)) {
+			logger.debug("Deleting build " + build.getFQN() + "...");
+			dao.remove(build);
+			buildDirs.add(storageManager.getBuildDir(build.getProject().getId(), build.getNumber()));
+		}
+		transactionManager.runAfterCommit(new Runnable() {
 
 			@Override
-			public Boolean call() {
-				List<Build> builds = query(criteria, firstResult.get(), CLEANUP_BATCH);
-				if (!builds.isEmpty()) {
-					logger.debug("Checking build preservation: {}->{}", 
-							firstResult.get()+1, firstResult.get()+builds.size());
-				}
-				for (Build build: builds) {
-					if (build.isFinished() && build.getId() <= maxId && !idsToPreserve.contains(build.getId())) {
-						logger.debug("Deleting build " + build.getFQN() + "...");
-						delete(build);
-					}
+			public void run() {
+				buildsLock.writeLock().lock();
+				try {
+					for (Long id: ids)
+						builds.remove(id);
+				} finally {
+					buildsLock.writeLock().unlock();
 				}
-				firstResult.set(firstResult.get() + CLEANUP_BATCH);
-				return builds.size() == CLEANUP_BATCH;
+				for (File buildDir: buildDirs)
+					FileUtils.deleteDir(buildDir);
 			}
 			
-		})) {}
+		});
 	}
 
 	@Override
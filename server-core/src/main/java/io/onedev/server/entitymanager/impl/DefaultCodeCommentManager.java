@@ -10,7 +10,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -25,8 +24,10 @@ import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
@@ -47,6 +48,7 @@ import io.onedev.server.event.pullrequest.PullRequestCodeCommentCreated;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.command.RevListCommand;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.LineMappingInfoManager;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
@@ -62,7 +64,6 @@ import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.codecomment.CodeCommentQuery;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.diff.DiffUtils;
-import io.onedev.server.util.diff.WhitespaceOption;
 
 @Singleton
 public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> implements CodeCommentManager {
@@ -75,11 +76,15 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 	
 	private final CommitInfoManager commitInfoManager;
 	
+	private final LineMappingInfoManager lineMappingInfoManager;
+	
 	@Inject
-	public DefaultCodeCommentManager(Dao dao, ListenerRegistry listenerRegistry, CommitInfoManager commitInfoManager) {
+	public DefaultCodeCommentManager(Dao dao, ListenerRegistry listenerRegistry, CommitInfoManager commitInfoManager, 
+			LineMappingInfoManager lineMappingInfoManager) {
 		super(dao);
 		this.listenerRegistry = listenerRegistry;
 		this.commitInfoManager = commitInfoManager;
+		this.lineMappingInfoManager = lineMappingInfoManager;
 	}
 
 	@Transactional
@@ -179,32 +184,26 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 			}
 		}
 
-		try (RevWalk revWalk = new RevWalk(project.getRepository())) {
-			Date oldestDate = null;
+		Repository repository = project.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
 			List<RevCommit> historyCommits = new ArrayList<>();
 			for (Map.Entry<String, Map<String, List<CodeComment>>> entry: possibleComments.entrySet()) {
 				try {
-					RevCommit commit = revWalk.parseCommit(ObjectId.fromString(entry.getKey()));
-					historyCommits.add(commit);
-					PersonIdent committer = commit.getCommitterIdent();
-					if (committer != null && committer.getWhen() != null 
-							&& (oldestDate == null || committer.getWhen().before(oldestDate))) {
-						oldestDate = committer.getWhen();
-					}
+					historyCommits.add(revWalk.parseCommit(ObjectId.fromString(entry.getKey())));
 				} catch (MissingObjectException e) {
 				}
 			}
 			
-			if (oldestDate != null) {
-				RevListCommand command = new RevListCommand(project.getRepository().getDirectory());
-				command.after(DateUtils.addDays(oldestDate, -1));
-				command.revisions(Lists.newArrayList(commitId.name()));
-				command.count(MAX_HISTORY_COMMITS_TO_CHECK);
-				Set<String> revisions = new HashSet<>(command.call());
+			if (!historyCommits.isEmpty()) {
+				Collection<ObjectId> ancestors = commitInfoManager.filterAncestors(project, commitId, 
+						new ArrayList<>(historyCommits));
+				if (ancestors == null) 
+					ancestors = filterAncestors(project, commitId, historyCommits);
 				
-				List<String> newLines = Preconditions.checkNotNull(project.readLines(
-						new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits()), 
-						WhitespaceOption.DEFAULT, true));
+				RevCommit commit = revWalk.parseCommit(commitId);
+				TreeWalk treeWalk = Preconditions.checkNotNull(TreeWalk.forPath(repository, path, commit.getTree()));
+				ObjectId blobId = treeWalk.getObjectId(0);
+				BlobIdent blobIdent = new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits());
 
 				Collections.sort(historyCommits, new Comparator<RevCommit>() {
 
@@ -216,24 +215,32 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 				});
 				int checkedHistoryFiles = 0;
 				for (RevCommit historyCommit: historyCommits) {
-					if (revisions.contains(historyCommit.name())) {
+					if (ancestors.contains(historyCommit)) {
 						Map<String, List<CodeComment>> commentsOnCommit = 
 								Preconditions.checkNotNull(possibleComments.get(historyCommit.name()));
 						for (Map.Entry<String, List<CodeComment>> pathEntry: commentsOnCommit.entrySet()) {
-							List<String> oldLines = project.readLines( 
-									new BlobIdent(historyCommit.name(), pathEntry.getKey(), FileMode.REGULAR_FILE.getBits()), 
-									WhitespaceOption.DEFAULT, false);
-							if (oldLines != null) {
-								Map<Integer, Integer> lineMapping = DiffUtils.mapLines(oldLines, newLines);
+							TreeWalk historyTreeWalk = TreeWalk.forPath(repository, pathEntry.getKey(), historyCommit.getTree());
+							if (historyTreeWalk == null)
+								continue;
+							ObjectId historyBlobId = historyTreeWalk.getObjectId(0);
+							if (historyBlobId.equals(blobId)) {
+								for (CodeComment comment: pathEntry.getValue())
+									comments.put(comment, comment.getMark().getRange());
+							} else {
+								BlobIdent historyBlobIdent = new BlobIdent(historyCommit.name(), pathEntry.getKey(), 
+										FileMode.REGULAR_FILE.getBits());
+								Map<Integer, Integer> lineMapping = lineMappingInfoManager.getLineMapping(project, 
+										historyBlobIdent, historyBlobId, blobIdent, blobId);
+								if (lineMapping == null)
+									continue;
 								for (CodeComment comment: pathEntry.getValue()) {
 									PlanarRange newRange = DiffUtils.mapRange(lineMapping, comment.getMark().getRange());
 									if (newRange != null) 
 										comments.put(comment, newRange);
 								}
-								if (++checkedHistoryFiles == MAX_HISTORY_FILES_TO_CHECK) {
-									return comments;
-								}
 							}
+							if (++checkedHistoryFiles == MAX_HISTORY_FILES_TO_CHECK) 
+								return comments;
 						}
 					}
 				}
@@ -245,6 +252,30 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 		} 
 
 	}
+	
+	/*
+	 * Fall back to rev-list for commits not collected into commit info yet 
+	 */
+	private Collection<ObjectId> filterAncestors(Project project, ObjectId commitId, List<RevCommit> candidates) {
+		Date oldestDate = null;
+		for (RevCommit candidate: candidates) {
+			PersonIdent committer = candidate.getCommitterIdent();
+			if (committer != null && committer.getWhen() != null 
+					&& (oldestDate == null || committer.getWhen().before(oldestDate))) {
+				oldestDate = committer.getWhen();
+			}
+		}
+		Collection<ObjectId> ancestors = new HashSet<>();
+		if (oldestDate != null) {
+			RevListCommand command = new RevListCommand(project.getRepository().getDirectory());
+			command.after(DateUtils.addDays(oldestDate, -1));
+			command.revisions(Lists.newArrayList(commitId.name()));
+			command.count(MAX_HISTORY_COMMITS_TO_CHECK);
+			for (String revision: command.call())
+				ancestors.add(ObjectId.fromString(revision));
+		}
+		return ancestors;
+	}
 
 	private Predicate[] getPredicates(Project project, 
 			@Nullable io.onedev.server.search.entity.EntityCriteria<CodeComment> criteria, 
@@ -151,6 +151,8 @@ public class DefaultIssueChangeManager extends BaseEntityManager<IssueChange>
 		String prevTitle = issue.getTitle();
 		if (!title.equals(prevTitle)) {
 			issue.setTitle(title);
+			// Persist explicitly so that entity persist listeners such as text index see the change
+			dao.persist(issue);
 			
 			IssueChange change = new IssueChange();
 			change.setIssue(issue);
@@ -167,6 +169,7 @@ public class DefaultIssueChangeManager extends BaseEntityManager<IssueChange>
 		String prevDescription = issue.getDescription();
 		if (!Objects.equal(description, prevDescription)) {
 			issue.setDescription(description);
+			dao.persist(issue);
 			
 			IssueChange change = new IssueChange();
 			change.setIssue(issue);
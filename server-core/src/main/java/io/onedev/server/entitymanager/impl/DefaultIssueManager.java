@@ -1,5 +1,7 @@
 package io.onedev.server.entitymanager.impl;
 
+import static io.onedev.server.search.entity.EntityCriteria.IN_CLAUSE_LIMIT;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -22,7 +24,9 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -31,10 +35,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.launcher.loader.ListenerRegistry;
+import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.IssueFieldManager;
 import io.onedev.server.entitymanager.IssueManager;
 import io.onedev.server.entitymanager.IssueQuerySettingManager;
@@ -73,6 +79,7 @@ import io.onedev.server.search.entity.EntitySort;
 import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.issue.IssueCriteria;
 import io.onedev.server.search.entity.issue.IssueQuery;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.AccessProject;
 import io.onedev.server.util.MilestoneAndState;
@@ -638,6 +645,24 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 				criteria.add(Restrictions.or(
 						Restrictions.ilike(Issue.PROP_TITLE, term, MatchMode.ANYWHERE),
 						Restrictions.ilike(Issue.PROP_NO_SPACE_TITLE, term, MatchMode.ANYWHERE)));
+				
+				/*
+				 * Term without whitespaces matching title also matches title with whitespaces 
+				 * removed, so querying the latter is sufficient to find all candidates
+				 */
+				String field = StringUtils.containsWhitespace(term)?
+						EntityTextManager.FIELD_TITLE:EntityTextManager.FIELD_NO_SPACE_TITLE;
+				Collection<Long> projectIds = projects.stream().map(it->it.getId()).collect(Collectors.toSet());
+				Collection<Long> issueIds = OneDev.getInstance(EntityTextManager.class)
+						.query(Issue.class, field, term, projectIds);
+				if (issueIds != null) {
+					if (issueIds.isEmpty())
+						return new ArrayList<>();
+					Disjunction disjunction = Restrictions.disjunction();
+					for (List<Long> partition: Lists.partition(new ArrayList<>(issueIds), IN_CLAUSE_LIMIT))
+						disjunction.add(Restrictions.in(Issue.PROP_ID, partition));
+					criteria.add(disjunction);
+				}
 			}
 		}
 
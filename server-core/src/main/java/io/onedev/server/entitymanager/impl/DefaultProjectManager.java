@@ -2,7 +2,6 @@ package io.onedev.server.entitymanager.impl;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -22,7 +21,6 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.shiro.authz.Permission;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -40,13 +38,12 @@ import org.quartz.SimpleScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Preconditions;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
-import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.OneDev;
 import io.onedev.server.buildspec.job.JobManager;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.entitymanager.GroupManager;
@@ -60,13 +57,9 @@ import io.onedev.server.event.RefUpdated;
 import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.git.GitUtils;
-import io.onedev.server.git.command.CloneCommand;
 import io.onedev.server.infomanager.CommitInfoManager;
 import io.onedev.server.model.Build;
-import io.onedev.server.model.Group;
-import io.onedev.server.model.GroupAuthorization;
 import io.onedev.server.model.Issue;
-import io.onedev.server.model.Membership;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.User;
@@ -86,8 +79,11 @@ import io.onedev.server.search.entity.EntityQuery;
 import io.onedev.server.search.entity.EntitySort;
 import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.project.ProjectQuery;
+import io.onedev.server.security.CompiledPermissions;
+import io.onedev.server.security.PermissionManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.AccessProject;
+import io.onedev.server.storage.ForkPoolManager;
 import io.onedev.server.util.patternset.PatternSet;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
@@ -124,7 +120,8 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
     
     private final UserAuthorizationManager userAuthorizationManager;
     
-    private final String gitReceiveHook;
+    private final ForkPoolManager forkPoolManager;
+    
     
 	private final Map<Long, Repository> repositoryCache = new ConcurrentHashMap<>();
 	
@@ -138,7 +135,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
     		SettingManager settingManager, TransactionManager transactionManager, 
     		SessionManager sessionManager, ListenerRegistry listenerRegistry, 
     		TaskScheduler taskScheduler, UserAuthorizationManager userAuthorizationManager, 
-    		RoleManager roleManager, JobManager jobManager) {
+    		RoleManager roleManager, JobManager jobManager, ForkPoolManager forkPoolManager) {
     	super(dao);
     	
         this.commitInfoManager = commitInfoManager;
@@ -153,14 +150,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
         this.userAuthorizationManager = userAuthorizationManager;
         this.roleManager = roleManager;
         this.jobManager = jobManager;
-        
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("git-receive-hook")) {
-        	Preconditions.checkNotNull(is);
-            gitReceiveHook = StringUtils.join(IOUtils.readLines(is, Charset.defaultCharset()), "\n");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
+        this.forkPoolManager = forkPoolManager;
     }
     
     @Override
@@ -297,31 +287,37 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
        	userAuthorizationManager.save(authorization);
     	
         FileUtils.cleanDir(to.getGitDir());
-        new CloneCommand(to.getGitDir()).mirror(true).from(from.getGitDir().getAbsolutePath()).call();
         checkSanity(to);
+        forkPoolManager.fork(from, to);
+        
+        // Reopen repository of the source project as it may just start to borrow objects from the pool 
+    	synchronized (repositoryCache) {
+			Repository repository = repositoryCache.remove(from.getId());
+			if (repository != null) 
+				repository.close();
+		}
+        
         commitInfoManager.cloneInfo(from, to);
         avatarManager.copyAvatar(from, to);
         
         listenerRegistry.post(new ProjectCreated(to));
 	}
 
-	private boolean isGitHookValid(File gitDir, String hookName) {
+	/*
+	 * Receive hooks used to call back into OneDev via curl. Pushes are now handled in 
+	 * process, so these hooks are removed to avoid calling non-existent callbacks
+	 */
+	private void removeLegacyGitHook(File gitDir, String hookName) {
         File hookFile = new File(gitDir, "hooks/" + hookName);
-        if (!hookFile.exists()) 
-        	return false;
-        
-        try {
-			String content = FileUtils.readFileToString(hookFile, Charset.defaultCharset());
-			if (!content.contains("ENV_GIT_ALTERNATE_OBJECT_DIRECTORIES"))
-				return false;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		
-        if (!hookFile.canExecute())
-        	return false;
-        
-        return true;
+        if (hookFile.exists()) {
+	        try {
+				String content = FileUtils.readFileToString(hookFile, Charset.defaultCharset());
+				if (content.contains("ENV_GIT_ALTERNATE_OBJECT_DIRECTORIES"))
+					FileUtils.deleteFile(hookFile);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+        }
 	}
 	
 	private void checkSanity(Project project) {
@@ -341,17 +337,8 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 			}
         } 
 
-		if (!isGitHookValid(gitDir, "pre-receive") || !isGitHookValid(gitDir, "post-receive")) {
-            File hooksDir = new File(gitDir, "hooks");
-
-            File gitPreReceiveHookFile = new File(hooksDir, "pre-receive");
-            FileUtils.writeFile(gitPreReceiveHookFile, String.format(gitReceiveHook, "git-prereceive-callback"));
-            gitPreReceiveHookFile.setExecutable(true);
-            
-            File gitPostReceiveHookFile = new File(hooksDir, "post-receive");
-            FileUtils.writeFile(gitPostReceiveHookFile, String.format(gitReceiveHook, "git-postreceive-callback"));
-            gitPostReceiveHookFile.setExecutable(true);
-        }
+		removeLegacyGitHook(gitDir, "pre-receive");
+		removeLegacyGitHook(gitDir, "post-receive");
 
 		try {
 			StoredConfig config = project.getRepository().getConfig();
@@ -507,37 +494,18 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 	@Sessional
 	@Override
 	public Collection<Project> getPermittedProjects(Permission permission) {
-		Collection<Project> projects = new HashSet<>();
+		User user = SecurityUtils.getUser();
+		CompiledPermissions permissions = OneDev.getInstance(PermissionManager.class)
+				.getPermissions(user!=null?user.getId():0L);
+		if (permissions.isPermittedForAllProjects(permission))
+			return query();
 		
-		if (SecurityUtils.isAdministrator()) {
-			projects.addAll(query());
-		} else {
-			User user = SecurityUtils.getUser();
-			if (user != null) {
-				for (Membership membership: user.getMemberships()) {
-					for (GroupAuthorization authorization: membership.getGroup().getAuthorizations()) {
-						if (authorization.getRole().implies(permission))
-							projects.add(authorization.getProject());
-					}
-				}
-				for (UserAuthorization authorization: user.getAuthorizations()) { 
-					if (authorization.getRole().implies(permission))
-						projects.add(authorization.getProject());
-				}
-			}
-			Group group = groupManager.findAnonymous();
-			if (group != null) {
-				if (group.isAdministrator()) {
-					projects.addAll(query());
-				} else {
-					for (GroupAuthorization authorization: group.getAuthorizations()) { 
-						if (authorization.getRole().implies(permission))
-							projects.add(authorization.getProject());
-					}
-				}
-			}
+		Collection<Project> projects = new HashSet<>();
+		for (Long projectId: permissions.getPermittedProjectIds(permission)) {
+			Project project = get(projectId);
+			if (project != null)
+				projects.add(project);
 		}
-		
 		return projects;
 	}
 
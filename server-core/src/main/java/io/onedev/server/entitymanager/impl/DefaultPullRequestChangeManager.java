@@ -59,6 +59,8 @@ public class DefaultPullRequestChangeManager extends BaseEntityManager<PullReque
 		String prevTitle = request.getTitle();
 		if (!title.equals(prevTitle)) {
 			request.setTitle(title);
+			// Persist explicitly so that entity persist listeners such as text index see the change
+			dao.persist(request);
 			
 			PullRequestChange change = new PullRequestChange();
 			change.setDate(new Date());
@@ -75,6 +77,7 @@ public class DefaultPullRequestChangeManager extends BaseEntityManager<PullReque
 		String prevDescription = request.getDescription();
 		if (!Objects.equal(prevDescription, description)) {
 			request.setDescription(description);
+			dao.persist(request);
 			
 			PullRequestChange change = new PullRequestChange();
 			change.setDate(new Date());
@@ -9,17 +9,23 @@ import static io.onedev.server.model.support.pullrequest.MergeStrategy.CREATE_ME
 import static io.onedev.server.model.support.pullrequest.MergeStrategy.CREATE_MERGE_COMMIT_IF_NECESSARY;
 import static io.onedev.server.model.support.pullrequest.MergeStrategy.REBASE_SOURCE_BRANCH_COMMITS;
 import static io.onedev.server.model.support.pullrequest.MergeStrategy.SQUASH_SOURCE_BRANCH_COMMITS;
+import static io.onedev.server.search.entity.EntityCriteria.IN_CLAUSE_LIMIT;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
@@ -31,6 +37,7 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -41,6 +48,7 @@ import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.RevWalkUtils;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -78,6 +86,7 @@ import io.onedev.server.event.pullrequest.PullRequestOpened;
 import io.onedev.server.event.pullrequest.PullRequestUpdated;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.UserInfoManager;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.Group;
 import io.onedev.server.model.Project;
@@ -119,10 +128,13 @@ import io.onedev.server.search.entity.EntityQuery;
 import io.onedev.server.search.entity.EntitySort;
 import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.pullrequest.PullRequestQuery;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.ReadCode;
 import io.onedev.server.util.ProjectAndBranch;
 import io.onedev.server.util.ProjectScopedNumber;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 import io.onedev.server.util.concurrent.Prioritized;
 import io.onedev.server.util.markdown.MarkdownManager;
 import io.onedev.server.util.reviewrequirement.ReviewRequirement;
@@ -160,14 +172,23 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 	
 	private final ExecutorService executorService;
 	
+	private final UserInfoManager userInfoManager;
+	
+	private final int checkParallelism;
+	
+	private final Map<Long, CheckQueue> checkQueues = new HashMap<>();
+	
+	private final Map<Long, String> checkedHeads = new ConcurrentHashMap<>();
+	
 	@Inject
 	public DefaultPullRequestManager(Dao dao, PullRequestUpdateManager pullRequestUpdateManager,  
 			PullRequestReviewManager pullRequestReviewManager, MarkdownManager markdownManager, 
 			BatchWorkManager batchWorkManager, ListenerRegistry listenerRegistry, 
 			SessionManager sessionManager, PullRequestChangeManager pullRequestChangeManager, 
-			ExecutorService executorService, BuildManager buildManager, 
+			ExecutorManager executorManager, BuildManager buildManager, 
 			TransactionManager transactionManager, ProjectManager projectManager, 
-			CommitInfoManager commitInfoManager, PullRequestAssignmentManager pullRequestAssignmentManager) {
+			CommitInfoManager commitInfoManager, PullRequestAssignmentManager pullRequestAssignmentManager, 
+			UserInfoManager userInfoManager) {
 		super(dao);
 		
 		this.pullRequestUpdateManager = pullRequestUpdateManager;
@@ -178,10 +199,18 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 		this.listenerRegistry = listenerRegistry;
 		this.pullRequestChangeManager = pullRequestChangeManager;
 		this.buildManager = buildManager;
-		this.executorService = executorService;
+		executorService = executorManager.getExecutor(ExecutorPool.GENERAL);
 		this.projectManager = projectManager;
 		this.commitInfoManager = commitInfoManager;
 		this.pullRequestAssignmentManager = pullRequestAssignmentManager;
+		this.userInfoManager = userInfoManager;
+		
+		/*
+		 * Checks of a project run in parallel up to number of processors as merge preview 
+		 * calculation is cpu bound, but never occupy more than a quarter of the general pool
+		 */
+		checkParallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 
+				executorManager.getMaxThreads(ExecutorPool.GENERAL)/4));
 	}
 	
 	@Transactional
@@ -550,7 +579,7 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 			Criterion criterion = Restrictions.and(
 					ofOpen(), 
 					Restrictions.or(ofSource(projectAndBranch), ofTarget(projectAndBranch)));
-			checkAsync(query(EntityCriteria.of(PullRequest.class).add(criterion)));
+			checkAsync(query(EntityCriteria.of(PullRequest.class).add(criterion)), true);
 		}
 	}
 
@@ -698,50 +727,143 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 		}
 	}
 	
-	@Sessional
 	protected void checkAsync(Collection<PullRequest> requests) {
-		Collection<Long> requestIds = requests.stream().map(it->it.getId()).collect(Collectors.toList());
+		checkAsync(requests, false);
+	}
+	
+	/**
+	 * Check specified pull requests asynchronously. Checks of pull requests targeting the same 
+	 * project run with limited parallelism so that a push to a busy target branch does not 
+	 * occupy all threads, and recently visited pull requests are checked first. 
+	 * 
+	 * @param skipUnchanged
+	 * 			whether or not to skip pull requests whose source and target heads are the same 
+	 * 			as last successful check 
+	 */
+	@Sessional
+	protected void checkAsync(Collection<PullRequest> requests, boolean skipUnchanged) {
+		Map<PullRequest, Long> visitTimes = new HashMap<>();
+		for (PullRequest request: requests) {
+			if (!skipUnchanged || !getHeads(request).equals(checkedHeads.get(request.getId()))) {
+				Date visitDate = userInfoManager.getPullRequestVisitDate(request);
+				visitTimes.put(request, visitDate!=null?visitDate.getTime():0L);
+			}
+		}
+		
+		List<PullRequest> sortedRequests = new ArrayList<>(visitTimes.keySet());
+		sortedRequests.sort(Comparator.comparing(visitTimes::get, Comparator.reverseOrder()));
+		
+		Map<Long, List<Long>> requestIds = new LinkedHashMap<>();
+		for (PullRequest request: sortedRequests) {
+			Long projectId = request.getTargetProject().getId();
+			List<Long> requestIdsOfProject = requestIds.get(projectId);
+			if (requestIdsOfProject == null) {
+				requestIdsOfProject = new ArrayList<>();
+				requestIds.put(projectId, requestIdsOfProject);
+			}
+			requestIdsOfProject.add(request.getId());
+		}
+		
 		if (!requestIds.isEmpty()) {
 			transactionManager.runAfterCommit(new Runnable() {
 	
 				@Override
 				public void run() {
-					executorService.execute(new Runnable() {
-
-						@Override
-						public void run() {
-					        for (Long requestId: requestIds) {
-					        	/* 
-					        	 * Lock here to minimize concurrent checks against the same pull request. We 
-					        	 * can not lock the check method directly as the lock should be put outside 
-					        	 * of transaction
-					        	 */
-					        	LockUtils.call("request-" + requestId + "-check", new Callable<Void>() {
-
-									@Override
-									public Void call() throws Exception {
-										sessionManager.run(new Runnable() {
+					for (Map.Entry<Long, List<Long>> entry: requestIds.entrySet()) 
+						enqueueChecks(entry.getKey(), entry.getValue());
+				}
+				
+			});
+		}
+	}
+	
+	private String getHeads(PullRequest request) {
+		String sourceHead = request.getSource()!=null?request.getSource().getObjectName(false):null;
+		return sourceHead + ":" + request.getTarget().getObjectName(false);
+	}
+	
+	private void enqueueChecks(Long projectId, Collection<Long> requestIds) {
+		int newWorkers;
+		synchronized (checkQueues) {
+			CheckQueue checkQueue = checkQueues.get(projectId);
+			if (checkQueue == null) {
+				checkQueue = new CheckQueue();
+				checkQueues.put(projectId, checkQueue);
+			}
+			checkQueue.requestIds.addAll(requestIds);
+			newWorkers = Math.min(checkParallelism - checkQueue.workers, checkQueue.requestIds.size());
+			checkQueue.workers += newWorkers;
+		}
+		for (int i=0; i<newWorkers; i++) {
+			executorService.execute(new Runnable() {
 
-											@Override
-											public void run() {
-									        	check(load(requestId));
-											}
-											
-										});
-										return null;
-									}
-					        		
-					        	});
-					        }
-						}
-						
-					});
+				@Override
+				public void run() {
+					runChecks(projectId);
 				}
 				
 			});
 		}
 	}
 	
+	private void runChecks(Long projectId) {
+		while (true) {
+			Long requestId;
+			synchronized (checkQueues) {
+				CheckQueue checkQueue = checkQueues.get(projectId);
+				Iterator<Long> it = checkQueue.requestIds.iterator();
+				if (it.hasNext()) {
+					requestId = it.next();
+					it.remove();
+				} else {
+					if (--checkQueue.workers == 0)
+						checkQueues.remove(projectId);
+					return;
+				}
+			}
+			
+			try {
+	        	/* 
+	        	 * Lock here to minimize concurrent checks against the same pull request. We 
+	        	 * can not lock the check method directly as the lock should be put outside 
+	        	 * of transaction
+	        	 */
+	        	LockUtils.call("request-" + requestId + "-check", new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						sessionManager.run(new Runnable() {
+
+							@Override
+							public void run() {
+								PullRequest request = load(requestId);
+								String heads = getHeads(request);
+					        	check(request);
+					        	if (request.isOpen() && request.getCheckError() == null)
+					        		checkedHeads.put(requestId, heads);
+					        	else
+					        		checkedHeads.remove(requestId);
+							}
+							
+						});
+						return null;
+					}
+	        		
+	        	});
+			} catch (Exception e) {
+				logger.error("Error checking pull request", e);
+			}
+		}
+	}
+	
+	private static class CheckQueue {
+		
+		final Set<Long> requestIds = new LinkedHashSet<>();
+		
+		int workers;
+		
+	}
+	
 	@Transactional
 	@Override
 	public void checkReviews(PullRequest request, List<User> unpreferableReviewers) {
@@ -1010,6 +1132,24 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 				criteria.add(Restrictions.or(
 						Restrictions.ilike(PullRequest.PROP_TITLE, term, MatchMode.ANYWHERE),
 						Restrictions.ilike(PullRequest.PROP_NO_SPACE_TITLE, term, MatchMode.ANYWHERE)));
+				
+				/*
+				 * Term without whitespaces matching title also matches title with whitespaces 
+				 * removed, so querying the latter is sufficient to find all candidates
+				 */
+				String field = StringUtils.containsWhitespace(term)?
+						EntityTextManager.FIELD_TITLE:EntityTextManager.FIELD_NO_SPACE_TITLE;
+				Collection<Long> projectIds = projects.stream().map(it->it.getId()).collect(Collectors.toSet());
+				Collection<Long> pullRequestIds = OneDev.getInstance(EntityTextManager.class)
+						.query(PullRequest.class, field, term, projectIds);
+				if (pullRequestIds != null) {
+					if (pullRequestIds.isEmpty())
+						return new ArrayList<>();
+					Disjunction disjunction = Restrictions.disjunction();
+					for (List<Long> partition: Lists.partition(new ArrayList<>(pullRequestIds), IN_CLAUSE_LIMIT))
+						disjunction.add(Restrictions.in(PullRequest.PROP_ID, partition));
+					criteria.add(disjunction);
+				}
 			}
 		}
 		
@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -18,6 +19,7 @@ import com.google.common.base.Preconditions;
 
 import io.onedev.commons.jsyntax.Tokenized;
 import io.onedev.commons.utils.PlanarRange;
+import io.onedev.server.OneDev;
 import io.onedev.server.code.CodeProblem;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.Project;
@@ -73,60 +75,71 @@ public abstract class BlobChange implements Serializable {
 	
 	public List<DiffBlock<Tokenized>> getDiffBlocks() {
 		if (diffBlocks == null) {
-			try {
-				if (type == ChangeType.ADD || type == ChangeType.COPY) {
-					if (getNewText() != null) {
-						List<String> newLines = getNewText().getLines();
-						if (newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> oldLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, "a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
-				} else if (type == ChangeType.DELETE) {
-					if (getOldText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						if (oldLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> newLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?oldBlobIdent.path:"a.txt", 
-									newLines, "b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
-				} else {
-					if (getOldText() != null && getNewText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						List<String> newLines = getNewText().getLines();
-						if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?newBlobIdent.path:"a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									whitespaceOption);
-						} else { 
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
-				}
-			} catch (Exception e) {
-				throw new RuntimeException("Error calculating diff of file: " + getPath(), e);
+			ObjectId oldBlobId, newBlobId;
+			String oldFileName, newFileName;
+			WhitespaceOption effectiveWhitespaceOption;
+			if (type == ChangeType.ADD || type == ChangeType.COPY) {
+				oldBlobId = ObjectId.zeroId();
+				oldFileName = "a.txt";
+				newBlobId = getNewBlob().getBlobId();
+				newFileName = newBlobIdent.isFile()?newBlobIdent.path:"b.txt";
+				effectiveWhitespaceOption = WhitespaceOption.DEFAULT;
+			} else if (type == ChangeType.DELETE) {
+				oldBlobId = getOldBlob().getBlobId();
+				oldFileName = oldBlobIdent.isFile()?oldBlobIdent.path:"a.txt";
+				newBlobId = ObjectId.zeroId();
+				newFileName = "b.txt";
+				effectiveWhitespaceOption = WhitespaceOption.DEFAULT;
+			} else {
+				oldBlobId = getOldBlob().getBlobId();
+				oldFileName = oldBlobIdent.isFile()?newBlobIdent.path:"a.txt";
+				newBlobId = getNewBlob().getBlobId();
+				newFileName = newBlobIdent.isFile()?newBlobIdent.path:"b.txt";
+				effectiveWhitespaceOption = whitespaceOption;
 			}
+			diffBlocks = OneDev.getInstance(DiffCache.class).getDiffBlocks(
+					oldBlobId, oldFileName, newBlobId, newFileName, effectiveWhitespaceOption, 
+					new Callable<List<DiffBlock<Tokenized>>>() {
+
+				@Override
+				public List<DiffBlock<Tokenized>> call() throws Exception {
+					return calcDiffBlocks(oldFileName, newFileName, effectiveWhitespaceOption);
+				}
+				
+			});
 		}
 		return diffBlocks;
 	}
 	
+	private List<DiffBlock<Tokenized>> calcDiffBlocks(String oldFileName, String newFileName, 
+			WhitespaceOption whitespaceOption) {
+		try {
+			if (type == ChangeType.ADD || type == ChangeType.COPY) {
+				if (getNewText() != null) {
+					List<String> newLines = getNewText().getLines();
+					if (newLines.size() <= DiffUtils.MAX_DIFF_SIZE) 
+						return DiffUtils.diff(new ArrayList<>(), oldFileName, newLines, newFileName, whitespaceOption);
+				}
+			} else if (type == ChangeType.DELETE) {
+				if (getOldText() != null) {
+					List<String> oldLines = getOldText().getLines();
+					if (oldLines.size() <= DiffUtils.MAX_DIFF_SIZE) 
+						return DiffUtils.diff(oldLines, oldFileName, new ArrayList<>(), newFileName, whitespaceOption);
+				}
+			} else {
+				if (getOldText() != null && getNewText() != null) {
+					List<String> oldLines = getOldText().getLines();
+					List<String> newLines = getNewText().getLines();
+					if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) 
+						return DiffUtils.diff(oldLines, oldFileName, newLines, newFileName, whitespaceOption);
+				}
+			}
+			return new ArrayList<>();
+		} catch (Exception e) {
+			throw new RuntimeException("Error calculating diff of file: " + getPath(), e);
+		}
+	}
+	
 	public int getAdditions() {
 		int additions = 0;
 		for (DiffBlock<Tokenized> diff: getDiffBlocks()) {
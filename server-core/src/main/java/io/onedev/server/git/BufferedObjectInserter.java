@@ -0,0 +1,159 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.IO;
+
+/**
+ * Object inserter keeping inserted trees and commits in memory until flushed. Objects inserted 
+ * by an operation which fails in the end (for instance a conflicting merge) are simply discarded
+ * with the inserter, instead of being written into the repository as garbage. Blobs and other 
+ * large objects are passed to inserter of the repository to avoid holding arbitrary large 
+ * content on heap. Readers created from this inserter can read buffered objects.
+ */
+public class BufferedObjectInserter extends ObjectInserter {
+
+	private static final int MAX_BUFFERED_SIZE = 64*1024;
+	
+	private final ObjectInserter delegate;
+
+	private final Map<ObjectId, BufferedObject> objects = new LinkedHashMap<>();
+
+	public BufferedObjectInserter(Repository repository) {
+		delegate = repository.newObjectInserter();
+	}
+
+	private boolean isBuffered(int type, long length) {
+		return type != Constants.OBJ_BLOB && length <= MAX_BUFFERED_SIZE;
+	}
+	
+	@Override
+	public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+		if (!isBuffered(type, len))
+			return delegate.insert(type, data, off, len);
+		
+		ObjectId id = idFor(type, data, off, len);
+		if (!objects.containsKey(id)) {
+			byte[] copy = new byte[len];
+			System.arraycopy(data, off, copy, 0, len);
+			objects.put(id, new BufferedObject(type, copy));
+		}
+		return id;
+	}
+
+	@Override
+	public ObjectId insert(int type, long length, InputStream in) throws IOException {
+		if (!isBuffered(type, length))
+			return delegate.insert(type, length, in);
+		
+		byte[] data = new byte[(int) length];
+		IO.readFully(in, data, 0, data.length);
+		return insert(type, data, 0, data.length);
+	}
+
+	@Override
+	public PackParser newPackParser(InputStream in) throws IOException {
+		return delegate.newPackParser(in);
+	}
+
+	@Override
+	public ObjectReader newReader() {
+		return new Reader(delegate.newReader());
+	}
+
+	/**
+	 * Write all buffered objects into the repository
+	 */
+	@Override
+	public void flush() throws IOException {
+		for (BufferedObject object: objects.values())
+			delegate.insert(object.type, object.data);
+		delegate.flush();
+		objects.clear();
+	}
+
+	@Override
+	public void close() {
+		objects.clear();
+		delegate.close();
+	}
+
+	private static class BufferedObject {
+
+		final int type;
+
+		final byte[] data;
+
+		BufferedObject(int type, byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+
+	}
+
+	private class Reader extends ObjectReader {
+
+		private final ObjectReader delegate;
+
+		Reader(ObjectReader delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public ObjectReader newReader() {
+			return new Reader(delegate.newReader());
+		}
+
+		@Override
+		public Collection<ObjectId> resolve(AbbreviatedObjectId id) throws IOException {
+			return delegate.resolve(id);
+		}
+
+		@Override
+		public boolean has(AnyObjectId objectId, int typeHint) throws IOException {
+			return objects.containsKey(objectId) || delegate.has(objectId, typeHint);
+		}
+
+		@Override
+		public ObjectLoader open(AnyObjectId objectId, int typeHint)
+				throws MissingObjectException, IOException {
+			BufferedObject object = objects.get(objectId);
+			if (object != null)
+				return new ObjectLoader.SmallObject(object.type, object.data);
+			else
+				return delegate.open(objectId, typeHint);
+		}
+
+		@Override
+		public Set<ObjectId> getShallowCommits() throws IOException {
+			return delegate.getShallowCommits();
+		}
+
+		@Override
+		public ObjectInserter getCreatedFromInserter() {
+			return BufferedObjectInserter.this;
+		}
+
+		@Override
+		public void close() {
+			delegate.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,285 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.AuthorRevFilter;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.revwalk.filter.CommitterRevFilter;
+import org.eclipse.jgit.revwalk.filter.MessageRevFilter;
+import org.eclipse.jgit.revwalk.filter.OrRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.OrTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.server.git.command.RevListCommand;
+import io.onedev.server.util.DateUtils;
+
+/**
+ * Resumable walk of commits matching options of a {@link RevListCommand}. The walk state is
+ * kept between loads, so that loading more commits only walks history not visited yet, and
+ * commits loaded previously are kept instead of being parsed again. Revisions, dates, paths,
+ * authors, committers and messages are evaluated in process with JGit filters mirroring
+ * semantics of git rev-list.
+ *
+ * Cursor is not serializable, and holds a reader of the repository until closed.
+ */
+public class CommitCursor implements AutoCloseable {
+
+	private final RevWalk revWalk;
+
+	private final int limit;
+
+	private final List<RevCommit> commits = new ArrayList<>();
+
+	private boolean exhausted;
+
+	/**
+	 * @param command
+	 * 			rev-list command describing commits to walk. Only its options are used, and
+	 * 			the command itself is not executed
+	 */
+	public CommitCursor(Repository repository, RevListCommand command) {
+		revWalk = new RevWalk(repository);
+		try {
+			boolean hasRevisions = false;
+			for (String revision: command.revisions()) {
+				if (revision.startsWith("^")) {
+					revWalk.markUninteresting(parseCommit(repository, revision.substring(1)));
+				} else {
+					revWalk.markStart(parseCommit(repository, revision));
+					hasRevisions = true;
+				}
+			}
+			if (!hasRevisions) {
+				for (Ref ref: repository.getRefDatabase().getRefsByPrefix(Constants.R_HEADS)) {
+					RevObject object = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+					if (object instanceof RevCommit)
+						revWalk.markStart((RevCommit) object);
+				}
+			}
+
+			if (command.order() == RevListCommand.Order.TOPO) {
+				revWalk.sort(RevSort.TOPO);
+			} else if (command.order() != null) {
+				// Ordering by author date is not available in JGit, fall back to commit date
+				revWalk.sort(RevSort.TOPO);
+				revWalk.sort(RevSort.COMMIT_TIME_DESC, true);
+			} else {
+				revWalk.sort(RevSort.COMMIT_TIME_DESC);
+			}
+			revWalk.setFirstParent(command.firstParent());
+
+			// Keep real parents of commits to draw commit graph, same as rev-list without --parents
+			revWalk.setRewriteParents(false);
+
+			revWalk.setRevFilter(getRevFilter(command));
+
+			if (!command.paths().isEmpty()) {
+				List<TreeFilter> pathFilters = new ArrayList<>();
+				for (String path: command.paths())
+					pathFilters.add(getPathFilter(path));
+				TreeFilter pathFilter;
+				if (pathFilters.size() == 1)
+					pathFilter = pathFilters.get(0);
+				else
+					pathFilter = OrTreeFilter.create(pathFilters);
+				revWalk.setTreeFilter(AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF));
+			}
+		} catch (IOException e) {
+			revWalk.close();
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			revWalk.close();
+			throw e;
+		}
+
+		limit = command.count();
+	}
+
+	private RevCommit parseCommit(Repository repository, String revision) throws IOException {
+		ObjectId commitId = GitUtils.resolve(repository, revision);
+		if (commitId == null)
+			throw new ExplicitException("Unable to find revision: " + revision);
+		RevObject object = revWalk.peel(revWalk.parseAny(commitId));
+		if (object instanceof RevCommit)
+			return (RevCommit) object;
+		else
+			throw new ExplicitException("Revision does not point to a commit: " + revision);
+	}
+
+	private Date parseDate(String date) {
+		Date parsed = DateUtils.parseRelaxed(date);
+		if (parsed != null)
+			return parsed;
+		else
+			throw new ExplicitException("Unrecognized date: " + date);
+	}
+
+	/*
+	 * Multiple authors, committers or messages are matched if any of them matches, while
+	 * different kinds of criterias should all match, same as rev-list without --all-match
+	 */
+	private RevFilter getRevFilter(RevListCommand command) {
+		List<RevFilter> filters = new ArrayList<>();
+		if (command.before() != null)
+			filters.add(CommitTimeRevFilter.before(parseDate(command.before())));
+		if (command.after() != null)
+			filters.add(CommitTimeRevFilter.after(parseDate(command.after())));
+
+		List<RevFilter> authorFilters = new ArrayList<>();
+		for (String author: command.authors())
+			authorFilters.add(AuthorRevFilter.create(author));
+		if (!authorFilters.isEmpty())
+			filters.add(or(authorFilters));
+
+		List<RevFilter> committerFilters = new ArrayList<>();
+		for (String committer: command.committers())
+			committerFilters.add(CommitterRevFilter.create(committer));
+		if (!committerFilters.isEmpty())
+			filters.add(or(committerFilters));
+
+		List<RevFilter> messageFilters = new ArrayList<>();
+		for (String message: command.messages())
+			messageFilters.add(MessageRevFilter.create(message));
+		if (!messageFilters.isEmpty())
+			filters.add(or(messageFilters));
+
+		if (filters.isEmpty())
+			return RevFilter.ALL;
+		else if (filters.size() == 1)
+			return filters.get(0);
+		else
+			return AndRevFilter.create(filters);
+	}
+
+	private RevFilter or(List<RevFilter> filters) {
+		if (filters.size() == 1)
+			return filters.get(0);
+		else
+			return OrRevFilter.create(filters);
+	}
+
+	private TreeFilter getPathFilter(String path) {
+		if (path.startsWith("/"))
+			path = path.substring(1);
+		if (path.endsWith("/"))
+			path = path.substring(0, path.length()-1);
+		if (path.length() == 0)
+			return TreeFilter.ALL;
+		else if (path.indexOf('*') != -1 || path.indexOf('?') != -1)
+			return new WildcardPathFilter(path);
+		else
+			return PathFilter.create(path);
+	}
+
+	private void load(int count) {
+		if (limit != 0)
+			count = Math.min(count, limit);
+		try {
+			while (!exhausted && commits.size() < count) {
+				RevCommit commit = revWalk.next();
+				if (commit != null)
+					commits.add(commit);
+				else
+					exhausted = true;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get first commits of the walk, walking more history if not loaded yet
+	 *
+	 * @param count
+	 * 			number of commits to get
+	 * @return
+	 * 			first commits of the walk, with size less than specified count if no more
+	 * 			commits available
+	 */
+	public synchronized List<RevCommit> getCommits(int count) {
+		load(count);
+		return new ArrayList<>(commits.subList(0, Math.min(count, commits.size())));
+	}
+
+	/**
+	 * Check if there are more commits than specified count
+	 */
+	public synchronized boolean hasMore(int count) {
+		load(count+1);
+		return commits.size() > count;
+	}
+
+	@Override
+	public synchronized void close() {
+		revWalk.close();
+	}
+
+	/*
+	 * Match paths with wildcards like git pathspec: "*" and "?" also match "/", and all files
+	 * under a matched directory are matched
+	 */
+	private static class WildcardPathFilter extends TreeFilter {
+
+		private final String literalPrefix;
+
+		private final Pattern pattern;
+
+		WildcardPathFilter(String path) {
+			int index = 0;
+			while (path.charAt(index) != '*' && path.charAt(index) != '?')
+				index++;
+			literalPrefix = path.substring(0, index);
+
+			StringBuilder regex = new StringBuilder();
+			for (char ch: path.toCharArray()) {
+				if (ch == '*')
+					regex.append(".*");
+				else if (ch == '?')
+					regex.append(".");
+				else
+					regex.append(Pattern.quote(String.valueOf(ch)));
+			}
+			regex.append("(/.*)?");
+			pattern = Pattern.compile(regex.toString());
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			String path = walker.getPathString();
+			if (walker.isSubtree())
+				return path.startsWith(literalPrefix) || literalPrefix.startsWith(path + "/");
+			else
+				return path.startsWith(literalPrefix) && pattern.matcher(path).matches();
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return true;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return this;
+		}
+
+	}
+
+}
@@ -0,0 +1,190 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.onedev.commons.jsyntax.Tokenized;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.util.diff.DiffBlock;
+import io.onedev.server.util.diff.WhitespaceOption;
+
+@Singleton
+public class DefaultDiffCache implements DiffCache {
+
+	// Total number of cached diff entries
+	private static final long MAX_DIFF_ENTRIES = 200000;
+	
+	/*
+	 * Total number of cached diff lines. A tokenized line takes a few hundred bytes in 
+	 * average, so this limits memory used by diff blocks to around a hundred megabytes
+	 */
+	private static final long MAX_DIFF_LINES = 500000;
+	
+	private final Cache<TreeKey, List<DiffEntry>> diffEntries = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_DIFF_ENTRIES)
+			.weigher(new Weigher<TreeKey, List<DiffEntry>>() {
+
+				@Override
+				public int weigh(TreeKey key, List<DiffEntry> value) {
+					return value.size() + 1;
+				}
+				
+			})
+			.recordStats()
+			.build();
+	
+	private final Cache<BlobKey, List<DiffBlock<Tokenized>>> diffBlocks = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_DIFF_LINES)
+			.weigher(new Weigher<BlobKey, List<DiffBlock<Tokenized>>>() {
+
+				@Override
+				public int weigh(BlobKey key, List<DiffBlock<Tokenized>> value) {
+					int lines = 1;
+					for (DiffBlock<Tokenized> block: value)
+						lines += block.getUnits().size();
+					return lines;
+				}
+				
+			})
+			.recordStats()
+			.build();
+	
+	@Override
+	public List<DiffEntry> getDiffEntries(Repository repository, AnyObjectId oldRevId, AnyObjectId newRevId) {
+		ObjectId oldTreeId, newTreeId;
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			oldTreeId = getTreeId(revWalk, oldRevId);
+			newTreeId = getTreeId(revWalk, newRevId);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		try {
+			return diffEntries.get(new TreeKey(oldTreeId, newTreeId), new Callable<List<DiffEntry>>() {
+
+				@Override
+				public List<DiffEntry> call() throws Exception {
+					return GitUtils.diffTrees(repository, 
+							!oldTreeId.equals(ObjectId.zeroId())?oldTreeId:null, 
+							!newTreeId.equals(ObjectId.zeroId())?newTreeId:null);
+				}
+				
+			});
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
+	private ObjectId getTreeId(RevWalk revWalk, AnyObjectId revId) throws IOException {
+		if (!revId.equals(ObjectId.zeroId()))
+			return revWalk.parseCommit(revId).getTree().copy();
+		else
+			return ObjectId.zeroId();
+	}
+
+	@Override
+	public List<DiffBlock<Tokenized>> getDiffBlocks(ObjectId oldBlobId, String oldFileName, 
+			ObjectId newBlobId, String newFileName, WhitespaceOption whitespaceOption, 
+			Callable<List<DiffBlock<Tokenized>>> calculator) {
+		BlobKey key = new BlobKey(oldBlobId.copy(), oldFileName, newBlobId.copy(), newFileName, whitespaceOption);
+		try {
+			return diffBlocks.get(key, calculator);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+
+	@Override
+	public CacheStats getDiffEntryStats() {
+		return diffEntries.stats();
+	}
+
+	@Override
+	public CacheStats getDiffBlockStats() {
+		return diffBlocks.stats();
+	}
+	
+	private static class TreeKey {
+		
+		final ObjectId oldTreeId;
+		
+		final ObjectId newTreeId;
+		
+		TreeKey(ObjectId oldTreeId, ObjectId newTreeId) {
+			this.oldTreeId = oldTreeId;
+			this.newTreeId = newTreeId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof TreeKey))
+				return false;
+			TreeKey otherKey = (TreeKey) other;
+			return oldTreeId.equals(otherKey.oldTreeId) && newTreeId.equals(otherKey.newTreeId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(oldTreeId, newTreeId);
+		}
+		
+	}
+	
+	private static class BlobKey {
+		
+		final ObjectId oldBlobId;
+		
+		final String oldFileName;
+		
+		final ObjectId newBlobId;
+		
+		final String newFileName;
+		
+		final WhitespaceOption whitespaceOption;
+		
+		BlobKey(ObjectId oldBlobId, String oldFileName, ObjectId newBlobId, String newFileName, 
+				WhitespaceOption whitespaceOption) {
+			this.oldBlobId = oldBlobId;
+			this.oldFileName = oldFileName;
+			this.newBlobId = newBlobId;
+			this.newFileName = newFileName;
+			this.whitespaceOption = whitespaceOption;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof BlobKey))
+				return false;
+			BlobKey otherKey = (BlobKey) other;
+			return oldBlobId.equals(otherKey.oldBlobId) 
+					&& oldFileName.equals(otherKey.oldFileName)
+					&& newBlobId.equals(otherKey.newBlobId) 
+					&& newFileName.equals(otherKey.newFileName)
+					&& whitespaceOption == otherKey.whitespaceOption;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(oldBlobId, oldFileName, newBlobId, newFileName, whitespaceOption);
+		}
+		
+	}
+	
+}
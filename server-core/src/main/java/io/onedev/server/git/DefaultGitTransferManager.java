@@ -0,0 +1,163 @@
+package io.onedev.server.git;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.exception.TooManyTransfersException;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.ServerConfig;
+import io.onedev.server.util.concurrent.NamedThreadFactory;
+
+@Singleton
+public class DefaultGitTransferManager implements GitTransferManager {
+
+	private static final int RETRY_AFTER = 30;
+	
+	private final int maxRunningTransfers;
+	
+	private final int maxWaitingTransfers;
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final LinkedList<Transfer> waitingTransfers = new LinkedList<>();
+	
+	private final Map<Long, Integer> runningTransfersByUser = new HashMap<>();
+	
+	private final Map<Long, Integer> runningTransfersByProject = new HashMap<>();
+	
+	private int runningTransfers;
+	
+	private long completedTransfers;
+	
+	private long rejectedTransfers;
+	
+	@Inject
+	public DefaultGitTransferManager(ServerConfig serverConfig) {
+		maxRunningTransfers = serverConfig.getGitTransfers();
+		maxWaitingTransfers = serverConfig.getGitTransferQueueSize();
+		
+		/*
+		 * Number of submitted tasks is limited by admission of this manager, so the queue 
+		 * only holds tasks submitted while previous ones are finishing up
+		 */
+		executor = new ThreadPoolExecutor(maxRunningTransfers, maxRunningTransfers, 60L, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<>(), new NamedThreadFactory("onedev-git-transfer"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	@Override
+	public synchronized Future<?> submit(Long userId, Long projectId, Runnable transfer) {
+		// Waiting transfers only exist when all slots are taken, so queue limit applies only then 
+		if (runningTransfers >= maxRunningTransfers && waitingTransfers.size() >= maxWaitingTransfers) {
+			rejectedTransfers++;
+			throw new TooManyTransfersException("Server is busy with other git transfers, please retry later", 
+					RETRY_AFTER);
+		}
+		Transfer future = new Transfer(userId, projectId, SecurityUtils.inheritSubject(transfer));
+		waitingTransfers.add(future);
+		dispatch();
+		return future;
+	}
+	
+	/*
+	 * Start waiting transfers while there are free slots. The transfer whose user has 
+	 * fewest running transfers is preferred, then the one whose project has fewest running 
+	 * transfers, and then the one waiting longest
+	 */
+	private void dispatch() {
+		while (runningTransfers < maxRunningTransfers && !waitingTransfers.isEmpty()) {
+			Transfer next = null;
+			int nextUserTransfers = 0;
+			int nextProjectTransfers = 0;
+			for (Transfer transfer: waitingTransfers) {
+				int userTransfers = runningTransfersByUser.getOrDefault(transfer.userId, 0);
+				int projectTransfers = runningTransfersByProject.getOrDefault(transfer.projectId, 0);
+				if (next == null || userTransfers < nextUserTransfers 
+						|| userTransfers == nextUserTransfers && projectTransfers < nextProjectTransfers) {
+					next = transfer;
+					nextUserTransfers = userTransfers;
+					nextProjectTransfers = projectTransfers;
+				}
+			}
+			waitingTransfers.remove(next);
+			runningTransfers++;
+			runningTransfersByUser.merge(next.userId, 1, Integer::sum);
+			runningTransfersByProject.merge(next.projectId, 1, Integer::sum);
+			executor.execute(next);
+		}
+	}
+	
+	private synchronized void finish(Transfer transfer) {
+		runningTransfers--;
+		completedTransfers++;
+		decrease(runningTransfersByUser, transfer.userId);
+		decrease(runningTransfersByProject, transfer.projectId);
+		dispatch();
+	}
+	
+	private synchronized void cancel(Transfer transfer) {
+		waitingTransfers.remove(transfer);
+	}
+	
+	private void decrease(Map<Long, Integer> counts, Long key) {
+		int count = counts.get(key) - 1;
+		if (count != 0)
+			counts.put(key, count);
+		else
+			counts.remove(key);
+	}
+	
+	@Override
+	public synchronized GitTransferStatus getStatus() {
+		return new GitTransferStatus(runningTransfers, maxRunningTransfers, waitingTransfers.size(), 
+				maxWaitingTransfers, completedTransfers, rejectedTransfers);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		executor.shutdown();
+	}
+	
+	private class Transfer extends FutureTask<Void> {
+
+		final Long userId;
+		
+		final Long projectId;
+		
+		Transfer(Long userId, Long projectId, Runnable runnable) {
+			super(runnable, null);
+			this.userId = userId;
+			this.projectId = projectId;
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				finish(this);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled)
+				DefaultGitTransferManager.this.cancel(this);
+			return cancelled;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,487 @@
+package io.onedev.server.git;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.ServerConfig;
+
+@Singleton
+public class DefaultUploadPackCache implements UploadPackCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultUploadPackCache.class);
+
+	/*
+	 * Requests finishing negotiation of a clone or an unchanged fetch are small. Larger
+	 * requests carry many haves which are unlikely to be shared, and they are streamed to
+	 * upload pack without caching
+	 */
+	private static final int MAX_REQUEST_SIZE = 64*1024;
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final StorageManager storageManager;
+
+	private final long maxSize;
+
+	private final long maxAge;
+
+	// Entries are kept in creation order so that eviction starts from oldest ones
+	private final Map<String, CacheEntry> entries = new LinkedHashMap<>();
+
+	private long size;
+
+	private final AtomicLong hits = new AtomicLong(0);
+
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private final AtomicLong bytesSaved = new AtomicLong(0);
+
+	@Inject
+	public DefaultUploadPackCache(StorageManager storageManager, ServerConfig serverConfig) {
+		this.storageManager = storageManager;
+		maxSize = serverConfig.getUploadPackCacheSize();
+		maxAge = TimeUnit.SECONDS.toMillis(serverConfig.getUploadPackCacheAge());
+	}
+
+	@Override
+	public void serve(Long projectId, Repository repository, InputStream request, OutputStream output,
+			UploadPack uploadPack) {
+		if (maxSize == 0) {
+			uploadPack.run(request, output);
+			return;
+		}
+
+		byte[] requestBytes;
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = request.read(chunk)) != -1) {
+				buffer.write(chunk, 0, count);
+				if (buffer.size() > MAX_REQUEST_SIZE) {
+					uploadPack.run(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), request), output);
+					return;
+				}
+			}
+			requestBytes = buffer.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		String key = getKey(projectId, repository, requestBytes);
+		if (key == null) {
+			uploadPack.run(new ByteArrayInputStream(requestBytes), output);
+			return;
+		}
+
+		CacheEntry entry;
+		boolean computing = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null && entry.isDone()
+					&& System.currentTimeMillis() - entry.timestamp > maxAge) {
+				remove(key, entry);
+				entry = null;
+			}
+			if (entry == null) {
+				entry = new CacheEntry(new File(storageManager.getUploadPackCacheDir(),
+						key + "-" + UUID.randomUUID().toString()));
+				entries.put(key, entry);
+				computing = true;
+			}
+		}
+
+		if (computing) {
+			misses.incrementAndGet();
+			compute(key, entry, requestBytes, output, uploadPack);
+		} else if (!stream(key, entry, output)) {
+			// Computation of the identical request failed or response is evicted before any
+			// content is sent, let's try on our own
+			uploadPack.run(new ByteArrayInputStream(requestBytes), output);
+		}
+	}
+
+	/*
+	 * Run upload pack and write response to the cache file and the client at the same time, so
+	 * that client receives content as soon as it is produced. Computation continues for other
+	 * requests waiting for the same response even if the client disconnects
+	 */
+	private void compute(String key, CacheEntry entry, byte[] request, OutputStream output,
+			UploadPack uploadPack) {
+		ResponseOutput responseOutput;
+		try (FileOutputStream fileOutput = new FileOutputStream(entry.file)) {
+			responseOutput = new ResponseOutput(entry, fileOutput, output);
+			uploadPack.run(new ByteArrayInputStream(request), responseOutput);
+		} catch (Exception e) {
+			synchronized (this) {
+				entries.remove(key, entry);
+			}
+			entry.fail();
+			if (!entry.file.delete())
+				logger.debug("Unable to delete file: " + entry.file);
+			throw ExceptionUtils.unchecked(e);
+		}
+		synchronized (this) {
+			entry.complete();
+			if (entries.get(key) == entry) {
+				size += entry.getLength();
+				evict();
+			}
+		}
+		if (responseOutput.clientException != null)
+			throw new RuntimeException(responseOutput.clientException);
+		try {
+			output.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Stream response of specified entry to the client, following the file while it is still
+	 * being written
+	 *
+	 * @return
+	 * 			<tt>false</tt> if the response is not available and nothing is sent to the client
+	 */
+	private boolean stream(String key, CacheEntry entry, OutputStream output) {
+		FileChannel channel = null;
+		long position = 0;
+		try {
+			while (true) {
+				long length = entry.await(position);
+				if (entry.isFailed()) {
+					if (position == 0)
+						return false;
+					else
+						throw new ExplicitException("Error computing upload pack response");
+				}
+				if (channel == null) {
+					synchronized (this) {
+						if (entries.get(key) == entry)
+							channel = FileChannel.open(entry.file.toPath(), StandardOpenOption.READ);
+						else
+							return false;
+					}
+					if (entry.isDone() && output instanceof HttpOutput && length <= Integer.MAX_VALUE) {
+						// Jetty writes memory mapped content to the socket without copying it into heap
+						((HttpOutput) output).sendContent(channel.map(MapMode.READ_ONLY, 0, length));
+						position = length;
+						break;
+					}
+				}
+				if (position < length) {
+					WritableByteChannel target = Channels.newChannel(output);
+					while (position < length)
+						position += channel.transferTo(position, length - position, target);
+					output.flush();
+				} else if (entry.isDone()) {
+					break;
+				}
+			}
+			hits.incrementAndGet();
+			bytesSaved.addAndGet(position);
+			return true;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void evict() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator(); it.hasNext();) {
+			CacheEntry entry = it.next().getValue();
+			if (entry.isDone() && (size > maxSize || now - entry.timestamp > maxAge)) {
+				it.remove();
+				delete(entry);
+			}
+		}
+	}
+
+	private void remove(String key, CacheEntry entry) {
+		entries.remove(key);
+		delete(entry);
+	}
+
+	private void delete(CacheEntry entry) {
+		size -= entry.getLength();
+		// Deletion may fail on Windows if the file is still being streamed, and it will
+		// be cleaned up when server restarts
+		if (!entry.file.delete())
+			logger.debug("Unable to delete file: " + entry.file);
+	}
+
+	/*
+	 * Calculate cache key from project, normalized request and ref state
+	 *
+	 * @return
+	 * 			cache key, or <tt>null</tt> if response of the request should not be cached
+	 */
+	@Nullable
+	private String getKey(Long projectId, Repository repository, byte[] request) {
+		String normalizedRequest = normalize(request);
+		if (normalizedRequest == null)
+			return null;
+
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putLong(projectId);
+		hasher.putString(normalizedRequest, StandardCharsets.UTF_8);
+		try {
+			List<Ref> refs = new ArrayList<>(repository.getRefDatabase().getRefs());
+			Collections.sort(refs, new Comparator<Ref>() {
+
+				@Override
+				public int compare(Ref o1, Ref o2) {
+					return o1.getName().compareTo(o2.getName());
+				}
+
+			});
+			for (Ref ref: refs) {
+				hasher.putString(ref.getName(), StandardCharsets.UTF_8);
+				if (ref.isSymbolic())
+					hasher.putString(ref.getTarget().getName(), StandardCharsets.UTF_8);
+				else if (ref.getObjectId() != null)
+					hasher.putString(ref.getObjectId().name(), StandardCharsets.UTF_8);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return hasher.hash().toString();
+	}
+
+	/*
+	 * Normalize pkt-lines of the request. Wants and capabilities are sorted, and agent
+	 * capability is removed as it does not affect the response
+	 *
+	 * @return
+	 * 			normalized request, or <tt>null</tt> if the request does not finish negotiation
+	 * 			or can not be parsed
+	 */
+	@Nullable
+	static String normalize(byte[] request) {
+		List<String> capabilities = new ArrayList<>();
+		List<String> wants = new ArrayList<>();
+		List<String> others = new ArrayList<>();
+		boolean done = false;
+
+		int pos = 0;
+		while (pos + 4 <= request.length) {
+			int length;
+			try {
+				length = Integer.parseInt(new String(request, pos, 4, StandardCharsets.US_ASCII), 16);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (length < 4) { // flush or delimiter packet
+				pos += 4;
+				continue;
+			}
+			if (pos + length > request.length)
+				return null;
+			String line = new String(request, pos + 4, length - 4, StandardCharsets.UTF_8);
+			pos += length;
+			if (line.endsWith("\n"))
+				line = line.substring(0, line.length()-1);
+
+			if (line.startsWith("want ")) {
+				String want = line.substring("want ".length());
+				int index = want.indexOf(' ');
+				if (index != -1) {
+					for (String capability: want.substring(index+1).split(" ")) {
+						if (capability.length() != 0 && !capability.startsWith("agent="))
+							capabilities.add(capability);
+					}
+					want = want.substring(0, index);
+				}
+				wants.add(want);
+			} else if (line.equals("done")) {
+				done = true;
+			} else {
+				others.add(line);
+			}
+		}
+		if (!done || pos != request.length || wants.isEmpty())
+			return null;
+
+		Collections.sort(capabilities);
+		Collections.sort(wants);
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("capabilities ").append(String.join(" ", capabilities)).append("\n");
+		for (String want: wants)
+			builder.append("want ").append(want).append("\n");
+		for (String other: others)
+			builder.append(other).append("\n");
+		return builder.toString();
+	}
+
+	@Override
+	public synchronized UploadPackCacheStatus getStatus() {
+		return new UploadPackCacheStatus(hits.get(), misses.get(), bytesSaved.get(), entries.size(), size);
+	}
+
+	@Listen
+	public void on(SystemStarting event) {
+		FileUtils.cleanDir(storageManager.getUploadPackCacheDir());
+	}
+
+	private static class CacheEntry {
+
+		final File file;
+
+		final long timestamp = System.currentTimeMillis();
+
+		// Length of response written to the file so far
+		private long length;
+
+		private boolean done;
+
+		private boolean failed;
+
+		CacheEntry(File file) {
+			this.file = file;
+		}
+
+		synchronized void append(int count) {
+			length += count;
+			notifyAll();
+		}
+
+		synchronized void complete() {
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void fail() {
+			failed = true;
+			notifyAll();
+		}
+
+		synchronized long getLength() {
+			return length;
+		}
+
+		synchronized boolean isDone() {
+			return done;
+		}
+
+		synchronized boolean isFailed() {
+			return failed;
+		}
+
+		/*
+		 * Wait until response is longer than specified position, or computation finishes
+		 *
+		 * @return
+		 * 			length of response written so far
+		 */
+		synchronized long await(long position) throws InterruptedException {
+			while (length <= position && !done && !failed)
+				wait();
+			return length;
+		}
+
+	}
+
+	/*
+	 * Output writing response to cache file and client. Writing to client stops at first error,
+	 * while writing to cache file continues
+	 */
+	private static class ResponseOutput extends OutputStream {
+
+		private final CacheEntry entry;
+
+		private final OutputStream fileOutput;
+
+		private final OutputStream clientOutput;
+
+		private IOException clientException;
+
+		ResponseOutput(CacheEntry entry, OutputStream fileOutput, OutputStream clientOutput) {
+			this.entry = entry;
+			this.fileOutput = fileOutput;
+			this.clientOutput = clientOutput;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			fileOutput.write(b, off, len);
+			entry.append(len);
+			if (clientException == null) {
+				try {
+					clientOutput.write(b, off, len);
+				} catch (IOException e) {
+					clientException = e;
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (clientException == null) {
+				try {
+					clientOutput.flush();
+				} catch (IOException e) {
+					clientException = e;
+				}
+			}
+		}
+
+	}
+
+}
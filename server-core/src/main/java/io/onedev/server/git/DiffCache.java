@@ -0,0 +1,52 @@
+package io.onedev.server.git;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import com.google.common.cache.CacheStats;
+
+import io.onedev.commons.jsyntax.Tokenized;
+import io.onedev.server.util.diff.DiffBlock;
+import io.onedev.server.util.diff.WhitespaceOption;
+
+/**
+ * Server wide cache of diff results. As results are keyed by ids of immutable git objects, 
+ * they are shared between requests, users and even projects of the same fork network. Cached 
+ * results must not be modified.
+ */
+public interface DiffCache {
+
+	/**
+	 * Get changed entries between trees of specified revisions
+	 * 
+	 * @param oldRevId
+	 * 			old revision, or {@link ObjectId#zeroId()} to diff against an empty tree
+	 * @param newRevId
+	 * 			new revision, or {@link ObjectId#zeroId()} to diff against an empty tree
+	 */
+	List<DiffEntry> getDiffEntries(Repository repository, AnyObjectId oldRevId, AnyObjectId newRevId);
+	
+	/**
+	 * Get diff blocks between specified blobs, calculating them with specified calculator 
+	 * if not cached yet. File names are part of the key as they decide how lines are 
+	 * tokenized
+	 * 
+	 * @param oldBlobId
+	 * 			id of old blob, or {@link ObjectId#zeroId()} if blob is added
+	 * @param newBlobId
+	 * 			id of new blob, or {@link ObjectId#zeroId()} if blob is deleted
+	 */
+	List<DiffBlock<Tokenized>> getDiffBlocks(ObjectId oldBlobId, String oldFileName, 
+			ObjectId newBlobId, String newFileName, WhitespaceOption whitespaceOption, 
+			Callable<List<DiffBlock<Tokenized>>> calculator);
+	
+	CacheStats getDiffEntryStats();
+	
+	CacheStats getDiffBlockStats();
+	
+}
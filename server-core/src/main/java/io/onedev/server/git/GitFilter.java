@@ -5,11 +5,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -26,37 +25,36 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.eclipse.jgit.http.server.GitSmartHttpTools;
 import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.PacketLineOut;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.transport.RefAdvertiser.PacketLineOutRefAdvertiser;
 import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.command.ErrorCollector;
 import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
-import io.onedev.server.entitymanager.SettingManager;
-import io.onedev.server.git.command.AdvertiseReceiveRefsCommand;
 import io.onedev.server.git.command.AdvertiseUploadRefsCommand;
-import io.onedev.server.git.command.ReceivePackCommand;
 import io.onedev.server.git.command.UploadPackCommand;
 import io.onedev.server.git.exception.GitException;
+import io.onedev.server.git.exception.TooManyTransfersException;
+import io.onedev.server.git.hookcallback.GitReceivePackFactory;
+import io.onedev.server.maintenance.RepositoryMaintenanceManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.security.CodePullAuthorizationSource;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
-import io.onedev.server.util.ServerConfig;
-import io.onedev.server.util.concurrent.PrioritizedRunnable;
-import io.onedev.server.util.work.WorkExecutor;
 
 @Singleton
 public class GitFilter implements Filter {
 	
 	private static final Logger logger = LoggerFactory.getLogger(GitFilter.class);
 
-	private static final int PRIORITY = 2;
-	
 	private static final String INFO_REFS = "info/refs";
 	
 	private final OneDev oneDev;
@@ -65,28 +63,29 @@ public class GitFilter implements Filter {
 	
 	private final ProjectManager projectManager;
 	
-	private final WorkExecutor workExecutor;
-	
-	private final ServerConfig serverConfig;
-	
-	private final SettingManager settingManager;
+	private final GitTransferManager gitTransferManager;
 	
 	private final SessionManager sessionManager;
 	
 	private final Set<CodePullAuthorizationSource> codePullAuthorizationSources;
 	
+	private final UploadPackCache uploadPackCache;
+	
+	private final GitReceivePackFactory receivePackFactory;
+	
 	@Inject
 	public GitFilter(OneDev oneDev, StorageManager storageManager, ProjectManager projectManager, 
-			WorkExecutor workExecutor, ServerConfig serverConfig, SettingManager settingManager,
-			SessionManager sessionManager, Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
+			GitTransferManager gitTransferManager, SessionManager sessionManager, 
+			Set<CodePullAuthorizationSource> codePullAuthorizationSources, UploadPackCache uploadPackCache, 
+			GitReceivePackFactory receivePackFactory) {
 		this.oneDev = oneDev;
 		this.storageManager = storageManager;
 		this.projectManager = projectManager;
-		this.workExecutor = workExecutor;
-		this.serverConfig = serverConfig;
-		this.settingManager = settingManager;
+		this.gitTransferManager = gitTransferManager;
 		this.sessionManager = sessionManager;
 		this.codePullAuthorizationSources = codePullAuthorizationSources;
+		this.uploadPackCache = uploadPackCache;
+		this.receivePackFactory = receivePackFactory;
 	}
 	
 	private String getPathInfo(HttpServletRequest request) {
@@ -118,8 +117,10 @@ public class GitFilter implements Filter {
 	protected void processPacks(final HttpServletRequest request, final HttpServletResponse response) 
 			throws ServletException, IOException, InterruptedException, ExecutionException {
 		File gitDir;
+		Long userId;
+		Long projectId;
+		Repository repository;
 		boolean upload;
-		Map<String, String> environments = new HashMap<>();
 		
 		sessionManager.openSession();
 		try {
@@ -133,24 +134,10 @@ public class GitFilter implements Filter {
 			doNotCache(response);
 			response.setHeader("Content-Type", "application/x-" + service + "-result");			
 
-			String serverUrl;
-	        if (serverConfig.getHttpPort() != 0)
-	            serverUrl = "http://localhost:" + serverConfig.getHttpPort();
-	        else 
-	            serverUrl = "https://localhost:" + serverConfig.getHttpsPort();
-
-	        environments.put("ONEDEV_CURL", settingManager.getSystemSetting().getCurlConfig().getExecutable());
-			environments.put("ONEDEV_URL", serverUrl);
-			environments.put("ONEDEV_USER_ID", SecurityUtils.getUserId().toString());
-			environments.put("ONEDEV_REPOSITORY_ID", project.getId().toString());
-			
-			// to be compatible with old repository
-	        environments.put("GITPLEX_CURL", settingManager.getSystemSetting().getCurlConfig().getExecutable());
-			environments.put("GITPLEX_URL", serverUrl);
-			environments.put("GITPLEX_USER_ID", SecurityUtils.getUserId().toString());
-			environments.put("GITPLEX_REPOSITORY_ID", project.getId().toString());
-			
-			gitDir = storageManager.getProjectGitDir(project.getId());
+			userId = SecurityUtils.getUserId();
+			projectId = project.getId();
+			gitDir = storageManager.getProjectGitDir(projectId);
+			repository = project.getRepository();
 
 			if (GitSmartHttpTools.isUploadPack(request)) {
 				checkPullPermission(request, project);
@@ -165,37 +152,43 @@ public class GitFilter implements Filter {
 		}
 		
 		if (upload) {
-			workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
+			gitTransferManager.submit(userId, projectId, new Runnable() {
 				
 				@Override
 				public void run() {
 					try {
-						InputStream stdin = ServletUtils.getInputStream(request);
-						OutputStream stdout = response.getOutputStream();
-						
-						AtomicBoolean toleratedErrors = new AtomicBoolean(false);
-						ErrorCollector stderr = new ErrorCollector(StandardCharsets.UTF_8.name()) {
+						uploadPackCache.serve(projectId, repository, ServletUtils.getInputStream(request), 
+								response.getOutputStream(), 
+								new UploadPackCache.UploadPack() {
 
 							@Override
-							public void consume(String line) {
-								super.consume(line);
-								// This error may happen during a normal shallow fetch/clone 
-								if (line.contains("remote end hung up unexpectedly")) {
-									toleratedErrors.set(true);
-									logger.debug(line);
-								} else {
-									logger.error(line);
-								}
+							public void run(InputStream stdin, OutputStream stdout) {
+								AtomicBoolean toleratedErrors = new AtomicBoolean(false);
+								ErrorCollector stderr = new ErrorCollector(StandardCharsets.UTF_8.name()) {
+	
+									@Override
+									public void consume(String line) {
+										super.consume(line);
+										// This error may happen during a normal shallow fetch/clone 
+										if (line.contains("remote end hung up unexpectedly")) {
+											toleratedErrors.set(true);
+											logger.debug(line);
+										} else {
+											logger.error(line);
+										}
+									}
+									
+								};
+								UploadPackCommand upload = new UploadPackCommand(gitDir);
+								upload.stdin(stdin).stdout(stdout).stderr(stderr).statelessRpc(true);
+								ExecutionResult result = upload.call();
+								result.setStderr(stderr.getMessage());
+								
+								if (result.getReturnCode() != 0 && !toleratedErrors.get())
+									throw result.buildException();
 							}
 							
-						};
-						UploadPackCommand upload = new UploadPackCommand(gitDir, environments);
-						upload.stdin(stdin).stdout(stdout).stderr(stderr).statelessRpc(true);
-						ExecutionResult result = upload.call();
-						result.setStderr(stderr.getMessage());
-						
-						if (result.getReturnCode() != 0 && !toleratedErrors.get())
-							throw result.buildException();
+						});
 					} catch (IOException e) {
 						throw new RuntimeException(e);
 					}
@@ -203,28 +196,20 @@ public class GitFilter implements Filter {
 				
 			}).get();
 		} else {
-			workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
+			gitTransferManager.submit(userId, projectId, new Runnable() {
 				
 				@Override
 				public void run() {
 					try {
-						InputStream stdin = ServletUtils.getInputStream(request);
-						OutputStream stdout = response.getOutputStream();
-						
-						ErrorCollector stderr = new ErrorCollector(StandardCharsets.UTF_8.name()) {
-
-							@Override
-							public void consume(String line) {
-								super.consume(line);
-								logger.error(line);
-							}
-							
-						};
-						ReceivePackCommand receive = new ReceivePackCommand(gitDir, environments);
-						receive.stdin(stdin).stdout(stdout).stderr(stderr).statelessRpc(true);
-						ExecutionResult result = receive.call();
-						result.setStderr(stderr.getMessage());
-						result.checkReturnCode();
+						ReceivePack receivePack = receivePackFactory.newReceivePack(projectId, repository);
+						receivePack.setBiDirectionalPipe(false);
+						Lock lock = LockUtils.getReadWriteLock(RepositoryMaintenanceManager.getLockKey(projectId)).readLock();
+						lock.lock();
+						try {
+							receivePack.receive(ServletUtils.getInputStream(request), response.getOutputStream(), null);
+						} finally {
+							lock.unlock();
+						}
 					} catch (IOException e) {
 						throw new RuntimeException(e);
 					}
@@ -260,6 +245,8 @@ public class GitFilter implements Filter {
 	
 	protected void processRefs(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		File gitDir;
+		Long projectId;
+		Repository repository;
 		boolean upload;
 		
 		sessionManager.openSession();
@@ -271,7 +258,9 @@ public class GitFilter implements Filter {
 			Project project = getProject(request, response, projectInfo);
 			String service = request.getParameter("service");
 			
-			gitDir = storageManager.getProjectGitDir(project.getId());
+			projectId = project.getId();
+			gitDir = storageManager.getProjectGitDir(projectId);
+			repository = project.getRepository();
 
 			if (service.contains("upload")) {
 				checkPullPermission(request, project);
@@ -286,10 +275,13 @@ public class GitFilter implements Filter {
 		} finally {
 			sessionManager.closeSession();
 		}
-		if (upload)
+		if (upload) {
 			new AdvertiseUploadRefsCommand(gitDir).output(response.getOutputStream()).call();
-		else
-			new AdvertiseReceiveRefsCommand(gitDir).output(response.getOutputStream()).call();
+		} else {
+			ReceivePack receivePack = receivePackFactory.newReceivePack(projectId, repository);
+			receivePack.setBiDirectionalPipe(false);
+			receivePack.sendAdvertisedRefs(new PacketLineOutRefAdvertiser(new PacketLineOut(response.getOutputStream())));
+		}
 	}
 
 	@Override
@@ -316,6 +308,9 @@ public class GitFilter implements Filter {
 			} else {
 				chain.doFilter(request, response);
 			}
+		} catch (TooManyTransfersException e) {
+			httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfter()));
+			GitSmartHttpTools.sendError(httpRequest, httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
 		} catch (GitException|InterruptedException|ExecutionException e) {
 			logger.error("Error serving git request", e);
 			GitSmartHttpTools.sendError(httpRequest, httpResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
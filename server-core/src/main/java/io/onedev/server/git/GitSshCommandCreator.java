@@ -5,9 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -20,51 +19,47 @@ import org.apache.sshd.server.ExitCallback;
 import org.apache.sshd.server.SessionAware;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.server.session.ServerSession;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.StringUtils;
-import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.server.entitymanager.ProjectManager;
-import io.onedev.server.entitymanager.SettingManager;
-import io.onedev.server.git.command.ReceivePackCommand;
 import io.onedev.server.git.command.UploadPackCommand;
+import io.onedev.server.git.exception.TooManyTransfersException;
+import io.onedev.server.git.hookcallback.GitReceivePackFactory;
+import io.onedev.server.maintenance.RepositoryMaintenanceManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.ssh.SshAuthenticator;
 import io.onedev.server.ssh.SshCommandCreator;
-import io.onedev.server.util.ServerConfig;
-import io.onedev.server.util.concurrent.PrioritizedRunnable;
-import io.onedev.server.util.work.WorkExecutor;
 
 @Singleton
 public class GitSshCommandCreator implements SshCommandCreator {
 
 	private static final Logger logger = LoggerFactory.getLogger(GitSshCommandCreator.class);
 
-	private final ServerConfig serverConfig;
-	
-	private final SettingManager settingManager;
-	
 	private final ProjectManager projectManager;
 	
 	private final SessionManager sessionManager;
 	
 	private final SshAuthenticator authenticator;
 	
-	private final WorkExecutor workExecutor;
+	private final GitTransferManager gitTransferManager;
+	
+	private final GitReceivePackFactory receivePackFactory;
 	
 	@Inject
-	public GitSshCommandCreator(ServerConfig serverConfig, SettingManager settingManager, 
-			ProjectManager projectManager, SessionManager sessionManager, 
-			WorkExecutor workExecutor, SshAuthenticator authenticator) {
-		this.serverConfig = serverConfig;
-		this.settingManager = settingManager;
+	public GitSshCommandCreator(ProjectManager projectManager, SessionManager sessionManager, 
+			GitTransferManager gitTransferManager, GitReceivePackFactory receivePackFactory, 
+			SshAuthenticator authenticator) {
 		this.projectManager = projectManager;
 		this.sessionManager = sessionManager;
-		this.workExecutor = workExecutor;
+		this.gitTransferManager = gitTransferManager;
+		this.receivePackFactory = receivePackFactory;
 		this.authenticator = authenticator;
 	}
 	
@@ -74,12 +69,13 @@ public class GitSshCommandCreator implements SshCommandCreator {
 			return new GitSshCommand(command) {
 
 				@Override
-				protected ExecutionResult execute(File gitDir, Map<String, String> gitEnvs) {
-		            return new UploadPackCommand(gitDir, gitEnvs)
+				protected int execute(Long projectId, File gitDir, Repository repository) {
+		            return new UploadPackCommand(gitDir)
 		            		.stdin(inputStream)
 		            		.stdout(outputStream)
 		            		.stderr(errorStream)
-		            		.call();
+		            		.call()
+		            		.getReturnCode();
 		        }
 
 				@Override
@@ -95,12 +91,18 @@ public class GitSshCommandCreator implements SshCommandCreator {
 			return new GitSshCommand(command) {
 
 				@Override
-				protected ExecutionResult execute(File gitDir, Map<String, String> gitEnvs) {
-		            return new ReceivePackCommand(gitDir, gitEnvs)
-		            		.stdin(inputStream)
-		            		.stdout(outputStream)
-		            		.stderr(errorStream)
-		            		.call();
+				protected int execute(Long projectId, File gitDir, Repository repository) {
+					Lock lock = LockUtils.getReadWriteLock(RepositoryMaintenanceManager.getLockKey(projectId)).readLock();
+					lock.lock();
+					try {
+						receivePackFactory.newReceivePack(projectId, repository)
+								.receive(inputStream, outputStream, errorStream);
+						return 0;
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					} finally {
+						lock.unlock();
+					}
 				}
 
 				@Override
@@ -119,8 +121,6 @@ public class GitSshCommandCreator implements SshCommandCreator {
 
 	private abstract class GitSshCommand implements Command, SessionAware {
 		
-		private static final int PRIORITY = 2;
-
 		final String command;
 		
 		InputStream inputStream;
@@ -139,28 +139,13 @@ public class GitSshCommandCreator implements SshCommandCreator {
 			this.command = command;
 		}
 		
-	    private Map<String, String> buildGitEnvs(Project project) {
-			Map<String, String> environments = new HashMap<>();
-			
-			String serverUrl;
-	        if (serverConfig.getHttpPort() != 0)
-	            serverUrl = "http://localhost:" + serverConfig.getHttpPort();
-	        else 
-	            serverUrl = "https://localhost:" + serverConfig.getHttpsPort();
-
-	        environments.put("ONEDEV_CURL", settingManager.getSystemSetting().getCurlConfig().getExecutable());
-			environments.put("ONEDEV_URL", serverUrl);
-			environments.put("ONEDEV_USER_ID", SecurityUtils.getUserId().toString());
-			environments.put("ONEDEV_REPOSITORY_ID", project.getId().toString());
-			return environments;
-	    }
-	    
 		@Override
 		public void start(Environment env) throws IOException {
 			ThreadContext.bind(SecurityUtils.asSubject(authenticator.getPublicKeyOwnerId(session)));
 			
+            Long projectId;
             File gitDir;
-            Map<String, String> gitEnvs;
+            Repository repository;
             
             sessionManager.openSession(); 
             try {
@@ -177,33 +162,36 @@ public class GitSshCommandCreator implements SshCommandCreator {
             		return;
             	} 
 
+                projectId = project.getId();
                 gitDir = project.getGitDir();
-                gitEnvs = buildGitEnvs(project);
+                repository = project.getRepository();
             } finally {                
                 sessionManager.closeSession();
             }
 			
-			commandFuture = workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
-				
-				@Override
-				public void run() {
-					try {
-						ExecutionResult result = execute(gitDir, gitEnvs);
-						onExit(result.getReturnCode(), null);
-					} catch (Exception e) {
-						logger.error("Error executing git command", e);
-						onExit(-1, e.getMessage());
+			try {
+				commandFuture = gitTransferManager.submit(SecurityUtils.getUserId(), projectId, new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							onExit(execute(projectId, gitDir, repository), null);
+						} catch (Exception e) {
+							logger.error("Error executing git command", e);
+							onExit(-1, e.getMessage());
+						}
 					}
-				}
-				
-			});
-			
+					
+				});
+			} catch (TooManyTransfersException e) {
+				onExit(-1, e.getMessage());
+			}
 		}
 		
 		@Nullable
 		protected abstract String checkPermission(Project project);
 
-		protected abstract ExecutionResult execute(File gitDir, Map<String, String> gitEnvs);
+		protected abstract int execute(Long projectId, File gitDir, Repository repository);
 
 		@Override
 		public void destroy() throws Exception {
@@ -0,0 +1,33 @@
+package io.onedev.server.git;
+
+import java.util.concurrent.Future;
+
+import io.onedev.server.git.exception.TooManyTransfersException;
+
+/**
+ * Schedules git transfers (upload-pack and receive-pack over smart http and ssh) in their own 
+ * bounded pool, so that a burst of clones can not starve background work such as indexing and 
+ * pull request checks, and vice versa. Transfers exceeding concurrency wait in a queue, and the 
+ * waiting transfer whose user and then project has fewest running transfers is started first.
+ */
+public interface GitTransferManager {
+
+	/**
+	 * Submit a git transfer
+	 * 
+	 * @param userId
+	 * 			id of the user initiating the transfer
+	 * @param projectId
+	 * 			id of the project to transfer with
+	 * @param transfer
+	 * 			transfer to run. It inherits security subject of the submitter
+	 * @return
+	 * 			future of the transfer. Cancelling a waiting transfer removes it from the queue
+	 * @throws TooManyTransfersException
+	 * 			if transfer queue is full
+	 */
+	Future<?> submit(Long userId, Long projectId, Runnable transfer);
+	
+	GitTransferStatus getStatus();
+	
+}
@@ -0,0 +1,55 @@
+package io.onedev.server.git;
+
+import java.io.Serializable;
+
+public class GitTransferStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int runningTransfers;
+
+	private final int maxRunningTransfers;
+
+	private final int waitingTransfers;
+
+	private final int maxWaitingTransfers;
+
+	private final long completedTransfers;
+
+	private final long rejectedTransfers;
+
+	public GitTransferStatus(int runningTransfers, int maxRunningTransfers, int waitingTransfers,
+			int maxWaitingTransfers, long completedTransfers, long rejectedTransfers) {
+		this.runningTransfers = runningTransfers;
+		this.maxRunningTransfers = maxRunningTransfers;
+		this.waitingTransfers = waitingTransfers;
+		this.maxWaitingTransfers = maxWaitingTransfers;
+		this.completedTransfers = completedTransfers;
+		this.rejectedTransfers = rejectedTransfers;
+	}
+
+	public int getRunningTransfers() {
+		return runningTransfers;
+	}
+
+	public int getMaxRunningTransfers() {
+		return maxRunningTransfers;
+	}
+
+	public int getWaitingTransfers() {
+		return waitingTransfers;
+	}
+
+	public int getMaxWaitingTransfers() {
+		return maxWaitingTransfers;
+	}
+
+	public long getCompletedTransfers() {
+		return completedTransfers;
+	}
+
+	public long getRejectedTransfers() {
+		return rejectedTransfers;
+	}
+
+}
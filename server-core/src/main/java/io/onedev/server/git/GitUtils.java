@@ -75,21 +75,43 @@ public class GitUtils {
 	}
 	
 	public static List<DiffEntry> diff(Repository repository, AnyObjectId oldRevId, AnyObjectId newRevId) {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			ObjectId oldTreeId = null;
+			if (!oldRevId.equals(ObjectId.zeroId()))
+				oldTreeId = revWalk.parseCommit(oldRevId).getTree().copy();
+			ObjectId newTreeId = null;
+			if (!newRevId.equals(ObjectId.zeroId()))
+				newTreeId = revWalk.parseCommit(newRevId).getTree().copy();
+			return diffTrees(repository, oldTreeId, newTreeId);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Diff specified trees with rename detection
+	 * 
+	 * @param oldTreeId
+	 * 			id of the old tree, or <tt>null</tt> to diff against an empty tree
+	 * @param newTreeId
+	 * 			id of the new tree, or <tt>null</tt> to diff against an empty tree
+	 */
+	public static List<DiffEntry> diffTrees(Repository repository, @Nullable AnyObjectId oldTreeId, 
+			@Nullable AnyObjectId newTreeId) {
 		List<DiffEntry> diffs = new ArrayList<>();
 		try (	DiffFormatter diffFormatter = new DiffFormatter(NullOutputStream.INSTANCE);
-				RevWalk revWalk = new RevWalk(repository);
 				ObjectReader reader = repository.newObjectReader();) {
 	    	diffFormatter.setRepository(repository);
 	    	diffFormatter.setDetectRenames(true);
 	    	diffFormatter.setDiffComparator(RawTextComparator.DEFAULT);
 	    	
 	    	CanonicalTreeParser oldTreeParser = new CanonicalTreeParser();
-	    	if (!oldRevId.equals(ObjectId.zeroId()))
-	    		oldTreeParser.reset(reader, revWalk.parseCommit(oldRevId).getTree());
+	    	if (oldTreeId != null)
+	    		oldTreeParser.reset(reader, oldTreeId);
 	    	
 	    	CanonicalTreeParser newTreeParser = new CanonicalTreeParser();
-	    	if (!newRevId.equals(ObjectId.zeroId()))
-	    		newTreeParser.reset(reader, revWalk.parseCommit(newRevId).getTree());
+	    	if (newTreeId != null)
+	    		newTreeParser.reset(reader, newTreeId);
 	    	
 	    	for (DiffEntry entry: diffFormatter.scan(oldTreeParser, newTreeParser)) {
 	    		if (!Objects.equal(entry.getOldPath(), entry.getNewPath())
@@ -385,8 +407,9 @@ public class GitUtils {
 
     @Nullable
     public static ObjectId rebase(Repository repository, ObjectId source, ObjectId target, PersonIdent committer) {
-    	try (	RevWalk revWalk = new RevWalk(repository);
-    			ObjectInserter inserter = repository.newObjectInserter();) {
+    	try (	ObjectInserter inserter = new BufferedObjectInserter(repository);
+    			ObjectReader reader = inserter.newReader();
+    			RevWalk revWalk = new RevWalk(reader);) {
     		RevCommit sourceCommit = revWalk.parseCommit(source);
     		RevCommit targetCommit = revWalk.parseCommit(target);
     		revWalk.setRevFilter(RevFilter.NO_MERGES);
@@ -394,9 +417,9 @@ public class GitUtils {
     		Collections.reverse(commits);
     		RevCommit headCommit = targetCommit;
     		for (RevCommit commit: commits) {
-        		ResolveMerger merger = (ResolveMerger) MergeStrategy.RECURSIVE.newMerger(repository, true);
+        		ResolveMerger merger = (ResolveMerger) MergeStrategy.RECURSIVE.newMerger(inserter, repository.getConfig());
         		merger.setBase(commit.getParent(0));
-        		if (merger.merge(headCommit, commit)) {
+        		if (merger.merge(false, headCommit, commit)) {
 					if (!headCommit.getTree().getId().equals(merger.getResultTreeId())) {
 						if (!commit.getTree().getId().equals(merger.getResultTreeId()) 
 								|| !commit.getParent(0).equals(headCommit)) {
@@ -428,12 +451,12 @@ public class GitUtils {
     		boolean useOursOnConflict) {
     	boolean prevUseOursOnConflict = UseOursOnConflict.get();
     	UseOursOnConflict.set(useOursOnConflict);
-    	try (	RevWalk revWalk = new RevWalk(repository);
-    			ObjectInserter inserter = repository.newObjectInserter();) {
+    	try (	ObjectInserter inserter = new BufferedObjectInserter(repository);
+    			RevWalk revWalk = new RevWalk(repository);) {
     		RevCommit sourceCommit = revWalk.parseCommit(sourceCommitId);
     		RevCommit targetCommit = revWalk.parseCommit(targetCommitId);
-    		Merger merger = MergeStrategy.RECURSIVE.newMerger(repository, true);
-    		if (merger.merge(targetCommit, sourceCommit)) {
+    		Merger merger = MergeStrategy.RECURSIVE.newMerger(inserter, repository.getConfig());
+    		if (merger.merge(false, targetCommit, sourceCommit)) {
 		        CommitBuilder mergedCommit = new CommitBuilder();
 		        mergedCommit.setAuthor(author);
 		        mergedCommit.setCommitter(committer);
@@ -3,34 +3,72 @@ package io.onedev.server.git;
 import java.io.IOException;
 import java.util.Date;
 
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
 
+/**
+ * Information of a ref. When created from the ref metadata index, objects of the ref are
+ * only parsed when accessed via {@link #getObj()} or {@link #getPeeledObj()}, while sorting
+ * and other metadata are served from the index directly.
+ */
 public class RefInfo implements Comparable<RefInfo> {
 
 	private final Ref ref;
-	
-	private final RevObject obj;
-	
-	private final RevObject peeledObj;
-	
+
+	private final Repository repository;
+
+	private final ObjectId peeledId;
+
+	private final Date date;
+
+	private final Date commitDate;
+
+	private final PersonIdent authorIdent;
+
+	private RevObject obj;
+
+	private RevObject peeledObj;
+
 	public RefInfo(RevWalk revWalk, Ref ref) {
 		this.ref = ref;
+		repository = null;
 		try {
 			obj = revWalk.parseAny(ref.getObjectId());
 			peeledObj = revWalk.peel(obj);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		peeledId = peeledObj.copy();
+		if (peeledObj instanceof RevCommit) {
+			RevCommit commit = (RevCommit) peeledObj;
+			commitDate = commit.getCommitterIdent().getWhen();
+			authorIdent = commit.getAuthorIdent();
+		} else {
+			commitDate = null;
+			authorIdent = null;
+		}
+		if (obj instanceof RevTag && ((RevTag)obj).getTaggerIdent() != null)
+			date = ((RevTag)obj).getTaggerIdent().getWhen();
+		else
+			date = commitDate;
 	}
-	
-	public RefInfo(Ref ref, RevObject obj, RevObject peeledObj) {
+
+	public RefInfo(Repository repository, Ref ref, ObjectId peeledId, @Nullable Date date,
+			@Nullable Date commitDate, @Nullable PersonIdent authorIdent) {
 		this.ref = ref;
-		this.obj = obj;
-		this.peeledObj = peeledObj;
+		this.repository = repository;
+		this.peeledId = peeledId;
+		this.date = date;
+		this.commitDate = commitDate;
+		this.authorIdent = authorIdent;
 	}
 
 	public Ref getRef() {
@@ -38,43 +76,72 @@ public class RefInfo implements Comparable<RefInfo> {
 	}
 
 	public RevObject getObj() {
+		if (obj == null)
+			parse();
 		return obj;
 	}
 
 	public RevObject getPeeledObj() {
+		if (peeledObj == null)
+			parse();
 		return peeledObj;
 	}
 
+	private void parse() {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			obj = revWalk.parseAny(ref.getObjectId());
+			peeledObj = revWalk.peel(obj);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public ObjectId getPeeledId() {
+		return peeledId;
+	}
+
+	/**
+	 * @return
+	 * 			date of the annotated tag if available, otherwise date of the peeled commit,
+	 * 			or <tt>null</tt> if ref is not pointing to a commit
+	 */
+	@Nullable
+	public Date getDate() {
+		return date;
+	}
+
+	/**
+	 * @return
+	 * 			committer date of the peeled commit, or <tt>null</tt> if ref is not pointing
+	 * 			to a commit
+	 */
+	@Nullable
+	public Date getCommitDate() {
+		return commitDate;
+	}
+
+	/**
+	 * @return
+	 * 			author of the peeled commit, or <tt>null</tt> if ref is not pointing to a commit
+	 */
+	@Nullable
+	public PersonIdent getAuthorIdent() {
+		return authorIdent;
+	}
+
 	@Override
 	public int compareTo(RefInfo other) {
-		Date date;
-		if (obj instanceof RevTag && ((RevTag)obj).getTaggerIdent() != null) {
-			date =  ((RevTag)obj).getTaggerIdent().getWhen();
-		} else if (peeledObj instanceof RevCommit) {
-			date = ((RevCommit)peeledObj).getCommitterIdent().getWhen();
-		} else {
-			date = null;
-		}
-		Date otherDate;
-		if (other.obj instanceof RevTag && ((RevTag)other.obj).getTaggerIdent() != null) {
-			otherDate =  ((RevTag)other.obj).getTaggerIdent().getWhen();
-		} else if (other.peeledObj instanceof RevCommit) {
-			otherDate = ((RevCommit)other.peeledObj).getCommitterIdent().getWhen();
-		} else {
-			otherDate = null;
-		}
-		
 		if (date != null) {
-			if (otherDate != null)
-				return date.compareTo(otherDate);
+			if (other.date != null)
+				return date.compareTo(other.date);
 			else
 				return 1;
 		} else {
-			if (otherDate != null)
+			if (other.date != null)
 				return -1;
 			else
 				return getRef().getName().compareTo(other.getRef().getName());
 		}
 	}
-	
+
 }
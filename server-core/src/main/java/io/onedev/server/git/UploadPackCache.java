@@ -0,0 +1,48 @@
+package io.onedev.server.git;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Cache of upload-pack responses. CI agents tend to clone the same commit of a project at 
+ * the same time, and the pack only needs to be computed once for all of them. Responses are 
+ * keyed by project, normalized request and ref state of the repository. Response is streamed 
+ * to the client while it is being written to the cache, and identical requests arriving in the 
+ * meantime follow the growing response instead of starting their own computation.
+ */
+public interface UploadPackCache {
+
+	/**
+	 * Serve an upload-pack request in stateless rpc mode. Only requests finishing negotiation
+	 * (containing the <tt>done</tt> line) are cached, others are passed through to specified
+	 * upload pack directly
+	 * 
+	 * @param projectId
+	 * 			id of the project to serve request for
+	 * @param repository
+	 * 			repository of the project, used to get ref state
+	 * @param request
+	 * 			body of the upload-pack request. Small requests are buffered to calculate 
+	 * 			the cache key, while large ones are streamed to upload pack directly
+	 * @param output
+	 * 			output to write response to
+	 * @param uploadPack
+	 * 			upload pack to compute response if it is not cached
+	 */
+	void serve(Long projectId, Repository repository, InputStream request, OutputStream output, 
+			UploadPack uploadPack);
+	
+	UploadPackCacheStatus getStatus();
+	
+	interface UploadPack {
+		
+		/**
+		 * Run git upload-pack in stateless rpc mode
+		 */
+		void run(InputStream input, OutputStream output);
+		
+	}
+	
+}
@@ -0,0 +1,67 @@
+package io.onedev.server.git;
+
+import java.io.Serializable;
+
+public class UploadPackCacheStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long hits;
+
+	private final long misses;
+
+	private final long bytesSaved;
+
+	private final int entries;
+
+	private final long size;
+
+	public UploadPackCacheStatus(long hits, long misses, long bytesSaved, int entries, long size) {
+		this.hits = hits;
+		this.misses = misses;
+		this.bytesSaved = bytesSaved;
+		this.entries = entries;
+		this.size = size;
+	}
+
+	/**
+	 * @return
+	 * 			number of cacheable requests served from cache, including those waiting for an 
+	 * 			identical request in flight
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return
+	 * 			number of cacheable requests for which response has to be computed
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return
+	 * 			bytes of responses served without computing
+	 */
+	public long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	public int getEntries() {
+		return entries;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getHitRatio() {
+		if (hits + misses != 0)
+			return (int) (hits * 100 / (hits + misses));
+		else
+			return 0;
+	}
+
+}
@@ -21,6 +21,8 @@ public class FetchCommand extends GitCommand<Void> {
     
     private int depth;
     
+    private boolean prune;
+    
     private String[] refspec = new String[0];
     
 	public FetchCommand(File gitDir, @Nullable Map<String, String> environments) {
@@ -42,6 +44,11 @@ public class FetchCommand extends GitCommand<Void> {
 		return this;
 	}
 	
+	public FetchCommand prune(boolean prune) {
+		this.prune = prune;
+		return this;
+	}
+	
 	@Override
 	public Void call() {
 	    Preconditions.checkNotNull(from, "from param has to be specified.");
@@ -51,6 +58,8 @@ public class FetchCommand extends GitCommand<Void> {
 		cmd.addArgs("--force", "--quiet");
 		if (depth != 0)
 			cmd.addArgs("--depth", String.valueOf(depth));
+		if (prune)
+			cmd.addArgs("--prune");
 		
 		for (String each: refspec)
 			cmd.addArgs(each);
@@ -0,0 +1,54 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import io.onedev.commons.utils.command.LineConsumer;
+
+public class PruneCommand extends GitCommand<Void> {
+
+	private static final Logger logger = LoggerFactory.getLogger(PruneCommand.class);
+	
+	private String expire;
+	
+	public PruneCommand(File gitDir) {
+		super(gitDir);
+	}
+
+	/**
+	 * Only prune unreachable loose objects older than specified expiration, for instance 
+	 * "2.weeks.ago". This protects objects of pushes still in progress
+	 */
+	public PruneCommand expire(String expire) {
+		this.expire = expire;
+		return this;
+	}
+	
+	@Override
+	public Void call() {
+		Preconditions.checkNotNull(expire, "expire has to be specified.");
+		
+		cmd().addArgs("prune", "--expire", expire).execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.trace(line);
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		return null;
+	}
+
+}
@@ -0,0 +1,95 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.LineConsumer;
+
+public class RepackCommand extends GitCommand<Void> {
+
+	private static final Logger logger = LoggerFactory.getLogger(RepackCommand.class);
+	
+	private boolean all;
+	
+	private boolean writeBitmap;
+	
+	private boolean local;
+	
+	private boolean keepUnreachable;
+	
+	public RepackCommand(File gitDir) {
+		super(gitDir);
+	}
+
+	/**
+	 * Whether or not to pack all reachable objects into a single pack. If not specified, 
+	 * only loose objects will be packed into a new pack
+	 */
+	public RepackCommand all(boolean all) {
+		this.all = all;
+		return this;
+	}
+	
+	/**
+	 * Whether or not to write reachability bitmap. Only takes effect when all objects 
+	 * are packed
+	 */
+	public RepackCommand writeBitmap(boolean writeBitmap) {
+		this.writeBitmap = writeBitmap;
+		return this;
+	}
+	
+	/**
+	 * Whether or not to exclude objects borrowed from alternate object directories
+	 */
+	public RepackCommand local(boolean local) {
+		this.local = local;
+		return this;
+	}
+	
+	/**
+	 * Whether or not to keep unreachable objects when all objects are packed. This is 
+	 * necessary for object pools, as objects of the pool may be referenced by other 
+	 * repositories without being reachable from refs of the pool  
+	 */
+	public RepackCommand keepUnreachable(boolean keepUnreachable) {
+		this.keepUnreachable = keepUnreachable;
+		return this;
+	}
+	
+	@Override
+	public Void call() {
+		Commandline cmd = cmd().addArgs("repack", "-d", "-q");
+		if (all) {
+			cmd.addArgs("-a");
+			if (writeBitmap)
+				cmd.addArgs("--write-bitmap-index");
+			if (keepUnreachable)
+				cmd.addArgs("-k");
+		}
+		if (local)
+			cmd.addArgs("-l");
+		
+		cmd.execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.trace(line);
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		return null;
+	}
+
+}
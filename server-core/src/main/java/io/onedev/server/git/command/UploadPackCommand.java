@@ -3,7 +3,6 @@ package io.onedev.server.git.command;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Map;
 
 import com.google.common.base.Preconditions;
 
@@ -20,8 +19,8 @@ public class UploadPackCommand extends GitCommand<ExecutionResult> {
 	
 	private boolean statelessRpc;
 	
-	public UploadPackCommand(File gitDir, Map<String, String> environments) {
-		super(gitDir, environments);
+	public UploadPackCommand(File gitDir) {
+		super(gitDir);
 	}
 	
 	public UploadPackCommand stdin(InputStream stdin) {
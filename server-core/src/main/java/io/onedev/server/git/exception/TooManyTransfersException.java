@@ -0,0 +1,22 @@
+package io.onedev.server.git.exception;
+
+public class TooManyTransfersException extends GitException {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final int retryAfter;
+
+	public TooManyTransfersException(String message, int retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return
+	 * 			suggested seconds to wait before retrying
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+	
+}
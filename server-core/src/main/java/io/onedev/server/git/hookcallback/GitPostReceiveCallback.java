@@ -1,42 +1,30 @@
 package io.onedev.server.git.hookcallback;
 
-import java.io.IOException;
-import java.net.InetAddress;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 
-import org.apache.shiro.util.ThreadContext;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.transport.ReceiveCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Preconditions;
-
 import io.onedev.commons.launcher.loader.ListenerRegistry;
-import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.RefUpdated;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.SessionManager;
-import io.onedev.server.security.SecurityUtils;
 
-@SuppressWarnings("serial")
 @Singleton
-public class GitPostReceiveCallback extends HttpServlet {
+public class GitPostReceiveCallback {
 
 	private static final Logger logger = LoggerFactory.getLogger(GitPostReceiveCallback.class);
 	
-    public static final String PATH = "/git-postreceive-callback";
-    
     private final ProjectManager projectManager;
 
     private final ListenerRegistry listenerRegistry;
@@ -50,45 +38,19 @@ public class GitPostReceiveCallback extends HttpServlet {
         this.listenerRegistry = listenerRegistry;
     }
 
-    @Override
-	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        String clientIp = request.getHeader("X-Forwarded-For");
-        if (clientIp == null) clientIp = request.getRemoteAddr();
-
-        if (!InetAddress.getByName(clientIp).isLoopbackAddress()) {
-            response.sendError(HttpServletResponse.SC_FORBIDDEN,
-                    "Git hook callbacks can only be accessed from localhost.");
-            return;
-        }
-
-        List<String> fields = StringUtils.splitAndTrim(request.getPathInfo(), "/");
-        Preconditions.checkState(fields.size() == 2);
-        
-        Long projectId = Long.valueOf(fields.get(0));
-        Long userId = Long.valueOf(fields.get(1));
-        ThreadContext.bind(SecurityUtils.asSubject(userId));
-
-        String refUpdateInfo = null;
-        Enumeration<String> paramNames = request.getParameterNames();
-        while (paramNames.hasMoreElements()) {
-        	String paramName = paramNames.nextElement();
-        	if (paramName.contains(" ")) {
-        		refUpdateInfo = paramName;
-        	} 
-        }
-        Preconditions.checkState(refUpdateInfo != null, "Git ref update information is not available");
-        
-        /*
-         * If multiple refs are updated, the hook stdin will put each ref update info into
-         * a separate line, however the line breaks is omitted when forward the hook stdin
-         * to curl via "@-", below logic is used to parse these info correctly even 
-         * without line breaks.  
-         */
-        refUpdateInfo = StringUtils.reverse(StringUtils.remove(refUpdateInfo, '\n'));
-        
-        fields.clear();
-        fields.addAll(StringUtils.splitAndTrim(refUpdateInfo, " "));
-        
+    /**
+     * Post {@link RefUpdated} events for successful ref updates of a push. Events are posted 
+     * asynchronously so that the pusher does not need to wait for listeners
+     */
+    public void onPostReceive(Long projectId, Collection<ReceiveCommand> commands) {
+    	List<ReceiveCommand> succeededCommands = new ArrayList<>();
+    	for (ReceiveCommand command: commands) {
+    		if (command.getResult() == ReceiveCommand.Result.OK)
+    			succeededCommands.add(command);
+    	}
+    	if (succeededCommands.isEmpty())
+    		return;
+    	
         sessionManager.runAsync(new Runnable() {
 
 			@Override
@@ -96,14 +58,10 @@ public class GitPostReceiveCallback extends HttpServlet {
 		        try {
 		            Project project = projectManager.load(projectId);
 		            
-			        int pos = 0;
-			        while (true) {
-			        	String refName = StringUtils.reverse(fields.get(pos));
-			        	pos++;
-			        	ObjectId newObjectId = ObjectId.fromString(StringUtils.reverse(fields.get(pos)));
-			        	pos++;
-			        	String field = fields.get(pos);
-			        	ObjectId oldObjectId = ObjectId.fromString(StringUtils.reverse(field.substring(0, 40)));
+		            for (ReceiveCommand command: succeededCommands) {
+			        	String refName = command.getRefName();
+			        	ObjectId oldObjectId = command.getOldId();
+			        	ObjectId newObjectId = command.getNewId();
 			        	
 			        	if (!newObjectId.equals(ObjectId.zeroId())) {
 			        		project.cacheObjectId(refName, newObjectId);
@@ -119,13 +77,7 @@ public class GitPostReceiveCallback extends HttpServlet {
 			        	}
 
 			        	listenerRegistry.post(new RefUpdated(project, refName, oldObjectId, newObjectId));
-			    		
-			        	field = field.substring(40);
-			        	if (field.length() == 0)
-			        		break;
-			        	else
-			        		fields.set(pos, field);
-			        }
+		            }
 		        } catch (Exception e) {
 		        	logger.error("Error executing post-receive callback", e);
 				}
@@ -0,0 +1,54 @@
+package io.onedev.server.git.hookcallback;
+
+import java.util.Collection;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PostReceiveHook;
+import org.eclipse.jgit.transport.PreReceiveHook;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+
+/**
+ * Create in-process receive packs for pushes. Pre-receive and post-receive callbacks are 
+ * called directly as JGit hooks, instead of being called back from native git hooks via 
+ * curl.
+ */
+@Singleton
+public class GitReceivePackFactory {
+
+	private final GitPreReceiveCallback preReceiveCallback;
+	
+	private final GitPostReceiveCallback postReceiveCallback;
+	
+	@Inject
+	public GitReceivePackFactory(GitPreReceiveCallback preReceiveCallback, 
+			GitPostReceiveCallback postReceiveCallback) {
+		this.preReceiveCallback = preReceiveCallback;
+		this.postReceiveCallback = postReceiveCallback;
+	}
+	
+	public ReceivePack newReceivePack(Long projectId, Repository repository) {
+		ReceivePack receivePack = new ReceivePack(repository);
+		receivePack.setPreReceiveHook(new PreReceiveHook() {
+
+			@Override
+			public void onPreReceive(ReceivePack rp, Collection<ReceiveCommand> commands) {
+				preReceiveCallback.onPreReceive(projectId, rp, commands);
+			}
+			
+		});
+		receivePack.setPostReceiveHook(new PostReceiveHook() {
+
+			@Override
+			public void onPostReceive(ReceivePack rp, Collection<ReceiveCommand> commands) {
+				postReceiveCallback.onPostReceive(projectId, commands);
+			}
+			
+		});
+		return receivePack;
+	}
+	
+}
@@ -1,37 +1,31 @@
 package io.onedev.server.git.hookcallback;
 
-import java.io.IOException;
-
-import javax.servlet.ServletOutputStream;
+import org.eclipse.jgit.transport.ReceivePack;
 
 public class Output {
 
-	private ServletOutputStream stream;
+	private final ReceivePack receivePack;
+	
+	private boolean error;
 	
-	public Output(ServletOutputStream stream) {
-		this.stream = stream;
+	public Output(ReceivePack receivePack) {
+		this.receivePack = receivePack;
 	}
 	
     public void writeLine(String line) {
-    	if (line.matches("\\*+"))
-    		line = line + " ";
-        try {
-			stream.println(line);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+    	receivePack.sendMessage(line);
     }
     
     public void writeLine() {
-        try {
-			stream.println(" ");
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+    	receivePack.sendMessage("");
     }
 
     public void markError() {
-        writeLine("ERROR");
+    	error = true;
+    }
+    
+    public boolean isError() {
+    	return error;
     }
 
 }
@@ -0,0 +1,33 @@
+package io.onedev.server.infomanager;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.model.Project;
+
+public interface BlameInfoManager {
+
+	/**
+	 * Get blame of specified file. Blame result is cached persistently, and is derived from 
+	 * cached blame of parent commit if possible to avoid running git blame 
+	 * 
+	 * @param project
+	 * 			project to get blame in
+	 * @param commitId
+	 * 			commit to get blame at
+	 * @param path
+	 * 			path of the file to blame
+	 * @param range
+	 * 			0-indexed and inclusive line range to get blame of, <tt>null</tt> to get blame of 
+	 * 			whole file
+	 * @return
+	 * 			blame blocks of specified file
+	 */
+	Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String path, @Nullable LinearRange range);
+	
+}
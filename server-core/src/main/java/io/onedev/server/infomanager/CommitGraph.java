@@ -0,0 +1,180 @@
+package io.onedev.server.infomanager;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+
+/**
+ * In-memory reachability index of collected commits. Each commit is assigned a dense ordinal
+ * and child/parent relations are kept as primitive ordinal arrays, so that reachability queries 
+ * can be answered by walking int arrays instead of reading commits store one commit at a time.
+ */
+class CommitGraph {
+
+	private static final int[] NO_RELATIONS = new int[0];
+
+	private final ObjectIdOwnerMap<Node> nodes = new ObjectIdOwnerMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Node[] nodesByOrdinal = new Node[1024];
+
+	private int size;
+
+	private Node getOrAddNode(AnyObjectId commitId) {
+		Node node = nodes.get(commitId);
+		if (node == null) {
+			if (size == nodesByOrdinal.length)
+				nodesByOrdinal = Arrays.copyOf(nodesByOrdinal, size*2);
+			node = new Node(commitId, size);
+			nodesByOrdinal[size++] = node;
+			nodes.add(node);
+		}
+		return node;
+	}
+
+	public void addChild(AnyObjectId parentId, AnyObjectId childId) {
+		lock.writeLock().lock();
+		try {
+			Node parent = getOrAddNode(parentId);
+			Node child = getOrAddNode(childId);
+			for (int i=0; i<parent.childCount; i++) {
+				if (parent.children[i] == child.ordinal)
+					return;
+			}
+			if (parent.childCount == parent.children.length)
+				parent.children = Arrays.copyOf(parent.children, Math.max(2, parent.childCount*2));
+			parent.children[parent.childCount++] = child.ordinal;
+			if (child.parentCount == child.parents.length)
+				child.parents = Arrays.copyOf(child.parents, Math.max(1, child.parentCount*2));
+			child.parents[child.parentCount++] = parent.ordinal;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Set<ObjectId> getDescendants(Collection<ObjectId> ancestors) {
+		Set<ObjectId> descendants = new HashSet<>(ancestors);
+		lock.readLock().lock();
+		try {
+			BitSet visited = new BitSet(size);
+			int[] stack = new int[16];
+			int top = 0;
+			for (ObjectId ancestor: ancestors) {
+				Node node = nodes.get(ancestor);
+				if (node != null && !visited.get(node.ordinal)) {
+					visited.set(node.ordinal);
+					if (top == stack.length)
+						stack = Arrays.copyOf(stack, top*2);
+					stack[top++] = node.ordinal;
+				}
+			}
+			while (top != 0) {
+				Node current = nodesByOrdinal[stack[--top]];
+				for (int i=0; i<current.childCount; i++) {
+					int child = current.children[i];
+					if (!visited.get(child)) {
+						visited.set(child);
+						descendants.add(nodesByOrdinal[child].copy());
+						if (top == stack.length)
+							stack = Arrays.copyOf(stack, top*2);
+						stack[top++] = child;
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return descendants;
+	}
+
+	/**
+	 * Get commits reachable from specified descendant among specified candidates
+	 * 
+	 * @return
+	 * 			candidates reachable from the descendant, including the descendant itself if 
+	 * 			it is a candidate, or <tt>null</tt> if the descendant is not indexed
+	 */
+	@Nullable
+	public Set<ObjectId> filterAncestors(ObjectId descendant, Collection<ObjectId> candidates) {
+		lock.readLock().lock();
+		try {
+			Node node = nodes.get(descendant);
+			if (node == null)
+				return null;
+			
+			Set<ObjectId> ancestors = new HashSet<>();
+			BitSet candidateOrdinals = new BitSet(size);
+			for (ObjectId candidate: candidates) {
+				Node candidateNode = nodes.get(candidate);
+				if (candidateNode != null)
+					candidateOrdinals.set(candidateNode.ordinal);
+			}
+			int remaining = candidateOrdinals.cardinality();
+			
+			BitSet visited = new BitSet(size);
+			int[] stack = new int[16];
+			int top = 0;
+			visited.set(node.ordinal);
+			stack[top++] = node.ordinal;
+			while (top != 0 && remaining != 0) {
+				Node current = nodesByOrdinal[stack[--top]];
+				if (candidateOrdinals.get(current.ordinal)) {
+					ancestors.add(current.copy());
+					remaining--;
+				}
+				for (int i=0; i<current.parentCount; i++) {
+					int parent = current.parents[i];
+					if (!visited.get(parent)) {
+						visited.set(parent);
+						if (top == stack.length)
+							stack = Arrays.copyOf(stack, top*2);
+						stack[top++] = parent;
+					}
+				}
+			}
+			return ancestors;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private static class Node extends ObjectIdOwnerMap.Entry {
+
+		final int ordinal;
+
+		int[] children = NO_RELATIONS;
+
+		int childCount;
+		
+		int[] parents = NO_RELATIONS;
+		
+		int parentCount;
+
+		Node(AnyObjectId id, int ordinal) {
+			super(id);
+			this.ordinal = ordinal;
+		}
+
+	}
+
+}
@@ -4,6 +4,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.server.git.GitContribution;
@@ -36,6 +38,23 @@ public interface CommitInfoManager {
 	 */
 	Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors);
 	
+	/**
+	 * Get which of specified candidate commits are ancestors of specified commit
+	 * 
+	 * @param project
+	 * 			project to check ancestors
+	 * @param descendant
+	 * 			commit to check ancestors of
+	 * @param candidates
+	 * 			candidate commits
+	 * @return
+	 * 			candidate commits which are ancestors of the descendant commit (including the descendant 
+	 * 			itself if it is a candidate), or <tt>null</tt> if the descendant commit has not been 
+	 * 			cached yet
+	 */
+	@Nullable
+	Collection<ObjectId> filterAncestors(Project project, ObjectId descendant, Collection<ObjectId> candidates);
+	
 	void cloneInfo(Project from, Project to);
 	
 	Collection<String> getHistoryPaths(Project project, String path);
@@ -0,0 +1,327 @@
+package io.onedev.server.infomanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.git.BlameCommit;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.storage.StorageManager;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+@Singleton
+public class DefaultBlameInfoManager extends AbstractEnvironmentManager implements BlameInfoManager {
+
+	private static final int INFO_VERSION = 2;
+
+	private static final long LOG_FILE_SIZE = 256*1024;
+
+	private static final String INFO_DIR = "blame";
+
+	private static final String DEFAULT_STORE = "default";
+
+	private static final String BLAMES_STORE = "blames";
+
+	// Maps sequence of storing to blame key, used to evict earliest stored blames
+	private static final String SEQUENCES_STORE = "sequences";
+
+	private static final ByteIterable NEXT_SEQUENCE_KEY = new StringByteIterable("nextSequence");
+
+	// Maximum number of cached blames per project
+	private static final int MAX_BLAMES = 10000;
+
+	private final StorageManager storageManager;
+
+	private final ProjectManager projectManager;
+
+	@Inject
+	public DefaultBlameInfoManager(StorageManager storageManager, ProjectManager projectManager) {
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+	}
+
+	@Override
+	public Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String path,
+			@Nullable LinearRange range) {
+		BlameCommit[] lineCommits = getLineCommits(project, commitId, path);
+		if (lineCommits == null) {
+			BlameCommand cmd = new BlameCommand(project.getGitDir());
+			cmd.commitHash(commitId.name()).file(path).range(range);
+			return cmd.call();
+		} else {
+			int from, to;
+			if (range != null) {
+				from = Math.max(0, range.getFrom());
+				to = Math.min(lineCommits.length-1, range.getTo());
+			} else {
+				from = 0;
+				to = lineCommits.length-1;
+			}
+			return toBlocks(lineCommits, from, to);
+		}
+	}
+
+	/**
+	 * Get commit of each line of specified file
+	 *
+	 * @return
+	 * 			array of line commits, or <tt>null</tt> if blame can not be cached for specified file
+	 */
+	@Nullable
+	private BlameCommit[] getLineCommits(Project project, ObjectId commitId, String path) {
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, BLAMES_STORE);
+
+		ByteIterable key = getKey(commitId, path);
+		BlameCommit[] lineCommits = readLineCommits(env, store, key);
+		if (lineCommits != null)
+			return lineCommits;
+
+		Repository repository = project.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			RevCommit commit = revWalk.parseCommit(commitId);
+			TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree());
+			if (treeWalk == null || treeWalk.getFileMode(0) != FileMode.REGULAR_FILE
+					&& treeWalk.getFileMode(0) != FileMode.EXECUTABLE_FILE) {
+				return null;
+			}
+			ObjectId blobId = treeWalk.getObjectId(0);
+
+			/*
+			 * If file is not changed from the only parent, git passes blame of all lines to 
+			 * the parent, so cached blame of the parent can be reused. Otherwise blame is 
+			 * always calculated by git, so that result does not depend on what is cached
+			 */
+			if (commit.getParentCount() == 1) {
+				RevCommit parent = revWalk.parseCommit(commit.getParent(0));
+				TreeWalk parentTreeWalk = TreeWalk.forPath(repository, path, parent.getTree());
+				if (parentTreeWalk != null && parentTreeWalk.getObjectId(0).equals(blobId))
+					lineCommits = readLineCommits(env, store, getKey(parent, path));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (lineCommits == null) {
+			BlameCommand cmd = new BlameCommand(project.getGitDir());
+			cmd.commitHash(commitId.name()).file(path);
+			List<BlameCommit> lineCommitList = new ArrayList<>();
+			for (BlameBlock block: cmd.call()) {
+				for (LinearRange range: block.getRanges()) {
+					for (int i=range.getFrom(); i<=range.getTo(); i++) {
+						while (lineCommitList.size() <= i)
+							lineCommitList.add(null);
+						lineCommitList.set(i, block.getCommit());
+					}
+				}
+			}
+			if (lineCommitList.contains(null))
+				return null;
+			lineCommits = lineCommitList.toArray(new BlameCommit[0]);
+		}
+
+		byte[] bytes = serialize(lineCommits);
+		Store defaultStore = getStore(env, DEFAULT_STORE);
+		Store sequencesStore = getStore(env, SEQUENCES_STORE);
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				store.put(txn, key, new ArrayByteIterable(bytes));
+
+				long sequence = readLong(defaultStore, txn, NEXT_SEQUENCE_KEY, 0);
+				sequencesStore.put(txn, new LongByteIterable(sequence), key);
+				writeLong(defaultStore, txn, NEXT_SEQUENCE_KEY, sequence+1);
+
+				// Evict blames stored earliest when exceeding the limit
+				if (store.count(txn) > MAX_BLAMES) {
+					Cursor cursor = sequencesStore.openCursor(txn);
+					try {
+						while (store.count(txn) > MAX_BLAMES && cursor.getNext()) {
+							store.delete(txn, cursor.getValue());
+							cursor.deleteCurrent();
+						}
+					} finally {
+						cursor.close();
+					}
+				}
+			}
+
+		});
+		return lineCommits;
+	}
+
+	@Nullable
+	private BlameCommit[] readLineCommits(Environment env, Store store, ByteIterable key) {
+		byte[] bytes = env.computeInReadonlyTransaction(new TransactionalComputable<byte[]>() {
+
+			@Override
+			public byte[] compute(Transaction txn) {
+				return readBytes(store, txn, key);
+			}
+
+		});
+		if (bytes != null)
+			return deserialize(bytes);
+		else
+			return null;
+	}
+
+	private ByteIterable getKey(ObjectId commitId, String path) {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		byte[] keyBytes = new byte[20 + pathBytes.length];
+		commitId.copyRawTo(keyBytes, 0);
+		System.arraycopy(pathBytes, 0, keyBytes, 20, pathBytes.length);
+		return new ArrayByteIterable(keyBytes);
+	}
+
+	private Collection<BlameBlock> toBlocks(BlameCommit[] lineCommits, int from, int to) {
+		Map<String, BlameBlock> blocks = new LinkedHashMap<>();
+		int beginLine = from;
+		for (int i=from; i<=to; i++) {
+			if (i == to || !lineCommits[i+1].getHash().equals(lineCommits[i].getHash())) {
+				BlameBlock block = blocks.get(lineCommits[i].getHash());
+				if (block == null) {
+					block = new BlameBlock(lineCommits[i], new ArrayList<>());
+					blocks.put(lineCommits[i].getHash(), block);
+				}
+				block.getRanges().add(new LinearRange(beginLine, i));
+				beginLine = i+1;
+			}
+		}
+		return blocks.values();
+	}
+
+	/*
+	 * Serialized as list of distinct commits, followed by commit index of each line
+	 */
+	private byte[] serialize(BlameCommit[] lineCommits) {
+		Map<String, Integer> commitIndexes = new LinkedHashMap<>();
+		List<BlameCommit> commits = new ArrayList<>();
+		for (BlameCommit commit: lineCommits) {
+			if (!commitIndexes.containsKey(commit.getHash())) {
+				commitIndexes.put(commit.getHash(), commits.size());
+				commits.add(commit);
+			}
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(baos)) {
+			out.writeInt(commits.size());
+			for (BlameCommit commit: commits) {
+				out.writeUTF(commit.getHash());
+				out.writeUTF(commit.getSubject());
+				writePerson(out, commit.getCommitter());
+				writePerson(out, commit.getAuthor());
+			}
+			out.writeInt(lineCommits.length);
+			for (BlameCommit commit: lineCommits)
+				out.writeInt(commitIndexes.get(commit.getHash()));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	private BlameCommit[] deserialize(byte[] bytes) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			BlameCommit[] commits = new BlameCommit[in.readInt()];
+			for (int i=0; i<commits.length; i++) {
+				String hash = in.readUTF();
+				String subject = in.readUTF();
+				PersonIdent committer = readPerson(in);
+				PersonIdent author = readPerson(in);
+				commits[i] = new BlameCommit(hash, committer, author, subject);
+			}
+			BlameCommit[] lineCommits = new BlameCommit[in.readInt()];
+			for (int i=0; i<lineCommits.length; i++)
+				lineCommits[i] = commits[in.readInt()];
+			return lineCommits;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writePerson(DataOutputStream out, PersonIdent person) throws IOException {
+		out.writeUTF(person.getName());
+		out.writeUTF(person.getEmailAddress());
+		out.writeLong(person.getWhen().getTime());
+	}
+
+	private PersonIdent readPerson(DataInputStream in) throws IOException {
+		String name = in.readUTF();
+		String email = in.readUTF();
+		Date when = new Date(in.readLong());
+		return GitUtils.newPersonIdent(name, email, when);
+	}
+
+	@Sessional
+	@Listen
+	public void on(SystemStarted event) {
+		for (Project project: projectManager.query())
+			checkVersion(project.getId().toString());
+	}
+
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project)
+			removeEnv(event.getEntity().getId().toString());
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	@Override
+	protected long getLogFileSize() {
+		return LOG_FILE_SIZE;
+	}
+
+}
@@ -16,9 +16,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
@@ -39,9 +40,13 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.PathUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
@@ -67,6 +72,7 @@ import io.onedev.server.util.ElementPumper;
 import io.onedev.server.util.IssueUtils;
 import io.onedev.server.util.NameAndEmail;
 import io.onedev.server.util.Pair;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.concurrent.Prioritized;
 import io.onedev.server.util.work.BatchWorkManager;
 import io.onedev.server.util.work.BatchWorker;
@@ -75,6 +81,7 @@ import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.backup.BackupStrategy;
 import jetbrains.exodus.backup.BackupStrategy.FileDescriptor;
 import jetbrains.exodus.backup.VirtualFileDescriptor;
+import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.Transaction;
@@ -288,13 +295,29 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private final Map<Long, List<NameAndEmail>> usersCache = new ConcurrentHashMap<>();
 	
+	private final Cache<Long, CommitGraph> commitGraphs;
+	
 	@Inject
 	public DefaultCommitInfoManager(ProjectManager projectManager, StorageManager storageManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager) {
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, ServerConfig serverConfig) {
 		this.projectManager = projectManager;
 		this.storageManager = storageManager;
 		this.batchWorkManager = batchWorkManager;
 		this.sessionManager = sessionManager;
+		
+		// Total number of commits in loaded commit graphs, measured when graphs are loaded
+		commitGraphs = CacheBuilder.newBuilder()
+				.maximumWeight(serverConfig.getCommitGraphCommits())
+				.weigher(new Weigher<Long, CommitGraph>() {
+
+					@Override
+					public int weigh(Long key, CommitGraph value) {
+						return value.size();
+					}
+					
+				})
+				.expireAfterAccess(serverConfig.getCommitGraphIdleTime(), TimeUnit.SECONDS)
+				.build();
 	}
 	
 	private boolean isCommitCollected(byte[] commitBytes) {
@@ -351,11 +374,16 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 				@Override
 				public void process(ObjectId untilCommitId, ObjectId sinceCommitId) {
+					List<Pair<ObjectId, ObjectId>> newEdges = new ArrayList<>();
+					
 					env.executeInTransaction(new TransactionalExecutable() {
 						
 						@SuppressWarnings("unchecked")
 						@Override
 						public void execute(Transaction txn) {
+							// Transaction might be re-executed on conflict
+							newEdges.clear();
+							
 							AtomicInteger totalCommitCount = new AtomicInteger(readInt(defaultStore, txn, COMMIT_COUNT_KEY, 0));
 							
 							NextIndex nextIndex = new NextIndex();
@@ -420,7 +448,9 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 										commitsStore.put(txn, currentCommitKey, new ArrayByteIterable(newCurrentCommitBytes));
 										
 										for (String parentCommitHash: currentCommit.getParentHashes()) {
-											ByteIterable parentCommitKey = new CommitByteIterable(ObjectId.fromString(parentCommitHash));
+											ObjectId parentCommitId = ObjectId.fromString(parentCommitHash);
+											newEdges.add(new Pair<>(parentCommitId, currentCommitId));
+											ByteIterable parentCommitKey = new CommitByteIterable(parentCommitId);
 											byte[] parentCommitBytes = readBytes(commitsStore, txn, parentCommitKey);
 											byte[] newParentCommitBytes;
 											if (parentCommitBytes != null) {
@@ -561,6 +591,24 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 							defaultStore.put(txn, LAST_COMMIT_KEY, new CommitByteIterable(untilCommitId));
 						}
 					});
+					
+					/*
+					 * Update commit graph incrementally if it is already loaded. Otherwise it will 
+					 * be loaded from commits store on first query, including the newly added edges. 
+					 * Lock against graph loading of the project so that edges committed while loading 
+					 * are not lost 
+					 */
+					Lock commitGraphLock = LockUtils.getLock(getCommitGraphLockKey(project.getId()));
+					commitGraphLock.lock();
+					try {
+						CommitGraph commitGraph = commitGraphs.getIfPresent(project.getId());
+						if (commitGraph != null) {
+							for (Pair<ObjectId, ObjectId> edge: newEdges)
+								commitGraph.addChild(edge.getFirst(), edge.getSecond());
+						}
+					} finally {
+						commitGraphLock.unlock();
+					}
 				}
 				
 			});
@@ -1031,49 +1079,69 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		}
 	}
 	
-	@Override
-	public Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors) {
-		Environment env = getEnv(project.getId().toString());
-		final Store store = getStore(env, COMMITS_STORE);
-
-		return env.computeInReadonlyTransaction(new TransactionalComputable<Set<ObjectId>>() {
+	private String getCommitGraphLockKey(Long projectId) {
+		return "commit-graph:" + projectId;
+	}
+	
+	/*
+	 * Graphs are loaded under lock of the project, so that loading a large graph does not block 
+	 * graph access of other projects. Idle graphs are evicted and loaded again when needed 
+	 */
+	private CommitGraph getCommitGraph(Project project) {
+		CommitGraph commitGraph = commitGraphs.getIfPresent(project.getId());
+		if (commitGraph == null) {
+			Lock commitGraphLock = LockUtils.getLock(getCommitGraphLockKey(project.getId()));
+			commitGraphLock.lock();
+			try {
+				commitGraph = commitGraphs.getIfPresent(project.getId());
+				if (commitGraph == null) {
+					Environment env = getEnv(project.getId().toString());
+					Store store = getStore(env, COMMITS_STORE);
+					
+					commitGraph = env.computeInReadonlyTransaction(new TransactionalComputable<CommitGraph>() {
 
-			@Override
-			public Set<ObjectId> compute(Transaction txn) {
-				Set<ObjectId> descendants = new HashSet<>();
-				
-				// Use stack instead of recursion to avoid StackOverflowException
-				Stack<ObjectId> stack = new Stack<>();
-				descendants.addAll(ancestors);
-				stack.addAll(ancestors);
-				while (!stack.isEmpty()) {
-					ObjectId current = stack.pop();
-					byte[] valueBytes = readBytes(store, txn, new CommitByteIterable(current));
-					if (valueBytes != null) {
-						if (valueBytes.length % 20 == 0) {
-							for (int i=0; i<valueBytes.length/20; i++) {
-								ObjectId child = ObjectId.fromRaw(valueBytes, i*20);
-								if (!descendants.contains(child)) {
-									descendants.add(child);
-									stack.push(child);
-								}
-							}
-						} else { 
-							for (int i=0; i<(valueBytes.length-1)/20; i++) {
-								ObjectId child = ObjectId.fromRaw(valueBytes, i*20+1);
-								if (!descendants.contains(child)) {
-									descendants.add(child);
-									stack.push(child);
+						@Override
+						public CommitGraph compute(Transaction txn) {
+							CommitGraph commitGraph = new CommitGraph();
+							
+							// Scan commits store sequentially once, instead of reading it randomly per query
+							Cursor cursor = store.openCursor(txn);
+							try {
+								while (cursor.getNext()) {
+									ObjectId parent = ObjectId.fromRaw(cursor.getKey().getBytesUnsafe());
+									ByteIterable value = cursor.getValue();
+									byte[] valueBytes = value.getBytesUnsafe();
+									int valueLength = value.getLength();
+									
+									// Collected commits are prefixed with an additional byte
+									int offset = valueLength % 20;
+									for (int i=0; i<valueLength/20; i++) 
+										commitGraph.addChild(parent, ObjectId.fromRaw(valueBytes, offset + i*20));
 								}
+							} finally {
+								cursor.close();
 							}
+							return commitGraph;
 						}
-					}
+						
+					});
+					commitGraphs.put(project.getId(), commitGraph);
 				}
-				
-				return descendants;
+			} finally {
+				commitGraphLock.unlock();
 			}
-			
-		});
+		}
+		return commitGraph;
+	}
+	
+	@Override
+	public Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors) {
+		return getCommitGraph(project).getDescendants(ancestors);
+	}
+
+	@Override
+	public Collection<ObjectId> filterAncestors(Project project, ObjectId descendant, Collection<ObjectId> candidates) {
+		return getCommitGraph(project).filterAncestors(descendant, candidates);
 	}
 
 	@Listen
@@ -1084,6 +1152,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			filesCache.remove(projectId);
 			totalCommitCountCache.remove(projectId);
 			usersCache.remove(projectId);
+			commitGraphs.invalidate(projectId);
 		}
 	}
 	
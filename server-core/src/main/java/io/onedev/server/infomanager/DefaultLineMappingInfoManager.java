@@ -0,0 +1,194 @@
+package io.onedev.server.infomanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.git.Blob;
+import io.onedev.server.git.BlobIdent;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.diff.DiffUtils;
+import io.onedev.server.util.diff.WhitespaceOption;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+@Singleton
+public class DefaultLineMappingInfoManager extends AbstractEnvironmentManager implements LineMappingInfoManager {
+
+	private static final int INFO_VERSION = 1;
+	
+	private static final long LOG_FILE_SIZE = 256*1024;
+	
+	private static final String INFO_DIR = "lineMapping";
+	
+	private static final String LINE_MAPPINGS_STORE = "lineMappings";
+	
+	// Marks that mapping can not be calculated as one of the blobs is not text
+	private static final int NOT_TEXT = -1;
+	
+	private final StorageManager storageManager;
+	
+	private final ProjectManager projectManager;
+	
+	@Inject
+	public DefaultLineMappingInfoManager(StorageManager storageManager, ProjectManager projectManager) {
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+	}
+	
+	@Override
+	public Map<Integer, Integer> getLineMapping(Project project, BlobIdent oldBlobIdent, ObjectId oldBlobId, 
+			BlobIdent newBlobIdent, ObjectId newBlobId) {
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, LINE_MAPPINGS_STORE);
+		
+		ByteIterable key = getKey(oldBlobId, newBlobId);
+		byte[] bytes = env.computeInReadonlyTransaction(new TransactionalComputable<byte[]>() {
+
+			@Override
+			public byte[] compute(Transaction txn) {
+				return readBytes(store, txn, key);
+			}
+			
+		});
+		if (bytes != null)
+			return deserialize(bytes);
+		
+		Map<Integer, Integer> lineMapping;
+		try (ObjectReader reader = project.getRepository().newObjectReader()) {
+			List<String> oldLines = readLines(oldBlobIdent, oldBlobId, reader);
+			List<String> newLines = readLines(newBlobIdent, newBlobId, reader);
+			if (oldLines != null && newLines != null)
+				lineMapping = DiffUtils.mapLines(oldLines, newLines);
+			else
+				lineMapping = null;
+		}
+		
+		byte[] serialized = serialize(lineMapping);
+		env.executeInTransaction(new TransactionalExecutable() {
+			
+			@Override
+			public void execute(Transaction txn) {
+				store.put(txn, key, new ArrayByteIterable(serialized));
+			}
+			
+		});
+		return lineMapping;
+	}
+	
+	@Nullable
+	private List<String> readLines(BlobIdent blobIdent, ObjectId blobId, ObjectReader reader) {
+		Blob.Text text = new Blob(blobIdent, blobId, reader).getText();
+		if (text != null) {
+			List<String> normalizedLines = new ArrayList<>();
+			for (String line: text.getLines()) 
+				normalizedLines.add(WhitespaceOption.DEFAULT.process(line));
+			return normalizedLines;
+		} else {
+			return null;
+		}
+	}
+	
+	private ByteIterable getKey(ObjectId oldBlobId, ObjectId newBlobId) {
+		byte[] keyBytes = new byte[40];
+		oldBlobId.copyRawTo(keyBytes, 0);
+		newBlobId.copyRawTo(keyBytes, 20);
+		return new ArrayByteIterable(keyBytes);
+	}
+	
+	/*
+	 * Serialized as number of mapped lines followed by old/new line pairs
+	 */
+	private byte[] serialize(@Nullable Map<Integer, Integer> lineMapping) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(baos)) {
+			if (lineMapping != null) {
+				out.writeInt(lineMapping.size());
+				for (Map.Entry<Integer, Integer> entry: lineMapping.entrySet()) {
+					out.writeInt(entry.getKey());
+					out.writeInt(entry.getValue());
+				}
+			} else {
+				out.writeInt(NOT_TEXT);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+	
+	@Nullable
+	private Map<Integer, Integer> deserialize(byte[] bytes) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int size = in.readInt();
+			if (size != NOT_TEXT) {
+				Map<Integer, Integer> lineMapping = new HashMap<>();
+				for (int i=0; i<size; i++)
+					lineMapping.put(in.readInt(), in.readInt());
+				return lineMapping;
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Sessional
+	@Listen
+	public void on(SystemStarted event) {
+		for (Project project: projectManager.query()) 
+			checkVersion(project.getId().toString());
+	}
+	
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project)
+			removeEnv(event.getEntity().getId().toString());
+	}
+	
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists()) 
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	@Override
+	protected long getLogFileSize() {
+		return LOG_FILE_SIZE;
+	}
+
+}
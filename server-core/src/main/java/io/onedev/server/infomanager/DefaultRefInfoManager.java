@@ -0,0 +1,266 @@
+package io.onedev.server.infomanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.git.RefInfo;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.storage.StorageManager;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+@Singleton
+public class DefaultRefInfoManager extends AbstractEnvironmentManager implements RefInfoManager {
+
+	private static final int INFO_VERSION = 1;
+	
+	private static final long LOG_FILE_SIZE = 256*1024;
+	
+	private static final String INFO_DIR = "ref";
+	
+	private static final String REFS_STORE = "refs";
+	
+	private final StorageManager storageManager;
+	
+	private final ProjectManager projectManager;
+	
+	@Inject
+	public DefaultRefInfoManager(StorageManager storageManager, ProjectManager projectManager) {
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+	}
+	
+	@Override
+	public List<RefInfo> getRefInfos(Project project, String prefix) {
+		Repository repository = project.getRepository();
+		List<Ref> refs;
+		try {
+			refs = repository.getRefDatabase().getRefsByPrefix(prefix);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, REFS_STORE);
+		
+		Map<String, byte[]> indexed = env.computeInReadonlyTransaction(new TransactionalComputable<Map<String, byte[]>>() {
+
+			@Override
+			public Map<String, byte[]> compute(Transaction txn) {
+				Map<String, byte[]> indexed = new HashMap<>();
+				Cursor cursor = store.openCursor(txn);
+				try {
+					if (cursor.getSearchKeyRange(new StringByteIterable(prefix)) != null) {
+						do {
+							ByteIterable key = cursor.getKey();
+							String refName = new String(key.getBytesUnsafe(), 0, key.getLength(), 
+									StandardCharsets.UTF_8);
+							if (!refName.startsWith(prefix))
+								break;
+							ByteIterable value = cursor.getValue();
+							indexed.put(refName, Arrays.copyOf(value.getBytesUnsafe(), value.getLength()));
+						} while (cursor.getNext());
+					}
+				} finally {
+					cursor.close();
+				}
+				return indexed;
+			}
+			
+		});
+		
+		List<RefInfo> refInfos = new ArrayList<>();
+		Map<String, byte[]> updates = new HashMap<>();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			for (Ref ref: refs) {
+				if (ref.getObjectId() == null)
+					continue;
+				byte[] bytes = indexed.remove(ref.getName());
+				if (bytes == null || !ObjectId.fromRaw(bytes).equals(ref.getObjectId())) {
+					bytes = serialize(new RefInfo(revWalk, ref));
+					updates.put(ref.getName(), bytes);
+				}
+				RefInfo refInfo = deserialize(repository, ref, bytes);
+				if (refInfo.getCommitDate() != null)
+					refInfos.add(refInfo);
+			}
+		}
+		
+		// Remaining indexed refs no longer exist, for instance deleted without posting an event 
+		if (!updates.isEmpty() || !indexed.isEmpty()) {
+			env.executeInTransaction(new TransactionalExecutable() {
+				
+				@Override
+				public void execute(Transaction txn) {
+					for (Map.Entry<String, byte[]> entry: updates.entrySet()) 
+						store.put(txn, new StringByteIterable(entry.getKey()), new ArrayByteIterable(entry.getValue()));
+					for (String refName: indexed.keySet())
+						store.delete(txn, new StringByteIterable(refName));
+				}
+				
+			});
+		}
+		
+		Collections.sort(refInfos);
+		Collections.reverse(refInfos);
+		return refInfos;
+	}
+	
+	/*
+	 * Serialized as ref target, peeled object, followed by dates and author of peeled commit 
+	 * if it is a commit
+	 */
+	private byte[] serialize(RefInfo refInfo) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(baos)) {
+			byte[] idBytes = new byte[20];
+			refInfo.getRef().getObjectId().copyRawTo(idBytes, 0);
+			out.write(idBytes);
+			refInfo.getPeeledId().copyRawTo(idBytes, 0);
+			out.write(idBytes);
+			PersonIdent authorIdent = refInfo.getAuthorIdent();
+			if (refInfo.getCommitDate() != null && authorIdent != null) {
+				out.writeBoolean(true);
+				out.writeLong(refInfo.getDate().getTime());
+				out.writeLong(refInfo.getCommitDate().getTime());
+				out.writeUTF(authorIdent.getName());
+				out.writeUTF(authorIdent.getEmailAddress());
+				out.writeLong(authorIdent.getWhen().getTime());
+				out.writeInt(authorIdent.getTimeZoneOffset());
+			} else {
+				out.writeBoolean(false);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+	
+	private RefInfo deserialize(Repository repository, Ref ref, byte[] bytes) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			byte[] idBytes = new byte[20];
+			in.readFully(idBytes);
+			in.readFully(idBytes);
+			ObjectId peeledId = ObjectId.fromRaw(idBytes);
+			if (in.readBoolean()) {
+				Date date = new Date(in.readLong());
+				Date commitDate = new Date(in.readLong());
+				PersonIdent authorIdent = new PersonIdent(in.readUTF(), in.readUTF(), 
+						in.readLong(), in.readInt());
+				return new RefInfo(repository, ref, peeledId, date, commitDate, authorIdent);
+			} else {
+				return new RefInfo(repository, ref, peeledId, null, null, null);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Sessional
+	@Listen
+	public void on(RefUpdated event) {
+		Project project = event.getProject();
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, REFS_STORE);
+		ByteIterable key = new StringByteIterable(event.getRefName());
+		if (!event.getNewCommitId().equals(ObjectId.zeroId())) {
+			Repository repository = project.getRepository();
+			byte[] bytes;
+			try (RevWalk revWalk = new RevWalk(repository)) {
+				Ref ref = repository.exactRef(event.getRefName());
+				if (ref != null && ref.getObjectId() != null)
+					bytes = serialize(new RefInfo(revWalk, ref));
+				else 
+					bytes = null;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			env.executeInTransaction(new TransactionalExecutable() {
+				
+				@Override
+				public void execute(Transaction txn) {
+					if (bytes != null)
+						store.put(txn, key, new ArrayByteIterable(bytes));
+					else
+						store.delete(txn, key);
+				}
+				
+			});
+		} else {
+			env.executeInTransaction(new TransactionalExecutable() {
+				
+				@Override
+				public void execute(Transaction txn) {
+					store.delete(txn, key);
+				}
+				
+			});
+		}
+	}
+	
+	@Sessional
+	@Listen
+	public void on(SystemStarted event) {
+		for (Project project: projectManager.query()) 
+			checkVersion(project.getId().toString());
+	}
+	
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project)
+			removeEnv(event.getEntity().getId().toString());
+	}
+	
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists()) 
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	@Override
+	protected long getLogFileSize() {
+		return LOG_FILE_SIZE;
+	}
+
+}
@@ -42,6 +42,8 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	
 	private static final String PULL_REQUEST_VISIT_STORE = "pullRequestVisit";
 	
+	private static final String PULL_REQUEST_LAST_VISIT_STORE = "pullRequestLastVisit";
+	
 	private static final String PULL_REQUEST_CODE_COMMENTS_VISIT_STORE = "pullRequestCodeCommentsVisit";
 	
 	private static final String CODE_COMMENT_VISIT_STORE = "codeCommentVisit";
@@ -91,12 +93,14 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	public void visitPullRequest(User user, PullRequest request) {
 		Environment env = getEnv(request.getTargetProject().getId().toString());
 		Store store = getStore(env, PULL_REQUEST_VISIT_STORE);
+		Store lastVisitStore = getStore(env, PULL_REQUEST_LAST_VISIT_STORE);
 		env.executeInTransaction(new TransactionalExecutable() {
 			
 			@Override
 			public void execute(Transaction txn) {
 				long time = new DateTime().plusSeconds(1).getMillis();
 				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
+				writeLong(lastVisitStore, txn, new LongsByteIterable(Lists.newArrayList(request.getId())), time);
 			}
 			
 		});
@@ -150,6 +154,24 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 		});
 	}
 
+	@Override
+	public Date getPullRequestVisitDate(PullRequest request) {
+		Environment env = getEnv(request.getTargetProject().getId().toString());
+		Store store = getStore(env, PULL_REQUEST_LAST_VISIT_STORE);
+		return env.computeInTransaction(new TransactionalComputable<Date>() {
+			
+			@Override
+			public Date compute(Transaction txn) {
+				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(request.getId())), -1);
+				if (millis != -1)
+					return new Date(millis);
+				else
+					return null;
+			}
+			
+		});
+	}
+
 	@Override
 	public Date getIssueVisitDate(User user, Issue issue) {
 		Environment env = getEnv(issue.getProject().getId().toString());
@@ -0,0 +1,37 @@
+package io.onedev.server.infomanager;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.server.git.BlobIdent;
+import io.onedev.server.model.Project;
+
+public interface LineMappingInfoManager {
+
+	/**
+	 * Get mapping of lines between two versions of a file. Whitespaces are processed with 
+	 * {@link io.onedev.server.util.diff.WhitespaceOption#DEFAULT} before mapping, and the 
+	 * mapping is cached persistently by blob ids of the two versions
+	 * 
+	 * @param project
+	 * 			project to get line mapping in
+	 * @param oldBlobIdent
+	 * 			identity of old version of the file, used to read content if mapping is not cached
+	 * @param oldBlobId
+	 * 			blob id of old version of the file
+	 * @param newBlobIdent
+	 * 			identity of new version of the file, used to read content if mapping is not cached
+	 * @param newBlobId
+	 * 			blob id of new version of the file
+	 * @return
+	 * 			map of 0-indexed old line to 0-indexed new line, or <tt>null</tt> if any of the 
+	 * 			two versions is not a text file
+	 */
+	@Nullable
+	Map<Integer, Integer> getLineMapping(Project project, BlobIdent oldBlobIdent, ObjectId oldBlobId, 
+			BlobIdent newBlobIdent, ObjectId newBlobId);
+	
+}
@@ -0,0 +1,25 @@
+package io.onedev.server.infomanager;
+
+import java.util.List;
+
+import io.onedev.server.git.RefInfo;
+import io.onedev.server.model.Project;
+
+public interface RefInfoManager {
+
+	/**
+	 * Get infos of refs pointing to commits under specified prefix. Metadata of refs is served 
+	 * from a persistent index maintained per project, and only refs not indexed yet or updated 
+	 * since last indexed are parsed. Objects of returned ref infos are parsed lazily when 
+	 * accessed
+	 * 
+	 * @param project
+	 * 			project to get ref infos in
+	 * @param prefix
+	 * 			prefix of ref names, for instance <tt>refs/heads/</tt>
+	 * @return
+	 * 			ref infos ordered by date of the annotated tag or the commit, with newest first
+	 */
+	List<RefInfo> getRefInfos(Project project, String prefix);
+	
+}
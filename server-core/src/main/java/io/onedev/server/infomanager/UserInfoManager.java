@@ -25,6 +25,12 @@ public interface UserInfoManager {
 	@Nullable
 	Date getPullRequestVisitDate(User user, PullRequest request);
 	
+	/**
+	 * Get date of last visit to specified pull request by any user
+	 */
+	@Nullable
+	Date getPullRequestVisitDate(PullRequest request);
+	
 	@Nullable
 	Date getPullRequestCodeCommentsVisitDate(User user, PullRequest request);
 	
@@ -0,0 +1,274 @@
+package io.onedev.server.maintenance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.ScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.AppLoader;
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.GitVersion;
+import io.onedev.server.git.command.GitCommand;
+import io.onedev.server.git.command.PackRefsCommand;
+import io.onedev.server.git.command.PruneCommand;
+import io.onedev.server.git.command.RepackCommand;
+import io.onedev.server.git.command.WriteCommitGraphCommand;
+import io.onedev.server.git.config.GitConfig;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.storage.ForkPoolManager;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+/**
+ * Keep repositories in shape for fetches and history walks. Loose objects are packed,
+ * packs are consolidated with reachability bitmaps written, refs are packed, and commit
+ * graph is written if supported by git. Each task only runs when heuristics of the
+ * repository indicate it is necessary.
+ */
+@Singleton
+public class DefaultRepositoryMaintenanceManager implements RepositoryMaintenanceManager, SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultRepositoryMaintenanceManager.class);
+
+	// same as default of git config "gc.auto"
+	private static final int LOOSE_OBJECTS_THRESHOLD = 6700;
+
+	// same as default of git config "gc.autoPackLimit"
+	private static final int PACKS_THRESHOLD = 50;
+
+	private static final int LOOSE_REFS_THRESHOLD = 1000;
+
+	private static final String PRUNE_EXPIRE = "2.weeks.ago";
+
+	private static final int MAX_HISTORY = 100;
+
+	private final ProjectManager projectManager;
+
+	private final StorageManager storageManager;
+
+	private final SessionManager sessionManager;
+
+	private final TaskScheduler taskScheduler;
+	
+	private final ForkPoolManager forkPoolManager;
+
+	private final LinkedList<RepositoryMaintenance> history = new LinkedList<>();
+
+	private String taskId;
+
+	@Inject
+	public DefaultRepositoryMaintenanceManager(ProjectManager projectManager, StorageManager storageManager,
+			SessionManager sessionManager, TaskScheduler taskScheduler, ForkPoolManager forkPoolManager) {
+		this.projectManager = projectManager;
+		this.storageManager = storageManager;
+		this.sessionManager = sessionManager;
+		this.taskScheduler = taskScheduler;
+		this.forkPoolManager = forkPoolManager;
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+	}
+
+	@Override
+	public void execute() {
+		Map<Long, String> projectNames = new LinkedHashMap<>();
+		sessionManager.run(new Runnable() {
+
+			@Override
+			public void run() {
+				for (Project project: projectManager.query())
+					projectNames.put(project.getId(), project.getName());
+			}
+
+		});
+
+		boolean commitGraphSupported;
+		try {
+			GitVersion gitVersion = GitCommand.getVersion(AppLoader.getInstance(GitConfig.class).getExecutable());
+			commitGraphSupported = gitVersion != null
+					&& !gitVersion.isOlderThan(new GitVersion(WriteCommitGraphCommand.MIN_VERSION));
+		} catch (Exception e) {
+			logger.error("Error determining git version", e);
+			return;
+		}
+
+		for (Map.Entry<Long, String> entry: projectNames.entrySet()) {
+			Long projectId = entry.getKey();
+			File gitDir = storageManager.getProjectGitDir(projectId);
+			Lock lock = LockUtils.getReadWriteLock(RepositoryMaintenanceManager.getLockKey(projectId)).writeLock();
+			boolean shared;
+			try {
+				shared = forkPoolManager.getPoolGitDir(gitDir) != null;
+			} catch (Exception e) {
+				logger.error("Error checking fork pool of project '" + entry.getValue() + "'", e);
+				continue;
+			}
+			maintain(gitDir, entry.getValue(), lock, shared, false, commitGraphSupported);
+		}
+		
+		for (File poolGitDir: forkPoolManager.getPoolGitDirs()) {
+			Lock lock = LockUtils.getLock(ForkPoolManager.getLockKey(poolGitDir));
+			maintain(poolGitDir, "fork pool " + poolGitDir.getName(), lock, false, true, commitGraphSupported);
+		}
+	}
+
+	/**
+	 * @param shared
+	 * 			whether or not the repository borrows objects from a fork pool. Borrowed objects 
+	 * 			are excluded when repacking, and bitmap can not be written as not all objects 
+	 * 			are packed 
+	 * @param pool
+	 * 			whether or not the repository is a fork pool. Refs of members are synchronized 
+	 * 			into the pool first, and objects of the pool are never pruned as they may be 
+	 * 			referenced by any member
+	 */
+	private void maintain(File gitDir, String repositoryName, Lock lock, boolean shared, boolean pool, 
+			boolean commitGraphSupported) {
+		if (!lock.tryLock()) {
+			logger.debug("Repository '{}' is in use, postpone maintenance", repositoryName);
+			return;
+		}
+		
+		List<String> tasks = new ArrayList<>();
+		long time = System.currentTimeMillis();
+		String error = null;
+		try {
+			if (pool) {
+				tasks.add("sync refs of members");
+				forkPoolManager.syncPool(gitDir);
+			}
+			
+			File objectsDir = new File(gitDir, "objects");
+			File packDir = new File(objectsDir, "pack");
+	
+			int looseObjects = estimateLooseObjects(objectsDir);
+			int packs = 0;
+			boolean hasBitmap = false;
+			File[] packFiles = packDir.listFiles();
+			if (packFiles != null) {
+				for (File file: packFiles) {
+					if (file.getName().endsWith(".pack"))
+						packs++;
+					else if (file.getName().endsWith(".bitmap"))
+						hasBitmap = true;
+				}
+			}
+			int looseRefs = countLooseRefs(new File(gitDir, "refs"));
+	
+			boolean fullRepack = packs > PACKS_THRESHOLD || packs != 0 && !hasBitmap && !shared;
+			boolean incrementalRepack = !fullRepack && looseObjects > LOOSE_OBJECTS_THRESHOLD;
+			boolean packRefs = looseRefs > LOOSE_REFS_THRESHOLD;
+			boolean writeCommitGraph = commitGraphSupported && (fullRepack || incrementalRepack
+					|| (packs != 0 || looseObjects != 0) && !new File(objectsDir, "info/commit-graph").exists());
+	
+			if (fullRepack) {
+				if (pool) {
+					tasks.add("repack all objects with bitmap, keeping unreachable objects");
+					new RepackCommand(gitDir).all(true).writeBitmap(true).keepUnreachable(true).call();
+				} else if (shared) {
+					tasks.add("repack local objects");
+					new RepackCommand(gitDir).all(true).local(true).call();
+				} else {
+					tasks.add("repack all objects with bitmap");
+					new RepackCommand(gitDir).all(true).writeBitmap(true).call();
+				}
+				if (!pool) {
+					tasks.add("prune unreachable loose objects");
+					new PruneCommand(gitDir).expire(PRUNE_EXPIRE).call();
+				}
+			} else if (incrementalRepack) {
+				tasks.add("repack loose objects");
+				new RepackCommand(gitDir).local(shared).call();
+			}
+			if (packRefs) {
+				tasks.add("pack refs");
+				new PackRefsCommand(gitDir).call();
+			}
+			if (writeCommitGraph) {
+				tasks.add("write commit graph");
+				new WriteCommitGraphCommand(gitDir).call();
+			}
+		} catch (Exception e) {
+			logger.error("Error maintaining repository '" + repositoryName + "'", e);
+			error = ExceptionUtils.getMessage(e);
+		} finally {
+			lock.unlock();
+		}
+
+		if (!tasks.isEmpty() && (!pool || tasks.size() > 1 || error != null)) {
+			RepositoryMaintenance maintenance = new RepositoryMaintenance(repositoryName, new Date(),
+					tasks, System.currentTimeMillis()-time, error);
+			synchronized (history) {
+				history.addFirst(maintenance);
+				if (history.size() > MAX_HISTORY)
+					history.removeLast();
+			}
+		}
+	}
+
+	/*
+	 * Estimate number of loose objects by sampling a single fan-out directory, the
+	 * same way as "git gc --auto"
+	 */
+	private int estimateLooseObjects(File objectsDir) {
+		File[] files = new File(objectsDir, "17").listFiles();
+		if (files != null)
+			return files.length * 256;
+		else
+			return 0;
+	}
+
+	private int countLooseRefs(File refsDir) {
+		int count = 0;
+		File[] files = refsDir.listFiles();
+		if (files != null) {
+			for (File file: files) {
+				if (file.isDirectory())
+					count += countLooseRefs(file);
+				else
+					count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return CronScheduleBuilder.cronSchedule("0 0 * * * ?");
+	}
+
+	@Override
+	public List<RepositoryMaintenance> getHistory() {
+		synchronized (history) {
+			return new ArrayList<>(history);
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package io.onedev.server.maintenance;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+public class RepositoryMaintenance implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String repositoryName;
+	
+	private final Date date;
+	
+	private final List<String> tasks;
+	
+	private final long duration;
+	
+	private final String error;
+	
+	public RepositoryMaintenance(String repositoryName, Date date, List<String> tasks, long duration, 
+			@Nullable String error) {
+		this.repositoryName = repositoryName;
+		this.date = date;
+		this.tasks = tasks;
+		this.duration = duration;
+		this.error = error;
+	}
+
+	public String getRepositoryName() {
+		return repositoryName;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	/**
+	 * @return
+	 * 			performed maintenance tasks, for instance "pack refs" 
+	 */
+	public List<String> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * @return
+	 * 			duration of the maintenance in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	@Nullable
+	public String getError() {
+		return error;
+	}
+	
+}
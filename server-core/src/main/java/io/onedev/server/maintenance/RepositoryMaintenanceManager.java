@@ -0,0 +1,20 @@
+package io.onedev.server.maintenance;
+
+import java.util.List;
+
+public interface RepositoryMaintenanceManager {
+
+	/**
+	 * Get recent repository maintenance records, with latest record comes first
+	 */
+	List<RepositoryMaintenance> getHistory();
+	
+	/**
+	 * Get key of the lock guarding repository of specified project. Pushes should hold 
+	 * read lock of this key, while maintenance holds write lock
+	 */
+	static String getLockKey(Long projectId) {
+		return "repository-maintenance:" + projectId;
+	}
+	
+}
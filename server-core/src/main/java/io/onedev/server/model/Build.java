@@ -997,7 +997,7 @@ public class Build extends AbstractEntity implements Referenceable {
 		Collection<String> branches = new ArrayList<>();
 		for (RefInfo ref: getProject().getBranchRefInfos()) {
 			String branchName = Preconditions.checkNotNull(GitUtils.ref2branch(ref.getRef().getName()));
-			if (descendants.contains(ref.getPeeledObj()))
+			if (descendants.contains(ref.getPeeledId()))
 				branches.add(branchName);
 		}
 		
@@ -72,6 +72,7 @@ import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.OneDev;
 import io.onedev.server.buildspec.BuildSpec;
+import io.onedev.server.buildspec.BuildSpecCache;
 import io.onedev.server.buildspec.job.JobManager;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.entitymanager.BuildQuerySettingManager;
@@ -90,11 +91,12 @@ import io.onedev.server.git.BlobIdentFilter;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.RefInfo;
 import io.onedev.server.git.Submodule;
-import io.onedev.server.git.command.BlameCommand;
 import io.onedev.server.git.command.ListChangedFilesCommand;
 import io.onedev.server.git.exception.NotFileException;
 import io.onedev.server.git.exception.ObjectNotFoundException;
+import io.onedev.server.infomanager.BlameInfoManager;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.RefInfoManager;
 import io.onedev.server.model.Build.Status;
 import io.onedev.server.model.support.BranchProtection;
 import io.onedev.server.model.support.FileProtection;
@@ -442,18 +444,7 @@ public class Project extends AbstractEntity {
     }
 	
 	public List<RefInfo> getRefInfos(String prefix) {
-		try (RevWalk revWalk = new RevWalk(getRepository())) {
-			List<Ref> refs = new ArrayList<Ref>(getRepository().getRefDatabase().getRefsByPrefix(prefix));
-			List<RefInfo> refInfos = refs.stream()
-					.map(ref->new RefInfo(revWalk, ref))
-					.filter(refInfo->refInfo.getPeeledObj() instanceof RevCommit)
-					.collect(Collectors.toList());
-			Collections.sort(refInfos);
-			Collections.reverse(refInfos);
-			return refInfos;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return OneDev.getInstance(RefInfoManager.class).getRefInfos(this, prefix);
     }
 
 	public Git git() {
@@ -698,7 +689,8 @@ public class Project extends AbstractEntity {
 	}
 	
 	/**
-	 * Get build spec of specified commit
+	 * Get build spec of specified commit. Returned build spec is shared across the server, 
+	 * and must not be modified
 	 * @param commitId
 	 * 			commit id to get build spec for 
 	 * @return
@@ -713,16 +705,7 @@ public class Project extends AbstractEntity {
 			buildSpecCache = new HashMap<>();
 		Optional<BuildSpec> buildSpec = buildSpecCache.get(commitId);
 		if (buildSpec == null) {
-			Blob blob = getBlob(new BlobIdent(commitId.name(), BuildSpec.BLOB_PATH, FileMode.TYPE_FILE), false);
-			if (blob != null) {  
-				buildSpec = Optional.fromNullable(BuildSpec.parse(blob.getBytes()));
-			} else { 
-				Blob oldBlob = getBlob(new BlobIdent(commitId.name(), ".onedev-buildspec", FileMode.TYPE_FILE), false);
-				if (oldBlob != null)
-					buildSpec = Optional.fromNullable(BuildSpec.parse(oldBlob.getBytes()));
-				else
-					buildSpec = Optional.absent();
-			}
+			buildSpec = Optional.fromNullable(OneDev.getInstance(BuildSpecCache.class).getBuildSpec(this, commitId));
 			buildSpecCache.put(commitId, buildSpec);
 		}
 		return buildSpec.orNull();
@@ -1275,14 +1258,10 @@ public class Project extends AbstractEntity {
 	}
 
 	public List<User> getAuthors(String filePath, ObjectId commitId, @Nullable LinearRange range) {
-		BlameCommand cmd = new BlameCommand(getGitDir());
-		cmd.commitHash(commitId.name());
-		cmd.file(filePath);
-		cmd.range(range);
-
 		List<User> authors = new ArrayList<>();
 		UserManager userManager = OneDev.getInstance(UserManager.class);
-		for (BlameBlock block: cmd.call()) {
+		BlameInfoManager blameInfoManager = OneDev.getInstance(BlameInfoManager.class);
+		for (BlameBlock block: blameInfoManager.getBlame(this, commitId, filePath, range)) {
 			User author = userManager.find(block.getCommit().getAuthor());
 			if (author != null && !authors.contains(author))
 				authors.add(author);
@@ -1403,7 +1382,7 @@ public class Project extends AbstractEntity {
 			PatternSet branchPatterns = PatternSet.parse(branches);
 			for (RefInfo ref: getBranchRefInfos()) {
 				String branchName = Preconditions.checkNotNull(GitUtils.ref2branch(ref.getRef().getName()));
-				if (descendants.contains(ref.getPeeledObj()) && branchPatterns.matches(matcher, branchName))
+				if (descendants.contains(ref.getPeeledId()) && branchPatterns.matches(matcher, branchName))
 					return true;
 			}
 			return false;
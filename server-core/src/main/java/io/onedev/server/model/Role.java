@@ -243,17 +243,24 @@ public class Role extends AbstractEntity implements Permission {
 
 	@Override
 	public boolean implies(Permission p) {
-		for (Permission each: getPermissions()) {
+		for (Permission each: getPermissions(SecurityUtils.getUser() != null)) {
 			if (each.implies(p))
 				return true;
 		}
 		return false;
 	}
 	
-	private Collection<Permission> getPermissions() {
+	/**
+	 * Get privileges granted by this role
+	 * 
+	 * @param authenticated
+	 * 			whether or not the role is granted to an authenticated user. Anonymous users
+	 * 			only get read privileges of the role 
+	 */
+	public Collection<Permission> getPermissions(boolean authenticated) {
 		Collection<Permission> permissions = Lists.newArrayList(new AccessProject());
 		
-		if (SecurityUtils.getUser() != null) {
+		if (authenticated) {
 			if (manageProject) 
 				permissions.add(new ManageProject());
 			if (manageCodeComments)
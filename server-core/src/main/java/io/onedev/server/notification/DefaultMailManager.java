@@ -21,6 +21,8 @@ import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.support.administration.MailSetting;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 
 @Singleton
 public class DefaultMailManager implements MailManager {
@@ -35,10 +37,10 @@ public class DefaultMailManager implements MailManager {
 	
 	@Inject
 	public DefaultMailManager(TransactionManager transactionManager, SettingManager setingManager, 
-			ExecutorService executorService) {
+			ExecutorManager executorManager) {
 		this.transactionManager = transactionManager;
 		this.settingManager = setingManager;
-		this.executorService = executorService;
+		this.executorService = executorManager.getExecutor(ExecutorPool.MAIL);
 	}
 
 	@Sessional
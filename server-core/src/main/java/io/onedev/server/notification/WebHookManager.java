@@ -27,6 +27,8 @@ import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.event.ProjectEvent;
 import io.onedev.server.model.support.WebHook;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 import io.onedev.server.util.jackson.RestView;
 
 @Singleton
@@ -41,10 +43,10 @@ public class WebHookManager {
 	private final ExecutorService executor;
 
 	@Inject
-	public WebHookManager(ObjectMapper mapper, ExecutorService executor) {
+	public WebHookManager(ObjectMapper mapper, ExecutorManager executorManager) {
 		this.mapper = mapper.copy();
 		this.mapper.setConfig(this.mapper.getSerializationConfig().withView(RestView.class));
-		this.executor = executor;
+		this.executor = executorManager.getExecutor(ExecutorPool.WEBHOOK);
 	}
 	
 	@Sessional
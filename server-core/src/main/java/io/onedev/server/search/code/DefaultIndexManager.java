@@ -1,5 +1,6 @@
 package io.onedev.server.search.code;
 
+import static io.onedev.server.search.code.FieldConstants.BLOB_CONTENT;
 import static io.onedev.server.search.code.FieldConstants.BLOB_HASH;
 import static io.onedev.server.search.code.FieldConstants.BLOB_INDEX_VERSION;
 import static io.onedev.server.search.code.FieldConstants.BLOB_NAME;
@@ -22,9 +23,20 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -33,6 +45,7 @@ import org.apache.commons.lang.SerializationUtils;
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
@@ -46,6 +59,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
@@ -77,12 +91,15 @@ import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.RefUpdated;
 import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ContentDetector;
 import io.onedev.server.util.IndexResult;
+import io.onedev.server.util.ServerConfig;
+import io.onedev.server.util.concurrent.NamedThreadFactory;
 import io.onedev.server.util.concurrent.Prioritized;
 import io.onedev.server.util.work.BatchWorkManager;
 import io.onedev.server.util.work.BatchWorker;
@@ -96,7 +113,7 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private static final int BACKEND_INDEXING_PRIORITY = 50;
 	
-	private static final int DATA_VERSION = 6;
+	private static final int DATA_VERSION = 8;
 	
 	private final StorageManager storageManager;
 	
@@ -108,14 +125,24 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private final ListenerRegistry listenerRegistry;
 	
+	private final ExecutorService indexingExecutor;
+	
+	private final int indexingThreadsPerProject;
+	
 	@Inject
 	public DefaultIndexManager(ListenerRegistry listenerRegistry, StorageManager storageManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager) {
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager, 
+			ServerConfig serverConfig) {
 		this.listenerRegistry = listenerRegistry;
 		this.storageManager = storageManager;
 		this.batchWorkManager = batchWorkManager;
 		this.sessionManager = sessionManager;
 		this.projectManager = projectManager;
+		
+		indexingExecutor = new ThreadPoolExecutor(serverConfig.getIndexingThreads(), serverConfig.getIndexingThreads(), 
+				0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), 
+				new NamedThreadFactory("onedev-code-indexing"));
+		indexingThreadsPerProject = serverConfig.getIndexingThreadsPerProject();
 	}
 
 	private String getCommitIndexVersion(final IndexSearcher searcher, AnyObjectId commitId) throws IOException {
@@ -144,8 +171,51 @@ public class DefaultIndexManager implements IndexManager {
 		return indexVersion.get();
 	}
 	
+	private Query getBlobQuery(AnyObjectId blobId, String blobPath) {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(BLOB_HASH.query(blobId.name()), Occur.MUST);
+		builder.add(BLOB_PATH.query(blobPath), Occur.MUST);
+		return builder.build();
+	}
+	
+	@Nullable
+	private String getBlobIndexVersion(IndexSearcher searcher, AnyObjectId blobId, String blobPath) throws IOException {
+		final AtomicReference<String> blobIndexVersion = new AtomicReference<>(null);
+		searcher.search(getBlobQuery(blobId, blobPath), new SimpleCollector() {
+
+			private LeafReaderContext context;
+
+			@Override
+			public void collect(int doc) throws IOException {
+				blobIndexVersion.set(searcher.doc(context.docBase+doc).get(BLOB_INDEX_VERSION.name()));
+			}
+
+			@Override
+			protected void doSetNextReader(LeafReaderContext context) throws IOException {
+				this.context = context;
+			}
+
+			@Override
+			public boolean needsScores() {
+				return false;
+			}
+			
+		});
+		return blobIndexVersion.get();
+	}
+	
+	/*
+	 * Indexing is pipelined: tree walk and index lookup happen on current thread, blob 
+	 * loading and symbol extraction of changed blobs are dispatched to the shared indexing 
+	 * pool, and resulting documents are added to index writer on current thread again. 
+	 * At most <tt>indexingThreadsPerProject</tt> blobs of a single indexing run can be in 
+	 * flight so that indexing of a large project does not occupy the whole pool
+	 */
 	private IndexResult index(Repository repository, AnyObjectId commitId, 
-			IndexWriter writer, final IndexSearcher searcher) throws Exception {
+			IndexWriter writer, @Nullable IndexSearcher searcher) throws Exception {
+		long time = System.currentTimeMillis();
+		CompletionService<Document> completionService = new ExecutorCompletionService<>(indexingExecutor);
+		Set<Future<Document>> futures = new HashSet<>();
 		try (	RevWalk revWalk = new RevWalk(repository); 
 				TreeWalk treeWalk = new TreeWalk(repository)) {
 			treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
@@ -166,6 +236,17 @@ public class DefaultIndexManager implements IndexManager {
 					}
 				}
 			}
+			
+			/*
+			 * Walking the whole tree against an existing index (normally after index version 
+			 * bump) checks every blob, so snapshot versions of all indexed blobs in one pass 
+			 * instead of querying the index for each of them
+			 */
+			IndexedBlobVersions blobVersions;
+			if (searcher != null && treeWalk.getTreeCount() == 1)
+				blobVersions = IndexedBlobVersions.read(searcher.getIndexReader());
+			else
+				blobVersions = null;
 	
 			int indexed = 0;
 			int checked = 0;
@@ -176,51 +257,41 @@ public class DefaultIndexManager implements IndexManager {
 					String blobPath = treeWalk.getPathString();
 					String blobName = treeWalk.getNameString();
 					
-					BooleanQuery.Builder builder = new BooleanQuery.Builder();
-					builder.add(BLOB_HASH.query(blobId.name()), Occur.MUST);
-					builder.add(BLOB_PATH.query(blobPath), Occur.MUST);
-					BooleanQuery query = builder.build();
-					
-					final AtomicReference<String> blobIndexVersionRef = new AtomicReference<>(null);
-					if (searcher != null) {
-						searcher.search(query, new SimpleCollector() {
-	
-							private LeafReaderContext context;
-	
-							@Override
-							public void collect(int doc) throws IOException {
-								blobIndexVersionRef.set(searcher.doc(context.docBase+doc).get(BLOB_INDEX_VERSION.name()));
-							}
-	
-							@Override
-							protected void doSetNextReader(LeafReaderContext context) throws IOException {
-								this.context = context;
-							}
-	
-							@Override
-							public boolean needsScores() {
-								return false;
-							}
-							
-						});
+					String blobIndexVersion;
+					if (blobVersions != null) {
+						blobIndexVersion = blobVersions.get(blobId, blobPath);
 						checked++;
+					} else if (searcher != null) {
+						blobIndexVersion = getBlobIndexVersion(searcher, blobId, blobPath);
+						checked++;
+					} else {
+						blobIndexVersion = null;
 					}
 	
 					SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor(blobName);
 					String currentBlobIndexVersion = getIndexVersion(extractor);
-					String blobIndexVersion = blobIndexVersionRef.get();
+					boolean needsIndex;
 					if (blobIndexVersion != null) {
 						if (!blobIndexVersion.equals(currentBlobIndexVersion)) {
-							writer.deleteDocuments(query);
-							indexBlob(writer, repository, extractor, blobId, blobPath);
-							indexed++;
+							writer.deleteDocuments(getBlobQuery(blobId, blobPath));
+							needsIndex = true;
+						} else {
+							needsIndex = false;
 						}
 					} else {
-						indexBlob(writer, repository, extractor, blobId, blobPath);
+						needsIndex = true;
+					}
+					if (needsIndex) {
+						if (futures.size() == indexingThreadsPerProject) 
+							writer.addDocument(takeDocument(completionService, futures));
+						futures.add(completionService.submit(() -> newDocument(repository, extractor, blobId, blobPath)));
 						indexed++;
 					}
 				}
 			}
+			
+			while (!futures.isEmpty()) 
+				writer.addDocument(takeDocument(completionService, futures));
 	
 			// record current commit so that we know which commit has been indexed
 			Document document = new Document();
@@ -235,16 +306,38 @@ public class DefaultIndexManager implements IndexManager {
 			document.add(new StoredField(LAST_COMMIT_HASH.name(), commitId.getName()));
 			writer.updateDocument(META.term(LAST_COMMIT.name()), document);
 			
-			return new IndexResult(checked, indexed);
+			IndexResult result = new IndexResult(checked, indexed, System.currentTimeMillis()-time);
+			logger.debug("Indexed {} blobs in {} ms ({} blobs/second)", 
+					result.getIndexed(), result.getDuration(), Math.round(result.getThroughput()));
+			return result;
+		} finally {
+			for (Future<Document> future: futures)
+				future.cancel(true);
+		}
+	}
+	
+	private Document takeDocument(CompletionService<Document> completionService, 
+			Set<Future<Document>> futures) throws InterruptedException {
+		Future<Document> future = completionService.take();
+		futures.remove(future);
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
 		}
 	}
 	
-	private void indexBlob(IndexWriter writer, Repository repository, 
-			SymbolExtractor<Symbol> extractor, ObjectId blobId, String blobPath) throws IOException {
+	private Document newDocument(Repository repository, SymbolExtractor<Symbol> extractor, 
+			ObjectId blobId, String blobPath) throws IOException {
 		Document document = new Document();
 		
-		document.add(new StoredField(BLOB_INDEX_VERSION.name(), getIndexVersion(extractor)));
+		String blobIndexVersion = getIndexVersion(extractor);
+		document.add(new StoredField(BLOB_INDEX_VERSION.name(), blobIndexVersion));
+		document.add(new SortedDocValuesField(BLOB_INDEX_VERSION.name(), new BytesRef(blobIndexVersion)));
 		document.add(new StringField(BLOB_HASH.name(), blobId.name(), Store.NO));
+		byte[] blobHashBytes = new byte[Constants.OBJECT_ID_LENGTH];
+		blobId.copyRawTo(blobHashBytes, 0);
+		document.add(new BinaryDocValuesField(BLOB_HASH.name(), new BytesRef(blobHashBytes)));
 		document.add(new StringField(BLOB_PATH.name(), blobPath, Store.NO));
 		document.add(new BinaryDocValuesField(BLOB_PATH.name(), new BytesRef(blobPath.getBytes(StandardCharsets.UTF_8))));
 		
@@ -260,6 +353,7 @@ public class DefaultIndexManager implements IndexManager {
 			String content = ContentDetector.convertToText(bytes, blobName);
 			if (content != null) {
 				document.add(new TextField(BLOB_TEXT.name(), content, Store.NO));
+				document.add(new StoredField(BLOB_CONTENT.name(), content));
 				
 				if (extractor != null) {
 					List<Symbol> symbols = null;
@@ -293,7 +387,7 @@ public class DefaultIndexManager implements IndexManager {
 			logger.debug("Ignore content of large file '{}'.", blobPath);
 		}
 
-		writer.addDocument(document);
+		return document;
 	}
 	
 	private BatchWorker getBatchWorker(Long projectId) {
@@ -320,9 +414,15 @@ public class DefaultIndexManager implements IndexManager {
 		};
 	}
 
-	private IndexResult doIndex(Project project, ObjectId commit, Directory directory, IndexSearcher searcher) {
+	private IndexResult doIndex(Project project, ObjectId commit, Directory directory, 
+			@Nullable IndexSearcher searcher) throws IOException {
+		if (searcher != null && IndexedBlobVersions.hasLegacyBlobs(searcher.getIndexReader())) {
+			logger.debug("Recreating index as it contains blobs without doc values (project: {})", project.getName());
+			searcher = null;
+		}
+		
 		IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
-		writerConfig.setOpenMode(OpenMode.CREATE_OR_APPEND);
+		writerConfig.setOpenMode(searcher != null? OpenMode.CREATE_OR_APPEND: OpenMode.CREATE);
 		try (IndexWriter writer = new IndexWriter(directory, writerConfig)) {
 			try {
 				logger.debug("Indexing commit (project: {}, commit: {})", project.getName(), commit.getName());
@@ -333,8 +433,6 @@ public class DefaultIndexManager implements IndexManager {
 				writer.rollback();
 				throw ExceptionUtils.unchecked(e);
 			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
 		}
 	}
 	
@@ -399,6 +497,11 @@ public class DefaultIndexManager implements IndexManager {
 		}
 	}
 	
+	@Listen
+	public void on(SystemStopping event) {
+		indexingExecutor.shutdownNow();
+	}
+	
 	@Sessional
 	@Listen
 	public void on(SystemStarted event) {
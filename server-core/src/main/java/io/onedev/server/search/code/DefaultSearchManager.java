@@ -8,11 +8,14 @@ import static io.onedev.server.search.code.FieldConstants.BLOB_SYMBOL_LIST;
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -32,14 +35,18 @@ import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
@@ -58,12 +65,17 @@ public class DefaultSearchManager implements SearchManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultSearchManager.class);
 	
+	private static final int BLOB_IDS_CACHE_SIZE = 16;
+	
 	private final StorageManager storageManager;
 	
 	private final Map<Long, SearcherManager> searcherManagers = new ConcurrentHashMap<>();
 	
 	private final IndexManager indexManager;
 	
+	private final Cache<ObjectId, Map<String, ObjectId>> blobIdsCache = 
+			CacheBuilder.newBuilder().softValues().maximumSize(BLOB_IDS_CACHE_SIZE).build();
+	
 	@Inject
 	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager) {
 		this.storageManager = storageManager;
@@ -97,6 +109,35 @@ public class DefaultSearchManager implements SearchManager {
 		}
 	}
 	
+	/*
+	 * Get map of blob path to blob id of specified commit. Hits are verified against this 
+	 * map instead of walking the commit tree for each hit
+	 */
+	private Map<String, ObjectId> getBlobIds(Repository repository, ObjectId commitId) {
+		try {
+			return blobIdsCache.get(commitId.copy(), new Callable<Map<String, ObjectId>>() {
+
+				@Override
+				public Map<String, ObjectId> call() throws Exception {
+					Map<String, ObjectId> blobIds = new HashMap<>();
+					try (	RevWalk revWalk = new RevWalk(repository); 
+							TreeWalk treeWalk = new TreeWalk(repository)) {
+						treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+						treeWalk.setRecursive(true);
+						while (treeWalk.next()) {
+							if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE)
+								blobIds.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+						}
+					}
+					return blobIds;
+				}
+				
+			});
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
 	@Override
 	public List<QueryHit> search(Project project, ObjectId commit, final BlobQuery query) 
 			throws InterruptedException {
@@ -107,25 +148,39 @@ public class DefaultSearchManager implements SearchManager {
 			try {
 				final IndexSearcher searcher = searcherManager.acquire();
 				try {
-					try (RevWalk revWalk = new RevWalk(project.getRepository())){
-						final RevTree revTree = revWalk.parseCommit(commit).getTree();
+					try (ObjectReader reader = project.getRepository().newObjectReader()) {
+						final Map<String, ObjectId> blobIds = getBlobIds(project.getRepository(), commit);
 						final Set<String> checkedBlobPaths = new HashSet<>();
 						
 						searcher.search(query.asLuceneQuery(), new SimpleCollector() {
 	
 							private BinaryDocValues blobPathValues;
 							
+							private BinaryDocValues blobHashValues;
+							
+							private int docBase;
+							
 							@Override
 							public void collect(int doc) throws IOException {
 								if (hits.size() < query.getCount() && !Thread.currentThread().isInterrupted()) {
 									Preconditions.checkState(blobPathValues.advanceExact(doc));
 									String blobPath = blobPathValues.binaryValue().utf8ToString();
 									
-									if (!checkedBlobPaths.contains(blobPath)) {
-										TreeWalk treeWalk = TreeWalk.forPath(project.getRepository(), blobPath, revTree);									
-										if (treeWalk != null)
-											query.collect(searcher, treeWalk, hits);
-										checkedBlobPaths.add(blobPath);
+									if (checkedBlobPaths.add(blobPath)) {
+										ObjectId blobId = blobIds.get(blobPath);
+										if (blobId != null) {
+											Integer docId;
+											if (blobHashValues != null && blobHashValues.advanceExact(doc)) {
+												BytesRef blobHash = blobHashValues.binaryValue();
+												if (blobId.compareTo(blobHash.bytes, blobHash.offset) == 0)
+													docId = docBase + doc;
+												else
+													docId = null;
+											} else {
+												docId = null;
+											}
+											query.collect(searcher, reader, blobPath, blobId, docId, hits);
+										}
 									}
 								}
 							}
@@ -133,6 +188,8 @@ public class DefaultSearchManager implements SearchManager {
 							@Override
 							protected void doSetNextReader(LeafReaderContext context) throws IOException {
 								blobPathValues  = context.reader().getBinaryDocValues(FieldConstants.BLOB_PATH.name());
+								blobHashValues  = context.reader().getBinaryDocValues(FieldConstants.BLOB_HASH.name());
+								docBase = context.docBase;
 							}
 
 							@Override
@@ -0,0 +1,134 @@
+package io.onedev.server.search.code;
+
+import static io.onedev.server.search.code.FieldConstants.BLOB_HASH;
+import static io.onedev.server.search.code.FieldConstants.BLOB_INDEX_VERSION;
+import static io.onedev.server.search.code.FieldConstants.BLOB_PATH;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * In-memory snapshot of index versions of all indexed blobs, read with a single pass over
+ * doc values of the index. Used to check staleness of blobs when the whole tree needs to be
+ * walked, without issuing a Lucene query for each blob.
+ */
+class IndexedBlobVersions {
+
+	private final Map<BlobKey, String> versions;
+
+	private IndexedBlobVersions(Map<BlobKey, String> versions) {
+		this.versions = versions;
+	}
+
+	/**
+	 * Check whether specified index contains blob documents written before blob hash and 
+	 * index version were recorded as doc values. Such index can not be snapshotted and 
+	 * should be recreated
+	 */
+	static boolean hasLegacyBlobs(IndexReader reader) {
+		for (LeafReaderContext context: reader.leaves()) {
+			FieldInfos fieldInfos = context.reader().getFieldInfos();
+			if (hasDocValues(fieldInfos, BLOB_PATH.name()) 
+					&& (!hasDocValues(fieldInfos, BLOB_HASH.name()) || !hasDocValues(fieldInfos, BLOB_INDEX_VERSION.name()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean hasDocValues(FieldInfos fieldInfos, String fieldName) {
+		FieldInfo fieldInfo = fieldInfos.fieldInfo(fieldName);
+		return fieldInfo != null && fieldInfo.getDocValuesType() != DocValuesType.NONE;
+	}
+
+	/**
+	 * Read index versions of all live blob documents of specified index
+	 */
+	static IndexedBlobVersions read(IndexReader reader) throws IOException {
+		Map<BlobKey, String> versions = new HashMap<>();
+		for (LeafReaderContext context: reader.leaves()) {
+			LeafReader leafReader = context.reader();
+			BinaryDocValues pathValues = leafReader.getBinaryDocValues(BLOB_PATH.name());
+			if (pathValues == null)
+				continue;
+			BinaryDocValues hashValues = leafReader.getBinaryDocValues(BLOB_HASH.name());
+			SortedDocValues versionValues = leafReader.getSortedDocValues(BLOB_INDEX_VERSION.name());
+			if (hashValues == null || versionValues == null)
+				continue;
+
+			String[] versionsByOrd = new String[versionValues.getValueCount()];
+			Bits liveDocs = leafReader.getLiveDocs();
+			for (int doc = pathValues.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = pathValues.nextDoc()) {
+				if (liveDocs != null && !liveDocs.get(doc))
+					continue;
+				if (!hashValues.advanceExact(doc) || !versionValues.advanceExact(doc))
+					continue;
+
+				BytesRef hashBytes = hashValues.binaryValue();
+				ObjectId blobId = ObjectId.fromRaw(hashBytes.bytes, hashBytes.offset);
+				String blobPath = pathValues.binaryValue().utf8ToString();
+
+				int ord = versionValues.ordValue();
+				if (versionsByOrd[ord] == null)
+					versionsByOrd[ord] = versionValues.lookupOrd(ord).utf8ToString();
+				versions.put(new BlobKey(blobId, blobPath), versionsByOrd[ord]);
+			}
+		}
+		return new IndexedBlobVersions(versions);
+	}
+
+	/**
+	 * @return
+	 * 			index version of specified blob, or <tt>null</tt> if the blob is not indexed
+	 */
+	@Nullable
+	String get(AnyObjectId blobId, String blobPath) {
+		return versions.get(new BlobKey(blobId, blobPath));
+	}
+
+	private static class BlobKey {
+
+		private final AnyObjectId blobId;
+
+		private final String blobPath;
+
+		BlobKey(AnyObjectId blobId, String blobPath) {
+			this.blobId = blobId;
+			this.blobPath = blobPath;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof BlobKey))
+				return false;
+			if (this == other)
+				return true;
+			BlobKey otherKey = (BlobKey) other;
+			return blobId.equals(otherKey.blobId) && blobPath.equals(otherKey.blobPath);
+		}
+
+		@Override
+		public int hashCode() {
+			return blobId.hashCode()*31 + blobPath.hashCode();
+		}
+
+	}
+
+}
@@ -11,7 +11,8 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.WildcardQuery;
-import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 
 import io.onedev.server.search.code.hit.QueryHit;
 
@@ -35,7 +36,17 @@ public abstract class BlobQuery {
 		return count;
 	}
 
-	public abstract void collect(IndexSearcher searcher, TreeWalk treeWalk, List<QueryHit> hits);
+	/**
+	 * Collect hits of specified blob
+	 * 
+	 * @param reader
+	 * 			object reader to read blob content if necessary
+	 * @param docId
+	 * 			id of the matching index document if it was indexed from the same blob, or 
+	 * 			<tt>null</tt> if the document was indexed from a different version of the blob
+	 */
+	public abstract void collect(IndexSearcher searcher, ObjectReader reader, String blobPath, 
+			ObjectId blobId, @Nullable Integer docId, List<QueryHit> hits);
 
 	/**
 	 * Get lucene query representation of this query
@@ -14,7 +14,7 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.WildcardQuery;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.lib.ObjectReader;
 
 import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.commons.utils.LinearRange;
@@ -58,10 +58,8 @@ public class SymbolQuery extends BlobQuery {
 	}
  
 	@Override
-	public void collect(IndexSearcher searcher, TreeWalk treeWalk, List<QueryHit> hits) {
-		String blobPath = treeWalk.getPathString();
-		ObjectId blobId = treeWalk.getObjectId(0);
-		
+	public void collect(IndexSearcher searcher, ObjectReader reader, String blobPath, 
+			ObjectId blobId, Integer docId, List<QueryHit> hits) {
 		List<Symbol> symbols = OneDev.getInstance(SearchManager.class).getSymbols(searcher, blobId, blobPath);
 		if (symbols != null) {
 			for (Symbol symbol: symbols) {
@@ -1,5 +1,6 @@
 package io.onedev.server.search.code.query;
 
+import static io.onedev.server.search.code.FieldConstants.BLOB_CONTENT;
 import static io.onedev.server.search.code.FieldConstants.BLOB_NAME;
 import static io.onedev.server.search.code.FieldConstants.BLOB_TEXT;
 import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
@@ -12,16 +13,19 @@ import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.CharUtils;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.WildcardQuery;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
-import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.lib.ObjectReader;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
 
 import io.onedev.commons.utils.LinearRange;
 import io.onedev.commons.utils.PlanarRange;
@@ -80,86 +84,102 @@ public class TextQuery extends BlobQuery {
 		}
 	}
 	
+	/*
+	 * Content of indexed blob is stored in the index, so that we do not need to read and 
+	 * decode the blob again if the matching document was indexed from the same blob
+	 */
+	@Nullable
+	private String getContent(IndexSearcher searcher, ObjectReader reader, String blobPath, 
+			ObjectId blobId, @Nullable Integer docId) throws IOException {
+		if (docId != null) {
+			Document document = searcher.doc(docId, Sets.newHashSet(BLOB_CONTENT.name()));
+			String content = document.get(BLOB_CONTENT.name());
+			if (content != null)
+				return content;
+		} 
+		ObjectLoader objectLoader = reader.open(blobId);
+		if (objectLoader.getSize() <= IndexConstants.MAX_INDEXABLE_SIZE) 
+			return ContentDetector.convertToText(objectLoader.getCachedBytes(), blobPath);
+		else
+			return null;
+	}
+	
 	@Override
-	public void collect(IndexSearcher searcher, TreeWalk treeWalk, List<QueryHit> hits) {
-		ObjectLoader objectLoader;
+	public void collect(IndexSearcher searcher, ObjectReader reader, String blobPath, 
+			ObjectId blobId, Integer docId, List<QueryHit> hits) {
 		try {
-			objectLoader = treeWalk.getObjectReader().open(treeWalk.getObjectId(0));
-			if (objectLoader.getSize() <= IndexConstants.MAX_INDEXABLE_SIZE) {
-				String blobPath = treeWalk.getPathString();
-				String content = ContentDetector.convertToText(objectLoader.getCachedBytes(), blobPath);
-				if (content != null) {
-					Pattern pattern = getPattern();
-					if (pattern != null) {
-						int lineNo = 0;
-						for (String line: Splitter.on('\n').split(content)) {
-							if (line.length() <= MAX_LINE_LEN) {
-								Matcher matcher = pattern.matcher(line);
-								while (matcher.find()) {
-									LinearRange range = new LinearRange(matcher.start(), matcher.end());
-									PlanarRange position = new PlanarRange(lineNo, range.getFrom(), lineNo, range.getTo());
-									hits.add(new TextHit(blobPath, line, position));
-									if (hits.size() >= getCount())
-										break;
-								}
+			String content = getContent(searcher, reader, blobPath, blobId, docId);
+			if (content != null) {
+				Pattern pattern = getPattern();
+				if (pattern != null) {
+					int lineNo = 0;
+					for (String line: Splitter.on('\n').split(content)) {
+						if (line.length() <= MAX_LINE_LEN) {
+							Matcher matcher = pattern.matcher(line);
+							while (matcher.find()) {
+								LinearRange range = new LinearRange(matcher.start(), matcher.end());
+								PlanarRange position = new PlanarRange(lineNo, range.getFrom(), lineNo, range.getTo());
+								hits.add(new TextHit(blobPath, line, position));
 								if (hits.size() >= getCount())
 									break;
 							}
-							lineNo++;
+							if (hits.size() >= getCount())
+								break;
 						}
-					} else {
-						String normalizedTerm;
-						if (!caseSensitive)
-							normalizedTerm = term.toLowerCase();
-						else
-							normalizedTerm = term;
-						
-						int lineNo = 0;
-						for (String line: Splitter.on('\n').split(content)) {
-							if (line.length() <= MAX_LINE_LEN) {
-								String normalizedLine;
-								if (!caseSensitive)
-									normalizedLine = line.toLowerCase();
-								else
-									normalizedLine = line;
-								
-								int start = normalizedLine.indexOf(normalizedTerm, 0);
-								while (start != -1) {
-									int end = start + normalizedTerm.length();
-									if (wholeWord) {
-										char beforeChar;
-										if (start == 0)
-											beforeChar = ' ';
-										else 
-											beforeChar = line.charAt(start-1);
-										
-										char afterChar;
-										if (end == line.length())
-											afterChar = ' ';
-										else
-											afterChar = line.charAt(end);
-										
-										if (!isWordChar(beforeChar) && !isWordChar(afterChar)) {
-											LinearRange range = new LinearRange(start, end);
-											PlanarRange position = new PlanarRange(lineNo, range.getFrom(), lineNo, range.getTo());
-											hits.add(new TextHit(blobPath, line, position));
-											if (hits.size() >= getCount())
-												break;
-										}
-									} else {
+						lineNo++;
+					}
+				} else {
+					String normalizedTerm;
+					if (!caseSensitive)
+						normalizedTerm = term.toLowerCase();
+					else
+						normalizedTerm = term;
+					
+					int lineNo = 0;
+					for (String line: Splitter.on('\n').split(content)) {
+						if (line.length() <= MAX_LINE_LEN) {
+							String normalizedLine;
+							if (!caseSensitive)
+								normalizedLine = line.toLowerCase();
+							else
+								normalizedLine = line;
+							
+							int start = normalizedLine.indexOf(normalizedTerm, 0);
+							while (start != -1) {
+								int end = start + normalizedTerm.length();
+								if (wholeWord) {
+									char beforeChar;
+									if (start == 0)
+										beforeChar = ' ';
+									else 
+										beforeChar = line.charAt(start-1);
+									
+									char afterChar;
+									if (end == line.length())
+										afterChar = ' ';
+									else
+										afterChar = line.charAt(end);
+									
+									if (!isWordChar(beforeChar) && !isWordChar(afterChar)) {
 										LinearRange range = new LinearRange(start, end);
 										PlanarRange position = new PlanarRange(lineNo, range.getFrom(), lineNo, range.getTo());
 										hits.add(new TextHit(blobPath, line, position));
 										if (hits.size() >= getCount())
 											break;
 									}
-									start = normalizedLine.indexOf(normalizedTerm, end);
+								} else {
+									LinearRange range = new LinearRange(start, end);
+									PlanarRange position = new PlanarRange(lineNo, range.getFrom(), lineNo, range.getTo());
+									hits.add(new TextHit(blobPath, line, position));
+									if (hits.size() >= getCount())
+										break;
 								}
-								if (hits.size() >= getCount())
-									break;
+								start = normalizedLine.indexOf(normalizedTerm, end);
 							}
-							lineNo++;
+							if (hits.size() >= getCount())
+								break;
 						}
+						lineNo++;
 					}
 				}
 			}
@@ -11,7 +11,9 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import edu.emory.mathcs.backport.java.util.Collections;
+import io.onedev.server.OneDev;
 import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.RangeBuilder;
 import io.onedev.server.util.criteria.Criteria;
 
@@ -21,6 +23,8 @@ public abstract class EntityCriteria<T extends AbstractEntity> extends Criteria<
 	
 	public static final int IN_CLAUSE_LIMIT = 1000;
 	
+	private static final String PROP_ID = "id";
+	
 	public abstract Predicate getPredicate(Root<T> root, CriteriaBuilder builder);
 
 	protected Predicate inManyValues(CriteriaBuilder builder, Path<Long> attribute, Collection<Long> inValues, 
@@ -56,6 +60,27 @@ public abstract class EntityCriteria<T extends AbstractEntity> extends Criteria<
 		return builder.or(predicates.toArray(new Predicate[0]));
 	}
 	
+	/**
+	 * Narrow down specified "contains" predicate with candidate ids from entity text index, 
+	 * so that database does not need to scan the whole table to evaluate it
+	 */
+	protected Predicate narrowWithTextIndex(Root<T> root, CriteriaBuilder builder, Predicate predicate, 
+			String field, String value) {
+		Collection<Long> entityIds = OneDev.getInstance(EntityTextManager.class)
+				.query(root.getJavaType(), field, value, null);
+		if (entityIds == null) 
+			return predicate;
+		else if (entityIds.isEmpty())
+			return builder.disjunction();
+		
+		Path<Long> attribute = root.get(PROP_ID);
+		List<Predicate> predicates = new ArrayList<>();
+		List<Long> listOfEntityIds = new ArrayList<>(entityIds);
+		for (int i=0; i<listOfEntityIds.size(); i+=IN_CLAUSE_LIMIT) 
+			predicates.add(attribute.in(listOfEntityIds.subList(i, Math.min(i+IN_CLAUSE_LIMIT, listOfEntityIds.size()))));
+		return builder.and(builder.or(predicates.toArray(new Predicate[0])), predicate);
+	}
+	
 	@Nullable
 	public static <T extends AbstractEntity> EntityCriteria<T> andCriterias(List<EntityCriteria<T>> criterias) {
 		if (criterias.size() > 1)
@@ -9,6 +9,7 @@ import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.IssueComment;
+import io.onedev.server.search.entitytext.EntityTextManager;
 
 public class CommentCriteria extends IssueCriteria {
 
@@ -25,7 +26,7 @@ public class CommentCriteria extends IssueCriteria {
 		Join<?, ?> join = root.join(Issue.PROP_COMMENTS, JoinType.LEFT);
 		Path<String> attribute = join.get(IssueComment.PATH_CONTENT);
 		join.on(builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%"));
-		return join.isNotNull();
+		return narrowWithTextIndex(root, builder, join.isNotNull(), EntityTextManager.FIELD_COMMENT, value);
 	}
 
 	@Override
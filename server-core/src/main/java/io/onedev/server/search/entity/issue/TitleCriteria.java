@@ -6,6 +6,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.Issue;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.match.WildcardUtils;
 
 public class TitleCriteria extends IssueCriteria {
@@ -21,7 +22,8 @@ public class TitleCriteria extends IssueCriteria {
 	@Override
 	public Predicate getPredicate(Root<Issue> root, CriteriaBuilder builder) {
 		Expression<String> attribute = root.get(Issue.PROP_TITLE);
-		return builder.like(builder.lower(attribute), "%" + value.toLowerCase().replace('*', '%') + "%");
+		Predicate predicate = builder.like(builder.lower(attribute), "%" + value.toLowerCase().replace('*', '%') + "%");
+		return narrowWithTextIndex(root, builder, predicate, EntityTextManager.FIELD_TITLE, value);
 	}
 
 	@Override
@@ -10,6 +10,7 @@ import javax.persistence.criteria.Root;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.PullRequestComment;
 import io.onedev.server.search.entity.EntityCriteria;
+import io.onedev.server.search.entitytext.EntityTextManager;
 
 public class CommentCriteria extends EntityCriteria<PullRequest> {
 
@@ -26,7 +27,7 @@ public class CommentCriteria extends EntityCriteria<PullRequest> {
 		Join<?, ?> join = root.join(PullRequest.PROP_COMMENTS, JoinType.LEFT);
 		Path<String> attribute = join.get(PullRequestComment.PROP_CONTENT);
 		join.on(builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%"));
-		return join.isNotNull();
+		return narrowWithTextIndex(root, builder, join.isNotNull(), EntityTextManager.FIELD_COMMENT, value);
 	}
 
 	@Override
@@ -7,6 +7,7 @@ import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.search.entity.EntityCriteria;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.match.WildcardUtils;
 
 public class TitleCriteria extends EntityCriteria<PullRequest> {
@@ -22,7 +23,8 @@ public class TitleCriteria extends EntityCriteria<PullRequest> {
 	@Override
 	public Predicate getPredicate(Root<PullRequest> root, CriteriaBuilder builder) {
 		Expression<String> attribute = root.get(PullRequest.PROP_TITLE);
-		return builder.like(builder.lower(attribute), "%" + value.toLowerCase().replace('*', '%') + "%");
+		Predicate predicate = builder.like(builder.lower(attribute), "%" + value.toLowerCase().replace('*', '%') + "%");
+		return narrowWithTextIndex(root, builder, predicate, EntityTextManager.FIELD_TITLE, value);
 	}
 
 	@Override
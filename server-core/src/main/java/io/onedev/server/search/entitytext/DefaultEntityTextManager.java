@@ -0,0 +1,610 @@
+package io.onedev.server.search.entitytext;
+
+import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.migration.DataMigrator;
+import io.onedev.server.migration.MigrationHelper;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueComment;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.PullRequestComment;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
+import io.onedev.server.search.code.NGramAnalyzer;
+import io.onedev.server.search.code.query.NGramLuceneQuery;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+@Singleton
+public class DefaultEntityTextManager implements EntityTextManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultEntityTextManager.class);
+	
+	// Increase this if format of indexed documents is changed to rebuild the index
+	private static final int INDEX_VERSION = 1;
+	
+	private static final String COMMIT_DATA_VERSION = "version";
+	
+	/*
+	 * Only present in commit data written when system is stopped normally. Index committed 
+	 * otherwise might miss changes made after last periodical commit
+	 */
+	private static final String COMMIT_DATA_CLEAN = "clean";
+	
+	private static final String COMMIT_DATA_DATA_VERSION = "dataVersion";
+	
+	// Prefix of commit data recording row count and max id of indexed tables
+	private static final String COMMIT_DATA_WATERMARK = "watermark:";
+	
+	private static final int COMMIT_INTERVAL = 60;
+	
+	/*
+	 * Querying with too many candidate ids is no better than scanning the table, so index is 
+	 * not used in this case
+	 */
+	private static final int MAX_CANDIDATES = 10000;
+	
+	private static final int REBUILD_BATCH = 1000;
+	
+	private static final String PROP_ID = "id";
+	
+	// Characters matching arbitrary text in either entity query or SQL LIKE pattern
+	private static final CharMatcher WILDCARDS = CharMatcher.anyOf("*%_");
+	
+	// Type of entity the document contributes matches to
+	private static final String FIELD_TYPE = "type";
+	
+	// Key of the indexed entity, used to update or delete the document
+	private static final String FIELD_KEY = "key";
+	
+	/*
+	 * Key of the entity the document contributes matches to. For comments this is key of 
+	 * the commented issue or pull request, so that comments are deleted together
+	 */
+	private static final String FIELD_ENTITY = "entity";
+	
+	private static final String FIELD_ENTITY_ID = "entityId";
+	
+	private static final String FIELD_PROJECT = "project";
+	
+	private static final List<Class<? extends AbstractEntity>> INDEXED_CLASSES = Lists.newArrayList(
+			Issue.class, IssueComment.class, PullRequest.class, PullRequestComment.class);
+	
+	private final StorageManager storageManager;
+	
+	private final SessionManager sessionManager;
+	
+	private final TransactionManager transactionManager;
+	
+	private final Dao dao;
+	
+	private final ExecutorManager executorManager;
+	
+	private final TaskScheduler taskScheduler;
+	
+	private volatile IndexWriter writer;
+	
+	private volatile SearcherManager searcherManager;
+	
+	private volatile boolean ready;
+	
+	/*
+	 * Keys of entities updated from events while index is being rebuilt. Rebuild should 
+	 * not overwrite these as data it loaded might be stale
+	 */
+	private final Set<String> keysUpdatedDuringRebuild = ConcurrentHashMap.newKeySet();
+	
+	private String commitTaskId;
+	
+	@Inject
+	public DefaultEntityTextManager(StorageManager storageManager, SessionManager sessionManager, 
+			TransactionManager transactionManager, Dao dao, ExecutorManager executorManager, 
+			TaskScheduler taskScheduler) {
+		this.storageManager = storageManager;
+		this.sessionManager = sessionManager;
+		this.transactionManager = transactionManager;
+		this.dao = dao;
+		this.executorManager = executorManager;
+		this.taskScheduler = taskScheduler;
+	}
+	
+	@Listen
+	public void on(SystemStarted event) {
+		File indexDir = storageManager.getEntityIndexDir();
+		boolean upToDate;
+		try {
+			Map<String, String> commitData;
+			try {
+				commitData = getCommitData(indexDir);
+			} catch (IOException e) {
+				logger.error("Error reading entity index, will rebuild it", e);
+				FileUtils.cleanDir(indexDir);
+				commitData = null;
+			}
+			upToDate = commitData != null 
+					&& String.valueOf(INDEX_VERSION).equals(commitData.get(COMMIT_DATA_VERSION))
+					&& Boolean.parseBoolean(commitData.get(COMMIT_DATA_CLEAN))
+					&& getDataWatermarks().equals(getDataWatermarks(commitData));
+			if (commitData != null && !upToDate)
+				logger.info("Entity index is outdated or not closed normally, will rebuild it");
+			
+			IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
+			writerConfig.setOpenMode(upToDate? OpenMode.CREATE_OR_APPEND: OpenMode.CREATE);
+			writer = new IndexWriter(FSDirectory.open(indexDir.toPath()), writerConfig);
+			
+			/*
+			 * Clear the clean mark on disk, so that index will be rebuilt if system is not 
+			 * stopped normally
+			 */
+			Map<String, String> liveCommitData = new HashMap<>();
+			if (upToDate)
+				liveCommitData.put(COMMIT_DATA_VERSION, String.valueOf(INDEX_VERSION));
+			writer.setLiveCommitData(liveCommitData.entrySet());
+			writer.commit();
+			
+			searcherManager = new SearcherManager(writer, null);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		if (upToDate) 
+			ready = true;
+		else 
+			rebuildAsync();
+		
+		commitTaskId = taskScheduler.schedule(new SchedulableTask() {
+			
+			@Override
+			public ScheduleBuilder<?> getScheduleBuilder() {
+				return SimpleScheduleBuilder.repeatSecondlyForever(COMMIT_INTERVAL);
+			}
+			
+			@Override
+			public void execute() {
+				try {
+					synchronized (keysUpdatedDuringRebuild) {
+						if (ready && writer.hasUncommittedChanges())
+							writer.commit();
+					}
+				} catch (Exception e) {
+					logger.error("Error committing entity index", e);
+				}
+			}
+			
+		});
+	}
+	
+	@Nullable
+	private Map<String, String> getCommitData(File indexDir) throws IOException {
+		try (Directory directory = FSDirectory.open(indexDir.toPath())) {
+			if (DirectoryReader.indexExists(directory)) 
+				return SegmentInfos.readLatestCommit(directory).getUserData();
+			else 
+				return null;
+		}
+	}
+	
+	/*
+	 * Index is in sync with database only if database is not migrated, restored or modified 
+	 * by others since index is closed, and row count and max id of indexed tables are checked 
+	 * to detect this. Text edited directly in database without changing these can not be 
+	 * detected
+	 */
+	private Map<String, String> getDataWatermarks() {
+		return sessionManager.call(new Callable<Map<String, String>>() {
+
+			@Override
+			public Map<String, String> call() throws Exception {
+				Map<String, String> watermarks = new HashMap<>();
+				watermarks.put(COMMIT_DATA_DATA_VERSION, MigrationHelper.getVersion(DataMigrator.class));
+				for (Class<? extends AbstractEntity> indexedClass: INDEXED_CLASSES) {
+					int count = dao.count(EntityCriteria.of(indexedClass));
+					EntityCriteria<? extends AbstractEntity> criteria = EntityCriteria.of(indexedClass);
+					criteria.addOrder(Order.desc(PROP_ID));
+					List<? extends AbstractEntity> entities = dao.query(criteria, 0, 1);
+					Long maxId = !entities.isEmpty()? entities.get(0).getId(): null;
+					watermarks.put(COMMIT_DATA_WATERMARK + indexedClass.getSimpleName(), count + ":" + maxId);
+				}
+				return watermarks;
+			}
+			
+		});
+	}
+	
+	private Map<String, String> getDataWatermarks(Map<String, String> commitData) {
+		Map<String, String> watermarks = new HashMap<>();
+		for (Map.Entry<String, String> entry: commitData.entrySet()) {
+			if (entry.getKey().equals(COMMIT_DATA_DATA_VERSION) || entry.getKey().startsWith(COMMIT_DATA_WATERMARK))
+				watermarks.put(entry.getKey(), entry.getValue());
+		}
+		return watermarks;
+	}
+	
+	private void rebuildAsync() {
+		executorManager.getExecutor(ExecutorPool.GENERAL).execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					rebuild();
+				} catch (Exception e) {
+					logger.error("Error building entity index", e);
+				}
+			}
+			
+		});
+	}
+	
+	/*
+	 * Rebuild index from database if some change fails to be applied, as index would miss 
+	 * the change otherwise
+	 */
+	private void requestRebuild() {
+		synchronized (keysUpdatedDuringRebuild) {
+			if (!ready)
+				return;
+			ready = false;
+			try {
+				writer.deleteAll();
+				writer.setLiveCommitData(new HashMap<String, String>().entrySet());
+			} catch (Exception e) {
+				logger.error("Error clearing entity index, index will not be used until restart", e);
+				return;
+			}
+		}
+		rebuildAsync();
+	}
+	
+	private void rebuild() throws IOException {
+		logger.info("Building entity index...");
+		for (Class<? extends AbstractEntity> indexedClass: INDEXED_CLASSES) {
+			long lastId = 0;
+			while (true) {
+				long afterId = lastId;
+				List<Document> documents = sessionManager.call(new Callable<List<Document>>() {
+
+					@Override
+					public List<Document> call() throws Exception {
+						EntityCriteria<? extends AbstractEntity> criteria = EntityCriteria.of(indexedClass);
+						criteria.add(Restrictions.gt(PROP_ID, afterId));
+						criteria.addOrder(Order.asc(PROP_ID));
+						List<Document> documents = Lists.newArrayList();
+						for (AbstractEntity entity: dao.query(criteria, 0, REBUILD_BATCH)) 
+							documents.add(newDocument(entity));
+						return documents;
+					}
+					
+				});
+				if (documents.isEmpty())
+					break;
+				synchronized (keysUpdatedDuringRebuild) {
+					for (Document document: documents) {
+						String key = document.get(FIELD_KEY);
+						if (!keysUpdatedDuringRebuild.contains(key))
+							writer.updateDocument(new Term(FIELD_KEY, key), document);
+					}
+				}
+				lastId = Long.parseLong(getId(documents.get(documents.size()-1).get(FIELD_KEY)));
+			}
+		}
+		
+		Map<String, String> commitData = new HashMap<>();
+		commitData.put(COMMIT_DATA_VERSION, String.valueOf(INDEX_VERSION));
+		synchronized (keysUpdatedDuringRebuild) {
+			writer.setLiveCommitData(commitData.entrySet());
+			writer.commit();
+			searcherManager.maybeRefresh();
+			ready = true;
+			keysUpdatedDuringRebuild.clear();
+		}
+		logger.info("Entity index built");
+	}
+	
+	private String getKey(Class<?> entityClass, Long entityId) {
+		return entityClass.getSimpleName() + ":" + entityId;
+	}
+	
+	private String getId(String key) {
+		return key.substring(key.indexOf(':')+1);
+	}
+	
+	private Document newDocument(AbstractEntity entity) {
+		Document document = new Document();
+		document.add(new StringField(FIELD_KEY, getKey(HibernateProxyHelper.getClassWithoutInitializingProxy(entity), entity.getId()), Store.YES));
+		if (entity instanceof Issue) {
+			Issue issue = (Issue) entity;
+			addEntityFields(document, Issue.class, issue.getId(), issue.getProject());
+			addTextField(document, FIELD_TITLE, issue.getTitle());
+			addTextField(document, FIELD_NO_SPACE_TITLE, StringUtils.deleteWhitespace(issue.getTitle()));
+			addTextField(document, FIELD_DESCRIPTION, issue.getDescription());
+		} else if (entity instanceof IssueComment) {
+			IssueComment comment = (IssueComment) entity;
+			addEntityFields(document, Issue.class, comment.getIssue().getId(), comment.getIssue().getProject());
+			addTextField(document, FIELD_COMMENT, comment.getContent());
+		} else if (entity instanceof PullRequest) {
+			PullRequest request = (PullRequest) entity;
+			addEntityFields(document, PullRequest.class, request.getId(), request.getTargetProject());
+			addTextField(document, FIELD_TITLE, request.getTitle());
+			addTextField(document, FIELD_NO_SPACE_TITLE, StringUtils.deleteWhitespace(request.getTitle()));
+			addTextField(document, FIELD_DESCRIPTION, request.getDescription());
+		} else {
+			PullRequestComment comment = (PullRequestComment) entity;
+			addEntityFields(document, PullRequest.class, comment.getRequest().getId(), 
+					comment.getRequest().getTargetProject());
+			addTextField(document, FIELD_COMMENT, comment.getContent());
+		}
+		return document;
+	}
+	
+	private void addEntityFields(Document document, Class<?> entityClass, Long entityId, Project project) {
+		document.add(new StringField(FIELD_TYPE, entityClass.getSimpleName(), Store.NO));
+		document.add(new StringField(FIELD_ENTITY, getKey(entityClass, entityId), Store.NO));
+		document.add(new NumericDocValuesField(FIELD_ENTITY_ID, entityId));
+		document.add(new StringField(FIELD_PROJECT, String.valueOf(project.getId()), Store.NO));
+	}
+	
+	private void addTextField(Document document, String fieldName, @Nullable String fieldValue) {
+		if (fieldValue != null)
+			document.add(new TextField(fieldName, fieldValue, Store.NO));
+	}
+	
+	private boolean isIndexed(AbstractEntity entity) {
+		return entity instanceof Issue || entity instanceof IssueComment 
+				|| entity instanceof PullRequest || entity instanceof PullRequestComment;
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (writer != null && isIndexed(event.getEntity())) {
+			Document document = newDocument(event.getEntity());
+			String key = document.get(FIELD_KEY);
+			updateAfterCommit(new IndexUpdate() {
+
+				@Override
+				public void update(IndexWriter writer) throws IOException {
+					synchronized (keysUpdatedDuringRebuild) {
+						writer.updateDocument(new Term(FIELD_KEY, key), document);
+						if (!ready)
+							keysUpdatedDuringRebuild.add(key);
+					}
+				}
+				
+			});
+		}
+	}
+	
+	/*
+	 * Bulk deletions via HQL, such as issues deleted when fixing undefined states, do not 
+	 * fire this event. Documents of deleted entities are left in index in that case, which 
+	 * only results in extra candidates to be filtered out by the original predicate
+	 */
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		AbstractEntity entity = event.getEntity();
+		if (writer != null) {
+			Term term;
+			if (entity instanceof Issue || entity instanceof PullRequest) 
+				term = new Term(FIELD_ENTITY, getKey(HibernateProxyHelper.getClassWithoutInitializingProxy(entity), entity.getId()));
+			else if (entity instanceof IssueComment || entity instanceof PullRequestComment) 
+				term = new Term(FIELD_KEY, getKey(HibernateProxyHelper.getClassWithoutInitializingProxy(entity), entity.getId()));
+			else if (entity instanceof Project) 
+				term = new Term(FIELD_PROJECT, String.valueOf(entity.getId()));
+			else 
+				term = null;
+			if (term != null) {
+				updateAfterCommit(new IndexUpdate() {
+
+					@Override
+					public void update(IndexWriter writer) throws IOException {
+						writer.deleteDocuments(term);
+					}
+					
+				});
+			}
+		}
+	}
+	
+	private void updateAfterCommit(IndexUpdate update) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			/*
+			 * Changes are made visible by refreshing searcher without committing, and are 
+			 * committed periodically to avoid syncing index files on every change
+			 */
+			@Override
+			public void run() {
+				IndexWriter writer = DefaultEntityTextManager.this.writer;
+				if (writer != null) {
+					try {
+						update.update(writer);
+						if (ready)
+							searcherManager.maybeRefresh();
+					} catch (Exception e) {
+						logger.error("Error updating entity index, will rebuild it", e);
+						requestRebuild();
+					}
+				}
+			}
+			
+		});
+	}
+	
+	@Nullable
+	@Override
+	public Collection<Long> query(Class<? extends AbstractEntity> entityClass, String field, String value, 
+			@Nullable Collection<Long> projectIds) {
+		if (!ready)
+			return null;
+		
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(new TermQuery(new Term(FIELD_TYPE, entityClass.getSimpleName())), Occur.MUST);
+		boolean narrowed = false;
+		for (String literal: Splitter.on(WILDCARDS).split(value)) {
+			if (literal.length() >= NGRAM_SIZE) {
+				builder.add(new NGramLuceneQuery(field, literal, NGRAM_SIZE), Occur.MUST);
+				narrowed = true;
+			}
+		}
+		if (!narrowed)
+			return null;
+		
+		if (projectIds != null) {
+			BooleanQuery.Builder projectsBuilder = new BooleanQuery.Builder();
+			for (Long projectId: projectIds) 
+				projectsBuilder.add(new TermQuery(new Term(FIELD_PROJECT, String.valueOf(projectId))), Occur.SHOULD);
+			builder.add(projectsBuilder.build(), Occur.MUST);
+		}
+		
+		Collection<Long> entityIds = new HashSet<>();
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				searcher.search(builder.build(), new SimpleCollector() {
+
+					private NumericDocValues entityIdValues;
+					
+					@Override
+					public void collect(int doc) throws IOException {
+						if (entityIdValues != null && entityIdValues.advanceExact(doc)) {
+							entityIds.add(entityIdValues.longValue());
+							if (entityIds.size() > MAX_CANDIDATES)
+								throw new TooManyCandidatesException();
+						}
+					}
+
+					@Override
+					protected void doSetNextReader(LeafReaderContext context) throws IOException {
+						entityIdValues = context.reader().getNumericDocValues(FIELD_ENTITY_ID);
+					}
+
+					@Override
+					public boolean needsScores() {
+						return false;
+					}
+					
+				});
+			} finally {
+				searcherManager.release(searcher);
+			}
+		} catch (TooManyCandidatesException e) {
+			return null;
+		} catch (IOException e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+		return entityIds;
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		if (commitTaskId != null)
+			taskScheduler.unschedule(commitTaskId);
+		
+		Map<String, String> commitData = null;
+		if (ready) {
+			try {
+				commitData = getDataWatermarks();
+				commitData.put(COMMIT_DATA_VERSION, String.valueOf(INDEX_VERSION));
+				commitData.put(COMMIT_DATA_CLEAN, String.valueOf(true));
+			} catch (Exception e) {
+				logger.error("Error reading entity index watermarks", e);
+			}
+		}
+		
+		IndexWriter writer = this.writer;
+		this.writer = null;
+		try {
+			synchronized (keysUpdatedDuringRebuild) {
+				if (writer != null && ready && commitData != null) {
+					writer.setLiveCommitData(commitData.entrySet());
+					writer.commit();
+				}
+				ready = false;
+			}
+			if (searcherManager != null) 
+				searcherManager.close();
+			if (writer != null) 
+				writer.close();
+		} catch (IOException e) {
+			logger.error("Error closing entity index", e);
+		}
+	}
+	
+	private static interface IndexUpdate {
+		
+		void update(IndexWriter writer) throws IOException;
+		
+	}
+	
+	private static class TooManyCandidatesException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		
+	}
+	
+}
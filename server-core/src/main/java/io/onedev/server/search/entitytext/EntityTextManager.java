@@ -0,0 +1,47 @@
+package io.onedev.server.search.entitytext;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.AbstractEntity;
+
+/**
+ * Full text index of titles, descriptions and comments of issues and pull requests. Text is 
+ * indexed as n-grams, so that "contains" searches can be served without scanning tables. 
+ * Matched ids are candidates to be intersected with other predicates of entity queries, 
+ * and the original predicate should still be applied to filter out false positives.
+ */
+public interface EntityTextManager {
+
+	String FIELD_TITLE = "title";
+	
+	String FIELD_NO_SPACE_TITLE = "noSpaceTitle";
+	
+	String FIELD_DESCRIPTION = "description";
+	
+	String FIELD_COMMENT = "comment";
+	
+	/**
+	 * Query ids of entities containing specified value in specified field
+	 * 
+	 * @param entityClass
+	 * 			class of entities to query, either issue or pull request
+	 * @param field
+	 * 			field to query, one of the <tt>FIELD_XXX</tt> constants. Comment field matches 
+	 * 			entities with any comment containing specified value
+	 * @param value
+	 * 			value to search, with <tt>*</tt> matching any characters
+	 * @param projectIds
+	 * 			ids of projects to restrict the query to, or <tt>null</tt> to query all 
+	 * 			projects
+	 * @return
+	 * 			ids of candidate entities, or <tt>null</tt> if the index can not be used to 
+	 * 			narrow down entities, for instance if the index is still being built, value is 
+	 * 			too short, or too many entities are matched
+	 */
+	@Nullable
+	Collection<Long> query(Class<? extends AbstractEntity> entityClass, String field, String value, 
+			@Nullable Collection<Long> projectIds);
+	
+}
@@ -0,0 +1,222 @@
+package io.onedev.server.security;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.security.permission.AccessBuild;
+import io.onedev.server.security.permission.AccessBuildLog;
+import io.onedev.server.security.permission.AccessProject;
+import io.onedev.server.security.permission.JobPermission;
+import io.onedev.server.security.permission.ManageBuilds;
+import io.onedev.server.security.permission.ManageCodeComments;
+import io.onedev.server.security.permission.ManageIssues;
+import io.onedev.server.security.permission.ManageJob;
+import io.onedev.server.security.permission.ManageProject;
+import io.onedev.server.security.permission.ManagePullRequests;
+import io.onedev.server.security.permission.ProjectPermission;
+import io.onedev.server.security.permission.ReadCode;
+import io.onedev.server.security.permission.RunJob;
+import io.onedev.server.security.permission.ScheduleIssues;
+import io.onedev.server.security.permission.WriteCode;
+
+/**
+ * Permissions of a user compiled into a lookup structure. Project privileges are indexed by
+ * project id, and privileges without parameters are pre-evaluated into a bit set per project,
+ * so that checking them does not need to scan granted permissions. Instances are immutable
+ * and shared across requests until invalidated by {@link PermissionManager}.
+ */
+public class CompiledPermissions implements AuthorizationInfo {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final List<Permission> SIMPLE_PRIVILEGES = Lists.newArrayList(
+			new AccessProject(), new ReadCode(), new WriteCode(), new ManageProject(),
+			new ManageCodeComments(), new ManagePullRequests(), new ManageIssues(),
+			new ScheduleIssues(), new ManageBuilds());
+
+	private static final Map<Class<?>, Integer> SIMPLE_PRIVILEGE_BITS = new HashMap<>();
+
+	private static final List<Class<?>> SIMPLE_JOB_PRIVILEGES = Lists.newArrayList(
+			AccessBuild.class, AccessBuildLog.class, RunJob.class, ManageJob.class);
+
+	static {
+		for (int i=0; i<SIMPLE_PRIVILEGES.size(); i++)
+			SIMPLE_PRIVILEGE_BITS.put(SIMPLE_PRIVILEGES.get(i).getClass(), i);
+	}
+
+	private final boolean administrator;
+
+	private final Collection<Permission> permissions;
+
+	private final ProjectPrivileges allProjectPrivileges;
+
+	private final Map<Long, ProjectPrivileges> projectPrivileges = new HashMap<>();
+
+	/**
+	 * @param administrator
+	 * 			whether or not the user is system administrator
+	 * @param permissions
+	 * 			permissions not specific to projects
+	 * @param allProjectPrivileges
+	 * 			privileges granted for all projects
+	 * @param projectPrivileges
+	 * 			privileges granted for specific projects, keyed by project id
+	 */
+	public CompiledPermissions(boolean administrator, Collection<Permission> permissions,
+			Collection<Permission> allProjectPrivileges, Map<Long, Collection<Permission>> projectPrivileges) {
+		this.administrator = administrator;
+		this.permissions = new ArrayList<>(permissions);
+		this.allProjectPrivileges = new ProjectPrivileges(allProjectPrivileges);
+		for (Map.Entry<Long, Collection<Permission>> entry: projectPrivileges.entrySet())
+			this.projectPrivileges.put(entry.getKey(), new ProjectPrivileges(entry.getValue()));
+	}
+
+	public boolean isAdministrator() {
+		return administrator;
+	}
+
+	public boolean isPermitted(Permission permission) {
+		if (administrator)
+			return true;
+		if (permission instanceof ProjectPermission) {
+			ProjectPermission projectPermission = (ProjectPermission) permission;
+			Long projectId = projectPermission.getProject().getId();
+			if (projectId == null)
+				return false;
+			if (allProjectPrivileges.implies(projectPermission.getPrivilege()))
+				return true;
+			ProjectPrivileges privileges = projectPrivileges.get(projectId);
+			return privileges != null && privileges.implies(projectPermission.getPrivilege());
+		} else {
+			for (Permission each: permissions) {
+				if (each.implies(permission))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return
+	 * 			<tt>true</tt> if specified privilege is granted for all projects
+	 */
+	public boolean isPermittedForAllProjects(Permission privilege) {
+		return administrator || allProjectPrivileges.implies(privilege);
+	}
+
+	/**
+	 * @return
+	 * 			ids of projects specified privilege is granted for explicitly. Check
+	 * 			{@link #isPermittedForAllProjects(Permission)} first to find out whether the
+	 * 			privilege is granted for all projects
+	 */
+	public Collection<Long> getPermittedProjectIds(Permission privilege) {
+		Collection<Long> projectIds = new ArrayList<>();
+		for (Map.Entry<Long, ProjectPrivileges> entry: projectPrivileges.entrySet()) {
+			if (entry.getValue().implies(privilege))
+				projectIds.add(entry.getKey());
+		}
+		return projectIds;
+	}
+
+	@Override
+	public Collection<String> getRoles() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Collection<String> getStringPermissions() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Flattened permissions for callers not aware of compiled permissions. Permission checks
+	 * should go through {@link #isPermitted(Permission)} instead
+	 */
+	@Override
+	public Collection<Permission> getObjectPermissions() {
+		return Collections.singleton(new Permission() {
+
+			@Override
+			public boolean implies(Permission p) {
+				return isPermitted(p);
+			}
+
+		});
+	}
+
+	private static class ProjectPrivileges {
+
+		private final List<Permission> privileges;
+
+		private final int simplePrivileges;
+
+		private final Map<String, Boolean> jobPrivileges = new ConcurrentHashMap<>();
+
+		ProjectPrivileges(Collection<Permission> privileges) {
+			this.privileges = new ArrayList<>(privileges);
+			int simplePrivileges = 0;
+			for (int i=0; i<SIMPLE_PRIVILEGES.size(); i++) {
+				if (scan(SIMPLE_PRIVILEGES.get(i)))
+					simplePrivileges |= 1<<i;
+			}
+			this.simplePrivileges = simplePrivileges;
+		}
+
+		boolean implies(Permission privilege) {
+			Integer bit = SIMPLE_PRIVILEGE_BITS.get(privilege.getClass());
+			if (bit != null) {
+				return (simplePrivileges & 1<<bit) != 0;
+			} else {
+				String jobPrivilegeKey = getJobPrivilegeKey(privilege);
+				if (jobPrivilegeKey != null) {
+					Boolean implied = jobPrivileges.get(jobPrivilegeKey);
+					if (implied == null) {
+						implied = scan(privilege);
+						jobPrivileges.put(jobPrivilegeKey, implied);
+					}
+					return implied;
+				} else {
+					return scan(privilege);
+				}
+			}
+		}
+
+		/*
+		 * Result of checking a job privilege only depends on job names and type of the
+		 * privilege if the privilege does not have parameters, so it can be memorized
+		 */
+		@Nullable
+		private String getJobPrivilegeKey(Permission privilege) {
+			if (privilege instanceof JobPermission) {
+				JobPermission jobPermission = (JobPermission) privilege;
+				Class<?> privilegeClass = jobPermission.getPrivilege().getClass();
+				if (SIMPLE_JOB_PRIVILEGES.contains(privilegeClass))
+					return privilegeClass.getName() + ":" + jobPermission.getJobNames();
+			}
+			return null;
+		}
+
+		private boolean scan(Permission privilege) {
+			for (Permission each: privileges) {
+				if (each.implies(privilege))
+					return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,209 @@
+package io.onedev.server.security;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.shiro.authz.Permission;
+
+import com.google.common.collect.Sets;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.entitymanager.GroupManager;
+import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.entitymanager.UserManager;
+import io.onedev.server.event.entity.EntityEvent;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Group;
+import io.onedev.server.model.GroupAuthorization;
+import io.onedev.server.model.Membership;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.Role;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.User;
+import io.onedev.server.model.UserAuthorization;
+import io.onedev.server.model.support.issue.fieldspec.FieldSpec;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.security.permission.AccessBuildLog;
+import io.onedev.server.security.permission.CreateProjects;
+import io.onedev.server.security.permission.EditIssueField;
+import io.onedev.server.security.permission.JobPermission;
+import io.onedev.server.security.permission.ReadCode;
+import io.onedev.server.security.permission.UserAdministration;
+
+@Singleton
+public class DefaultPermissionManager implements PermissionManager {
+
+	private final UserManager userManager;
+	
+	private final GroupManager groupManager;
+	
+	private final SettingManager settingManager;
+	
+	private final TransactionManager transactionManager;
+	
+	private final Map<Long, CompiledPermissions> cache = new ConcurrentHashMap<>();
+	
+	/*
+	 * Increased on every invalidation, so that permissions compiled concurrently with an 
+	 * invalidation are not put into cache 
+	 */
+	private final AtomicLong version = new AtomicLong(0);
+	
+	@Inject
+	public DefaultPermissionManager(UserManager userManager, GroupManager groupManager, 
+			SettingManager settingManager, TransactionManager transactionManager) {
+		this.userManager = userManager;
+		this.groupManager = groupManager;
+		this.settingManager = settingManager;
+		this.transactionManager = transactionManager;
+	}
+	
+	@Sessional
+	@Override
+	public CompiledPermissions getPermissions(Long userId) {
+		CompiledPermissions permissions = cache.get(userId);
+		if (permissions == null) {
+			long versionBeforeCompile = version.get();
+			permissions = compile(userId);
+			if (version.get() == versionBeforeCompile)
+				cache.put(userId, permissions);
+		}
+		return permissions;
+	}
+	
+	private CompiledPermissions compile(Long userId) {
+		boolean administrator = false;
+		Collection<Permission> permissions = new ArrayList<>();
+		Collection<Permission> allProjectPrivileges = new ArrayList<>();
+		Map<Long, Collection<Permission>> projectPrivileges = new HashMap<>();
+		
+		User user = null;
+		if (userId != 0L) { 
+			user = userManager.load(userId);
+			if (user.isRoot() || user.isSystem()) 
+				administrator = true;
+			permissions.add(new UserAdministration(user));
+			for (Group group: user.getGroups()) {
+				if (group.isAdministrator())
+					administrator = true;
+				if (group.isCreateProjects())
+					permissions.add(new CreateProjects());
+				for (GroupAuthorization authorization: group.getAuthorizations()) 
+					addPrivileges(projectPrivileges, authorization.getProject(), authorization.getRole(), true);
+			}
+			for (UserAuthorization authorization: user.getAuthorizations()) 
+				addPrivileges(projectPrivileges, authorization.getProject(), authorization.getRole(), true);
+		} 
+		
+		Group group = groupManager.findAnonymous();
+		if (group != null) {
+			if (group.isAdministrator()) {
+				if (user != null) {
+					administrator = true;
+				} else {
+					allProjectPrivileges.add(new ReadCode());
+					for (FieldSpec field: settingManager.getIssueSetting().getFieldSpecs())
+						allProjectPrivileges.add(new EditIssueField(Sets.newHashSet(field.getName())));
+					allProjectPrivileges.add(new JobPermission("*", new AccessBuildLog()));
+				}
+			}
+			if (user != null && group.isCreateProjects())
+				permissions.add(new CreateProjects());
+			for (GroupAuthorization authorization: group.getAuthorizations()) 
+				addPrivileges(projectPrivileges, authorization.getProject(), authorization.getRole(), user != null);
+		}
+		
+		return new CompiledPermissions(administrator, permissions, allProjectPrivileges, projectPrivileges);
+	}
+	
+	private void addPrivileges(Map<Long, Collection<Permission>> projectPrivileges, Project project, 
+			Role role, boolean authenticated) {
+		Collection<Permission> privileges = projectPrivileges.get(project.getId());
+		if (privileges == null) {
+			privileges = new ArrayList<>();
+			projectPrivileges.put(project.getId(), privileges);
+		}
+		privileges.addAll(role.getPermissions(authenticated));
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		onChange(event);
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		onChange(event);
+	}
+	
+	private void onChange(EntityEvent event) {
+		if (event.getEntity() instanceof Membership) {
+			invalidateAfterCommit(((Membership) event.getEntity()).getUser());
+		} else if (event.getEntity() instanceof UserAuthorization) {
+			invalidateAfterCommit(((UserAuthorization) event.getEntity()).getUser());
+		} else if (event.getEntity() instanceof User) {
+			invalidateAfterCommit((User) event.getEntity());
+		} else if (event.getEntity() instanceof GroupAuthorization) {
+			invalidateAfterCommit(((GroupAuthorization) event.getEntity()).getGroup());
+		} else if (event.getEntity() instanceof Group) {
+			invalidateAfterCommit((Group) event.getEntity());
+		} else if (event.getEntity() instanceof Role 
+				|| event.getEntity() instanceof Setting
+				|| event.getEntity() instanceof Project && (event instanceof EntityRemoved || ((EntityPersisted) event).isNew())) {
+			invalidateAfterCommit((User) null);
+		}
+	}
+	
+	private void invalidateAfterCommit(Group group) {
+		Group anonymousGroup = groupManager.findAnonymous();
+		if (anonymousGroup != null && anonymousGroup.equals(group)) {
+			invalidateAfterCommit((User) null);
+		} else {
+			Collection<Long> userIds = new ArrayList<>();
+			for (User user: group.getMembers())
+				userIds.add(user.getId());
+			invalidateAfterCommit(userIds);
+		}
+	}
+	
+	/**
+	 * @param user
+	 * 			user to invalidate permissions for, or <tt>null</tt> to invalidate permissions 
+	 * 			of all users
+	 */
+	private void invalidateAfterCommit(@Nullable User user) {
+		if (user != null)
+			invalidateAfterCommit(Sets.newHashSet(user.getId()));
+		else
+			invalidateAfterCommit((Collection<Long>) null);
+	}
+	
+	private void invalidateAfterCommit(@Nullable Collection<Long> userIds) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				version.incrementAndGet();
+				if (userIds != null) 
+					cache.keySet().removeAll(userIds);
+				else 
+					cache.clear();
+			}
+			
+		});
+	}
+	
+}
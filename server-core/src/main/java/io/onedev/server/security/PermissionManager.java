@@ -0,0 +1,17 @@
+package io.onedev.server.security;
+
+/**
+ * Compiles and caches permissions of users across requests. Cached permissions are 
+ * invalidated when memberships, authorizations, roles, groups, projects or settings change.
+ */
+public interface PermissionManager {
+
+	/**
+	 * Get compiled permissions of specified user
+	 * 
+	 * @param userId
+	 * 			id of the user, or <tt>0</tt> for anonymous user
+	 */
+	CompiledPermissions getPermissions(Long userId);
+	
+}
@@ -14,6 +14,14 @@ public class ProjectPermission implements Permission {
 		this.project = project;
 		this.privilege = privilege;
 	}
+
+	public Project getProject() {
+		return project;
+	}
+
+	public Permission getPrivilege() {
+		return privilege;
+	}
 	
 	@Override
 	public boolean implies(Permission p) {
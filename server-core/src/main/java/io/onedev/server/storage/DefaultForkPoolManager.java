@@ -0,0 +1,255 @@
+package io.onedev.server.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.command.CloneCommand;
+import io.onedev.server.git.command.FetchCommand;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Transactional;
+
+@Singleton
+public class DefaultForkPoolManager implements ForkPoolManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultForkPoolManager.class);
+
+	private static final String ALTERNATES = "objects/info/alternates";
+
+	private static final String MEMBERS = "onedev-members";
+
+	private static final String MEMBER_REFS = "refs/members/";
+
+	private final StorageManager storageManager;
+
+	private final TransactionManager transactionManager;
+
+	@Inject
+	public DefaultForkPoolManager(StorageManager storageManager, TransactionManager transactionManager) {
+		this.storageManager = storageManager;
+		this.transactionManager = transactionManager;
+	}
+
+	@Override
+	public void fork(Project from, Project to) {
+		File fromGitDir = from.getGitDir();
+		File toGitDir = to.getGitDir();
+
+		File poolGitDir;
+		synchronized (this) {
+			poolGitDir = getPoolGitDir(fromGitDir);
+			if (poolGitDir == null) {
+				poolGitDir = new File(storageManager.getForkPoolsDir(), String.valueOf(from.getId()));
+				createPool(poolGitDir, fromGitDir);
+				join(poolGitDir, from.getId(), fromGitDir);
+			}
+		}
+
+		Lock lock = LockUtils.getLock(ForkPoolManager.getLockKey(poolGitDir));
+		lock.lock();
+		try {
+			// make sure all objects of the source repository are available in the pool
+			fetchMember(poolGitDir, from.getId(), fromGitDir);
+			join(poolGitDir, to.getId(), toGitDir);
+		} finally {
+			lock.unlock();
+		}
+
+		// All objects are available via the pool, so only refs will be fetched
+		new FetchCommand(toGitDir, null).from(fromGitDir.getAbsolutePath()).refspec("+refs/*:refs/*").call();
+
+		try {
+			String fullBranch = from.getRepository().getFullBranch();
+			if (fullBranch != null && fullBranch.startsWith(Constants.R_HEADS)) 
+				GitUtils.linkRef(to.getRepository().updateRef(Constants.HEAD), fullBranch);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void createPool(File poolGitDir, File fromGitDir) {
+		logger.info("Creating fork pool '" + poolGitDir + "'...");
+		FileUtils.cleanDir(poolGitDir);
+
+		// Clone from local path hard links object files, so this is cheap even for large repositories
+		new CloneCommand(poolGitDir).bare(true).from(fromGitDir.getAbsolutePath()).call();
+
+		// Refs of the pool are maintained per member
+		FileUtils.cleanDir(new File(poolGitDir, "refs"));
+		FileUtils.deleteFile(new File(poolGitDir, "packed-refs"));
+	}
+
+	private void join(File poolGitDir, Long projectId, File gitDir) {
+		File membersDir = new File(poolGitDir, MEMBERS);
+		FileUtils.createDir(membersDir);
+		try {
+			new File(membersDir, String.valueOf(projectId)).createNewFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		Path objectsPath = new File(gitDir, "objects").toPath();
+		Path poolObjectsPath = new File(poolGitDir, "objects").toPath();
+
+		// Use relative path so that the site directory can be moved around
+		String alternate = objectsPath.relativize(poolObjectsPath).toString().replace('\\', '/');
+		FileUtils.writeFile(new File(gitDir, ALTERNATES), alternate + "\n");
+	}
+
+	private void fetchMember(File poolGitDir, Long projectId, File gitDir) {
+		new FetchCommand(poolGitDir, null)
+				.from(gitDir.getAbsolutePath())
+				.refspec("+refs/*:" + MEMBER_REFS + projectId + "/*")
+				.prune(true)
+				.call();
+	}
+
+	@Nullable
+	@Override
+	public File getPoolGitDir(File gitDir) {
+		File alternatesFile = new File(gitDir, ALTERNATES);
+		if (alternatesFile.exists()) {
+			try {
+				File poolsDir = storageManager.getForkPoolsDir();
+				File objectsDir = new File(gitDir, "objects");
+				for (String line: FileUtils.readLines(alternatesFile, StandardCharsets.UTF_8)) {
+					line = line.trim();
+					if (line.length() != 0 && !line.startsWith("#")) {
+						File alternateDir = new File(line);
+						if (!alternateDir.isAbsolute())
+							alternateDir = new File(objectsDir, line);
+						File poolGitDir = alternateDir.getCanonicalFile().getParentFile();
+						if (poolGitDir != null && poolsDir.getCanonicalFile().equals(poolGitDir.getParentFile()))
+							return new File(poolsDir, poolGitDir.getName());
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Collection<File> getPoolGitDirs() {
+		Collection<File> poolGitDirs = new ArrayList<>();
+		File[] files = storageManager.getForkPoolsDir().listFiles();
+		if (files != null) {
+			for (File file: files) {
+				if (file.isDirectory())
+					poolGitDirs.add(file);
+			}
+		}
+		return poolGitDirs;
+	}
+
+	@Override
+	public void syncPool(File poolGitDir) {
+		for (Long projectId: getMemberIds(poolGitDir)) {
+			File gitDir = storageManager.getProjectGitDir(projectId);
+			if (poolGitDir.equals(getPoolGitDir(gitDir)))
+				fetchMember(poolGitDir, projectId, gitDir);
+		}
+	}
+
+	private List<Long> getMemberIds(File poolGitDir) {
+		List<Long> memberIds = new ArrayList<>();
+		File[] files = new File(poolGitDir, MEMBERS).listFiles();
+		if (files != null) {
+			for (File file: files)
+				memberIds.add(Long.valueOf(file.getName()));
+		}
+		return memberIds;
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			File poolGitDir = getPoolGitDir(storageManager.getProjectGitDir(projectId));
+			if (poolGitDir != null) {
+				transactionManager.runAfterCommit(new Runnable() {
+
+					@Override
+					public void run() {
+						leave(poolGitDir, projectId);
+					}
+
+				});
+			}
+		}
+	}
+
+	/*
+	 * Objects of the leaving member are kept in the pool, as they might be referenced by
+	 * other members. Only refs of the member are removed so that they are no longer
+	 * considered reachable
+	 */
+	private void leave(File poolGitDir, Long projectId) {
+		Lock lock = LockUtils.getLock(ForkPoolManager.getLockKey(poolGitDir));
+		lock.lock();
+		try {
+			FileUtils.deleteFile(new File(new File(poolGitDir, MEMBERS), String.valueOf(projectId)));
+			try (	Repository repository = new FileRepositoryBuilder().setGitDir(poolGitDir).build();
+					RevWalk revWalk = new RevWalk(repository)) {
+				BatchRefUpdate batchUpdate = repository.getRefDatabase().newBatchUpdate();
+				batchUpdate.setAllowNonFastForwards(true);
+				for (Ref ref: repository.getRefDatabase().getRefsByPrefix(MEMBER_REFS + projectId + "/")) {
+					batchUpdate.addCommand(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(),
+							ref.getName(), ReceiveCommand.Type.DELETE));
+				}
+				if (!batchUpdate.getCommands().isEmpty())
+					batchUpdate.execute(revWalk, NullProgressMonitor.INSTANCE);
+			}
+		} catch (Exception e) {
+			logger.error("Error removing refs of project (id: " + projectId + ") from fork pool '"
+					+ poolGitDir + "'", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Repositories of deleted projects are only removed when server restarts, so pools
+	 * without members are also removed here
+	 */
+	@Listen
+	public void on(SystemStarting event) {
+		for (File poolGitDir: getPoolGitDirs()) {
+			if (getMemberIds(poolGitDir).isEmpty()) {
+				logger.info("Deleting fork pool without members: " + poolGitDir);
+				FileUtils.deleteDir(poolGitDir);
+			}
+		}
+	}
+
+}
@@ -150,6 +150,27 @@ public class DefaultStorageManager implements StorageManager {
         return infoDir;
     }
 
+	@Override
+	public File getForkPoolsDir() {
+    	File forkPoolsDir = new File(Bootstrap.getSiteDir(), "fork-pools");
+    	FileUtils.createDir(forkPoolsDir);
+    	return forkPoolsDir;
+	}
+	
+	@Override
+	public File getUploadPackCacheDir() {
+    	File uploadPackCacheDir = new File(Bootstrap.getSiteDir(), "upload-pack-cache");
+    	FileUtils.createDir(uploadPackCacheDir);
+    	return uploadPackCacheDir;
+	}
+	
+	@Override
+	public File getEntityIndexDir() {
+    	File entityIndexDir = new File(Bootstrap.getSiteDir(), "entity-index");
+    	FileUtils.createDir(entityIndexDir);
+    	return entityIndexDir;
+	}
+	
 	private File getBuildsDir(Long projectId) {
         File buildsDir = new File(getProjectDir(projectId), "builds");
         FileUtils.createDir(buildsDir);
@@ -0,0 +1,53 @@
+package io.onedev.server.storage;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.Project;
+
+/**
+ * Manages object pools of fork networks. Repositories of a fork network borrow objects from
+ * the pool via <tt>objects/info/alternates</tt>, so that forking only copies refs. Objects of
+ * a pool are never pruned, as they may be referenced by any repository of the network.
+ */
+public interface ForkPoolManager {
+
+	/**
+	 * Initialize repository of <tt>to</tt> as a fork of <tt>from</tt>. Object pool of the fork
+	 * network will be created if <tt>from</tt> does not use one yet
+	 */
+	void fork(Project from, Project to);
+
+	/**
+	 * Get object pool used by specified repository
+	 *
+	 * @return
+	 * 			git directory of the object pool, or <tt>null</tt> if specified repository
+	 * 			does not borrow objects from a pool
+	 */
+	@Nullable
+	File getPoolGitDir(File gitDir);
+
+	/**
+	 * @return
+	 * 			git directories of all object pools
+	 */
+	Collection<File> getPoolGitDirs();
+
+	/**
+	 * Fetch refs of all member repositories into specified pool, so that objects created in
+	 * member repositories are moved into the pool once member repositories are repacked
+	 * locally
+	 */
+	void syncPool(File poolGitDir);
+
+	/**
+	 * Get key of the lock guarding specified pool
+	 */
+	static String getLockKey(File poolGitDir) {
+		return "fork-pool:" + poolGitDir.getName();
+	}
+
+}
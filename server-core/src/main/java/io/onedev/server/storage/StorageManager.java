@@ -38,6 +38,32 @@ public interface StorageManager {
     
     File getUserInfoDir(Long userId);
     
+    /**
+     * Get directory to store object pools shared by repositories of fork networks
+     * 
+     * @return
+     * 			directory to store object pools. The directory will be exist after calling this method
+     */
+    File getForkPoolsDir();
+    
+    /**
+     * Get directory to cache responses of git upload-pack requests
+     * 
+     * @return
+     * 			directory to cache responses of upload-pack requests. The directory will be exist 
+     * 			after calling this method
+     */
+    File getUploadPackCacheDir();
+    
+    /**
+     * Get directory to store full text index of issues, pull requests and their comments
+     * 
+     * @return
+     * 			directory to store full text index of entities. The directory will be exist after 
+     * 			calling this method
+     */
+    File getEntityIndexDir();
+    
     /**
      * Get directory to store build related files such as logs, artifacts and reports
      * 
@@ -1,13 +1,14 @@
 package io.onedev.server.util;
 
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.server.OneDev;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
 
 /**
  * A pumper generates elements in a different thread, and consumes the element 
@@ -25,7 +26,7 @@ public abstract class ElementPumper<T> {
 		SynchronousQueue<Optional<T>> queue = new SynchronousQueue<>(); 
 		AtomicReference<Exception> exceptionRef = new AtomicReference<>(null);
 
-		OneDev.getInstance(ExecutorService.class).execute(new Runnable() {
+		OneDev.getInstance(ExecutorManager.class).getExecutor(ExecutorPool.HANDOFF).execute(new Runnable() {
 
 			@Override
 			public void run() {
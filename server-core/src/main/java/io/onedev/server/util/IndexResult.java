@@ -6,9 +6,16 @@ public class IndexResult {
 	
 	private int indexed;
 	
+	private long duration;
+	
 	public IndexResult(int checked, int indexed) {
+		this(checked, indexed, 0);
+	}
+	
+	public IndexResult(int checked, int indexed, long duration) {
 		this.checked = checked;
 		this.indexed = indexed;
+		this.duration = duration;
 	}
 
 	public int getChecked() {
@@ -27,4 +34,27 @@ public class IndexResult {
 		this.indexed = indexed;
 	}
 	
+	/**
+	 * @return
+	 * 			time spent on indexing in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+	
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+	
+	/**
+	 * @return
+	 * 			number of indexed blobs per second
+	 */
+	public double getThroughput() {
+		if (duration != 0)
+			return indexed * 1000.0 / duration;
+		else
+			return 0;
+	}
+
 }
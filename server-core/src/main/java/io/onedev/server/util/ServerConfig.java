@@ -3,6 +3,8 @@ package io.onedev.server.util;
 import java.io.File;
 import javax.annotation.Nullable;
 
+import io.onedev.server.util.concurrent.ExecutorPool;
+
 public interface ServerConfig {
 	
 	/**
@@ -44,5 +46,94 @@ public interface ServerConfig {
      *          ssh port of the server
      */
     int getSshPort();
+    
+    /**
+     * Get total number of threads used to index code of all projects.
+     * <p>
+     * @return
+     * 			number of threads shared by code indexing of all projects
+     */
+    int getIndexingThreads();
+    
+    /**
+     * Get maximum number of threads code indexing of a single project can use. 
+     * <p>
+     * @return
+     * 			maximum number of indexing threads per project, not exceeding 
+     * 			{@link #getIndexingThreads()}
+     */
+    int getIndexingThreadsPerProject();
+    
+    /**
+     * Get maximum number of git transfers (upload-pack and receive-pack over http and ssh) 
+     * running concurrently.
+     * <p>
+     * @return
+     * 			maximum number of concurrent git transfers
+     */
+    int getGitTransfers();
+    
+    /**
+     * Get maximum number of git transfers waiting for execution. Further transfers will be 
+     * rejected until the queue drains.
+     * <p>
+     * @return
+     * 			maximum number of waiting git transfers
+     */
+    int getGitTransferQueueSize();
+    
+    /**
+     * Get maximum number of threads of specified executor pool.
+     * <p>
+     * @return
+     * 			maximum number of threads of the pool, or {@link ExecutorPool#UNBOUNDED} if 
+     * 			the pool is not bounded
+     */
+    int getExecutorThreads(ExecutorPool pool);
+    
+    /**
+     * Get maximum number of tasks waiting in queue of specified executor pool. Further tasks 
+     * will be executed in caller thread until the queue drains.
+     * <p>
+     * @return
+     * 			maximum number of waiting tasks of the pool, or <i>0</i> if tasks are handed 
+     * 			over to threads directly
+     */
+    int getExecutorQueueSize(ExecutorPool pool);
+    
+    /**
+     * Get maximum total size of cached upload-pack responses. Oldest responses are evicted 
+     * when the size is exceeded.
+     * <p>
+     * @return
+     * 			maximum size of upload-pack cache in bytes, or <i>0</i> if upload-pack responses 
+     * 			should not be cached
+     */
+    long getUploadPackCacheSize();
+    
+    /**
+     * Get maximum age of cached upload-pack responses.
+     * <p>
+     * @return
+     * 			maximum age of cached upload-pack responses in seconds
+     */
+    int getUploadPackCacheAge();
+    
+    /**
+     * Get maximum total number of commits in commit graphs kept in memory for reachability 
+     * queries. Least recently used graphs are evicted when the number is exceeded.
+     * <p>
+     * @return
+     * 			maximum number of commits in loaded commit graphs
+     */
+    int getCommitGraphCommits();
+    
+    /**
+     * Get time after which a commit graph not accessed is evicted from memory.
+     * <p>
+     * @return
+     * 			idle time of commit graphs in seconds
+     */
+    int getCommitGraphIdleTime();
 	
 }
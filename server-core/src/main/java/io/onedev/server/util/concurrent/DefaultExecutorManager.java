@@ -0,0 +1,130 @@
+package io.onedev.server.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.ServerConfig;
+
+@Singleton
+public class DefaultExecutorManager implements ExecutorManager {
+
+	private final Map<ExecutorPool, PoolExecutor> executors = new EnumMap<>(ExecutorPool.class);
+
+	@Inject
+	public DefaultExecutorManager(ServerConfig serverConfig) {
+		for (ExecutorPool pool: ExecutorPool.values()) {
+			executors.put(pool, new PoolExecutor(pool, serverConfig.getExecutorThreads(pool), 
+					serverConfig.getExecutorQueueSize(pool)));
+		}
+	}
+
+	@Override
+	public ExecutorService getExecutor(ExecutorPool pool) {
+		return executors.get(pool);
+	}
+
+	@Override
+	public int getMaxThreads(ExecutorPool pool) {
+		return executors.get(pool).getMaximumPoolSize();
+	}
+
+	@Override
+	public List<ExecutorStatus> getStatuses() {
+		List<ExecutorStatus> statuses = new ArrayList<>();
+		for (PoolExecutor executor: executors.values()) {
+			long executedTasks = executor.executedTasks.sum();
+			long averageLatency;
+			if (executedTasks != 0)
+				averageLatency = TimeUnit.NANOSECONDS.toMillis(executor.totalLatency.sum() / executedTasks);
+			else
+				averageLatency = 0;
+			statuses.add(new ExecutorStatus(executor.pool, executor.getActiveCount(), executor.getPoolSize(),
+					executor.getMaximumPoolSize(), executor.getQueue().size(), executor.queueSize, 
+					executor.getCompletedTaskCount(), executor.callerRuns.get(), averageLatency));
+		}
+		return statuses;
+	}
+
+	@Override
+	public void shutdown() {
+		for (PoolExecutor executor: executors.values())
+			executor.shutdown();
+	}
+
+	private static class PoolExecutor extends ThreadPoolExecutor {
+
+		private final ExecutorPool pool;
+
+		private final int queueSize;
+
+		private final LongAdder totalLatency = new LongAdder();
+
+		private final LongAdder executedTasks = new LongAdder();
+
+		private final AtomicLong callerRuns = new AtomicLong(0);
+
+		PoolExecutor(ExecutorPool pool, int threads, int queueSize) {
+			super(queueSize!=0?threads:0, threads, 60L, TimeUnit.SECONDS, newQueue(queueSize), 
+					new NamedThreadFactory("onedev-" + pool.getDisplayName()));
+			this.pool = pool;
+			this.queueSize = queueSize;
+			allowCoreThreadTimeOut(true);
+			setRejectedExecutionHandler(new CallerRunsPolicy() {
+
+				@Override
+				public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+					if (!executor.isShutdown())
+						callerRuns.incrementAndGet();
+					super.rejectedExecution(runnable, executor);
+				}
+
+			});
+		}
+
+		private static BlockingQueue<Runnable> newQueue(int queueSize) {
+			if (queueSize != 0)
+				return new ArrayBlockingQueue<>(queueSize);
+			else
+				return new SynchronousQueue<>();
+		}
+		
+		@Override
+		public void execute(Runnable command) {
+			Runnable subjectAwareCommand = SecurityUtils.inheritSubject(command);
+			long submitTime = System.nanoTime();
+			try {
+				super.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						totalLatency.add(System.nanoTime() - submitTime);
+						executedTasks.increment();
+						subjectAwareCommand.run();
+					}
+
+				});
+			} catch (RejectedExecutionException e) {
+				if (!isShutdown())
+					throw ExceptionUtils.unchecked(e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package io.onedev.server.util.concurrent;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+public interface ExecutorManager {
+
+	/**
+	 * Get executor of specified pool. Tasks submitted to the executor inherit security
+	 * subject of the submitter
+	 */
+	ExecutorService getExecutor(ExecutorPool pool);
+
+	/**
+	 * Get maximum number of threads of specified pool as configured
+	 */
+	int getMaxThreads(ExecutorPool pool);
+
+	List<ExecutorStatus> getStatuses();
+
+	void shutdown();
+
+}
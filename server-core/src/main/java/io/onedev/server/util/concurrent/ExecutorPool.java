@@ -0,0 +1,61 @@
+package io.onedev.server.util.concurrent;
+
+/**
+ * Named executor pools. Workloads run in their own bounded pool so that a burst of one
+ * workload (for instance webhooks fired by an event storm) can not exhaust threads of others.
+ * When both threads and queue of a pool are exhausted, task is executed in caller thread to
+ * slow down the submitter. Threads and queue size of bounded pools can be configured in
+ * server properties, and values specified here are defaults.
+ */
+public enum ExecutorPool {
+
+	/*
+	 * Unbounded pool handing tasks directly to threads without queueing. Only for producer/consumer
+	 * handoffs such as ElementPumper, which need a dedicated thread per producer and would dead lock
+	 * if executed in caller thread or queued behind other tasks
+	 */
+	HANDOFF("handoff", ExecutorPool.UNBOUNDED, 0),
+
+	GENERAL("general", Math.max(32, Runtime.getRuntime().availableProcessors()*8), 10000),
+
+	MAIL("mail", 4, 1000),
+
+	WEBHOOK("webhook", 16, 1000),
+
+	WEBSOCKET("websocket", Math.max(4, Runtime.getRuntime().availableProcessors()), 10000),
+
+	// Job threads mostly wait for job executors, and concurrency of jobs is already
+	// limited by capacity of job executors
+	JOB("job", 1024, 10000);
+
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private final String displayName;
+
+	private final int defaultThreads;
+
+	private final int defaultQueueSize;
+
+	ExecutorPool(String displayName, int defaultThreads, int defaultQueueSize) {
+		this.displayName = displayName;
+		this.defaultThreads = defaultThreads;
+		this.defaultQueueSize = defaultQueueSize;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public int getDefaultThreads() {
+		return defaultThreads;
+	}
+
+	public int getDefaultQueueSize() {
+		return defaultQueueSize;
+	}
+
+	public boolean isBounded() {
+		return defaultThreads != UNBOUNDED;
+	}
+
+}
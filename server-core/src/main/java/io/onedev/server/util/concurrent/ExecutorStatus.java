@@ -0,0 +1,84 @@
+package io.onedev.server.util.concurrent;
+
+import java.io.Serializable;
+
+public class ExecutorStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ExecutorPool pool;
+
+	private final int activeThreads;
+
+	private final int poolSize;
+
+	private final int maxThreads;
+
+	private final int queueDepth;
+
+	private final int queueSize;
+
+	private final long completedTasks;
+
+	private final long callerRuns;
+
+	private final long averageLatency;
+
+	public ExecutorStatus(ExecutorPool pool, int activeThreads, int poolSize, int maxThreads, 
+			int queueDepth, int queueSize, long completedTasks, long callerRuns, long averageLatency) {
+		this.pool = pool;
+		this.activeThreads = activeThreads;
+		this.poolSize = poolSize;
+		this.maxThreads = maxThreads;
+		this.queueDepth = queueDepth;
+		this.queueSize = queueSize;
+		this.completedTasks = completedTasks;
+		this.callerRuns = callerRuns;
+		this.averageLatency = averageLatency;
+	}
+
+	public ExecutorPool getPool() {
+		return pool;
+	}
+
+	public int getActiveThreads() {
+		return activeThreads;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public long getCompletedTasks() {
+		return completedTasks;
+	}
+
+	/**
+	 * @return
+	 * 			number of tasks executed in caller thread as pool was saturated
+	 */
+	public long getCallerRuns() {
+		return callerRuns;
+	}
+
+	/**
+	 * @return
+	 * 			average time in milliseconds tasks waited in queue before execution
+	 */
+	public long getAverageLatency() {
+		return averageLatency;
+	}
+
+}
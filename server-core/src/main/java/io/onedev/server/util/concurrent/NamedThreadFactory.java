@@ -0,0 +1,26 @@
+package io.onedev.server.util.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory creating daemon threads named with specified prefix and a sequence number
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	public NamedThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
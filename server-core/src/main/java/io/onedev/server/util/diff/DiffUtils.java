@@ -1,6 +1,7 @@
 package io.onedev.server.util.diff;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -10,6 +11,12 @@ import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.SequenceComparator;
+
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 
@@ -21,35 +28,49 @@ import io.onedev.commons.jsyntax.Tokenizer;
 import io.onedev.commons.jsyntax.TokenizerRegistry;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.PlanarRange;
-import io.onedev.server.util.diff.DiffMatchPatch.Diff;
 import io.onedev.server.util.diff.DiffMatchPatch.Operation;
 
 public class DiffUtils {
 
 	private static final int CHANGE_CALC_TIMEOUT = 100;
 	
+	/*
+	 * Lines are compared as interned int ids, so there is no limit on number of distinct 
+	 * lines. This guards against huge files which are too expensive to tokenize and render
+	 */
 	public static final int MAX_DIFF_SIZE = 65535;
 	
+	// Limit of lines diffed without tokenizing, for instance to map lines
+	public static final int MAX_LINE_DIFF_SIZE = 500000;
+	
+	/*
+	 * Histogram diff falls back to Myers diff for regions with many repeated units, whose 
+	 * cost grows with number of changes. Unit comparisons are counted to bound the cost, 
+	 * and remaining units are reported as changed once this is exceeded, which is then 
+	 * displayed as too many changes
+	 */
+	private static final long MAX_DIFF_COMPARISONS = 20000000L;
+	
+	private static final DiffAlgorithm DIFF_ALGORITHM = new HistogramDiff();
+	
 	private static final Pattern pattern = Pattern.compile("\\w+");
 	
-	private static List<Long> splitByWord(String line, long token) {
+	private static void splitByWord(String line, long token, TokenBuffer buffer) {
 		int beginPos = TokenUtils.getBeginPos(token);
 		int endPos = TokenUtils.getEndPos(token);
 		int typeId = TokenUtils.getTypeId(token);
 		String text = TokenUtils.getText(line, token);
-		List<Long> tokens = new ArrayList<>();
 		Matcher matcher = pattern.matcher(text);
 		int lastEnd = 0;
 		while (matcher.find()) {
 			int start = matcher.start();
 			if (start > lastEnd)
-				tokens.add(TokenUtils.getToken(lastEnd+beginPos, start+beginPos, typeId));
-            tokens.add(TokenUtils.getToken(matcher.start()+beginPos, matcher.end()+beginPos, typeId));
+				buffer.add(TokenUtils.getToken(lastEnd+beginPos, start+beginPos, typeId));
+            buffer.add(TokenUtils.getToken(matcher.start()+beginPos, matcher.end()+beginPos, typeId));
             lastEnd = matcher.end();
         }
 		if (lastEnd < text.length())
-			tokens.add(TokenUtils.getToken(lastEnd+beginPos, endPos, typeId));
-		return tokens;
+			buffer.add(TokenUtils.getToken(lastEnd+beginPos, endPos, typeId));
 	}
 	
 	public static List<String> getLines(@Nullable String text) {
@@ -66,21 +87,22 @@ public class DiffUtils {
 		if (tokenizer != null) {
 			List<Tokenized> tokenizedLines = tokenizer.tokenize(lines);
 			List<Tokenized> refinedTokens = new ArrayList<>();
+			TokenBuffer buffer = new TokenBuffer();
 			int index = 0;
 			for (Tokenized tokenizedLine: tokenizedLines) {
-				List<Long> refinedLine = new ArrayList<>();
+				buffer.clear();
 				for (long token: tokenizedLine.getTokens()) {
 					int typeId = TokenUtils.getTypeId(token);
 					if (typeId == 0 || (typeId & TokenTypes.COMMENT) != 0 || (typeId & TokenTypes.STRING) != 0 
 							|| (typeId & TokenTypes.STRING2) != 0 || (typeId & TokenTypes.META) != 0
 							|| (typeId & TokenTypes.LINK) != 0 || (typeId & TokenTypes.ATTRIBUTE) != 0
 							|| (typeId & TokenTypes.PROPERTY) != 0) {
-						refinedLine.addAll(splitByWord(lines.get(index), token));
+						splitByWord(lines.get(index), token, buffer);
 					} else {
-						refinedLine.add(token);
+						buffer.add(token);
 					}
 				}
-				refinedTokens.add(new Tokenized(tokenizedLine.getText(), TokenUtils.toArray(refinedLine)));
+				refinedTokens.add(new Tokenized(tokenizedLine.getText(), buffer.toArray()));
 				index++;
 			}
 			return refinedTokens;
@@ -123,72 +145,81 @@ public class DiffUtils {
 		List<Tokenized> oldTokenizedLines = tokenize(oldLines, oldFileName);
 		List<Tokenized> newTokenizedLines = tokenize(newLines, newFileName);
 
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		TokensToCharsResult<String> result1 = tokensToChars(processedOldLines, processedNewLines);
-		
-		List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result1.chars1, result1.chars2, false);
-
-		List<DiffBlock<Tokenized>> diffBlocks = new ArrayList<>();
-		int oldLineNo = 0;
-		int newLineNo = 0;
-		for (Diff diff : diffs) {
-			List<Tokenized> lines = new ArrayList<>();
-			if (diff.operation == Operation.EQUAL) {
-				for (int i = 0; i < diff.text.length(); i++) {
-					lines.add(newTokenizedLines.get(newLineNo));
-					oldLineNo++;
-					newLineNo++;
-				}
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo-lines.size(), newLineNo-lines.size()));
-			} else if (diff.operation == Operation.INSERT) {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(newTokenizedLines.get(newLineNo++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo, newLineNo-lines.size()));
-			} else {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(oldTokenizedLines.get(oldLineNo++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo-lines.size(), newLineNo));
-			}
-		}
-		
-		return diffBlocks;
+		EditList edits = diffUnits(processedOldLines, processedNewLines);
+		return toDiffBlocks(edits, oldTokenizedLines, newTokenizedLines);
 	}
 	
 	public static <T> List<DiffBlock<T>> diff(List<T> oldLines, List<T> newLines) {
-		Preconditions.checkArgument(oldLines.size() + newLines.size() <= MAX_DIFF_SIZE, 
-				"Total size of old lines and new lines should be less than " + MAX_DIFF_SIZE + ".");
-		
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		TokensToCharsResult<T> result1 = tokensToChars(oldLines, newLines);
+		Preconditions.checkArgument(oldLines.size() + newLines.size() <= MAX_LINE_DIFF_SIZE, 
+				"Total size of old lines and new lines should be less than " + MAX_LINE_DIFF_SIZE + ".");
 		
-		List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result1.chars1, result1.chars2, false);
-
+		return toDiffBlocks(diffUnits(oldLines, newLines), oldLines, newLines);
+	}
+	
+	private static <T> EditList diffUnits(List<T> oldUnits, List<T> newUnits) {
+		InternedSequence.Interner<T> interner = new InternedSequence.Interner<>();
+		InternedSequence oldSequence = interner.intern(oldUnits);
+		InternedSequence newSequence = interner.intern(newUnits);
+		try {
+			return DIFF_ALGORITHM.diff(new BudgetedComparator(), oldSequence, newSequence);
+		} catch (DiffBudgetExceededException e) {
+			return coarseDiff(oldSequence, newSequence);
+		}
+	}
+	
+	// Report all units between common prefix and common suffix as changed
+	private static EditList coarseDiff(InternedSequence oldSequence, InternedSequence newSequence) {
+		SequenceComparator<InternedSequence> comparator = InternedSequence.COMPARATOR;
+		int beginA = 0;
+		int beginB = 0;
+		while (beginA < oldSequence.size() && beginB < newSequence.size() 
+				&& comparator.equals(oldSequence, beginA, newSequence, beginB)) {
+			beginA++;
+			beginB++;
+		}
+		int endA = oldSequence.size();
+		int endB = newSequence.size();
+		while (endA > beginA && endB > beginB 
+				&& comparator.equals(oldSequence, endA-1, newSequence, endB-1)) {
+			endA--;
+			endB--;
+		}
+		EditList edits = new EditList();
+		if (beginA < endA || beginB < endB)
+			edits.add(new Edit(beginA, endA, beginB, endB));
+		return edits;
+	}
+	
+	/*
+	 * Units of equal blocks are taken from new units, as old and new units of equal blocks 
+	 * may still differ, for instance when whitespace is ignored
+	 */
+	private static <T> List<DiffBlock<T>> toDiffBlocks(EditList edits, List<T> oldUnits, List<T> newUnits) {
 		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
-		int oldLineNo = 0;
-		int newLineNo = 0;
-		for (Diff diff : diffs) {
-			List<T> lines = new ArrayList<>();
-			if (diff.operation == Operation.EQUAL) {
-				for (int i = 0; i < diff.text.length(); i++) {
-					lines.add(newLines.get(newLineNo));
-					oldLineNo++;
-					newLineNo++;
-				}
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo-lines.size(), newLineNo-lines.size()));
-			} else if (diff.operation == Operation.INSERT) {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(newLines.get(newLineNo++));
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo, newLineNo-lines.size()));
-			} else {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(oldLines.get(oldLineNo++));
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo-lines.size(), newLineNo));
+		int oldIndex = 0;
+		int newIndex = 0;
+		for (Edit edit: edits) {
+			if (edit.getBeginB() > newIndex) {
+				diffBlocks.add(new DiffBlock<T>(Operation.EQUAL, 
+						new ArrayList<>(newUnits.subList(newIndex, edit.getBeginB())), oldIndex, newIndex));
+			}
+			if (edit.getLengthA() != 0) {
+				diffBlocks.add(new DiffBlock<T>(Operation.DELETE, 
+						new ArrayList<>(oldUnits.subList(edit.getBeginA(), edit.getEndA())), 
+						edit.getBeginA(), edit.getBeginB()));
 			}
+			if (edit.getLengthB() != 0) {
+				diffBlocks.add(new DiffBlock<T>(Operation.INSERT, 
+						new ArrayList<>(newUnits.subList(edit.getBeginB(), edit.getEndB())), 
+						edit.getEndA(), edit.getBeginB()));
+			}
+			oldIndex = edit.getEndA();
+			newIndex = edit.getEndB();
+		}
+		if (newUnits.size() > newIndex) {
+			diffBlocks.add(new DiffBlock<T>(Operation.EQUAL, 
+					new ArrayList<>(newUnits.subList(newIndex, newUnits.size())), oldIndex, newIndex));
 		}
-		
 		return diffBlocks;
 	}
 	
@@ -204,8 +235,6 @@ public class DiffUtils {
 			List<Tokenized> deleteLines, List<Tokenized> insertLines, boolean forceAlign) {
 		LinkedHashMap<Integer, LineDiff> lineDiffs = new LinkedHashMap<>();
 		
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		
 		long time = System.currentTimeMillis();
 		int nextInsert = 0;
 		for (int i=0; i<deleteLines.size(); i++) {
@@ -215,47 +244,29 @@ public class DiffUtils {
 				Tokenized insertLine = insertLines.get(j);
 				List<TextToken> insertTokens = TokenUtils.getTextTokens(insertLine);
 				
-				TokensToCharsResult<TextToken> result = DiffUtils.tokensToChars(deleteTokens, insertTokens);						
-				List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result.chars1, result.chars2, false);
+				EditList edits = diffUnits(deleteTokens, insertTokens);
 				int equal = 0;
 				int total = 0;
-				for (DiffMatchPatch.Diff diff: diffs) {
-					for (int k=0; k<diff.text.length(); k++) {
-						int pos = diff.text.charAt(k);
-						TextToken token = result.tokenArray.get(pos);
-						if (StringUtils.isNotBlank(token.getText())) {
-							total += token.getText().length();
-							if (diff.operation == Operation.EQUAL)
-								equal += token.getText().length();
-						}
+				int deleteIndex = 0;
+				for (Edit edit: edits) {
+					for (int k=deleteIndex; k<edit.getBeginA(); k++) {
+						int length = getNonBlankLength(deleteTokens.get(k));
+						total += length;
+						equal += length;
 					}
+					for (int k=edit.getBeginA(); k<edit.getEndA(); k++)
+						total += getNonBlankLength(deleteTokens.get(k));
+					for (int k=edit.getBeginB(); k<edit.getEndB(); k++)
+						total += getNonBlankLength(insertTokens.get(k));
+					deleteIndex = edit.getEndA();
+				}
+				for (int k=deleteIndex; k<deleteTokens.size(); k++) {
+					int length = getNonBlankLength(deleteTokens.get(k));
+					total += length;
+					equal += length;
 				}
 				if (forceAlign || equal*3 >= total) {
-					List<DiffBlock<TextToken>> diffBlocks = new ArrayList<>();
-					int oldLineNo = 0;
-					int newLineNo = 0;
-					for (Diff diff : diffs) {
-						List<TextToken> tokens = new ArrayList<>();
-						if (diff.operation == Operation.EQUAL) {
-							for (int k = 0; k < diff.text.length(); k++) {
-								tokens.add(insertTokens.get(newLineNo));
-								oldLineNo++;
-								newLineNo++;
-							}
-							diffBlocks.add(new DiffBlock<TextToken>(
-									diff.operation, tokens, oldLineNo-tokens.size(), newLineNo-tokens.size()));
-						} else if (diff.operation == Operation.INSERT) {
-							for (int k = 0; k < diff.text.length(); k++)
-								tokens.add(insertTokens.get(newLineNo++));
-							diffBlocks.add(new DiffBlock<>(
-									diff.operation, tokens, oldLineNo, newLineNo-tokens.size()));
-						} else {
-							for (int k = 0; k < diff.text.length(); k++)
-								tokens.add(deleteTokens.get(oldLineNo++));
-							diffBlocks.add(new DiffBlock<>(
-									diff.operation, tokens, oldLineNo-tokens.size(), newLineNo));
-						}
-					}
+					List<DiffBlock<TextToken>> diffBlocks = toDiffBlocks(edits, deleteTokens, insertTokens);
 
 					LineDiff lineDiff = new LineDiff(j, diffBlocks);
 					lineDiffs.put(i, lineDiff);
@@ -272,6 +283,13 @@ public class DiffUtils {
 		return lineDiffs;
 	}
 
+	private static int getNonBlankLength(TextToken token) {
+		if (StringUtils.isNotBlank(token.getText()))
+			return token.getText().length();
+		else
+			return 0;
+	}
+	
 	public static <T> Map<Integer, Integer> mapLines(List<T> oldLines, List<T> newLines) {
 		return mapLines(diff(oldLines, newLines));
 	}
@@ -357,47 +375,31 @@ public class DiffUtils {
 		return lineMapping;
 	}
 	
-	public static <T> TokensToCharsResult<T> tokensToChars(List<T> tokens1, List<T> tokens2) {
-		List<T> tokenArray = new ArrayList<>();
-		Map<T, Integer> tokenHash = new HashMap<>();
-		// e.g. linearray[4] == "Hello\n"
-		// e.g. linehash.get("Hello\n") == 4
-
-		// "\x00" is a valid character, but various debuggers don't like it.
-		// So we'll insert a junk entry to avoid generating a null character.
-		tokenArray.add(null);
-
-		String chars1 = tokensToCharsMunge(tokens1, tokenArray, tokenHash);
-		String chars2 = tokensToCharsMunge(tokens2, tokenArray, tokenHash);
-		return new TokensToCharsResult<T>(chars1, chars2, tokenArray);
-	}
-
-	private static <T> String tokensToCharsMunge(List<T> tokens, List<T> tokenArray, Map<T, Integer> tokenHash) {
-		StringBuilder chars = new StringBuilder();
-		for (T token: tokens) {
-			if (tokenHash.containsKey(token)) {
-				chars.append(String.valueOf((char) (int) tokenHash.get(token)));
-			} else {
-				tokenArray.add(token);
-				tokenHash.put(token, tokenArray.size() - 1);
-				chars.append(String.valueOf((char) (tokenArray.size() - 1)));
-			}
+	/*
+	 * Growable array of tokens, to avoid boxing tokens when refining them
+	 */
+	private static class TokenBuffer {
+		
+		private long[] tokens = new long[16];
+		
+		private int size;
+		
+		void add(long token) {
+			if (size == tokens.length)
+				tokens = Arrays.copyOf(tokens, size*2);
+			tokens[size++] = token;
 		}
-		return chars.toString();
-	}
-	
-	private static class TokensToCharsResult<T> {
-		private String chars1;
-		private String chars2;
-		private List<T> tokenArray;
-
-		private TokensToCharsResult(String chars1, String chars2, List<T> tokenArray) {
-			this.chars1 = chars1;
-			this.chars2 = chars2;
-			this.tokenArray = tokenArray;
+		
+		void clear() {
+			size = 0;
+		}
+		
+		long[] toArray() {
+			return Arrays.copyOf(tokens, size);
 		}
+		
 	}
-
+	
 	private static void appendTokenized(StringBuilder builder, Tokenized tokenized) {
 		if (tokenized.getTokens().length == 0) {
 			builder.append("&nbsp;");
@@ -545,4 +547,28 @@ public class DiffUtils {
 		return builder.toString();
 	}
 	
+	private static class BudgetedComparator extends SequenceComparator<InternedSequence> {
+
+		private long comparisons;
+		
+		@Override
+		public boolean equals(InternedSequence a, int ai, InternedSequence b, int bi) {
+			if (++comparisons > MAX_DIFF_COMPARISONS)
+				throw new DiffBudgetExceededException();
+			return InternedSequence.COMPARATOR.equals(a, ai, b, bi);
+		}
+
+		@Override
+		public int hash(InternedSequence seq, int index) {
+			return InternedSequence.COMPARATOR.hash(seq, index);
+		}
+		
+	}
+	
+	private static class DiffBudgetExceededException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		
+	}
+	
 }
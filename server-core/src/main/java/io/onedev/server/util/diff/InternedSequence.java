@@ -0,0 +1,62 @@
+package io.onedev.server.util.diff;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+/**
+ * Sequence of units interned into int ids, so that diff algorithms compare and hash 
+ * primitive ids instead of calling equals and hashCode of units repeatedly. Units of 
+ * sequences to be compared should be interned with the same {@link Interner}.
+ */
+class InternedSequence extends Sequence {
+
+	static final SequenceComparator<InternedSequence> COMPARATOR = new SequenceComparator<InternedSequence>() {
+
+		@Override
+		public boolean equals(InternedSequence a, int ai, InternedSequence b, int bi) {
+			return a.ids[ai] == b.ids[bi];
+		}
+
+		@Override
+		public int hash(InternedSequence seq, int index) {
+			return seq.ids[index];
+		}
+		
+	};
+	
+	private final int[] ids;
+	
+	private InternedSequence(int[] ids) {
+		this.ids = ids;
+	}
+	
+	@Override
+	public int size() {
+		return ids.length;
+	}
+	
+	static class Interner<T> {
+		
+		private final Map<T, Integer> ids = new HashMap<>();
+		
+		InternedSequence intern(List<T> units) {
+			int[] sequenceIds = new int[units.size()];
+			int index = 0;
+			for (T unit: units) {
+				Integer id = ids.get(unit);
+				if (id == null) {
+					id = ids.size();
+					ids.put(unit, id);
+				}
+				sequenceIds[index++] = id;
+			}
+			return new InternedSequence(sequenceIds);
+		}
+		
+	}
+	
+}
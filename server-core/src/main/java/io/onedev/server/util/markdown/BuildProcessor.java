@@ -2,7 +2,6 @@ package io.onedev.server.util.markdown;
 
 import javax.annotation.Nullable;
 
-import org.apache.wicket.request.cycle.RequestCycle;
 import org.jsoup.nodes.Document;
 import org.unbescape.html.HtmlEscape;
 
@@ -12,6 +11,7 @@ import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 import io.onedev.server.util.ProjectScopedNumber;
 import io.onedev.server.web.page.project.builds.detail.dashboard.BuildDashboardPage;
+import io.onedev.server.web.util.WicketUtils;
 
 public class BuildProcessor extends ReferenceParser implements MarkdownProcessor {
 	
@@ -26,7 +26,7 @@ public class BuildProcessor extends ReferenceParser implements MarkdownProcessor
 
 	@Override
 	protected String toHtml(ProjectScopedNumber referenceable, String referenceText) {
-		CharSequence url = RequestCycle.get().urlFor(
+		String url = WicketUtils.contextRelativeUrlFor(
 				BuildDashboardPage.class, BuildDashboardPage.paramsOf(referenceable)); 
 		Build build = OneDev.getInstance(BuildManager.class).find(referenceable);
 		if (build != null && build.getVersion() != null)
@@ -1,12 +1,12 @@
 package io.onedev.server.util.markdown;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
-import org.apache.wicket.request.cycle.RequestCycle;
 import org.eclipse.jgit.lib.ObjectId;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.TextNode;
@@ -19,6 +19,7 @@ import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.util.TextNodeVisitor;
 import io.onedev.server.web.page.project.commits.CommitDetailPage;
+import io.onedev.server.web.util.WicketUtils;
 
 public class CommitProcessor implements MarkdownProcessor {
 	
@@ -27,14 +28,13 @@ public class CommitProcessor implements MarkdownProcessor {
 	private static final Pattern PATTERN_COMMIT = Pattern.compile("(^|\\s)([a-z0-9]{40})($|\\s)");
 	
 	protected String toHtml(Project project, ObjectId commitId) {
-		CharSequence url = RequestCycle.get().urlFor(
+		String url = WicketUtils.contextRelativeUrlFor(
 				CommitDetailPage.class, CommitDetailPage.paramsOf(project, commitId.name())); 
 		return String.format("<a href='%s' class='commit reference' data-reference='%s'>%s</a>", url, commitId.name(), 
 				GitUtils.abbreviateSHA(commitId.name()));
 	}
 
-	@Override
-	public void process(Document rendered, @Nullable Project project, Object context) {
+	private List<TextNode> getTextNodes(Document rendered) {
 		TextNodeVisitor visitor = new TextNodeVisitor() {
 			
 			@Override
@@ -45,8 +45,23 @@ public class CommitProcessor implements MarkdownProcessor {
 		
 		NodeTraversor tranversor = new NodeTraversor(visitor);
 		tranversor.traverse(rendered);
-		
-		for (TextNode node : visitor.getMatchedNodes()) {
+		return visitor.getMatchedNodes();
+	}
+	
+	/**
+	 * Check whether specified document contains commit hashes which will be processed
+	 */
+	public boolean hasCommits(Document rendered) {
+		for (TextNode node : getTextNodes(rendered)) {
+			if (PATTERN_COMMIT.matcher(node.getWholeText()).find())
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void process(Document rendered, @Nullable Project project, Object context) {
+		for (TextNode node : getTextNodes(rendered)) {
 			Matcher matcher = PATTERN_COMMIT.matcher(node.getWholeText());
 			while (matcher.find()) {
 				String commitHash = matcher.group(2);
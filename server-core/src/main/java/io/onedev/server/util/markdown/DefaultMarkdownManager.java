@@ -1,8 +1,11 @@
 package io.onedev.server.util.markdown;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -12,6 +15,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.jsoup.nodes.Document;
 
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.vladsch.flexmark.Extension;
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.ext.anchorlink.AnchorLinkExtension;
@@ -26,24 +35,72 @@ import com.vladsch.flexmark.parser.ParserEmulationProfile;
 import com.vladsch.flexmark.util.options.MutableDataHolder;
 import com.vladsch.flexmark.util.options.MutableDataSet;
 
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.HtmlUtils;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.build.BuildUpdated;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
+import io.onedev.server.model.User;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.web.util.WicketUtils;
 
 @Singleton
 public class DefaultMarkdownManager implements MarkdownManager {
 	
-	private final Set<Extension> contributedExtensions;
+	// Total size of cached markdown and html in characters
+	private static final long MAX_CACHE_WEIGHT = 16*1024*1024;
 	
 	private final Set<MarkdownProcessor> htmlTransformers;
 	
+	private final TransactionManager transactionManager;
+	
+	private final Parser parser;
+	
+	private final HtmlRenderer htmlRenderer;
+	
+	// Used to find out kinds of entities processed html may reference
+	private final ReferenceParser buildParser = new ReferenceParser(Build.class);
+	
+	private final CommitProcessor commitProcessor = new CommitProcessor();
+	
+	private final MentionParser mentionParser = new MentionParser();
+	
+	private final Cache<String, String> renderCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHE_WEIGHT)
+			.weigher(new Weigher<String, String>() {
+
+				@Override
+				public int weigh(String key, String value) {
+					return key.length() + value.length();
+				}
+				
+			})
+			.build();
+	
+	private final Cache<ProcessKey, Processed> processCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHE_WEIGHT)
+			.weigher(new Weigher<ProcessKey, Processed>() {
+
+				@Override
+				public int weigh(ProcessKey key, Processed value) {
+					return key.htmlHash.length() + key.urlPrefix.length() + value.html.length();
+				}
+				
+			})
+			.build();
+	
 	@Inject
-	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers) {
-		this.contributedExtensions = contributedExtensions;
+	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers, 
+			TransactionManager transactionManager) {
 		this.htmlTransformers = htmlTransformers;
-	}
-
-	@Override
-	public String render(String markdown) {
+		this.transactionManager = transactionManager;
+		
 		List<Extension> extensions = new ArrayList<>();
 		extensions.add(AnchorLinkExtension.create());
 		extensions.add(TablesExtension.create());
@@ -66,12 +123,36 @@ public class DefaultMarkdownManager implements MarkdownManager {
 				.set(TablesExtension.HEADER_SEPARATOR_COLUMN_MATCH, true)
 				.set(Parser.EXTENSIONS, extensions);
 
-		Parser parser = Parser.builder(options).build();
+		// Parser and renderer are thread safe once built
+		parser = Parser.builder(options).build();
+		htmlRenderer = HtmlRenderer.builder(options).build();
+	}
 
-		HtmlRenderer htmlRenderer = HtmlRenderer.builder(options).build();
-		
-		Node document = parser.parse(markdown);
-		return htmlRenderer.render(document);
+	/*
+	 * Urls generated while rendering and processing are relative to context path, and only 
+	 * depend on url prefix to reach context path from current page, so the prefix is part 
+	 * of cache keys
+	 */
+	@Override
+	public String render(String markdown) {
+		try {
+			return renderCache.get(WicketUtils.getContextRelativePrefix() + ":" + hash(markdown), 
+					new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					Node document = parser.parse(markdown);
+					return htmlRenderer.render(document);
+				}
+				
+			});
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
+	private String hash(String content) {
+		return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
 	}
 
 	@Override
@@ -83,15 +164,147 @@ public class DefaultMarkdownManager implements MarkdownManager {
 
 	@Override
 	public Document process(Document document, @Nullable Project project, @Nullable Object context) {
-		document = HtmlUtils.sanitize(document);
+		return transform(HtmlUtils.sanitize(document), project, context);
+	}
+	
+	private Document transform(Document sanitized, @Nullable Project project, @Nullable Object context) {
 		for (MarkdownProcessor htmlTransformer: htmlTransformers)
-			htmlTransformer.process(document, project, context);
-		return document;
+			htmlTransformer.process(sanitized, project, context);
+		return sanitized;
 	}
 
+	/*
+	 * Processed html is only cached without render context, as render context may 
+	 * make the result depending on current user or revision
+	 */
 	@Override
-	public String process(String html, Project project, Object context) {
-		return process(HtmlUtils.parse(html), project, context).body().html();
+	public String process(String html, @Nullable Project project, @Nullable Object context) {
+		if (context == null) {
+			ProcessKey key = new ProcessKey(hash(html), project!=null?project.getId():null, 
+					WicketUtils.getContextRelativePrefix());
+			Processed processed = processCache.getIfPresent(key);
+			if (processed == null) {
+				Document document = HtmlUtils.sanitize(HtmlUtils.parse(html));
+				
+				// Detect references before processors replace them with links
+				boolean referencesBuilds = buildParser.hasReferences(document);
+				boolean referencesCommits = project != null && commitProcessor.hasCommits(document);
+				boolean mentionsUsers = mentionParser.hasMentions(document);
+				
+				processed = new Processed(transform(document, project, null).body().html(), 
+						referencesBuilds, referencesCommits, mentionsUsers);
+				processCache.put(key, processed);
+			}
+			return processed.html;
+		} else {
+			return process(HtmlUtils.parse(html), project, context).body().html();
+		}
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof Project || event.getEntity() instanceof User) 
+			invalidateAfterCommit(event.getEntity());
+		else if (event.getEntity() instanceof Build && event.isNew())
+			invalidateAfterCommit(event.getEntity());
 	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project || event.getEntity() instanceof User 
+				|| event.getEntity() instanceof Build) {
+			invalidateAfterCommit(event.getEntity());
+		}
+	}
+	
+	@Transactional
+	@Listen
+	public void on(BuildUpdated event) {
+		invalidateAfterCommit(event.getBuild());
+	}
+	
+	/*
+	 * Commits are only linked against the project html is processed for
+	 */
+	@Listen
+	public void on(RefUpdated event) {
+		Long projectId = event.getProject().getId();
+		processCache.asMap().entrySet().removeIf(
+				it->it.getValue().referencesCommits && projectId.equals(it.getKey().projectId));
+	}
+	
+	private void invalidateAfterCommit(AbstractEntity entity) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				if (entity instanceof Project) 
+					processCache.invalidateAll();
+				else if (entity instanceof User)
+					processCache.asMap().values().removeIf(it->it.mentionsUsers);
+				else 
+					processCache.asMap().values().removeIf(it->it.referencesBuilds);
+			}
+			
+		});
+	}
+	
+	private static class ProcessKey {
+		
+		final String htmlHash;
+		
+		final Long projectId;
+		
+		final String urlPrefix;
+		
+		ProcessKey(String htmlHash, @Nullable Long projectId, String urlPrefix) {
+			this.htmlHash = htmlHash;
+			this.projectId = projectId;
+			this.urlPrefix = urlPrefix;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ProcessKey))
+				return false;
+			ProcessKey otherKey = (ProcessKey) other;
+			return htmlHash.equals(otherKey.htmlHash) 
+					&& Objects.equal(projectId, otherKey.projectId) 
+					&& urlPrefix.equals(otherKey.urlPrefix);
+		}
 
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(htmlHash, projectId, urlPrefix);
+		}
+		
+	}
+	
+	/*
+	 * Processed html along with kinds of entities it references, so that only affected 
+	 * entries are invalidated when referenced entities change. References are detected 
+	 * with patterns of the processors, no matter whether referenced entities exist, as 
+	 * they may be created later
+	 */
+	private static class Processed {
+		
+		final String html;
+		
+		final boolean referencesBuilds;
+		
+		final boolean referencesCommits;
+		
+		final boolean mentionsUsers;
+		
+		Processed(String html, boolean referencesBuilds, boolean referencesCommits, boolean mentionsUsers) {
+			this.html = html;
+			this.referencesBuilds = referencesBuilds;
+			this.referencesCommits = referencesCommits;
+			this.mentionsUsers = mentionsUsers;
+		}
+		
+	}
+	
 }
@@ -2,13 +2,13 @@ package io.onedev.server.util.markdown;
 
 import javax.annotation.Nullable;
 
-import org.apache.wicket.request.cycle.RequestCycle;
 import org.jsoup.nodes.Document;
 
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.Project;
 import io.onedev.server.util.ProjectScopedNumber;
 import io.onedev.server.web.page.project.issues.detail.IssueActivitiesPage;
+import io.onedev.server.web.util.WicketUtils;
 
 public class IssueProcessor extends ReferenceParser implements MarkdownProcessor {
 	
@@ -23,7 +23,7 @@ public class IssueProcessor extends ReferenceParser implements MarkdownProcessor
 
 	@Override
 	protected String toHtml(ProjectScopedNumber referenceable, String referenceText) {
-		CharSequence url = RequestCycle.get().urlFor(
+		String url = WicketUtils.contextRelativeUrlFor(
 				IssueActivitiesPage.class, IssueActivitiesPage.paramsOf(referenceable)); 
 		return String.format("<a href='%s' class='issue reference' data-reference='%s'>%s</a>", 
 				url, referenceable.toString(), referenceText);
@@ -2,6 +2,7 @@ package io.onedev.server.util.markdown;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,9 +26,7 @@ public class MentionParser {
 		return parseMentions(Jsoup.parseBodyFragment(rendered));		
 	}
 	
-	public Collection<String> parseMentions(Document document) {
-		Collection<String> mentions = new HashSet<>();
-		
+	private List<TextNode> getTextNodes(Document document) {
 		TextNodeVisitor visitor = new TextNodeVisitor() {
 			
 			@Override
@@ -41,8 +40,24 @@ public class MentionParser {
 		
 		NodeTraversor tranversor = new NodeTraversor(visitor);
 		tranversor.traverse(document);
+		return visitor.getMatchedNodes();
+	}
+	
+	/**
+	 * Check whether specified document contains mentions which will be parsed
+	 */
+	public boolean hasMentions(Document document) {
+		for (TextNode node : getTextNodes(document)) {
+			if (PATTERN.matcher(node.getWholeText()).find())
+				return true;
+		}
+		return false;
+	}
+	
+	public Collection<String> parseMentions(Document document) {
+		Collection<String> mentions = new HashSet<>();
 		
-		for (TextNode node : visitor.getMatchedNodes()) {
+		for (TextNode node : getTextNodes(document)) {
 			Matcher matcher = PATTERN.matcher(node.getWholeText());
 			while (matcher.find()) {
 				String userName = matcher.group(2);
@@ -2,13 +2,13 @@ package io.onedev.server.util.markdown;
 
 import javax.annotation.Nullable;
 
-import org.apache.wicket.request.cycle.RequestCycle;
 import org.jsoup.nodes.Document;
 
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.util.ProjectScopedNumber;
 import io.onedev.server.web.page.project.pullrequests.detail.activities.PullRequestActivitiesPage;
+import io.onedev.server.web.util.WicketUtils;
 
 public class PullRequestProcessor extends ReferenceParser implements MarkdownProcessor {
 	
@@ -23,7 +23,7 @@ public class PullRequestProcessor extends ReferenceParser implements MarkdownPro
 
 	@Override
 	protected String toHtml(ProjectScopedNumber referenceable, String referenceText) {
-		CharSequence url = RequestCycle.get().urlFor(
+		String url = WicketUtils.contextRelativeUrlFor(
 				PullRequestActivitiesPage.class, PullRequestActivitiesPage.paramsOf(referenceable)); 
 		return String.format("<a href='%s' class='pull-request reference' data-reference='%s'>%s</a>", 
 				url, referenceable.toString(), referenceText);
@@ -2,6 +2,7 @@ package io.onedev.server.util.markdown;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,9 +50,7 @@ public class ReferenceParser {
 		return parseReferences(Jsoup.parseBodyFragment(rendered), project);		
 	}
 	
-	public Collection<ProjectScopedNumber> parseReferences(Document document, @Nullable Project project) {
-		Collection<ProjectScopedNumber> references = new HashSet<>();
-		
+	private List<TextNode> getTextNodes(Document document) {
 		TextNodeVisitor visitor = new TextNodeVisitor() {
 			
 			@Override
@@ -66,8 +65,25 @@ public class ReferenceParser {
 		
 		NodeTraversor tranversor = new NodeTraversor(visitor);
 		tranversor.traverse(document);
+		return visitor.getMatchedNodes();
+	}
+	
+	/**
+	 * Check whether specified document contains references which will be parsed, no matter 
+	 * whether referenced entities exist or not
+	 */
+	public boolean hasReferences(Document document) {
+		for (TextNode node : getTextNodes(document)) {
+			if (pattern.matcher(node.getWholeText()).find())
+				return true;
+		}
+		return false;
+	}
+	
+	public Collection<ProjectScopedNumber> parseReferences(Document document, @Nullable Project project) {
+		Collection<ProjectScopedNumber> references = new HashSet<>();
 		
-		for (TextNode node : visitor.getMatchedNodes()) {
+		for (TextNode node : getTextNodes(document)) {
 			Matcher matcher = pattern.matcher(node.getWholeText());
 			while (matcher.find()) {
 				String referenceText = matcher.group(2);
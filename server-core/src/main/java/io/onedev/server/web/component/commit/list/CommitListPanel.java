@@ -1,6 +1,5 @@
 package io.onedev.server.web.component.commit.list;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -8,6 +7,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
@@ -43,19 +44,23 @@ import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Lists;
 
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.git.BlobIdent;
+import io.onedev.server.git.CommitCursor;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.RefInfo;
 import io.onedev.server.git.command.RevListCommand;
@@ -95,6 +100,23 @@ public abstract class CommitListPanel extends Panel {
 	
 	private static final int MAX_PAGES = 50;
 	
+	private static final int MAX_CURSORS = 100;
+	
+	private static final int CURSOR_IDLE_MINUTES = 10;
+	
+	private static final Cache<String, CommitCursor> cursors = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CURSORS)
+			.expireAfterAccess(CURSOR_IDLE_MINUTES, TimeUnit.MINUTES)
+			.removalListener(new RemovalListener<String, CommitCursor>() {
+
+				@Override
+				public void onRemoval(RemovalNotification<String, CommitCursor> notification) {
+					notification.getValue().close();
+				}
+				
+			})
+			.build();
+	
 	private final IModel<String> queryStringModel;
 	
 	private final IModel<CommitQuery> queryModel = new LoadableDetachableModel<CommitQuery>() {
@@ -143,59 +165,61 @@ public abstract class CommitListPanel extends Panel {
 		protected Commits load() {
 			CommitQuery query = queryModel.getObject();
 			Commits commits = new Commits();
-			List<String> commitHashes;
+			List<RevCommit> loadedCommits;
 			if (query != null) {
 				try {
-					RevListCommand command = new RevListCommand(getProject().getGitDir());
-					command.ignoreCase(true);
-					
 					if (page > MAX_PAGES)
 						throw new ExplicitException("Page should be no more than " + MAX_PAGES);
 					
-					command.count(page * COMMITS_PER_PAGE);
-					
-					query.fill(getProject(), command);
-					
-					if (command.revisions().isEmpty() && getCompareWith() != null)
-						command.revisions(Lists.newArrayList(getCompareWith()));
-					
-					commitHashes = command.call();
+					/*
+					 * Resume walk of previous pages when showing more commits, so that only history 
+					 * of the new page is walked. A new walk is started when first page is loaded, or 
+					 * when previous walk is evicted 
+					 */
+					CommitCursor cursor = cursorKey!=null?cursors.getIfPresent(cursorKey):null;
+					if (cursor == null || page == 1) {
+						if (cursorKey != null)
+							cursors.invalidate(cursorKey);
+						
+						RevListCommand command = new RevListCommand(getProject().getGitDir());
+						command.ignoreCase(true);
+						
+						query.fill(getProject(), command);
+						
+						if (command.revisions().isEmpty() && getCompareWith() != null)
+							command.revisions(Lists.newArrayList(getCompareWith()));
+						
+						cursor = new CommitCursor(getProject().getRepository(), command);
+						cursorKey = UUID.randomUUID().toString();
+						cursors.put(cursorKey, cursor);
+					}
+					loadedCommits = cursor.getCommits(page * COMMITS_PER_PAGE);
+					commits.hasMore = cursor.hasMore(page * COMMITS_PER_PAGE);
 				} catch (Exception e) {
 					if (e.getMessage() != null)
 						error(e.getMessage());
 					else
 						error("Error calculating commits: check log for details");
-					commitHashes = new ArrayList<>();
+					loadedCommits = new ArrayList<>();
 					logger.error("Error calculating commits: ", e);
 				}
 			} else {
-				commitHashes = new ArrayList<>();
+				loadedCommits = new ArrayList<>();
 			}
 			
-			commits.hasMore = (commitHashes.size() == page * COMMITS_PER_PAGE);
+			int lastMaxCount = Math.min((page - 1) * COMMITS_PER_PAGE, loadedCommits.size());
 			
-			try (RevWalk revWalk = new RevWalk(getProject().getRepository())) {
-				int lastMaxCount = Math.min((page - 1) * COMMITS_PER_PAGE, commitHashes.size());
-				
-				commits.last = new ArrayList<>();
-				
-				for (int i=0; i<lastMaxCount; i++) { 
-					commits.last.add(revWalk.parseCommit(ObjectId.fromString(commitHashes.get(i))));
-				}
-				
-				sort(commits.last, 0);
-				
-				commits.current = new ArrayList<>(commits.last);
-				for (int i=lastMaxCount; i<commitHashes.size(); i++)
-					commits.current.add(revWalk.parseCommit(ObjectId.fromString(commitHashes.get(i))));
-				
-				sort(commits.current, lastMaxCount);
+			commits.last = new ArrayList<>(loadedCommits.subList(0, lastMaxCount));
+			
+			sort(commits.last, 0);
+			
+			commits.current = new ArrayList<>(commits.last);
+			commits.current.addAll(loadedCommits.subList(lastMaxCount, loadedCommits.size()));
+			
+			sort(commits.current, lastMaxCount);
 
-				commits.last = separateByDate(commits.last);
-				commits.current = separateByDate(commits.current);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			commits.last = separateByDate(commits.last);
+			commits.current = separateByDate(commits.current);
 			
 			return commits;
 		}
@@ -210,15 +234,13 @@ public abstract class CommitListPanel extends Panel {
 			List<RefInfo> refInfos = getProject().getBranchRefInfos();
 			refInfos.addAll(getProject().getTagRefInfos());
 			for (RefInfo refInfo: refInfos) {
-				if (refInfo.getPeeledObj() instanceof RevCommit) {
-					RevCommit commit = (RevCommit) refInfo.getPeeledObj();
-					List<String> commitLabels = labels.get(commit.name());
-					if (commitLabels == null) {
-						commitLabels = new ArrayList<>();
-						labels.put(commit.name(), commitLabels);
-					}
-					commitLabels.add(Repository.shortenRefName(refInfo.getRef().getName()));
+				String commitHash = refInfo.getPeeledId().name();
+				List<String> commitLabels = labels.get(commitHash);
+				if (commitLabels == null) {
+					commitLabels = new ArrayList<>();
+					labels.put(commitHash, commitLabels);
 				}
+				commitLabels.add(Repository.shortenRefName(refInfo.getRef().getName()));
 			}
 			return labels;
 		}
@@ -226,6 +248,9 @@ public abstract class CommitListPanel extends Panel {
 	
 	private int page = 1;
 	
+	// Key of commit walk in cursor cache, to resume the walk when showing more commits 
+	private String cursorKey;
+	
 	private transient Collection<ObjectId> commitIdsToQueryStatus;
 	
 	private WebMarkupContainer body;
@@ -68,6 +68,7 @@ import io.onedev.server.code.CodeProblem;
 import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobChange;
 import io.onedev.server.git.BlobIdent;
+import io.onedev.server.git.DiffCache;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.CodeCommentReply;
@@ -141,7 +142,7 @@ public abstract class RevisionDiffPanel extends Panel {
 		protected List<DiffEntry> load() {
 			AnyObjectId oldRevId = getProject().getObjectId(oldRev, true);
 			AnyObjectId newRevId = getProject().getObjectId(newRev, true);
-			return GitUtils.diff(getProject().getRepository(), oldRevId, newRevId);
+			return OneDev.getInstance(DiffCache.class).getDiffEntries(getProject().getRepository(), oldRevId, newRevId);
 		}
 		
 	};
@@ -81,7 +81,7 @@ public abstract class RunJobLink extends AjaxLink<Void> {
 			refNames = Lists.newArrayList(getPullRequest().getMergeRef());
 		} else {
 			refNames = refs.stream()
-					.filter(it->descendants.contains(it.getPeeledObj()))
+					.filter(it->descendants.contains(it.getPeeledId()))
 					.map(it->it.getRef().getName())
 					.collect(Collectors.toList());
 		}
@@ -12,6 +12,8 @@ import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.PackageResourceReference;
 
+import io.onedev.server.web.util.WicketUtils;
+
 public class EmojiNodeRenderer implements NodeRenderer {
     private final String attrImageSize;
     private final String attrAlign;
@@ -39,8 +41,8 @@ public class EmojiNodeRenderer implements NodeRenderer {
 		if (RequestCycle.get() != null) {
 			String emojiCode = EmojiOnes.getInstance().all().get(emojiName);
 			if (emojiCode != null) {
-				emojiUrl = RequestCycle.get().urlFor(new PackageResourceReference(
-						EmojiOnes.class, "icon/" + emojiCode + ".png"), new PageParameters()).toString();
+				emojiUrl = WicketUtils.contextRelativeUrlFor(new PackageResourceReference(
+						EmojiOnes.class, "icon/" + emojiCode + ".png"), new PageParameters());
 			} 
 		}
 
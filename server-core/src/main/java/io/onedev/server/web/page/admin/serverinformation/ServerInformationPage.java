@@ -1,16 +1,37 @@
 package io.onedev.server.web.page.admin.serverinformation;
 
 import java.util.Date;
+import java.util.List;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
+import com.google.common.cache.CacheStats;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.OneDev;
+import io.onedev.server.git.DiffCache;
+import io.onedev.server.git.GitTransferManager;
+import io.onedev.server.git.GitTransferStatus;
+import io.onedev.server.git.UploadPackCache;
+import io.onedev.server.git.UploadPackCacheStatus;
+import io.onedev.server.maintenance.RepositoryMaintenance;
+import io.onedev.server.maintenance.RepositoryMaintenanceManager;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
+import io.onedev.server.util.concurrent.ExecutorStatus;
 import io.onedev.server.web.page.admin.AdministrationPage;
+import io.onedev.server.web.websocket.WebSocketManager;
 
 @SuppressWarnings("serial")
 public class ServerInformationPage extends AdministrationPage {
@@ -67,6 +88,118 @@ public class ServerInformationPage extends AdministrationPage {
 		
 		add(new Label("osUserName", System.getProperty("user.name")));
 		
+		add(new Label("websocketMessages", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				WebSocketManager webSocketManager = OneDev.getInstance(WebSocketManager.class);
+				return webSocketManager.getSentMessages() + " sent, " 
+						+ webSocketManager.getCoalescedNotifications() + " notifications coalesced";
+			}
+			
+		}));
+		
+		add(new Label("gitTransfers", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				GitTransferStatus status = OneDev.getInstance(GitTransferManager.class).getStatus();
+				return status.getRunningTransfers() + "/" + status.getMaxRunningTransfers() + " running, " 
+						+ status.getWaitingTransfers() + "/" + status.getMaxWaitingTransfers() + " waiting, " 
+						+ status.getCompletedTransfers() + " completed, " 
+						+ status.getRejectedTransfers() + " rejected";
+			}
+			
+		}));
+		
+		add(new Label("uploadPackCache", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				UploadPackCacheStatus status = OneDev.getInstance(UploadPackCache.class).getStatus();
+				return status.getHits() + " hits, " + status.getMisses() + " misses (" 
+						+ status.getHitRatio() + "% hit ratio), " 
+						+ FileUtils.byteCountToDisplaySize(status.getBytesSaved()) + " saved, " 
+						+ status.getEntries() + " entries taking " 
+						+ FileUtils.byteCountToDisplaySize(status.getSize());
+			}
+			
+		}));
+		
+		add(new Label("diffEntryCache", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return describe(OneDev.getInstance(DiffCache.class).getDiffEntryStats());
+			}
+			
+		}));
+		
+		add(new Label("diffBlockCache", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return describe(OneDev.getInstance(DiffCache.class).getDiffBlockStats());
+			}
+			
+		}));
+		
+		add(new ListView<ExecutorStatus>("executors", new LoadableDetachableModel<List<ExecutorStatus>>() {
+
+			@Override
+			protected List<ExecutorStatus> load() {
+				return OneDev.getInstance(ExecutorManager.class).getStatuses();
+			}
+			
+		}) {
+
+			@Override
+			protected void populateItem(ListItem<ExecutorStatus> item) {
+				ExecutorStatus status = item.getModelObject();
+				item.add(new Label("name", status.getPool().getDisplayName()));
+				if (status.getMaxThreads() != ExecutorPool.UNBOUNDED)
+					item.add(new Label("activeThreads", status.getActiveThreads() + "/" + status.getMaxThreads()));
+				else
+					item.add(new Label("activeThreads", status.getActiveThreads()));
+				item.add(new Label("queueDepth", status.getQueueDepth() + "/" + status.getQueueSize()));
+				item.add(new Label("completedTasks", status.getCompletedTasks()));
+				item.add(new Label("averageLatency", status.getAverageLatency() + " ms"));
+				item.add(new Label("callerRuns", status.getCallerRuns()));
+			}
+			
+		});
+		
+		IModel<List<RepositoryMaintenance>> repositoryMaintenancesModel = new LoadableDetachableModel<List<RepositoryMaintenance>>() {
+
+			@Override
+			protected List<RepositoryMaintenance> load() {
+				return OneDev.getInstance(RepositoryMaintenanceManager.class).getHistory();
+			}
+			
+		};
+		add(new ListView<RepositoryMaintenance>("repositoryMaintenances", repositoryMaintenancesModel) {
+
+			@Override
+			protected void populateItem(ListItem<RepositoryMaintenance> item) {
+				RepositoryMaintenance maintenance = item.getModelObject();
+				item.add(new Label("date", DateUtils.formatDateTime(maintenance.getDate())));
+				item.add(new Label("repository", maintenance.getRepositoryName()));
+				item.add(new Label("tasks", StringUtils.join(maintenance.getTasks(), ", ")));
+				item.add(new Label("duration", DateUtils.formatDuration(maintenance.getDuration())));
+				item.add(new Label("error", maintenance.getError()));
+			}
+
+		});
+		add(new WebMarkupContainer("noRepositoryMaintenances") {
+
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(repositoryMaintenancesModel.getObject().isEmpty());
+			}
+			
+		});
+		
 		add(new Link<Void>("gc") {
 
 			@Override
@@ -82,4 +215,10 @@ public class ServerInformationPage extends AdministrationPage {
 		return new Label(componentId, "Server Information");
 	}
 	
+	private String describe(CacheStats stats) {
+		return stats.hitCount() + " hits, " + stats.missCount() + " misses (" 
+				+ (int)(stats.hitRate()*100) + "% hit ratio), " 
+				+ stats.evictionCount() + " evictions";
+	}
+	
 }
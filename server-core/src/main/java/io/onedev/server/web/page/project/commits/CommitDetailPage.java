@@ -242,7 +242,7 @@ public class CommitDetailPage extends ProjectPage implements RevisionDiff.Annota
 						List<RefInfo> refs = new ArrayList<>();
 						refs.addAll(getProject().getBranchRefInfos());
 						refs.addAll(getProject().getTagRefInfos());
-						return refs.stream().filter(ref->descendants.contains(ref.getPeeledObj())).collect(Collectors.toList());
+						return refs.stream().filter(ref->descendants.contains(ref.getPeeledId())).collect(Collectors.toList());
 					}
 					
 				}) {
@@ -38,7 +38,6 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.joda.time.DateTime;
 
 import com.google.common.collect.Lists;
@@ -152,9 +151,10 @@ public class NewPullRequestPage extends ProjectPage implements RevisionDiff.Anno
 		User user = getLoginUser();
 		List<Pair<String, Integer>> branchUpdates = new ArrayList<>(); 
 		for (RefInfo refInfo: getProject().getBranchRefInfos()) {
-			RevCommit commit = (RevCommit) refInfo.getPeeledObj();
-			if (commit.getAuthorIdent().getEmailAddress().equals(user.getEmail()))
-				branchUpdates.add(new Pair<>(GitUtils.ref2branch(refInfo.getRef().getName()), commit.getCommitTime()));
+			if (refInfo.getAuthorIdent().getEmailAddress().equals(user.getEmail())) {
+				int commitTime = (int) (refInfo.getCommitDate().getTime() / 1000);
+				branchUpdates.add(new Pair<>(GitUtils.ref2branch(refInfo.getRef().getName()), commitTime));
+			}
 		}
 		branchUpdates.sort(Comparator.comparing(Pair::getSecond));
 		if (!branchUpdates.isEmpty())
@@ -15,7 +15,10 @@ import org.apache.wicket.protocol.ws.api.registry.PageIdKey;
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.IRequestHandlerDelegate;
 import org.apache.wicket.request.Url;
+import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.ResourceReference;
 
 import io.onedev.server.web.websocket.PageKey;
 
@@ -28,6 +31,37 @@ public class WicketUtils {
 			return RequestCycle.get().getUrlRenderer().renderContextRelativeUrl(url);
 	}
 	
+	/**
+	 * Get url of specified page relative to context path. Unlike {@link RequestCycle#urlFor}, the 
+	 * result only depends on context path and depth of current url, instead of the full current 
+	 * url, and is suitable to be cached across requests
+	 */
+	public static String contextRelativeUrlFor(Class<? extends IRequestablePage> pageClass, 
+			PageParameters params) {
+		return relativizeUrl(RequestCycle.get().mapUrlFor(pageClass, params).toString());
+	}
+	
+	/**
+	 * Get url of specified resource relative to context path
+	 * 
+	 * @see #contextRelativeUrlFor(Class, PageParameters) 
+	 */
+	public static String contextRelativeUrlFor(ResourceReference resourceReference, PageParameters params) {
+		return relativizeUrl(RequestCycle.get().mapUrlFor(resourceReference, params).toString());
+	}
+	
+	/**
+	 * Get prefix of urls returned by {@link #contextRelativeUrlFor}, or empty string if not 
+	 * inside a request cycle. Urls generated with same prefix can be shared 
+	 */
+	public static String getContextRelativePrefix() {
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle != null)
+			return requestCycle.getUrlRenderer().renderContextRelativeUrl("");
+		else
+			return "";
+	}
+	
 	@Nullable
 	public static Page getPage() {
 		RequestCycle requestCycle = RequestCycle.get();
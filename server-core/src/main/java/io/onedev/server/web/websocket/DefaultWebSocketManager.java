@@ -2,12 +2,18 @@ package io.onedev.server.web.websocket;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -26,14 +32,15 @@ import org.quartz.SimpleScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Sets;
-
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
+import io.onedev.server.util.concurrent.NamedThreadFactory;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
 import io.onedev.server.web.page.base.BasePage;
@@ -43,6 +50,12 @@ public class DefaultWebSocketManager implements WebSocketManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultWebSocketManager.class);
 	
+	/*
+	 * Observable changes happened within this interval are coalesced into a single 
+	 * message for each connection
+	 */
+	private static final int NOTIFY_INTERVAL = 100;
+	
 	private final Application application;
 	
 	private final TransactionManager transactionManager;
@@ -59,18 +72,31 @@ public class DefaultWebSocketManager implements WebSocketManager {
 	
 	private final Map<String, Date> notifiedObservables = new ConcurrentHashMap<>();
 	
+	private final Map<String, Set<PageKey>> observingPages = new ConcurrentHashMap<>();
+	
+	private final Set<String> pendingObservables = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicBoolean notifyScheduled = new AtomicBoolean(false);
+	
+	private final AtomicLong sentMessages = new AtomicLong(0);
+	
+	private final AtomicLong coalescedNotifications = new AtomicLong(0);
+	
+	private final ScheduledExecutorService notifyScheduler = new ScheduledThreadPoolExecutor(1, 
+			new NamedThreadFactory("onedev-websocket-notify"));
+	
 	private String keepAliveTaskId;
 
 	private String notifiedObservableCleanupTaskId;
 	
 	@Inject
 	public DefaultWebSocketManager(Application application, TransactionManager transactionManager, 
-			WebSocketPolicy webSocketPolicy, TaskScheduler taskScheduler, ExecutorService executorService) {
+			WebSocketPolicy webSocketPolicy, TaskScheduler taskScheduler, ExecutorManager executorManager) {
 		this.application = application;
 		this.transactionManager = transactionManager;
 		this.webSocketPolicy = webSocketPolicy;
 		this.taskScheduler = taskScheduler;
-		this.executorService = executorService;
+		this.executorService = executorManager.getExecutor(ExecutorPool.WEBSOCKET);
 	}
 	
 	@Override
@@ -85,6 +111,17 @@ public class DefaultWebSocketManager implements WebSocketManager {
 			IKey pageKey = new PageIdKey(page.getPageId());
 			Collection<String> observables = page.findWebSocketObservables();
 			Collection<String> prevObservables = sessionPages.put(pageKey, observables);
+			
+			PageKey observingPage = new PageKey(sessionId, pageKey);
+			if (prevObservables != null) {
+				for (String observable: prevObservables) {
+					if (!observables.contains(observable))
+						removeObservingPage(observable, observingPage);
+				}
+			}
+			for (String observable: observables)
+				addObservingPage(observable, observingPage);
+			
 			if (prevObservables != null && !prevObservables.containsAll(observables)) {
 				IWebSocketConnection connection = connectionRegistry.getConnection(application, sessionId, pageKey);
 				if (connection != null)
@@ -93,9 +130,32 @@ public class DefaultWebSocketManager implements WebSocketManager {
 		}
 	}
 	
+	private void addObservingPage(String observable, PageKey observingPage) {
+		observingPages.compute(observable, (key, value) -> {
+			if (value == null)
+				value = ConcurrentHashMap.newKeySet();
+			value.add(observingPage);
+			return value;
+		});
+	}
+	
+	private void removeObservingPage(String observable, PageKey observingPage) {
+		observingPages.computeIfPresent(observable, (key, value) -> {
+			value.remove(observingPage);
+			return value.isEmpty()? null: value;
+		});
+	}
+	
 	@Override
 	public void onDestroySession(String sessionId) {
-		registeredObservables.remove(sessionId);
+		Map<IKey, Collection<String>> sessionPages = registeredObservables.remove(sessionId);
+		if (sessionPages != null) {
+			for (Map.Entry<IKey, Collection<String>> entry: sessionPages.entrySet()) {
+				PageKey observingPage = new PageKey(sessionId, entry.getKey());
+				for (String observable: entry.getValue())
+					removeObservingPage(observable, observingPage);
+			}
+		}
 	}
 	
 	@Nullable
@@ -116,6 +176,7 @@ public class DefaultWebSocketManager implements WebSocketManager {
 		String message = OBSERVABLE_CHANGED + ":" + StringUtils.join(observables, "\n"); 
 		try {
 			connection.sendMessage(message);
+			sentMessages.incrementAndGet();
 		} catch (Exception e) {
 			logger.error("Error sending websocket message: " + message, e);
 		}
@@ -128,24 +189,77 @@ public class DefaultWebSocketManager implements WebSocketManager {
 
 			@Override
 			public void run() {
-				executorService.execute(new Runnable() {
+				if (pendingObservables.add(observable)) {
+					if (notifyScheduled.compareAndSet(false, true)) {
+						notifyScheduler.schedule(new Runnable() {
 
-					@Override
-					public void run() {
-						notifiedObservables.put(observable, new Date());
-						for (IWebSocketConnection connection: connectionRegistry.getConnections(application)) {
-							Collection<String> registeredObservables = getRegisteredObservables(connection); 
-							if (registeredObservables != null && registeredObservables.contains(observable))
-								notifyObservables(connection, Sets.newHashSet(observable));
-						}
+							@Override
+							public void run() {
+								executorService.execute(new Runnable() {
+
+									@Override
+									public void run() {
+										notifyPendingObservables();
+									}
+									
+								});
+							}
+							
+						}, NOTIFY_INTERVAL, TimeUnit.MILLISECONDS);
 					}
-					
-				});
+				} else {
+					coalescedNotifications.incrementAndGet();
+				}
 			}
 			
 		});
 	}
 	
+	private void notifyPendingObservables() {
+		/*
+		 * Reset the flag before draining, so that observables added after draining 
+		 * will always schedule another round of notification
+		 */
+		notifyScheduled.set(false);
+		
+		Map<PageKey, Set<String>> observablesOfPages = new HashMap<>();
+		Date now = new Date();
+		for (Iterator<String> it = pendingObservables.iterator(); it.hasNext();) {
+			String observable = it.next();
+			it.remove();
+			notifiedObservables.put(observable, now);
+			Set<PageKey> pageKeys = observingPages.get(observable);
+			if (pageKeys != null) {
+				for (PageKey pageKey: pageKeys) {
+					Set<String> observablesOfPage = observablesOfPages.get(pageKey);
+					if (observablesOfPage == null) {
+						observablesOfPage = new HashSet<>();
+						observablesOfPages.put(pageKey, observablesOfPage);
+					}
+					observablesOfPage.add(observable);
+				}
+			}
+		}
+		
+		for (Map.Entry<PageKey, Set<String>> entry: observablesOfPages.entrySet()) {
+			PageKey pageKey = entry.getKey();
+			IWebSocketConnection connection = connectionRegistry.getConnection(application, 
+					pageKey.getSessionId(), pageKey.getPageId());
+			if (connection != null && connection.isOpen())
+				notifyObservables(connection, entry.getValue());
+		}
+	}
+	
+	@Override
+	public long getSentMessages() {
+		return sentMessages.get();
+	}
+
+	@Override
+	public long getCoalescedNotifications() {
+		return coalescedNotifications.get();
+	}
+	
 	@Listen
 	public void on(SystemStarted event) {
 		keepAliveTaskId = taskScheduler.schedule(new SchedulableTask() {
@@ -194,6 +308,7 @@ public class DefaultWebSocketManager implements WebSocketManager {
 	public void on(SystemStopping event) {
 		taskScheduler.unschedule(keepAliveTaskId);
 		taskScheduler.unschedule(notifiedObservableCleanupTaskId);
+		notifyScheduler.shutdown();
 	}
 	
 	/**
@@ -19,4 +19,18 @@ public interface WebSocketManager {
 	void notifyObservableChange(String observable);
 	
 	void onConnect(IWebSocketConnection connection);
+	
+	/**
+	 * @return
+	 * 			number of observable change messages sent to websocket connections since server start
+	 */
+	long getSentMessages();
+	
+	/**
+	 * @return
+	 * 			number of observable change notifications merged into pending notifications 
+	 * 			since server start
+	 */
+	long getCoalescedNotifications();
+	
 }
@@ -0,0 +1,57 @@
+package io.onedev.server.buildspec.job.log;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class JobLogFileTest {
+
+	@Test
+	public void test() throws Exception {
+		File tempDir = FileUtils.createTempDir();
+		try {
+			try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(tempDir, "build.log")))) {
+				for (int i=0; i<1000; i++)
+					oos.writeObject(new JobLogEntry(new Date(i), "message" + i));
+			}
+			
+			JobLogFile logFile = new JobLogFile(tempDir);
+			assertTrue(logFile.isLegacy());
+			logFile.convertLegacy();
+			assertFalse(logFile.isLegacy());
+			assertEquals(1000, logFile.count());
+			
+			List<JobLogEntry> entries = new ArrayList<>();
+			for (int i=1000; i<1300; i++)
+				entries.add(new JobLogEntry(new Date(i), "message" + i));
+			logFile.append(entries);
+			assertEquals(1300, logFile.count());
+			
+			for (int from: new int[] {0, 127, 128, 129, 500, 1298}) {
+				entries = logFile.read(from, 2);
+				assertEquals(2, entries.size());
+				assertEquals("message" + from, entries.get(0).getMessage());
+				assertEquals(from, entries.get(0).getDate().getTime());
+			}
+			assertTrue(logFile.read(1300, 2).isEmpty());
+			assertEquals(10, logFile.read(1290, 0).size());
+			
+			LogSnippet snippet = logFile.readReversely(5);
+			assertEquals(1295, snippet.offset);
+			assertEquals(5, snippet.entries.size());
+			assertEquals("message1295", snippet.entries.get(0).getMessage());
+		} finally {
+			FileUtils.deleteDir(tempDir);
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+package io.onedev.server.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DefaultUploadPackCacheTest {
+
+	private static final String COMMIT1 = "1111111111111111111111111111111111111111";
+
+	private static final String COMMIT2 = "2222222222222222222222222222222222222222";
+
+	private static final String COMMIT3 = "3333333333333333333333333333333333333333";
+
+	private byte[] request(String... lines) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		for (String line: lines) {
+			if (line == null) {
+				baos.write("0000".getBytes(StandardCharsets.US_ASCII), 0, 4);
+			} else {
+				byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+				byte[] length = String.format("%04x", bytes.length + 4).getBytes(StandardCharsets.US_ASCII);
+				baos.write(length, 0, length.length);
+				baos.write(bytes, 0, bytes.length);
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void testNormalize() {
+		String normalized = DefaultUploadPackCache.normalize(request(
+				"want " + COMMIT2 + " side-band-64k ofs-delta agent=git/2.30.0 thin-pack",
+				"want " + COMMIT1,
+				"deepen 1",
+				null,
+				"done"));
+		assertEquals("capabilities ofs-delta side-band-64k thin-pack\n"
+				+ "want " + COMMIT1 + "\n"
+				+ "want " + COMMIT2 + "\n"
+				+ "deepen 1\n", normalized);
+	}
+
+	@Test
+	public void testIdenticalRequestsNormalizedTheSame() {
+		String normalized1 = DefaultUploadPackCache.normalize(request(
+				"want " + COMMIT1 + " ofs-delta side-band-64k agent=git/2.30.0",
+				"want " + COMMIT2,
+				"want " + COMMIT3,
+				null,
+				"done"));
+		String normalized2 = DefaultUploadPackCache.normalize(request(
+				"want " + COMMIT3 + " side-band-64k agent=JGit/5.9 ofs-delta",
+				"want " + COMMIT1,
+				"want " + COMMIT2,
+				null,
+				"done"));
+		assertEquals(normalized1, normalized2);
+
+		// Different capabilities result in different response
+		String normalized3 = DefaultUploadPackCache.normalize(request(
+				"want " + COMMIT1 + " side-band-64k",
+				"want " + COMMIT2,
+				"want " + COMMIT3,
+				null,
+				"done"));
+		assertFalse(normalized1.equals(normalized3));
+	}
+
+	@Test
+	public void testNotCached() {
+		// Negotiation not finished
+		assertNull(DefaultUploadPackCache.normalize(request(
+				"want " + COMMIT1 + " ofs-delta",
+				null,
+				"have " + COMMIT2,
+				null)));
+
+		// No wants
+		assertNull(DefaultUploadPackCache.normalize(request("done")));
+
+		// Invalid length
+		assertNull(DefaultUploadPackCache.normalize("zzzzwant".getBytes(StandardCharsets.US_ASCII)));
+
+		// Truncated pkt-line
+		byte[] request = request("want " + COMMIT1, null, "done");
+		byte[] truncated = new byte[request.length - 2];
+		System.arraycopy(request, 0, truncated, 0, truncated.length);
+		assertNull(DefaultUploadPackCache.normalize(truncated));
+
+		// Trailing bytes
+		byte[] trailing = new byte[request.length + 2];
+		System.arraycopy(request, 0, trailing, 0, request.length);
+		trailing[request.length] = '0';
+		trailing[request.length + 1] = '0';
+		assertNull(DefaultUploadPackCache.normalize(trailing));
+	}
+
+}
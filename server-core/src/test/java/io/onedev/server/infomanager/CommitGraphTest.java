@@ -0,0 +1,105 @@
+package io.onedev.server.infomanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import io.onedev.server.git.AbstractGitTest;
+
+public class CommitGraphTest extends AbstractGitTest {
+
+	private ObjectId id(String commitHash) {
+		return ObjectId.fromString(commitHash);
+	}
+
+	/*
+	 * Build commit graph from all commits of the repository the same way as commit info
+	 * manager does from its commits store
+	 */
+	private CommitGraph buildGraph() throws IOException {
+		CommitGraph graph = new CommitGraph();
+		try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+			for (Ref ref: git.getRepository().getRefDatabase().getRefsByPrefix(Constants.R_HEADS))
+				revWalk.markStart(revWalk.parseCommit(ref.getObjectId()));
+			RevCommit commit;
+			while ((commit = revWalk.next()) != null) {
+				for (RevCommit parent: commit.getParents())
+					graph.addChild(parent, commit);
+			}
+		}
+		return graph;
+	}
+
+	@Test
+	public void testReachability() throws IOException, GitAPIException {
+		/*
+		 * master: root -- master1 -- merge
+		 *             \              /
+		 * dev:         dev1 ------ dev2
+		 *
+		 * orphan: orphan1 -- orphan2
+		 */
+		String root = addFileAndCommit("root", "", "root");
+		git.checkout().setCreateBranch(true).setName("dev").call();
+		String dev1 = addFileAndCommit("dev1", "", "dev1");
+		String dev2 = addFileAndCommit("dev2", "", "dev2");
+		git.checkout().setName("master").call();
+		String master1 = addFileAndCommit("master1", "", "master1");
+		String merge = git.merge().include(id(dev2)).setMessage("merge").call().getNewHead().name();
+		git.checkout().setOrphan(true).setName("orphan").call();
+		String orphan1 = addFileAndCommit("orphan1", "", "orphan1");
+		String orphan2 = addFileAndCommit("orphan2", "", "orphan2");
+
+		CommitGraph graph = buildGraph();
+		assertEquals(7, graph.size());
+
+		assertEquals(Sets.newHashSet(id(root), id(dev1), id(dev2), id(master1), id(merge)),
+				graph.getDescendants(Lists.newArrayList(id(root))));
+		assertEquals(Sets.newHashSet(id(dev2), id(merge)),
+				graph.getDescendants(Lists.newArrayList(id(dev2))));
+		assertEquals(Sets.newHashSet(id(master1), id(dev2), id(merge)),
+				graph.getDescendants(Lists.newArrayList(id(master1), id(dev2))));
+		assertEquals(Sets.newHashSet(id(orphan1), id(orphan2)),
+				graph.getDescendants(Lists.newArrayList(id(orphan1))));
+
+		// Commits not indexed are returned as is
+		ObjectId unknown = ObjectId.zeroId();
+		assertEquals(Sets.newHashSet(unknown), graph.getDescendants(Lists.newArrayList(unknown)));
+
+		// Both sides of the merge are reachable, while disconnected history is not
+		Set<ObjectId> ancestors = graph.filterAncestors(id(merge), Lists.newArrayList(
+				id(root), id(dev1), id(master1), id(merge), id(orphan1), id(orphan2)));
+		assertEquals(Sets.newHashSet(id(root), id(dev1), id(master1), id(merge)), ancestors);
+		assertEquals(Sets.newHashSet(id(root)), graph.filterAncestors(id(dev2),
+				Lists.newArrayList(id(root), id(master1), id(orphan1))));
+		assertEquals(Sets.newHashSet(id(orphan1)), graph.filterAncestors(id(orphan2),
+				Lists.newArrayList(id(root), id(orphan1))));
+		assertNull(graph.filterAncestors(unknown, Lists.newArrayList(id(root))));
+	}
+
+	@Test
+	public void testDuplicateEdges() {
+		ObjectId parent = ObjectId.fromString("1111111111111111111111111111111111111111");
+		ObjectId child = ObjectId.fromString("2222222222222222222222222222222222222222");
+		CommitGraph graph = new CommitGraph();
+		graph.addChild(parent, child);
+		graph.addChild(parent, child);
+		assertEquals(2, graph.size());
+		assertEquals(Sets.newHashSet(parent, child), graph.getDescendants(Lists.newArrayList(parent)));
+		assertEquals(Sets.newHashSet(parent), graph.filterAncestors(child, Lists.newArrayList(parent)));
+	}
+
+}
@@ -0,0 +1,288 @@
+package io.onedev.server.search.entitytext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.onedev.commons.launcher.loader.ListenerRegistry;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.impl.DefaultIssueChangeManager;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.concurrent.ExecutorManager;
+import io.onedev.server.util.concurrent.ExecutorPool;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+public class DefaultEntityTextManagerTest {
+
+	private File indexDir;
+
+	private Dao dao;
+
+	private Project project;
+
+	// Batches of entities returned to index rebuild, one batch per query
+	private Deque<List<? extends AbstractEntity>> rebuildBatches = new ArrayDeque<>();
+
+	private DefaultEntityTextManager entityTextManager;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void before() {
+		indexDir = FileUtils.createTempDir();
+
+		project = new Project();
+		project.setId(1L);
+
+		dao = Mockito.mock(Dao.class);
+		Mockito.when(dao.query(Mockito.any(EntityCriteria.class), Mockito.anyInt(), Mockito.anyInt()))
+				.thenAnswer(new Answer<List<? extends AbstractEntity>>() {
+
+			@Override
+			public List<? extends AbstractEntity> answer(InvocationOnMock invocation) throws Throwable {
+				List<? extends AbstractEntity> batch = null;
+				if ((Integer) invocation.getArguments()[2] != 1)
+					batch = rebuildBatches.poll();
+				return batch != null? batch: new ArrayList<>();
+			}
+
+		});
+	}
+
+	@After
+	public void after() {
+		if (entityTextManager != null)
+			entityTextManager.on(new SystemStopping());
+		ThreadContext.unbindSubject();
+		FileUtils.deleteDir(indexDir);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void start() {
+		if (entityTextManager != null)
+			entityTextManager.on(new SystemStopping());
+
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getEntityIndexDir()).thenReturn(indexDir);
+
+		SessionManager sessionManager = Mockito.mock(SessionManager.class);
+		Mockito.when(sessionManager.call(Mockito.any(Callable.class))).thenAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return ((Callable<Object>) invocation.getArguments()[0]).call();
+			}
+
+		});
+
+		TransactionManager transactionManager = Mockito.mock(TransactionManager.class);
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				((Runnable) invocation.getArguments()[0]).run();
+				return null;
+			}
+
+		}).when(transactionManager).runAfterCommit(Mockito.any(Runnable.class));
+
+		ExecutorManager executorManager = Mockito.mock(ExecutorManager.class);
+		Mockito.when(executorManager.getExecutor(Mockito.any(ExecutorPool.class)))
+				.thenReturn(MoreExecutors.newDirectExecutorService());
+
+		TaskScheduler taskScheduler = Mockito.mock(TaskScheduler.class);
+		Mockito.when(taskScheduler.schedule(Mockito.any(SchedulableTask.class))).thenReturn("commit");
+
+		entityTextManager = new DefaultEntityTextManager(storageManager, sessionManager,
+				transactionManager, dao, executorManager, taskScheduler);
+		entityTextManager.on(new SystemStarted());
+	}
+
+	private Issue newIssue(long id, String title, String description) {
+		Issue issue = new Issue();
+		issue.setId(id);
+		issue.setProject(project);
+		issue.setTitle(title);
+		issue.setDescription(description);
+		return issue;
+	}
+
+	/*
+	 * Evaluate value against text the same way as SQL "like" predicate of title and
+	 * description criterias
+	 */
+	private boolean like(String text, String value) {
+		StringBuilder regex = new StringBuilder();
+		for (char ch: ("%" + value.toLowerCase().replace('*', '%') + "%").toCharArray()) {
+			if (ch == '%')
+				regex.append(".*");
+			else if (ch == '_')
+				regex.append(".");
+			else
+				regex.append(Pattern.quote(String.valueOf(ch)));
+		}
+		return text != null && Pattern.compile(regex.toString(), Pattern.DOTALL).matcher(text.toLowerCase()).matches();
+	}
+
+	@Test
+	public void testQueryIsSupersetOfLike() {
+		List<Issue> issues = Lists.newArrayList(
+				newIssue(1, "Fix NullPointerException in Parser", "Stack trace:\nat Parser.parse(Parser.java:42)"),
+				newIssue(2, "fix nullpointer", null),
+				newIssue(3, "Add dark-mode toggle", "Toggle between DARK and light mode"),
+				newIssue(4, "50% off_sale banner", "Show 50% discount"),
+				newIssue(5, "Ab", "x"),
+				newIssue(6, "Parser is slow with pointers", "NULL pointers everywhere"));
+		rebuildBatches.add(issues);
+		start();
+
+		List<String> values = Lists.newArrayList("null", "NULL", "nullpointer", "NullPointer*Parser",
+				"pointer*parser", "ab", "x", "dark-mode", "dark mode", "DARK", "50%", "50_", "off_s",
+				"*", "**", "ix n", "parser.java:42", "sale banner", "not existing", "%ser%", "Pa_ser");
+
+		for (String field: new String[] {EntityTextManager.FIELD_TITLE, EntityTextManager.FIELD_DESCRIPTION}) {
+			for (String value: values) {
+				Set<Long> expected = new HashSet<>();
+				for (Issue issue: issues) {
+					String text = field.equals(EntityTextManager.FIELD_TITLE)? issue.getTitle(): issue.getDescription();
+					if (like(text, value))
+						expected.add(issue.getId());
+				}
+				Collection<Long> actual = entityTextManager.query(Issue.class, field, value, null);
+				if (actual != null) {
+					assertTrue("Field: " + field + ", value: " + value + ", expected: " + expected + ", actual: " + actual,
+							actual.containsAll(expected));
+				}
+			}
+		}
+
+		// Index should be used if value contains literals long enough
+		assertEquals(Lists.newArrayList(1L, 2L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "NULLPOINTER", null)));
+		assertNotNull(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "not existing", null));
+		assertTrue(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "not existing", null).isEmpty());
+
+		// Index can not narrow down values without literals of n-gram size
+		assertNull(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "ab", null));
+		assertNull(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "a*b%c_d", null));
+
+		// No space title matches values without whitespaces against title with whitespaces removed
+		assertEquals(Lists.newArrayList(1L, 2L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_NO_SPACE_TITLE, "fixnull", null)));
+
+		// Query is restricted to specified projects
+		assertEquals(Lists.newArrayList(1L, 6L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "parser", Lists.newArrayList(project.getId()))));
+		assertTrue(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "parser",
+				Lists.newArrayList(project.getId()+1)).isEmpty());
+	}
+
+	@Test
+	public void testTooManyCandidates() {
+		List<Issue> issues = new ArrayList<>();
+		for (long i=1; i<=10001; i++)
+			issues.add(newIssue(i, "Common title " + i, null));
+		rebuildBatches.add(issues);
+		start();
+
+		assertNull(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "common", null));
+		assertEquals(Lists.newArrayList(10001L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "title 10001", null)));
+	}
+
+	@Test
+	public void testEditedTitleIsFound() {
+		Issue issue = newIssue(1, "Original title", null);
+		rebuildBatches.add(Lists.newArrayList(issue));
+		start();
+
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				AbstractEntity entity = (AbstractEntity) invocation.getArguments()[0];
+				entityTextManager.on(new EntityPersisted(entity, false));
+				return null;
+			}
+
+		}).when(dao).persist(Mockito.any(AbstractEntity.class));
+
+		// Anonymous user
+		Subject subject = Mockito.mock(Subject.class);
+		Mockito.when(subject.getPrincipal()).thenReturn(0L);
+		ThreadContext.bind(subject);
+
+		DefaultIssueChangeManager issueChangeManager = new DefaultIssueChangeManager(dao, null, null, null,
+				null, null, null, null, Mockito.mock(ListenerRegistry.class), null);
+		issueChangeManager.changeTitle(issue, "Edited summary");
+		issueChangeManager.changeDescription(issue, "Edited description");
+
+		assertEquals(Lists.newArrayList(1L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "edited", null)));
+		assertTrue(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "original", null).isEmpty());
+		assertEquals(Lists.newArrayList(1L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_DESCRIPTION, "edited desc", null)));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReconcileOnStart() {
+		rebuildBatches.add(Lists.newArrayList(newIssue(1, "Persisted title", null)));
+		start();
+		entityTextManager.on(new EntityPersisted(newIssue(2, "Persisted after build", null), true));
+
+		// Index closed normally and database unchanged, index is reused without rebuilding
+		start();
+		assertEquals(Lists.newArrayList(1L, 2L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "persisted", null)));
+
+		// Database changed while system is stopped, index is rebuilt from database
+		Mockito.when(dao.count(Mockito.any(EntityCriteria.class))).thenReturn(1);
+		rebuildBatches.add(Lists.newArrayList(newIssue(3, "Restored title", null)));
+		start();
+		assertTrue(entityTextManager.query(Issue.class, EntityTextManager.FIELD_TITLE, "persisted", null).isEmpty());
+		assertEquals(Lists.newArrayList(3L), sorted(entityTextManager.query(
+				Issue.class, EntityTextManager.FIELD_TITLE, "restored", null)));
+	}
+
+	private List<Long> sorted(Collection<Long> ids) {
+		List<Long> list = new ArrayList<>(ids);
+		list.sort(null);
+		return list;
+	}
+
+}
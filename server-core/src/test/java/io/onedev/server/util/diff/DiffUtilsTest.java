@@ -2,12 +2,16 @@ package io.onedev.server.util.diff;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
 
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
 public class DiffUtilsTest extends DiffUtils {
 
 	@Test
@@ -54,4 +58,70 @@ public class DiffUtilsTest extends DiffUtils {
 		assertFalse(DiffUtils.isVisible(diffBlocks, false, 18, 3));
 	}
 
+	@Test
+	public void testDiffManyDistinctLines() {
+		List<String> oldLines = new ArrayList<>();
+		List<String> newLines = new ArrayList<>();
+		for (int i=0; i<100000; i++) {
+			oldLines.add("line " + i);
+			if (i != 50000)
+				newLines.add("line " + i);
+		}
+		newLines.add("line 100000");
+		
+		List<DiffBlock<String>> diffBlocks = DiffUtils.diff(oldLines, newLines);
+		assertEquals(4, diffBlocks.size());
+		
+		assertEquals(Operation.EQUAL, diffBlocks.get(0).getOperation());
+		assertEquals(50000, diffBlocks.get(0).getUnits().size());
+		
+		assertEquals(Operation.DELETE, diffBlocks.get(1).getOperation());
+		assertEquals("line 50000", diffBlocks.get(1).getUnits().get(0));
+		assertEquals(50000, diffBlocks.get(1).getOldStart());
+		assertEquals(50000, diffBlocks.get(1).getNewStart());
+		
+		assertEquals(Operation.EQUAL, diffBlocks.get(2).getOperation());
+		assertEquals(50001, diffBlocks.get(2).getOldStart());
+		assertEquals(50000, diffBlocks.get(2).getNewStart());
+		
+		assertEquals(Operation.INSERT, diffBlocks.get(3).getOperation());
+		assertEquals("line 100000", diffBlocks.get(3).getUnits().get(0));
+		assertEquals(100000, diffBlocks.get(3).getOldStart());
+		assertEquals(99999, diffBlocks.get(3).getNewStart());
+	}
+	
+	@Test(timeout=60000)
+	public void testDiffTooManyChanges() {
+		/*
+		 * Lines repeated many times make histogram diff fall back to Myers diff, whose cost 
+		 * grows with number of changes 
+		 */
+		Random random = new Random(1);
+		List<String> oldLines = new ArrayList<>();
+		List<String> newLines = new ArrayList<>();
+		oldLines.add("begin");
+		newLines.add("begin");
+		for (int i=0; i<100000; i++) {
+			oldLines.add(random.nextBoolean()?"x":"y");
+			newLines.add(random.nextBoolean()?"x":"y");
+		}
+		oldLines.add("end");
+		newLines.add("end");
+		
+		List<DiffBlock<String>> diffBlocks = DiffUtils.diff(oldLines, newLines);
+		
+		// Diff is cut off, and lines between common prefix and suffix are reported as changed
+		assertEquals(4, diffBlocks.size());
+		assertEquals(Operation.EQUAL, diffBlocks.get(0).getOperation());
+		assertEquals(Operation.DELETE, diffBlocks.get(1).getOperation());
+		assertEquals(Operation.INSERT, diffBlocks.get(2).getOperation());
+		assertEquals(Operation.EQUAL, diffBlocks.get(3).getOperation());
+		assertEquals("begin", diffBlocks.get(0).getUnits().get(0));
+		assertEquals("end", diffBlocks.get(3).getUnits().get(diffBlocks.get(3).getUnits().size()-1));
+		assertEquals(oldLines.size(), diffBlocks.get(0).getUnits().size() 
+				+ diffBlocks.get(1).getUnits().size() + diffBlocks.get(3).getUnits().size());
+		assertEquals(newLines.size(), diffBlocks.get(0).getUnits().size() 
+				+ diffBlocks.get(2).getUnits().size() + diffBlocks.get(3).getUnits().size());
+	}
+	
 }
@@ -3,6 +3,8 @@ package io.onedev.server.product;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -15,6 +17,7 @@ import io.onedev.commons.launcher.bootstrap.Bootstrap;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.server.util.ServerConfig;
+import io.onedev.server.util.concurrent.ExecutorPool;
 
 @Singleton
 public class DefaultServerConfig implements ServerConfig {
@@ -35,6 +38,27 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private static final String PROP_SESSION_TIMEOUT = "session_timeout";
 	
+	private static final String PROP_INDEXING_THREADS = "indexing_threads";
+	
+	private static final String PROP_INDEXING_THREADS_PER_PROJECT = "indexing_threads_per_project";
+	
+	private static final String PROP_GIT_TRANSFERS = "git_transfers";
+	
+	private static final String PROP_GIT_TRANSFER_QUEUE_SIZE = "git_transfer_queue_size";
+	
+	// Prefixed with lower case name of executor pool, for instance general_executor_threads
+	private static final String PROP_EXECUTOR_THREADS = "_executor_threads";
+	
+	private static final String PROP_EXECUTOR_QUEUE_SIZE = "_executor_queue_size";
+	
+	private static final String PROP_UPLOAD_PACK_CACHE_SIZE = "upload_pack_cache_size";
+	
+	private static final String PROP_UPLOAD_PACK_CACHE_AGE = "upload_pack_cache_age";
+	
+	private static final String PROP_COMMIT_GRAPH_COMMITS = "commit_graph_commits";
+	
+	private static final String PROP_COMMIT_GRAPH_IDLE_TIME = "commit_graph_idle_time";
+	
 	private int httpPort;
 	
 	private int sessionTimeout;
@@ -49,6 +73,26 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private String keystorePassword;
 	
+	private int indexingThreads;
+	
+	private int indexingThreadsPerProject;
+	
+	private int gitTransfers;
+	
+	private int gitTransferQueueSize;
+	
+	private final Map<ExecutorPool, Integer> executorThreads = new EnumMap<>(ExecutorPool.class);
+	
+	private final Map<ExecutorPool, Integer> executorQueueSizes = new EnumMap<>(ExecutorPool.class);
+	
+	private long uploadPackCacheSize;
+	
+	private int uploadPackCacheAge;
+	
+	private int commitGraphCommits;
+	
+	private int commitGraphIdleTime;
+	
 	@Inject
 	public DefaultServerConfig(ServerProperties props) {
 		String httpPortStr = System.getenv(PROP_HTTPPORT);
@@ -127,6 +171,120 @@ public class DefaultServerConfig implements ServerConfig {
 			sessionTimeout = Integer.parseInt(sessionTimeoutStr.trim());
 		else
 			throw new ExplicitException(PROP_SESSION_TIMEOUT + " should be specified");
+		
+		String indexingThreadsStr = System.getenv(PROP_INDEXING_THREADS);
+		if (StringUtils.isBlank(indexingThreadsStr))
+			indexingThreadsStr = props.getProperty(PROP_INDEXING_THREADS);
+		if (StringUtils.isNotBlank(indexingThreadsStr))
+			indexingThreads = Integer.parseInt(indexingThreadsStr.trim());
+		else
+			indexingThreads = Runtime.getRuntime().availableProcessors();
+		if (indexingThreads < 1)
+			throw new ExplicitException(PROP_INDEXING_THREADS + " should be at least 1");
+		
+		String indexingThreadsPerProjectStr = System.getenv(PROP_INDEXING_THREADS_PER_PROJECT);
+		if (StringUtils.isBlank(indexingThreadsPerProjectStr))
+			indexingThreadsPerProjectStr = props.getProperty(PROP_INDEXING_THREADS_PER_PROJECT);
+		if (StringUtils.isNotBlank(indexingThreadsPerProjectStr))
+			indexingThreadsPerProject = Integer.parseInt(indexingThreadsPerProjectStr.trim());
+		else
+			indexingThreadsPerProject = Math.max(1, indexingThreads/2);
+		if (indexingThreadsPerProject < 1)
+			throw new ExplicitException(PROP_INDEXING_THREADS_PER_PROJECT + " should be at least 1");
+		indexingThreadsPerProject = Math.min(indexingThreadsPerProject, indexingThreads);
+		
+		String gitTransfersStr = System.getenv(PROP_GIT_TRANSFERS);
+		if (StringUtils.isBlank(gitTransfersStr))
+			gitTransfersStr = props.getProperty(PROP_GIT_TRANSFERS);
+		if (StringUtils.isNotBlank(gitTransfersStr))
+			gitTransfers = Integer.parseInt(gitTransfersStr.trim());
+		else
+			gitTransfers = Runtime.getRuntime().availableProcessors()*2;
+		if (gitTransfers < 1)
+			throw new ExplicitException(PROP_GIT_TRANSFERS + " should be at least 1");
+		
+		String gitTransferQueueSizeStr = System.getenv(PROP_GIT_TRANSFER_QUEUE_SIZE);
+		if (StringUtils.isBlank(gitTransferQueueSizeStr))
+			gitTransferQueueSizeStr = props.getProperty(PROP_GIT_TRANSFER_QUEUE_SIZE);
+		if (StringUtils.isNotBlank(gitTransferQueueSizeStr))
+			gitTransferQueueSize = Integer.parseInt(gitTransferQueueSizeStr.trim());
+		else
+			gitTransferQueueSize = gitTransfers*10;
+		if (gitTransferQueueSize < 0)
+			throw new ExplicitException(PROP_GIT_TRANSFER_QUEUE_SIZE + " should not be negative");
+		
+		for (ExecutorPool pool: ExecutorPool.values()) {
+			if (pool.isBounded()) {
+				String threadsProp = pool.name().toLowerCase() + PROP_EXECUTOR_THREADS;
+				String threadsStr = System.getenv(threadsProp);
+				if (StringUtils.isBlank(threadsStr))
+					threadsStr = props.getProperty(threadsProp);
+				int threads;
+				if (StringUtils.isNotBlank(threadsStr))
+					threads = Integer.parseInt(threadsStr.trim());
+				else
+					threads = pool.getDefaultThreads();
+				if (threads < 1)
+					throw new ExplicitException(threadsProp + " should be at least 1");
+				executorThreads.put(pool, threads);
+				
+				String queueSizeProp = pool.name().toLowerCase() + PROP_EXECUTOR_QUEUE_SIZE;
+				String queueSizeStr = System.getenv(queueSizeProp);
+				if (StringUtils.isBlank(queueSizeStr))
+					queueSizeStr = props.getProperty(queueSizeProp);
+				int queueSize;
+				if (StringUtils.isNotBlank(queueSizeStr))
+					queueSize = Integer.parseInt(queueSizeStr.trim());
+				else
+					queueSize = pool.getDefaultQueueSize();
+				if (queueSize < 0)
+					throw new ExplicitException(queueSizeProp + " should not be negative");
+				executorQueueSizes.put(pool, queueSize);
+			} else {
+				executorThreads.put(pool, pool.getDefaultThreads());
+				executorQueueSizes.put(pool, pool.getDefaultQueueSize());
+			}
+		}
+		
+		String uploadPackCacheSizeStr = System.getenv(PROP_UPLOAD_PACK_CACHE_SIZE);
+		if (StringUtils.isBlank(uploadPackCacheSizeStr))
+			uploadPackCacheSizeStr = props.getProperty(PROP_UPLOAD_PACK_CACHE_SIZE);
+		if (StringUtils.isNotBlank(uploadPackCacheSizeStr))
+			uploadPackCacheSize = Long.parseLong(uploadPackCacheSizeStr.trim())*1024*1024;
+		else
+			uploadPackCacheSize = 2048L*1024*1024;
+		if (uploadPackCacheSize < 0)
+			throw new ExplicitException(PROP_UPLOAD_PACK_CACHE_SIZE + " should not be negative");
+		
+		String uploadPackCacheAgeStr = System.getenv(PROP_UPLOAD_PACK_CACHE_AGE);
+		if (StringUtils.isBlank(uploadPackCacheAgeStr))
+			uploadPackCacheAgeStr = props.getProperty(PROP_UPLOAD_PACK_CACHE_AGE);
+		if (StringUtils.isNotBlank(uploadPackCacheAgeStr))
+			uploadPackCacheAge = Integer.parseInt(uploadPackCacheAgeStr.trim());
+		else
+			uploadPackCacheAge = 3600;
+		if (uploadPackCacheAge < 1)
+			throw new ExplicitException(PROP_UPLOAD_PACK_CACHE_AGE + " should be at least 1");
+		
+		String commitGraphCommitsStr = System.getenv(PROP_COMMIT_GRAPH_COMMITS);
+		if (StringUtils.isBlank(commitGraphCommitsStr))
+			commitGraphCommitsStr = props.getProperty(PROP_COMMIT_GRAPH_COMMITS);
+		if (StringUtils.isNotBlank(commitGraphCommitsStr))
+			commitGraphCommits = Integer.parseInt(commitGraphCommitsStr.trim());
+		else
+			commitGraphCommits = 10000000;
+		if (commitGraphCommits < 0)
+			throw new ExplicitException(PROP_COMMIT_GRAPH_COMMITS + " should not be negative");
+		
+		String commitGraphIdleTimeStr = System.getenv(PROP_COMMIT_GRAPH_IDLE_TIME);
+		if (StringUtils.isBlank(commitGraphIdleTimeStr))
+			commitGraphIdleTimeStr = props.getProperty(PROP_COMMIT_GRAPH_IDLE_TIME);
+		if (StringUtils.isNotBlank(commitGraphIdleTimeStr))
+			commitGraphIdleTime = Integer.parseInt(commitGraphIdleTimeStr.trim());
+		else
+			commitGraphIdleTime = 3600;
+		if (commitGraphIdleTime < 1)
+			throw new ExplicitException(PROP_COMMIT_GRAPH_IDLE_TIME + " should be at least 1");
 	}
 	
 	@Override
@@ -163,5 +321,55 @@ public class DefaultServerConfig implements ServerConfig {
     public int getSshPort() {
         return sshPort;
     }
+
+	@Override
+	public int getIndexingThreads() {
+		return indexingThreads;
+	}
+
+	@Override
+	public int getIndexingThreadsPerProject() {
+		return indexingThreadsPerProject;
+	}
+
+	@Override
+	public int getGitTransfers() {
+		return gitTransfers;
+	}
+
+	@Override
+	public int getGitTransferQueueSize() {
+		return gitTransferQueueSize;
+	}
+
+	@Override
+	public int getExecutorThreads(ExecutorPool pool) {
+		return executorThreads.get(pool);
+	}
+
+	@Override
+	public int getExecutorQueueSize(ExecutorPool pool) {
+		return executorQueueSizes.get(pool);
+	}
+
+	@Override
+	public long getUploadPackCacheSize() {
+		return uploadPackCacheSize;
+	}
+
+	@Override
+	public int getUploadPackCacheAge() {
+		return uploadPackCacheAge;
+	}
+
+	@Override
+	public int getCommitGraphCommits() {
+		return commitGraphCommits;
+	}
+
+	@Override
+	public int getCommitGraphIdleTime() {
+		return commitGraphIdleTime;
+	}
 	
 }
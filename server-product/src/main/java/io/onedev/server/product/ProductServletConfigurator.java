@@ -18,8 +18,6 @@ import org.glassfish.jersey.servlet.ServletContainer;
 
 import io.onedev.commons.launcher.bootstrap.Bootstrap;
 import io.onedev.server.git.GitFilter;
-import io.onedev.server.git.hookcallback.GitPostReceiveCallback;
-import io.onedev.server.git.hookcallback.GitPreReceiveCallback;
 import io.onedev.server.security.DefaultWebEnvironment;
 import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.jetty.ClasspathAssetServlet;
@@ -37,10 +35,6 @@ public class ProductServletConfigurator implements ServletConfigurator {
 	
     private final GitFilter gitFilter;
     
-	private final GitPreReceiveCallback preReceiveServlet;
-	
-	private final GitPostReceiveCallback postReceiveServlet;
-	
 	private final WicketServlet wicketServlet;
 	
 	private final ServletContainer jerseyServlet;
@@ -49,13 +43,10 @@ public class ProductServletConfigurator implements ServletConfigurator {
 	
 	@Inject
 	public ProductServletConfigurator(ServerConfig serverConfig, ShiroFilter shiroFilter, GitFilter gitFilter, 
-			GitPreReceiveCallback preReceiveServlet, GitPostReceiveCallback postReceiveServlet, 
 			WicketServlet wicketServlet, WebSocketManager webSocketManager, ServletContainer jerseyServlet) {
 		this.serverConfig = serverConfig;
 		this.shiroFilter = shiroFilter;
         this.gitFilter = gitFilter;
-		this.preReceiveServlet = preReceiveServlet;
-		this.postReceiveServlet = postReceiveServlet;
 		this.wicketServlet = wicketServlet;
 		this.webSocketManager = webSocketManager;
 		this.jerseyServlet = jerseyServlet;
@@ -73,10 +64,6 @@ public class ProductServletConfigurator implements ServletConfigurator {
 		
         context.addFilter(new FilterHolder(gitFilter), "/*", EnumSet.allOf(DispatcherType.class));
 		
-		context.addServlet(new ServletHolder(preReceiveServlet), GitPreReceiveCallback.PATH + "/*");
-        
-        context.addServlet(new ServletHolder(postReceiveServlet), GitPostReceiveCallback.PATH + "/*");
-        
 		/*
 		 * Add wicket servlet as the default servlet which will serve all requests failed to 
 		 * match a path pattern